@@ -0,0 +1,57 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.network;
+
+import java.io.*;
+
+/**
+ * Reads the frames written by {@link BinaryObjectOutputStream}.
+ */
+public class BinaryObjectInputStream extends ObjectInputStream {
+
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final DataInputStream _in;
+
+    public BinaryObjectInputStream(InputStream in) throws IOException {
+        super();
+        _in = new DataInputStream(in);
+    }
+
+    @Override
+    protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+        int length = _in.readInt();
+        int type = _in.readUnsignedByte();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        _in.readFully(payload);
+        return WireCodecs.decode(type, new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    @Override
+    public int available() throws IOException {
+        return _in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.network;
+
+import java.io.*;
+
+/**
+ * Writes messages as length prefixed binary frames instead of Java serialization.<br>
+ * A frame is the payload length, the type id of its codec and the payload, see {@link WireCodecs}.
+ * There is no handle table to share between messages, {@link #reset()} does nothing.
+ */
+public class BinaryObjectOutputStream extends ObjectOutputStream {
+
+    private final DataOutputStream _out;
+    private final ByteArrayOutputStream _buffer = new ByteArrayOutputStream(1024);
+    private final DataOutputStream _bufferOut = new DataOutputStream(_buffer);
+
+    public BinaryObjectOutputStream(OutputStream out) throws IOException {
+        super();
+        _out = new DataOutputStream(out);
+    }
+
+    @Override
+    protected synchronized void writeObjectOverride(Object obj) throws IOException {
+        _buffer.reset();
+        int type = WireCodecs.encode(_bufferOut, obj);
+        _bufferOut.flush();
+        _out.writeInt(_buffer.size());
+        _out.writeByte(type);
+        _buffer.writeTo(_out);
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _out.close();
+    }
+}
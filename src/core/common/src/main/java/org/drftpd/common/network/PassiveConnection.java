@@ -22,7 +22,6 @@ import org.apache.logging.log4j.Logger;
 import org.drftpd.common.slave.Connection;
 import org.drftpd.common.util.PortRange;
 
-import javax.net.ServerSocketFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import java.io.IOException;
@@ -59,7 +58,7 @@ public class PassiveConnection extends Connection {
         if (ctx != null) {
             _serverSocket = portRange.getPort(ctx.getServerSocketFactory(), bindIP);
         } else {
-            _serverSocket = portRange.getPort(ServerSocketFactory.getDefault(), bindIP);
+            _serverSocket = portRange.getPort(ChannelServerSocketFactory.getDefault(), bindIP);
         }
         _serverSocket.setSoTimeout(TIMEOUT);
     }
@@ -0,0 +1,190 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.network;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the codecs used by {@link BinaryObjectOutputStream} and {@link BinaryObjectInputStream}.<br>
+ * Every codec is registered under a type id written in front of each message, the id must be the same
+ * on master and slave. Messages without a codec, plugin responses for instance, are sent using Java serialization.
+ */
+public class WireCodecs {
+
+    /**
+     * Messages encoded by the codecs, negotiated during the handshake.
+     */
+    public static final String BINARY = "binary";
+
+    /**
+     * Every message encoded by Java serialization, as done by previous versions.
+     */
+    public static final String SERIALIZED = "serialized";
+
+    /**
+     * Entry added by the master to the protocol list it sends during the handshake when it can answer
+     * with the wire format to use, slaves only wait for that answer when the entry is present.
+     */
+    public static final String WIRE_FORMAT_ANNOUNCE = "wireformat:" + BINARY;
+
+    static final int TYPE_SERIALIZED = 0;
+
+    private static final Map<Integer, WireCodec<?>> _codecsById = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Integer> _idsByClass = new ConcurrentHashMap<>();
+
+    static {
+        register(1, AsyncCommandArgument.class, new AsyncCommandArgumentCodec());
+        register(2, AsyncResponse.class, new AsyncResponseCodec());
+    }
+
+    private WireCodecs() {
+    }
+
+    /**
+     * Registers a codec for objects of exactly the given class, subclasses are not handled by it.
+     *
+     * @param id between 1 and 255.
+     * @throws IllegalArgumentException if the id is out of range or already used by another class.
+     */
+    public static synchronized <T> void register(int id, Class<T> type, WireCodec<T> codec) {
+        if (id <= TYPE_SERIALIZED || id > 255) {
+            throw new IllegalArgumentException("Type id " + id + " is out of range");
+        }
+        Integer current = _idsByClass.get(type);
+        if (current != null && current == id) {
+            return;
+        }
+        if (current != null || _codecsById.containsKey(id)) {
+            throw new IllegalArgumentException("Type id " + id + " or " + type.getName() + " is already registered");
+        }
+        _codecsById.put(id, codec);
+        _idsByClass.put(type, id);
+    }
+
+    /**
+     * Encodes obj using its codec, or Java serialization if there is none.
+     *
+     * @return the type id to write in front of the message.
+     */
+    @SuppressWarnings("unchecked")
+    static int encode(DataOutput out, Object obj) throws IOException {
+        Integer id = obj == null ? null : _idsByClass.get(obj.getClass());
+        if (id == null) {
+            writeSerialized(out, obj);
+            return TYPE_SERIALIZED;
+        }
+        ((WireCodec<Object>) _codecsById.get(id)).write(out, obj);
+        return id;
+    }
+
+    static Object decode(int id, DataInput in) throws IOException, ClassNotFoundException {
+        if (id == TYPE_SERIALIZED) {
+            return readSerialized(in);
+        }
+        WireCodec<?> codec = _codecsById.get(id);
+        if (codec == null) {
+            throw new StreamCorruptedException("Unknown type id " + id);
+        }
+        return codec.read(in);
+    }
+
+    /**
+     * Writes a string that may be null and is not limited to 64k like {@link DataOutput#writeUTF(String)}.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an object using Java serialization, used for the parts of a message that do not deserve
+     * their own encoding, like exceptions.
+     */
+    public static void writeSerialized(DataOutput out, Object obj) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(obj);
+        }
+        out.writeInt(bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    public static Object readSerialized(DataInput in) throws IOException, ClassNotFoundException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        }
+    }
+
+    private static class AsyncCommandArgumentCodec implements WireCodec<AsyncCommandArgument> {
+        public void write(DataOutput out, AsyncCommandArgument ac) throws IOException {
+            writeString(out, ac.getIndex());
+            writeString(out, ac.getName());
+            String[] args = ac.getArgsArray();
+            out.writeInt(args == null ? -1 : args.length);
+            if (args != null) {
+                for (String arg : args) {
+                    writeString(out, arg);
+                }
+            }
+        }
+
+        public AsyncCommandArgument read(DataInput in) throws IOException {
+            String index = readString(in);
+            String name = readString(in);
+            int length = in.readInt();
+            String[] args = null;
+            if (length >= 0) {
+                args = new String[length];
+                for (int i = 0; i < length; i++) {
+                    args[i] = readString(in);
+                }
+            }
+            return new AsyncCommandArgument(index, name, args);
+        }
+    }
+
+    private static class AsyncResponseCodec implements WireCodec<AsyncResponse> {
+        public void write(DataOutput out, AsyncResponse response) throws IOException {
+            writeString(out, response.getIndex());
+        }
+
+        public AsyncResponse read(DataInput in) throws IOException {
+            return new AsyncResponse(readString(in));
+        }
+    }
+}
@@ -26,10 +26,13 @@ import java.io.Serializable;
  * @author fr0w
  * @version $Id$
  */
-@SuppressWarnings("serial")
 public class HandshakeWrapper implements Serializable {
+    // the one computed before _wireFormat was added, older slaves still send that version
+    private static final long serialVersionUID = 1132945343705718899L;
+
     private boolean _status;
     private Exception _exception;
+    private String _wireFormat;
 
     /**
      * @return true if *all* plugins were found on the slave-side
@@ -72,6 +75,19 @@ public class HandshakeWrapper implements Serializable {
         _status = status;
     }
 
+    /**
+     * @return the wire format the slave would like to use once the handshake is done,
+     * null if it only supports Java serialization.
+     * @see org.drftpd.common.network.WireCodecs
+     */
+    public String getWireFormat() {
+        return _wireFormat;
+    }
+
+    public void setWireFormat(String wireFormat) {
+        _wireFormat = wireFormat;
+    }
+
     public String toString() {
         return getClass().getName() + "[pluginStatus=" + pluginStatus() + "]";
     }
@@ -0,0 +1,101 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.common.slave;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A bandwidth limit shared by every transfer of a slave, user, group or section.
+ * <p>
+ * The name {@link #ALL} gives each user, group or section a limit of its own.
+ */
+public final class BandwidthLimit {
+    public static final String SLAVE = "slave";
+    public static final String USER = "user";
+    public static final String GROUP = "group";
+    public static final String SECTION = "section";
+
+    public static final String ALL = "*";
+
+    private final String _scope;
+
+    private final String _name;
+
+    private final long _up;
+
+    private final long _down;
+
+    /**
+     * @param up   bytes per second allowed to uploads, 0 for no limit.
+     * @param down bytes per second allowed to downloads, 0 for no limit.
+     */
+    public BandwidthLimit(String scope, String name, long up, long down) {
+        if (!scope.equals(SLAVE) && !scope.equals(USER) && !scope.equals(GROUP) && !scope.equals(SECTION)) {
+            throw new IllegalArgumentException("Unknown bandwidth scope " + scope);
+        }
+        _scope = scope;
+        _name = name;
+        _up = up;
+        _down = down;
+    }
+
+    public String getScope() {
+        return _scope;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public long getUp() {
+        return _up;
+    }
+
+    public long getDown() {
+        return _down;
+    }
+
+    /**
+     * @return the limits as arguments of a slave command, four per limit.
+     */
+    public static String[] toArgs(Collection<BandwidthLimit> limits) {
+        String[] args = new String[limits.size() * 4];
+        int i = 0;
+        for (BandwidthLimit limit : limits) {
+            args[i++] = limit._scope;
+            args[i++] = limit._name;
+            args[i++] = Long.toString(limit._up);
+            args[i++] = Long.toString(limit._down);
+        }
+        return args;
+    }
+
+    public static List<BandwidthLimit> fromArgs(String[] args) {
+        List<BandwidthLimit> limits = new ArrayList<>(args.length / 4);
+        for (int i = 0; i + 3 < args.length; i += 4) {
+            limits.add(new BandwidthLimit(args[i], args[i + 1], Long.parseLong(args[i + 2]), Long.parseLong(args[i + 3])));
+        }
+        return limits;
+    }
+
+    public String toString() {
+        return getClass().getSimpleName() + "[scope=" + _scope + ",name=" + _name + ",up=" + _up + ",down=" + _down + "]";
+    }
+}
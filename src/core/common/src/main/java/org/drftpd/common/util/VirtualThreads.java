@@ -0,0 +1,103 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.drftpd.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads.<br>
+ * DrFTPD is built for Java 17, virtual threads are looked up at runtime and only
+ * available when running on Java 21 or newer.
+ */
+public class VirtualThreads {
+    private static final Logger logger = LogManager.getLogger(VirtualThreads.class);
+
+    private static final Method _ofVirtual;
+    private static final Method _name;
+    private static final Method _factory;
+    private static final Method _newThreadPerTaskExecutor;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads are not available on this JVM");
+            ofVirtual = null;
+        }
+        _ofVirtual = ofVirtual;
+        _name = name;
+        _factory = factory;
+        _newThreadPerTaskExecutor = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return _ofVirtual != null;
+    }
+
+    /**
+     * @param prefix name of the created threads, followed by a counter.
+     * @return a factory creating virtual threads.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+        }
+        try {
+            Object builder = _name.invoke(_ofVirtual.invoke(null), prefix, 0L);
+            return (ThreadFactory) _factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual threads", e);
+        }
+    }
+
+    /**
+     * @param prefix name of the created threads, followed by a counter.
+     * @return an executor starting a new virtual thread for every task.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        try {
+            return (ExecutorService) _newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual threads", e);
+        }
+    }
+}
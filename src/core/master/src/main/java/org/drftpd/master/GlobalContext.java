@@ -45,6 +45,7 @@ import org.drftpd.master.usermanager.AbstractUserManager;
 import org.drftpd.master.usermanager.UserManager;
 import org.drftpd.master.vfs.CommitManager;
 import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.InodeCachePinner;
 import org.drftpd.master.vfs.VirtualFileSystem;
 import org.reflections.Reflections;
 import org.reflections.scanners.MethodAnnotationsScanner;
@@ -401,6 +402,7 @@ public class GlobalContext {
     public void init() {
         _config = new ConfigManager();
         _config.reload();
+        eventService.configure(getConfig().getMainProperties());
 
         CommitManager.getCommitManager().start();
         _timeManager = new TimeManager();
@@ -423,6 +425,9 @@ public class GlobalContext {
         listenForSlaves();
         loadSlaveSelectionManager(getConfig().getMainProperties());
         loadSectionManager(getConfig().getMainProperties());
+        InodeCachePinner pinner = new InodeCachePinner();
+        pinner.refresh();
+        addTimeEvent(pinner);
         loadIndexingEngine(getConfig().getMainProperties());
         loadPlugins();
 
@@ -25,19 +25,21 @@ import org.drftpd.common.socks.Ident;
 import org.drftpd.common.util.HostMask;
 import org.drftpd.common.util.HostMaskCollection;
 import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.common.util.VirtualThreads;
 import org.drftpd.master.commands.CommandManagerInterface;
 import org.drftpd.master.commands.usermanagement.UserManagement;
 import org.drftpd.master.event.ReloadEvent;
 import org.drftpd.master.network.BaseFtpConnection;
+import org.drftpd.master.network.ConnectionCounters;
 import org.drftpd.master.network.ConnectionThreadFactory;
 import org.drftpd.master.network.FtpReply;
-import org.drftpd.master.usermanager.NoSuchUserException;
 import org.drftpd.master.usermanager.User;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -58,7 +60,9 @@ public class Master {
     private HashMap<String, Properties> _cmds = null;
     private CommandManagerInterface _commandManager = null;
     private final Vector<BaseFtpConnection> _conns = new Vector();
-    private ThreadPoolExecutor _pool = null;
+    private final ConnectionCounters _connectionCounters = new ConnectionCounters();
+    private ExecutorService _pool = null;
+    private boolean _virtualThreads = false;
     private List<HostMaskCollection> _hostmasks = null;
 
     /**
@@ -169,16 +173,41 @@ public class Master {
         // Make sure we can accomodate the max connections
         _conns.ensureCapacity(getMaxConnections());
 
-        _pool = new ThreadPoolExecutor(getMaxConnections(), getMaxConnections(), Long.MAX_VALUE, TimeUnit.NANOSECONDS,
+        _virtualThreads = Boolean.parseBoolean(PropertyHelper.getProperty(
+                GlobalContext.getConfig().getMainProperties(), "virtual.threads", "false"));
+        if (_virtualThreads && !VirtualThreads.isSupported()) {
+            logger.warn("'virtual.threads' requires Java 21 or newer, using platform threads");
+            _virtualThreads = false;
+        }
+        if (_virtualThreads) {
+            logger.info("Using virtual threads for FTP connections");
+            _pool = VirtualThreads.newThreadPerTaskExecutor("FtpConnection Handler-");
+            return;
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(getMaxConnections(), getMaxConnections(), Long.MAX_VALUE, TimeUnit.NANOSECONDS,
                 new SynchronousQueue<>(), new ConnectionThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
-        _pool.allowCoreThreadTimeOut(false);
-        _pool.prestartAllCoreThreads();
+        pool.allowCoreThreadTimeOut(false);
+        pool.prestartAllCoreThreads();
+        _pool = pool;
+    }
+
+    /**
+     * @return true if connections and their commands run on virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return _virtualThreads;
     }
 
     public void dumpThreadPool() {
-        logger.debug("Active threads: {} / Completed Tasks: {}", _pool.getActiveCount(), _pool.getCompletedTaskCount());
-        logger.debug("Pool information - Min # of threads: {} / Max: {}", _pool.getCorePoolSize(), _pool.getMaximumPoolSize());
-        logger.debug("Current # of threads: {}", _pool.getPoolSize());
+        if (!(_pool instanceof ThreadPoolExecutor)) {
+            logger.debug("Connections running on virtual threads: {}", _conns.size());
+            return;
+        }
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) _pool;
+        logger.debug("Active threads: {} / Completed Tasks: {}", pool.getActiveCount(), pool.getCompletedTaskCount());
+        logger.debug("Pool information - Min # of threads: {} / Max: {}", pool.getCorePoolSize(), pool.getMaximumPoolSize());
+        logger.debug("Current # of threads: {}", pool.getPoolSize());
     }
 
     public FtpReply canLogin(BaseFtpConnection baseConnection, User user) {
@@ -193,24 +222,9 @@ public class Master {
             return new FtpReply(550, "The site is full, try again later.");
         }
 
-        int userCount = 0;
-        int ipCount = 0;
-
-        Enumeration<BaseFtpConnection> conns = _conns.elements();
-        while (conns.hasMoreElements()) {
-            try {
-                BaseFtpConnection tempConnection = conns.nextElement();
-                if (tempConnection.getUser().getName().equals(user.getName())) {
-                    userCount++;
-                    if (tempConnection.getClientAddress().equals(baseConnection.getClientAddress())) {
-                        ipCount++;
-                    }
-                }
-
-            } catch (NoSuchUserException ex) {
-                // do nothing, we found our current connection, baseConnection = tempConnection
-            }
-        }
+        // baseConnection is not logged in yet, so not counted
+        int userCount = _connectionCounters.getLogins(user.getName());
+        int ipCount = _connectionCounters.getLogins(user.getName(), baseConnection.getClientAddress());
 
         int maxLogins = user.getKeyedMap().getObjectInteger(UserManagement.MAXLOGINS);
         if (maxLogins > 0) {
@@ -260,6 +274,13 @@ public class Master {
         return new ArrayList<>(_conns);
     }
 
+    /**
+     * @return the logins and transfers of the users, counted as connections log in and transfer.
+     */
+    public ConnectionCounters getConnectionCounters() {
+        return _connectionCounters;
+    }
+
     public void remove(BaseFtpConnection conn) {
         if (!_conns.remove(conn)) {
             throw new RuntimeException("connections.remove() returned false.");
@@ -332,6 +353,10 @@ public class Master {
 
         _conns.add(conn);
         try {
+            // virtual threads are not pooled, enforce the limit the platform thread pool has
+            if (_virtualThreads && _conns.size() > getMaxConnections()) {
+                throw new RejectedExecutionException("Too many connections");
+            }
             _pool.execute(conn);
         } catch (RejectedExecutionException e) {
             logger.warn("The pool rejected to start connection, closing");
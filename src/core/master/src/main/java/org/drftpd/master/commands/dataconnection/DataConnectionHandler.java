@@ -949,12 +949,17 @@ public class DataConnectionHandler extends CommandInterface {
             //transfer
             try {
                 String address = request.getSession().getObject(INET_ADDRESS, "*@*");
+                // shared bandwidth limits on the slave
+                String userName = user == null ? null : user.getName();
+                String groupName = user == null || user.getGroup() == null ? null : user.getGroup().getName();
+                String sectionName = GlobalContext.getGlobalContext().getSectionManager()
+                        .lookup(ts.getTransferFile().getParent()).getName();
 
                 if (isRetr) {
                     ts.sendFile(ts.getTransferFile().getPath(), ts.getType(),
                             ts.getResumePosition(), address,
                             request.getObjectLong(MIN_XFER_SPEED),
-                            request.getObjectLong(MAX_XFER_SPEED));
+                            request.getObjectLong(MAX_XFER_SPEED), userName, groupName, sectionName);
 
                     while (true) {
                         synchronized (ts) {
@@ -972,7 +977,7 @@ public class DataConnectionHandler extends CommandInterface {
                     ts.receiveFile(ts.getTransferFile().getPath(), ts.getType(),
                             ts.getResumePosition(), address,
                             request.getObjectLong(MIN_XFER_SPEED),
-                            request.getObjectLong(MAX_XFER_SPEED));
+                            request.getObjectLong(MAX_XFER_SPEED), userName, groupName, sectionName);
 
                     while (true) {
                         synchronized (ts) {
@@ -25,6 +25,15 @@ import org.drftpd.master.vfs.DirectoryHandle;
  */
 public interface AddListElementsInterface {
 
+    /**
+     * Adds the entries of the addon to a listing of {@code dir}.<br>
+     * For STAT and MLST the container holds the entries of the directory. For LIST and MLSD the
+     * entries are sent from a listing kept until the directory changes, the container then only holds
+     * the file types and the online and total counts of the directory, and the elements added by the
+     * addons, which are sent after the listing.
+     *
+     * @return the container handed to the next addon, usually {@code container}.
+     */
     ListElementsContainer addElements(DirectoryHandle dir, ListElementsContainer container);
 
     void initialize();
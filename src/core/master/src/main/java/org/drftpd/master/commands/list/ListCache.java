@@ -0,0 +1,157 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.commands.list;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used directory listings as the bytes sent to the clients, along with
+ * the counts of the directory handed to the {@link AddListElementsInterface} addons.
+ * <p>
+ * A listing is kept with the version of its directory and is only given back for
+ * that version, until the dates it shows would be written differently.
+ */
+public class ListCache {
+
+    private final Map<String, Entry> _listings = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long _maxBytes;
+
+    private long _bytes;
+
+    /**
+     * The lines of a directory listing and what {@link ListHandler#listElements} counted while making them.
+     */
+    public static class Listing {
+        private final byte[] _bytes;
+
+        private final List<String> _fileTypes;
+
+        private final int _numOnline;
+
+        private final int _numTotal;
+
+        public Listing(byte[] bytes, List<String> fileTypes, int numOnline, int numTotal) {
+            _bytes = bytes;
+            _fileTypes = List.copyOf(fileTypes);
+            _numOnline = numOnline;
+            _numTotal = numTotal;
+        }
+
+        public byte[] getBytes() {
+            return _bytes;
+        }
+
+        public List<String> getFileTypes() {
+            return _fileTypes;
+        }
+
+        public int getNumOnline() {
+            return _numOnline;
+        }
+
+        public int getNumTotal() {
+            return _numTotal;
+        }
+    }
+
+    private static class Entry {
+        private final long _version;
+
+        private final long _expires;
+
+        private final Listing _listing;
+
+        private Entry(long version, long expires, Listing listing) {
+            _version = version;
+            _expires = expires;
+            _listing = listing;
+        }
+    }
+
+    /**
+     * @param maxBytes the size of the listings to keep, 0 to keep none.
+     */
+    public ListCache(long maxBytes) {
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the listing kept for {@code key} if it was made for {@code version} and
+     * is still right at {@code now}, null otherwise.
+     */
+    public synchronized Listing get(String key, long version, long now) {
+        Entry entry = _listings.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry._version != version || now >= entry._expires) {
+            remove(key);
+            return null;
+        }
+        return entry._listing;
+    }
+
+    /**
+     * Keeps the listing of {@code key} made for {@code version}, it is right until {@code expires}.
+     */
+    public synchronized void put(String key, long version, long expires, Listing listing) {
+        remove(key);
+        if (listing.getBytes().length > _maxBytes) {
+            return;
+        }
+        _listings.put(key, new Entry(version, expires, listing));
+        _bytes += listing.getBytes().length;
+        trim();
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        _maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized void clear() {
+        _listings.clear();
+        _bytes = 0;
+    }
+
+    /**
+     * @return the size of the listings kept.
+     */
+    public synchronized long getBytes() {
+        return _bytes;
+    }
+
+    private void remove(String key) {
+        Entry entry = _listings.remove(key);
+        if (entry != null) {
+            _bytes -= entry._listing.getBytes().length;
+        }
+    }
+
+    private void trim() {
+        Iterator<Entry> iter = _listings.values().iterator();
+        while (_bytes > _maxBytes) {
+            _bytes -= iter.next()._listing.getBytes().length;
+            iter.remove();
+        }
+    }
+}
@@ -21,11 +21,14 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bushe.swing.event.annotation.AnnotationProcessor;
+import org.bushe.swing.event.annotation.EventSubscriber;
 import org.drftpd.common.slave.LightRemoteInode;
 import org.drftpd.common.vfs.InodeHandleInterface;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.Master;
 import org.drftpd.master.commands.*;
+import org.drftpd.master.event.ReloadEvent;
+import org.drftpd.master.event.SlaveEvent;
 import org.drftpd.master.exceptions.NoAvailableSlaveException;
 import org.drftpd.master.network.*;
 import org.drftpd.master.slavemanagement.RemoteSlave;
@@ -34,6 +37,7 @@ import org.drftpd.master.vfs.*;
 import org.reflections.Reflections;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -60,6 +64,9 @@ public class ListHandler extends CommandInterface {
     private static final String DELIM = " ";
     private static final String PADDING = "          ";
 
+    // dates closer than this are written with the time instead of the year
+    private static final long SIX_MONTHS = 183L * 24L * 60L * 60L * 1000L;
+
     static {
         MLSTTIME.setTimeZone(TimeZone.getTimeZone("GMT"));
     }
@@ -70,6 +77,8 @@ public class ListHandler extends CommandInterface {
 
     private ResourceBundle _bundle;
 
+    private final ListCache _listCache = new ListCache(0);
+
     @Override
     public void initialize(String method, String pluginName, StandardCommandManager cManager) {
         super.initialize(method, pluginName, cManager);
@@ -78,6 +87,7 @@ public class ListHandler extends CommandInterface {
                 "MLST type*,x.crc32*,size*,modify*,unix.owner*,unix.group*,x.slaves*,x.xfertime*"
         };
         _bundle = cManager.getResourceBundle();
+        loadConf();
 
         // Subscribe to events
         AnnotationProcessor.process(this);
@@ -97,6 +107,33 @@ public class ListHandler extends CommandInterface {
         }
     }
 
+    private void loadConf() {
+        long cacheSize;
+        try {
+            cacheSize = Long.parseLong(GlobalContext.getConfig().getMainProperties()
+                    .getProperty("list.cache.size", "65536"));
+        } catch (NumberFormatException e) {
+            logger.error("Non numeric list.cache.size setting in master.conf, using default");
+            cacheSize = 65536L;
+        }
+        _listCache.setMaxBytes(cacheSize * 1024L);
+        // permissions or messages may have changed
+        _listCache.clear();
+    }
+
+    @EventSubscriber
+    public void onReloadEvent(ReloadEvent event) {
+        loadConf();
+    }
+
+    @EventSubscriber
+    public void onSlaveEvent(SlaveEvent event) {
+        if (event.getCommand().equals("ADDSLAVE") || event.getCommand().equals("DELSLAVE")) {
+            // files of every directory may have gone offline or back online
+            _listCache.clear();
+        }
+    }
+
     public CommandResponse doLIST(CommandRequest request) throws ImproperUsageException {
         return list(request, true, false, false, false);
     }
@@ -194,6 +231,7 @@ public class ListHandler extends CommandInterface {
                 directoryFile = conn.getCurrentDirectory();
             }
             Writer os = null;
+            OutputStream out = null;
 
             if (isStat) {
                 response = new CommandResponse(213, "End of STAT");
@@ -211,36 +249,65 @@ public class ListHandler extends CommandInterface {
                 conn.printOutput(new FtpReply(StandardCommandManager.genericResponse("RESPONSE_150_OK")));
 
                 try {
-                    os = new PrintWriter(new OutputStreamWriter(ts.getDataSocketForLIST().getOutputStream()));
+                    out = ts.getDataSocketForLIST().getOutputStream();
                 } catch (IOException ex) {
                     logger.warn(ex);
                     return new CommandResponse(425, ex.getMessage());
                 }
             }
-            ListElementsContainer container = null;
             boolean slavenames = request.getProperties().getProperty("slavenames", "false").equalsIgnoreCase("true");
+
+            if (isStat || isMlst) {
+                ListElementsContainer container = null;
+                try {
+                    container = listElements(directoryFile, conn, request.getUser(), slavenames);
+                } catch (IOException e) {
+                    logger.error(e);
+                    return new CommandResponse(450, e.getMessage());
+                }
+                container = addListElements(directoryFile, container);
+
+                try {
+                    if (isStat) {
+                        StringBuilder output = new StringBuilder("total 0" + NEWLINE);
+                        toList(container.getElements(), fulldate, slavenames, output);
+                        os.write(output.toString());
+                    } else {
+                        os.write(toMLST(container.getElements(), request.getArgument()));
+                    }
+                    return response;
+                } catch (IOException ex) {
+                    logger.warn(ex);
+                    return new CommandResponse(450, ex.getMessage());
+                }
+            }
+
+            ListCache.Listing listing;
             try {
-                container = listElements(directoryFile, conn, request.getUser(), slavenames);
+                listing = getListing(directoryFile, conn, request.getUser(), isList, fulldate, slavenames,
+                        request.getArgument());
             } catch (IOException e) {
                 logger.error(e);
                 return new CommandResponse(450, e.getMessage());
             }
 
-            // execute list addons.
-            for (AddListElementsInterface listAddon : _listAddons) {
-                container = listAddon.addElements(directoryFile, container);
+            // the addons are not kept with the listing, they get its counts and their elements come after it
+            ListElementsContainer container = new ListElementsContainer(conn, request.getUser(), _cManager);
+            container.getFileTypes().addAll(listing.getFileTypes());
+            container.setNumOnline(listing.getNumOnline());
+            container.setNumTotal(listing.getNumTotal());
+            container = addListElements(directoryFile, container);
+            StringBuilder output = new StringBuilder();
+            if (isList) {
+                toList(container.getElements(), fulldate, slavenames, output);
+            } else {
+                output.append(toMLST(container.getElements(), request.getArgument()));
             }
 
             try {
-                if (isStat || isList) {
-                    os.write("total 0" + NEWLINE);
-                    os.write(toList(container.getElements(), fulldate, slavenames));
-                } else {
-                    os.write(toMLST(container.getElements(), request.getArgument()));
-                }
-                if (isStat || isMlst)
-                    return response;
-                os.close();
+                out.write(listing.getBytes());
+                out.write(output.toString().getBytes(Charset.defaultCharset()));
+                out.close();
                 response = StandardCommandManager.genericResponse("RESPONSE_226_CLOSING_DATA_CONNECTION");
                 response.addComment(conn.status());
                 return response;
@@ -254,6 +321,53 @@ public class ListHandler extends CommandInterface {
         }
     }
 
+    /**
+     * @return the container returned by the last addon.
+     */
+    private ListElementsContainer addListElements(DirectoryHandle dir, ListElementsContainer container) {
+        for (AddListElementsInterface listAddon : _listAddons) {
+            container = listAddon.addElements(dir, container);
+        }
+        return container;
+    }
+
+    /**
+     * @return the LIST or MLSD lines of the entries of {@code dir} as sent to {@code user}, kept until
+     * the directory changes. Users seeing the same files through the privpath permissions share them,
+     * unless the listing has offline files, their names are made with a template of the user.
+     */
+    private ListCache.Listing getListing(DirectoryHandle dir, Session session, String user, boolean isList, boolean fulldate,
+                              boolean slavenames, String argument) throws IOException {
+        long version = dir.getVersion();
+        String key = dir.getPath() + '\n' + (isList ? "LIST " + fulldate : "MLSD " + argument) + ' ' + slavenames
+                + '\n' + GlobalContext.getConfig().getVFSPermissions().getPrivPathSignature(session.getUserNull(user));
+        String userKey = key + '\n' + user;
+        long now = System.currentTimeMillis();
+        ListCache.Listing listing = _listCache.get(key, version, now);
+        if (listing == null) {
+            listing = _listCache.get(userKey, version, now);
+        }
+        if (listing != null) {
+            return listing;
+        }
+
+        ListElementsContainer container = listElements(dir, session, user, slavenames);
+        StringBuilder output = new StringBuilder();
+        long expires = Long.MAX_VALUE;
+        if (isList) {
+            output.append("total 0" + NEWLINE);
+            expires = toList(container.getElements(), fulldate, slavenames, output);
+        } else {
+            output.append(toMLST(container.getElements(), argument));
+        }
+        listing = new ListCache.Listing(output.toString().getBytes(Charset.defaultCharset()),
+                container.getFileTypes(), container.getNumOnline(), container.getNumTotal());
+        // only the offline files are counted in the total and not online
+        boolean hasOfflineFiles = container.getNumTotal() != container.getNumOnline();
+        _listCache.put(hasOfflineFiles ? userKey : key, version, expires, listing);
+        return listing;
+    }
+
     protected ListElementsContainer listElements(DirectoryHandle dir, Session session, String user, boolean slavenames) throws IOException {
         ListElementsContainer container = new ListElementsContainer(session, user, _cManager);
         ArrayList<InodeHandle> tempFileList = new ArrayList<>(dir.getInodeHandles(session.getUserNull(user)));
@@ -377,8 +491,13 @@ public class ListHandler extends CommandInterface {
         return output.toString();
     }
 
-    private String toList(Collection<InodeHandleInterface> listElements, boolean fulldate, boolean slavenames) {
-        StringBuilder output = new StringBuilder();
+    /**
+     * @return until when the dates written to {@code output} would be written the same.
+     */
+    private long toList(Collection<InodeHandleInterface> listElements, boolean fulldate, boolean slavenames,
+                        StringBuilder output) {
+        long now = System.currentTimeMillis();
+        long expires = Long.MAX_VALUE;
 
         for (InodeHandleInterface inode : listElements) {
             try {
@@ -404,7 +523,11 @@ public class ListHandler extends CommandInterface {
                 line.append(DELIM);
                 line.append(inode.getSize());
                 line.append(DELIM);
-                line.append(getUnixDate(inode.lastModified(), fulldate));
+                long lastModified = inode.lastModified();
+                line.append(getUnixDate(lastModified, fulldate));
+                if (!fulldate) {
+                    expires = Math.min(expires, getUnixDateExpiry(lastModified, now));
+                }
                 line.append(DELIM);
                 line.append(inode.getName());
                 if (inode.isLink()) {
@@ -416,7 +539,7 @@ public class ListHandler extends CommandInterface {
                 // entry was deleted whilst listing the dir, it will simply be omitted
             }
         }
-        return output.toString();
+        return expires;
     }
 
     private String getSlaveList(FileHandle file) {
@@ -474,7 +597,7 @@ public class ListHandler extends CommandInterface {
             synchronized (FULL) {
                 return firstPart + FULL.format(date1);
             }
-        } else if (Math.abs(nowTime - dateTime) > (183L * 24L * 60L * 60L * 1000L)) {
+        } else if (Math.abs(nowTime - dateTime) > SIX_MONTHS) {
             synchronized (AFTER_SIX) {
                 return firstPart + AFTER_SIX.format(date1);
             }
@@ -485,6 +608,19 @@ public class ListHandler extends CommandInterface {
         }
     }
 
+    /**
+     * @return when {@link #getUnixDate(long, boolean)} stops writing {@code date} as it does at {@code now}.
+     */
+    protected long getUnixDateExpiry(long date, long now) {
+        if (date < 0 || date < now - SIX_MONTHS) {
+            return Long.MAX_VALUE;
+        }
+        if (date > now + SIX_MONTHS) {
+            return date - SIX_MONTHS;
+        }
+        return date + SIX_MONTHS + 1;
+    }
+
     protected String padToLength(String value, int length) {
         if (value.length() >= length) {
             return value;
@@ -21,10 +21,13 @@ import org.drftpd.common.dynamicdata.Key;
 import org.drftpd.common.util.Bytes;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.commands.*;
+import org.drftpd.master.event.AsyncThreadSafeEventService;
 import org.drftpd.master.network.Session;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 import org.drftpd.master.util.Time;
 import org.drftpd.master.vfs.CommitManager;
+import org.drftpd.master.vfs.InodeCache;
+import org.drftpd.master.vfs.VirtualFileSystem;
 import org.drftpd.slave.exceptions.ObjectNotFoundException;
 
 import java.lang.management.*;
@@ -192,10 +195,51 @@ public class ServerStatus extends CommandInterface {
                 CommitManager cm = CommitManager.getCommitManager();
                 env.put("cm.queue", cm.getQueueSize());
                 env.put("cm.state", cm.getThreadState());
+                env.put("cm.written", cm.getWrittenCount());
+                env.put("cm.coalesced", cm.getCoalescedCount());
+                env.put("cm.flush.size", cm.getLastFlushSize());
+                env.put("cm.flush.time", cm.getLastFlushTime());
+                env.put("cm.flush.maxtime", cm.getMaxFlushTime());
 
                 response.addComment(session.jprintf(_bundle, env, "status.cminfo"));
             }
 
+            if (arg.equals("vfs") || isAll) {
+                VirtualFileSystem vfs = VirtualFileSystem.getVirtualFileSystem();
+                InodeCache cache = vfs.getInodeCache();
+                env.put("vfs.cache.size", cache.getSize());
+                env.put("vfs.cache.memory", Bytes.formatBytes(cache.getWeight()));
+                env.put("vfs.cache.budget", Bytes.formatBytes(cache.getBudget()));
+                env.put("vfs.cache.hits", cache.getHits());
+                env.put("vfs.cache.misses", cache.getMisses());
+                env.put("vfs.cache.evictions", cache.getEvictions());
+                env.put("vfs.cache.pinned", cache.getPinnedPaths().size());
+                env.put("vfs.path.hits", vfs.getPathCache().getHits());
+                env.put("vfs.path.misses", vfs.getPathCache().getMisses());
+
+                response.addComment(session.jprintf(_bundle, env, "status.vfsinfo"));
+            }
+
+            if (arg.equals("events") || isAll) {
+                AsyncThreadSafeEventService es = GlobalContext.getEventService();
+                env.put("events.queues", Arrays.toString(es.getQueueSizes()));
+                env.put("events.published", es.getPublishedCount());
+                env.put("events.coalesced", es.getCoalescedCount());
+                env.put("events.overflow", es.getOverflowCount());
+                env.put("events.discarded", es.getDiscardedCount());
+                response.addComment(session.jprintf(_bundle, env, "status.eventinfo"));
+
+                List<AsyncThreadSafeEventService.SubscriberStats> stats = es.getSubscriberStats();
+                for (AsyncThreadSafeEventService.SubscriberStats subscriber : stats.subList(0, Math.min(5, stats.size()))) {
+                    env.put("subscriber.name", subscriber.getName());
+                    env.put("subscriber.calls", subscriber.getCalls());
+                    env.put("subscriber.total", subscriber.getTotalTime());
+                    env.put("subscriber.average", String.format("%.2f", subscriber.getAverageTime()));
+                    env.put("subscriber.max", subscriber.getMaxTime());
+                    response.addComment(session.jprintf(_bundle, env, "status.eventsubscriber"));
+                }
+            }
+
             if (isAll) {
                 // no need to output repeated
                 break;
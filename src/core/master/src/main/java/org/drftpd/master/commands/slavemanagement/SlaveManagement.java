@@ -29,6 +29,7 @@ import org.drftpd.master.event.SlaveEvent;
 import org.drftpd.master.exceptions.NoAvailableSlaveException;
 import org.drftpd.master.exceptions.SlaveUnavailableException;
 import org.drftpd.master.network.Session;
+import org.drftpd.master.slavemanagement.RemergeExecutor;
 import org.drftpd.master.slavemanagement.RemergeMessage;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 import org.drftpd.master.slavemanagement.SlaveManager;
@@ -36,10 +37,12 @@ import org.drftpd.master.slavemanagement.SlaveStatus;
 import org.drftpd.master.slaveselection.filter.Filter;
 import org.drftpd.master.slaveselection.filter.ScoreChart;
 import org.drftpd.master.slaveselection.filter.SlaveSelectionManager;
+import org.drftpd.master.util.Time;
 import org.drftpd.master.vfs.CommitManager;
 import org.drftpd.master.vfs.FileHandle;
 import org.drftpd.master.vfs.VirtualFileSystem;
 import org.drftpd.slave.exceptions.ObjectNotFoundException;
+import org.drftpd.slave.network.AsyncResponseCommandStats;
 import org.drftpd.slave.network.Transfer;
 
 import java.io.IOException;
@@ -232,7 +235,7 @@ public class SlaveManagement extends CommandInterface {
                 Map<String, Object> env = new HashMap<>();
                 env.put("slavename", slaveName);
                 env.put("renamesize", rslave.getRenameQueue().size());
-                env.put("remergesize", rslave.getRemergeQueue().size());
+                env.put("remergesize", rslave.getRemergeExecutor().getQueueSize());
                 env.put("remergecrcsize", rslave.getCRCQueue().size());
                 response.addComment(request.getSession().jprintf(_bundle,
                         "slave.queues", env, request.getUser()));
@@ -281,6 +284,19 @@ public class SlaveManagement extends CommandInterface {
         return response;
     }
 
+    private String getRemergeProgress(CommandRequest request, RemoteSlave rslave) {
+        RemergeExecutor executor = rslave.getRemergeExecutor();
+        Map<String, Object> env = new HashMap<>();
+        env.put("slavename", rslave.getName());
+        env.put("processed", executor.getProcessed());
+        env.put("rate", String.format("%.1f", executor.getRate()));
+        env.put("remergesize", executor.getQueueSize());
+        env.put("remergecrcsize", rslave.getCRCQueue().size());
+        long eta = executor.getEta();
+        env.put("eta", eta < 0 ? "unknown" : Time.formatTime(eta));
+        return request.getSession().jprintf(_bundle, "slave.remerge.progress", env, request.getUser());
+    }
+
     public CommandResponse doSITE_REMERGE(CommandRequest request) {
         if (!request.hasArgument()) {
             return StandardCommandManager.genericResponse("RESPONSE_501_SYNTAX_ERROR");
@@ -295,16 +311,21 @@ public class SlaveManagement extends CommandInterface {
         }
 
         if (!rslave.isAvailable()) {
-            return new CommandResponse(200,
+            CommandResponse response = new CommandResponse(200,
                     "Slave is still merging from initial connect");
+            response.addComment(getRemergeProgress(request, rslave));
+            return response;
         }
 
         if (rslave.isRemerging()) {
-            return new CommandResponse(200,
+            CommandResponse response = new CommandResponse(200,
                     "Slave is still remerging by a previous remerge command");
+            response.addComment(getRemergeProgress(request, rslave));
+            return response;
         }
 
         rslave.setRemerging(true);
+        rslave.beginRemerge(request.getCurrentDirectory().isRoot());
         try {
             rslave.fetchResponse(SlaveManager.getBasicIssuer().issueRemergeToSlave(rslave,
                     request.getCurrentDirectory().getPath(), false, 0L, 0L, false), 0);
@@ -323,11 +344,9 @@ public class SlaveManagement extends CommandInterface {
         rslave.putRemergeQueue(new RemergeMessage(rslave));
 
         // Wait for remerge and crc queues to drain
-        while (!rslave.getRemergeQueue().isEmpty() && !rslave.getCRCQueue().isEmpty()) {
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException ignored) {}
-        }
+        try {
+            rslave.getRemergeExecutor().awaitIdle();
+        } catch (InterruptedException ignored) {}
 
         if (rslave._remergePaused.get()) {
             String message = "Remerge was paused on slave after completion, issuing resume so not to break manual remerges";
@@ -477,11 +496,31 @@ public class SlaveManagement extends CommandInterface {
             return StandardCommandManager.genericResponse("RESPONSE_200_COMMAND_OK");
         } else if (command.equalsIgnoreCase("queues")) {
             env.put("renamesize", rslave.getRenameQueue().size());
-            env.put("remergesize", rslave.getRemergeQueue().size());
+            env.put("remergesize", rslave.getRemergeExecutor().getQueueSize());
             env.put("remergecrcsize", rslave.getCRCQueue().size());
             response.addComment(session.jprintf(_bundle,
                     "slave.queues", env, request.getUser()));
             return response;
+        } else if (command.equalsIgnoreCase("commands")) {
+            try {
+                for (AsyncResponseCommandStats.CommandStats stats : rslave.fetchCommandStats()) {
+                    env.put("class", stats.getName());
+                    env.put("waiting", stats.getWaiting());
+                    env.put("running", stats.getRunning());
+                    env.put("completed", stats.getCompleted());
+                    env.put("rejected", stats.getRejected());
+                    env.put("waitavg", stats.getAverageWaitTime());
+                    env.put("waitmax", stats.getMaxWaitTime());
+                    env.put("runavg", stats.getAverageRunTime());
+                    env.put("runmax", stats.getMaxRunTime());
+                    response.addComment(session.jprintf(_bundle,
+                            "slave.commands", env, request.getUser()));
+                }
+            } catch (SlaveUnavailableException e) {
+                response.addComment(session.jprintf(_bundle,
+                        "slave.offline", env, request.getUser()));
+            }
+            return response;
         }
         throw new ImproperUsageException();
     }
@@ -604,7 +643,7 @@ public class SlaveManagement extends CommandInterface {
             }
 
             int renameSize = rslave.getRenameQueue().size();
-            int remergeSize = rslave.getRemergeQueue().size();
+            int remergeSize = rslave.getRemergeExecutor().getQueueSize();
             int remergeCRCSize = rslave.getCRCQueue().size();
             if (!rslave.isOnline()) {
                 arr.add(rslave.getName() + " is offline");
@@ -614,10 +653,11 @@ public class SlaveManagement extends CommandInterface {
                 Map<String, Object> env = new HashMap<>();
                 env.put("slavename", rslave.getName());
                 env.put("renamesize", rslave.getRenameQueue().size());
-                env.put("remergesize", rslave.getRemergeQueue().size());
+                env.put("remergesize", rslave.getRemergeExecutor().getQueueSize());
                 env.put("remergecrcsize", rslave.getCRCQueue().size());
                 arr.add((request.getSession().jprintf(_bundle,
                         "slave.queues", env, request.getUser())));
+                arr.add(getRemergeProgress(request, rslave));
             } else {
                 arr.add(rslave.getName() + " remergequeue size is 0 but remerge is ongoing");
             }
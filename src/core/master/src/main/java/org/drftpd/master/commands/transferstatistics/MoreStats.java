@@ -26,8 +26,8 @@ import org.drftpd.master.commands.CommandInterface;
 import org.drftpd.master.commands.CommandRequest;
 import org.drftpd.master.commands.CommandResponse;
 import org.drftpd.master.commands.StandardCommandManager;
-import org.drftpd.master.usermanager.Group;
 import org.drftpd.master.usermanager.User;
+import org.drftpd.master.usermanager.util.UserRankings;
 import org.drftpd.master.util.GroupPosition;
 import org.drftpd.master.util.ReplacerUtils;
 
@@ -167,36 +167,13 @@ public class MoreStats extends CommandInterface {
         }
 
         ArrayList<MyGroupPosition> grpList = new ArrayList<>();
-        Collection<User> users = GlobalContext.getGlobalContext().getUserManager().getAllUsers();
-
-        MyGroupPosition stat = null;
-        Group g;
+        UserRankings rankings = GlobalContext.getGlobalContext().getUserManager().getRankings();
 
-        for (User user : users) {
-            g = user.getGroup();
-
-            for (MyGroupPosition stat2 : grpList) {
-                if (stat2.getGroupname().equals(g.getName())) {
-                    stat = stat2;
-                    break;
-                }
-            }
-
-            if (stat == null) {
-                stat = new MyGroupPosition(g.getName(), 0, 0, 0, 0);
-                grpList.add(stat);
-            }
-
-            logger.debug("Type: {}", type);
-            stat.updateBytes(getStats(type, user));
-            stat.updateFiles(getFiles(type, user));
-            stat.updateXfertime(getTime(type, user));
-            stat.updateMembers(1);
-            stat = null;
+        for (String groupname : rankings.getGroups(type, 0, count)) {
+            long[] stats = rankings.getGroupStats(type, groupname);
+            grpList.add(new MyGroupPosition(groupname, stats[0], (int) stats[1], stats[2], (int) stats[3]));
         }
 
-        Collections.sort(grpList);
-
         Map<String, Object> env = new HashMap<>();
 
         //morestats.grpstats=| ${grp,-15} |${grpname,7} |${files,8} | ${megs,9} | ${members,9} |
@@ -34,7 +34,6 @@ import org.drftpd.master.usermanager.NoSuchUserException;
 import org.drftpd.master.usermanager.User;
 import org.drftpd.master.usermanager.UserFileException;
 import org.drftpd.master.usermanager.UserManager;
-import org.drftpd.master.usermanager.util.UserComparator;
 import org.drftpd.master.usermanager.util.UserTransferStats;
 
 import java.io.IOException;
@@ -230,9 +229,8 @@ public class TransferStatistics extends CommandInterface {
 
     private CommandResponse execute(CommandRequest request, String type) {
 
-        Collection<User> users = GlobalContext.getGlobalContext().getUserManager().getAllUsers();
-
         int count = 10; // default # of users to list
+        Permission filter = null;
 
         if (request.hasArgument()) {
             StringTokenizer st = new StringTokenizer(request.getArgument());
@@ -247,19 +245,34 @@ public class TransferStatistics extends CommandInterface {
                 /* TODO Likely this will need revisiting
                  * to move to prehooks
                  */
-                Permission perm = new Permission(Permission.makeUsers(st));
-
-                users.removeIf(user -> !perm.check(user));
+                filter = new Permission(Permission.makeUsers(st));
             }
         }
 
-        Permission perm = new Permission(Permission.makeUsers(new StringTokenizer(GlobalContext.getConfig().getHideInStats())));
+        Permission hidden = new Permission(Permission.makeUsers(new StringTokenizer(GlobalContext.getConfig().getHideInStats())));
 
-        users.removeIf(perm::check);
+        // walks the ranking until enough users are shown, only the users walked over are loaded
+        UserManager userManager = GlobalContext.getGlobalContext().getUserManager();
+        ArrayList<User> users2 = new ArrayList<>();
+        for (int from = 0; users2.size() < count; from += count) {
+            List<String> names = userManager.getRankings().getUsers(type, from, count);
+            if (names.isEmpty()) {
+                break;
+            }
+            for (String name : names) {
+                User user;
+                try {
+                    user = userManager.getUserByNameUnchecked(name);
+                } catch (NoSuchUserException | UserFileException e) {
+                    continue;
+                }
+                if ((filter == null || filter.check(user)) && !hidden.check(user) && users2.size() < count) {
+                    users2.add(user);
+                }
+            }
+        }
 
         CommandResponse response = StandardCommandManager.genericResponse("RESPONSE_200_COMMAND_OK");
-        ArrayList<User> users2 = new ArrayList<>(users);
-        users2.sort(new UserComparator(type));
         Map<String, Object> env = new HashMap<>();
 
         String headerBundleKey = type + ".header";
@@ -17,46 +17,420 @@
  */
 package org.drftpd.master.event;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bushe.swing.event.EventSubscriber;
+import org.bushe.swing.event.EventTopicSubscriber;
 import org.bushe.swing.event.ThreadSafeEventService;
+import org.bushe.swing.event.annotation.AbstractProxySubscriber;
+import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.master.vfs.VirtualFileSystem;
+import org.drftpd.master.vfs.event.VirtualFileSystemEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemLastModifiedEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemRenameEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemSizeEvent;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Dispatches the events published asynchronously on a set of worker threads.<br>
+ * Each worker drains its own queue. Events of the VFS are queued by section, so the events of a section
+ * are dispatched in the order they were published while the sections are dispatched in parallel, any
+ * other event is queued for the first worker, in the order they were published.
+ * A rename between sections waits for the workers of both sections and is dispatched once all the
+ * events published before it in both sections were.<br>
+ * With more than one worker a subscriber of both the VFS events and other events is called from several
+ * threads at once, which is why 'event.threads' defaults to 1.<br>
+ * A size or last modified event of an inode that still waits for its worker is replaced by the new one,
+ * the subscribers read the inode as it is when the event is dispatched anyway.<br>
+ * Queues hold at most 'event.queue.size' events, see master.conf.dist for what happens once full.<br>
+ * The time spent by each subscriber is recorded, see {@link #getSubscriberStats()}.
+ *
  * @author djb61
  * @version $Id$
  */
 public final class AsyncThreadSafeEventService extends ThreadSafeEventService {
+    private static final Logger logger = LogManager.getLogger(AsyncThreadSafeEventService.class);
+
+    private volatile Partition[] _partitions = new Partition[]{new Partition(0)};
+
+    // size and last modified events still waiting for their worker
+    private final ConcurrentHashMap<CoalesceKey, QueuedAsyncEvent> _pending = new ConcurrentHashMap<>();
+
+    // markers of the events dispatched by several workers are queued under this lock
+    private final Object _jointLock = new Object();
 
-    private final LinkedBlockingQueue<QueuedAsyncEvent> _eventQueue = new LinkedBlockingQueue<>();
+    private volatile int _queueSize = Integer.MAX_VALUE;
+    private volatile boolean _discard;
+    private volatile long _blockTimeout = 1000L;
+
+    private final LongAdder _published = new LongAdder();
+    private final LongAdder _coalesced = new LongAdder();
+    private final LongAdder _discarded = new LongAdder();
+    private final LongAdder _overflowed = new LongAdder();
+
+    private final ConcurrentHashMap<Object, SubscriberStats> _subscriberStats = new ConcurrentHashMap<>();
 
     public AsyncThreadSafeEventService() {
         super();
-        new Thread(new EventHandler()).start();
+        _partitions[0].start();
+    }
+
+    /**
+     * Reads the settings of master.conf.dist, the number of workers is only changed on the first call,
+     * which is expected before the VFS publishes anything.
+     */
+    public void configure(Properties cfg) {
+        try {
+            _queueSize = Math.max(1, Integer.parseInt(PropertyHelper.getProperty(cfg, "event.queue.size", "100000")));
+        } catch (NumberFormatException e) {
+            _queueSize = 100000;
+        }
+        _discard = PropertyHelper.getProperty(cfg, "event.queue.overflow", "block").trim().equalsIgnoreCase("discard");
+        try {
+            _blockTimeout = Math.max(0L, Long.parseLong(PropertyHelper.getProperty(cfg, "event.queue.timeout", "1000")));
+        } catch (NumberFormatException e) {
+            _blockTimeout = 1000L;
+        }
+        int threads;
+        try {
+            threads = Math.max(1, Integer.parseInt(PropertyHelper.getProperty(cfg, "event.threads", "1")));
+        } catch (NumberFormatException e) {
+            threads = 1;
+        }
+        synchronized (_jointLock) {
+            Partition[] partitions = _partitions;
+            if (partitions.length != 1 || threads == 1) {
+                return;
+            }
+            Partition[] added = new Partition[threads];
+            added[0] = partitions[0];
+            for (int i = 1; i < threads; i++) {
+                added[i] = new Partition(i);
+                added[i].start();
+            }
+            _partitions = added;
+        }
+        logger.info("Dispatching asynchronous events on {} threads", threads);
     }
 
     public void publishAsync(Object event) {
-        _eventQueue.add(new QueuedAsyncEvent(event));
+        if (event instanceof VirtualFileSystemEvent) {
+            publishAsync((VirtualFileSystemEvent) event);
+        } else {
+            queue(_partitions[0], new QueuedAsyncEvent(event));
+        }
     }
 
     public void publishAsync(Type genericType, Object event) {
-        _eventQueue.add(new QueuedAsyncEvent(genericType, event));
+        queue(_partitions[0], new QueuedAsyncEvent(genericType, event));
     }
 
     public void publishAsync(String topicName, Object eventObj) {
-        _eventQueue.add(new QueuedAsyncEvent(topicName, eventObj));
+        queue(_partitions[0], new QueuedAsyncEvent(topicName, eventObj));
+    }
+
+    private void publishAsync(VirtualFileSystemEvent event) {
+        Partition[] partitions = _partitions;
+        Partition partition = getPartition(partitions, event.getImmutableInode().getPath());
+        if (event instanceof VirtualFileSystemRenameEvent) {
+            Partition source = getPartition(partitions, ((VirtualFileSystemRenameEvent) event).getSource().getPath());
+            if (source != partition) {
+                queueJoint(new QueuedAsyncEvent(event), source, partition);
+                return;
+            }
+        }
+        if (event instanceof VirtualFileSystemSizeEvent || event instanceof VirtualFileSystemLastModifiedEvent) {
+            CoalesceKey key = new CoalesceKey(event.getClass(), event.getImmutableInode().getPath());
+            QueuedAsyncEvent pending = _pending.get(key);
+            if (pending != null && pending.replace(event)) {
+                _published.increment();
+                _coalesced.increment();
+                return;
+            }
+            QueuedAsyncEvent queued = new QueuedAsyncEvent(event);
+            queued._key = key;
+            _pending.put(key, queued);
+            if (!queue(partition, queued)) {
+                _pending.remove(key, queued);
+            }
+            return;
+        }
+        queue(partition, new QueuedAsyncEvent(event));
+    }
+
+    /**
+     * The first worker is left to the other events when there are several.
+     */
+    private static Partition getPartition(Partition[] partitions, String path) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+        int end = path.indexOf(VirtualFileSystem.separator, 1);
+        String section = end == -1 ? path : path.substring(0, end);
+        return partitions[1 + Math.floorMod(section.hashCode(), partitions.length - 1)];
+    }
+
+    /**
+     * @return false if the event was discarded.
+     */
+    private boolean queue(Partition partition, QueuedAsyncEvent queued) {
+        _published.increment();
+        if (partition._queue.size() >= _queueSize && !waitForRoom(partition)) {
+            if (_discard) {
+                _discarded.increment();
+                return false;
+            }
+            // queued anyway, the publisher may hold locks the subscribers need
+            _overflowed.increment();
+        }
+        partition._queue.add(queued);
+        return true;
     }
 
+    /**
+     * @return true if there is room in the queue of the partition.
+     */
+    private boolean waitForRoom(Partition partition) {
+        if (_discard || Thread.currentThread() instanceof Partition) {
+            // a worker waiting for a worker may wait for itself
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + _blockTimeout;
+        partition._waiting.incrementAndGet();
+        try {
+            synchronized (partition._room) {
+                while (partition._queue.size() >= _queueSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    partition._room.wait(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            partition._waiting.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Queues a marker in both partitions, the event is dispatched once both workers reached it.
+     */
+    private void queueJoint(QueuedAsyncEvent queued, Partition first, Partition second) {
+        _published.increment();
+        queued._joint = new Joint(2);
+        synchronized (_jointLock) {
+            // both queues get their markers in the same order, workers never wait for each other in a loop
+            first._queue.add(queued);
+            second._queue.add(queued);
+        }
+    }
+
+    private void dispatch(QueuedAsyncEvent queued) {
+        if (queued._joint != null && !queued._joint.arrive()) {
+            // dispatched by the last worker to arrive
+            return;
+        }
+        try {
+            Object event = queued.getEvent();
+            if (queued.getTopic() != null) {
+                publish(queued.getTopic(), event);
+            } else if (queued.getGenericType() != null) {
+                publish(queued.getGenericType(), event);
+            } else {
+                publish(event);
+            }
+        } finally {
+            if (queued._joint != null) {
+                queued._joint.release();
+            }
+        }
+    }
+
+    /**
+     * Times every subscriber the event is handed to.
+     */
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected void publish(Object event, String topic, Object eventObj, List subscribers, List vetoSubscribers,
+                           StackTraceElement[] callingStack) {
+        if (subscribers != null && !subscribers.isEmpty()) {
+            List timed = new ArrayList(subscribers.size());
+            for (Object subscriber : subscribers) {
+                timed.add(new TimedSubscriber(subscriber, getSubscriberStats(subscriber)));
+            }
+            subscribers = timed;
+        }
+        super.publish(event, topic, eventObj, subscribers, vetoSubscribers, callingStack);
+    }
+
+    private SubscriberStats getSubscriberStats(Object subscriber) {
+        if (subscriber instanceof AbstractProxySubscriber) {
+            AbstractProxySubscriber proxy = (AbstractProxySubscriber) subscriber;
+            Object proxied = proxy.getProxiedSubscriber();
+            if (proxied != null) {
+                return _subscriberStats.computeIfAbsent(proxy.getSubscriptionMethod(), method -> new SubscriberStats(
+                        proxied.getClass().getSimpleName() + "." + proxy.getSubscriptionMethod().getName()));
+            }
+        }
+        return _subscriberStats.computeIfAbsent(subscriber.getClass(),
+                type -> new SubscriberStats(subscriber.getClass().getSimpleName()));
+    }
+
+    /**
+     * @return the number of events waiting in all the queues.
+     */
     public int getQueueSize() {
-        return _eventQueue.size();
+        int size = 0;
+        for (Partition partition : _partitions) {
+            size += partition._queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of events waiting for each worker, the first one dispatches the events outside the VFS.
+     */
+    public int[] getQueueSizes() {
+        Partition[] partitions = _partitions;
+        int[] sizes = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            sizes[i] = partitions[i]._queue.size();
+        }
+        return sizes;
+    }
+
+    public long getPublishedCount() {
+        return _published.sum();
+    }
+
+    /**
+     * @return the number of events replaced by a newer one while waiting.
+     */
+    public long getCoalescedCount() {
+        return _coalesced.sum();
+    }
+
+    /**
+     * @return the number of events not queued because the queue was full.
+     */
+    public long getDiscardedCount() {
+        return _discarded.sum();
+    }
+
+    /**
+     * @return the number of events queued in a full queue after waiting 'event.queue.timeout'.
+     */
+    public long getOverflowCount() {
+        return _overflowed.sum();
+    }
+
+    /**
+     * @return the time spent by each subscriber, slowest in total first.
+     */
+    public List<SubscriberStats> getSubscriberStats() {
+        List<SubscriberStats> stats = new ArrayList<>(_subscriberStats.values());
+        stats.sort(Comparator.comparingLong(SubscriberStats::getTotalTime).reversed());
+        return stats;
+    }
+
+    /**
+     * How often a subscriber was handed an event and how long it took, times in milliseconds.
+     */
+    public static class SubscriberStats {
+        private final String _name;
+        private final LongAdder _calls = new LongAdder();
+        private final LongAdder _nanos = new LongAdder();
+        private final LongAccumulator _maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private SubscriberStats(String name) {
+            _name = name;
+        }
+
+        private void record(long nanos) {
+            _calls.increment();
+            _nanos.add(nanos);
+            _maxNanos.accumulate(nanos);
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public long getCalls() {
+            return _calls.sum();
+        }
+
+        public long getTotalTime() {
+            return _nanos.sum() / 1000000L;
+        }
+
+        public double getAverageTime() {
+            long calls = _calls.sum();
+            return calls == 0 ? 0 : _nanos.sum() / 1000000.0 / calls;
+        }
+
+        public long getMaxTime() {
+            return _maxNanos.get() / 1000000L;
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static class TimedSubscriber implements EventSubscriber, EventTopicSubscriber {
+        private final Object _subscriber;
+        private final SubscriberStats _stats;
+
+        private TimedSubscriber(Object subscriber, SubscriberStats stats) {
+            _subscriber = subscriber;
+            _stats = stats;
+        }
+
+        public void onEvent(Object event) {
+            long start = System.nanoTime();
+            try {
+                ((EventSubscriber) _subscriber).onEvent(event);
+            } finally {
+                _stats.record(System.nanoTime() - start);
+            }
+        }
+
+        public void onEvent(String topic, Object data) {
+            long start = System.nanoTime();
+            try {
+                ((EventTopicSubscriber) _subscriber).onEvent(topic, data);
+            } finally {
+                _stats.record(System.nanoTime() - start);
+            }
+        }
+
+        public String toString() {
+            return _subscriber.toString();
+        }
     }
 
     private static class QueuedAsyncEvent {
 
-        private final Object _event;
+        private Object _event;
         private String _topic;
         private Type _genericType;
 
+        private CoalesceKey _key;
+        private boolean _taken;
+        private Joint _joint;
+
         private QueuedAsyncEvent(Object event) {
             _event = event;
         }
@@ -71,7 +445,19 @@ public final class AsyncThreadSafeEventService extends ThreadSafeEventService {
             _event = event;
         }
 
-        private Object getEvent() {
+        /**
+         * @return false if the worker already took the event.
+         */
+        private synchronized boolean replace(Object event) {
+            if (_taken) {
+                return false;
+            }
+            _event = event;
+            return true;
+        }
+
+        private synchronized Object getEvent() {
+            _taken = true;
             return _event;
         }
 
@@ -84,23 +470,89 @@ public final class AsyncThreadSafeEventService extends ThreadSafeEventService {
         }
     }
 
-    private class EventHandler implements Runnable {
+    private static class CoalesceKey {
+        private final Class<?> _type;
+        private final String _path;
+
+        private CoalesceKey(Class<?> type, String path) {
+            _type = type;
+            _path = path;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof CoalesceKey)) {
+                return false;
+            }
+            CoalesceKey key = (CoalesceKey) o;
+            return _type == key._type && _path.equals(key._path);
+        }
+
+        public int hashCode() {
+            return 31 * _type.hashCode() + _path.hashCode();
+        }
+    }
+
+    /**
+     * Makes the workers sharing an event wait for each other.
+     */
+    private static class Joint {
+        private int _waiting;
+        private boolean _released;
+
+        private Joint(int workers) {
+            _waiting = workers;
+        }
+
+        /**
+         * @return true for the last worker to arrive, the others return once it released them.
+         */
+        private synchronized boolean arrive() {
+            if (--_waiting == 0) {
+                return true;
+            }
+            while (!_released) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the other workers are waiting for this event too
+                }
+            }
+            return false;
+        }
+
+        private synchronized void release() {
+            _released = true;
+            notifyAll();
+        }
+    }
+
+    private class Partition extends Thread {
+        private final LinkedBlockingQueue<QueuedAsyncEvent> _queue = new LinkedBlockingQueue<>();
+        private final AtomicInteger _waiting = new AtomicInteger();
+        private final Object _room = new Object();
+
+        private Partition(int index) {
+            setName(index == 0 ? "AsyncEventHandler" : "AsyncEventHandler-" + index);
+        }
 
         public void run() {
-            Thread.currentThread().setName("AsyncEventHandler");
             //noinspection InfiniteLoopStatement
             while (true) {
                 try {
-                    QueuedAsyncEvent queuedEvent = _eventQueue.take();
-                    if (queuedEvent.getTopic() != null) {
-                        publish(queuedEvent.getTopic(), queuedEvent.getEvent());
-                    } else if (queuedEvent.getGenericType() != null) {
-                        publish(queuedEvent.getGenericType(), queuedEvent.getEvent());
-                    } else {
-                        publish(queuedEvent.getEvent());
+                    QueuedAsyncEvent queued = _queue.take();
+                    if (_waiting.get() > 0) {
+                        synchronized (_room) {
+                            _room.notifyAll();
+                        }
+                    }
+                    if (queued._key != null) {
+                        _pending.remove(queued._key, queued);
                     }
+                    dispatch(queued);
                 } catch (InterruptedException e) {
                     // Do nothing just loop and try again
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected error while dispatching an event", e);
                 }
             }
         }
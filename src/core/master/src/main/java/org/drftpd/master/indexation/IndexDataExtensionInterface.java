@@ -27,9 +27,10 @@ import org.drftpd.master.vfs.event.ImmutableInodeHandle;
 public interface IndexDataExtensionInterface {
 
     /**
-     * This method is called once when the extension is loaded. All field
-     * instances the extension intends to use for storing data should be
-     * added to the document at this time.
+     * This method is called once for every document the index engine fills,
+     * each indexing thread has a document of its own. New field instances the
+     * extension intends to use for storing data should be added to the
+     * document at this time, field instances cannot be shared between documents.
      *
      * @param doc The document to add fields to.
      */
@@ -38,8 +39,8 @@ public interface IndexDataExtensionInterface {
     /**
      * This method is called whenever an inode is being added to the index.
      * The fields added to the document in the initializeFields call will be
-     * present in this document and should have their values set appropriately.
-     * Any fields not relevant to this particular inode should be cleared.
+     * present in this document, look them up by name and set their values
+     * appropriately. Any fields not relevant to this particular inode should be cleared.
      *
      * @param doc   The document to populate fields in.
      * @param inode The inode currently being indexed.
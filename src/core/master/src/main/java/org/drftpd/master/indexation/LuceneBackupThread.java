@@ -75,7 +75,7 @@ public class LuceneBackupThread extends Thread {
                 }
             }
 
-            if (_doBackups) {
+            if (_doBackups && !_engine.isRebuilding()) {
                 // locking the writer object so that noone can use it.
                 // this might be useful.
                 synchronized (_engine.getWriter()) {
@@ -23,11 +23,13 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.regex.RegexQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.NativeFSLockFactory;
@@ -51,13 +53,17 @@ import java.io.IOException;
 import java.security.SecureRandom;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implementation of an Index engine based on <a href="http://lucene.apache.org">Apache Lucene</a>
  * <p>
  * This engine reuses {@link Field}s and {@link Document} instances as suggested by
  * <a href="http://wiki.apache.org/lucene-java/ImproveIndexingSpeed">this article</a>
- * in order to have better Indexing performance.
+ * in order to have better Indexing performance, the documents are only filled by the
+ * {@link LuceneIndexingThread} which writes the changes of the VFS in batches.<br>
+ * Queries share a searcher kept up to date by that same thread.<br>
+ * The index is rebuilt by {@link LuceneRebuild} into a staging index replacing this one when done.
  *
  * @author fr0w
  * @version $Id$
@@ -67,27 +73,6 @@ public class LuceneEngine implements IndexEngineInterface {
     protected static final String INDEX_DIR = "userdata/index";
     private static final Logger logger = LogManager.getLogger(LuceneEngine.class);
     private static final String EXCEPTION_OCCURED_WHILE_SEARCHING = "An exception occured while indexing, check stack trace";
-    private static final Document INDEX_DOCUMENT = new Document();
-
-    private static final Field FIELD_NAME = new Field("name", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_FULL_NAME = new Field("fullName", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_FULL_NAME_REVERSE = new Field("fullNameReverse", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_PARENT_PATH = new Field("parentPath", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_FULL_PATH = new Field("fullPath", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_OWNER = new Field("owner", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_GROUP = new Field("group", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_TYPE = new Field("type", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
-    private static final Field FIELD_SLAVES = new Field("slaves", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final NumericField FIELD_SLAVES_NBR = new NumericField("nbrOfSlaves", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_LASTMODIFIED = new NumericField("lastModified", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_SIZE = new NumericField("size", Field.Store.YES, Boolean.TRUE);
-
-    private static final Field[] FIELDS = new Field[]{
-            FIELD_NAME, FIELD_FULL_NAME, FIELD_FULL_NAME_REVERSE, FIELD_PARENT_PATH, FIELD_FULL_PATH, FIELD_OWNER, FIELD_GROUP, FIELD_TYPE, FIELD_SLAVES
-    };
-    private static final NumericField[] NUMERICFIELDS = new NumericField[]{
-            FIELD_SLAVES_NBR, FIELD_LASTMODIFIED, FIELD_SIZE
-    };
     private static final TermQuery QUERY_DIRECTORY = new TermQuery(new Term("type", "d"));
     private static final TermQuery QUERY_FILE = new TermQuery(new Term("type", "f"));
     private static final Term TERM_NAME = new Term("name", "");
@@ -101,18 +86,10 @@ public class LuceneEngine implements IndexEngineInterface {
     private static final SimpleSearchFieldSelector SIMPLE_FIELD_SELECTOR = new SimpleSearchFieldSelector();
     private static final AdvancedSearchFieldSelector ADVANCED_FIELD_SELECTOR = new AdvancedSearchFieldSelector();
 
-    static {
-        for (Field field : FIELDS) {
-            INDEX_DOCUMENT.add(field);
-        }
-        for (NumericField field : NUMERICFIELDS) {
-            INDEX_DOCUMENT.add(field);
-        }
-    }
-
     private Directory _storage;
     private IndexWriter _iWriter;
-    private final Sort SORT = new Sort();
+    private SearcherManager _searcherManager;
+    private final ReentrantLock _streamsLock = new ReentrantLock();
 
     private int _maxHitsNumber;
     private int _maxDocsBuffer;
@@ -122,13 +99,18 @@ public class LuceneEngine implements IndexEngineInterface {
 
     private LuceneMaintenanceThread _maintenanceThread;
     private LuceneBackupThread _backupThread;
+    private LuceneIndexingThread _indexingThread;
 
     private IndexingVirtualFileSystemListener _listener;
-    private boolean _rebuilding;
+    private volatile LuceneRebuild _rebuild;
+    private int _rebuildThreads;
 
     private final List<IndexDataExtensionInterface> _dataExtensions = new ArrayList<>();
     private final List<QueryTermExtensionInterface> _queryExtensions = new ArrayList<>();
 
+    // every thread fills a document of its own, the indexing thread and the rebuild workers run side by side
+    private final ThreadLocal<IndexDocument> _documents = ThreadLocal.withInitial(() -> new IndexDocument(_dataExtensions));
+
     /**
      * Creates all the needed resources for the Index to work.
      * <ul>
@@ -149,7 +131,6 @@ public class LuceneEngine implements IndexEngineInterface {
         try {
             for (Class<? extends IndexDataExtensionInterface> indexExtension : indexExtensions) {
                 IndexDataExtensionInterface dataExtensionInterface = indexExtension.getConstructor().newInstance();
-                dataExtensionInterface.initializeFields(INDEX_DOCUMENT);
                 _dataExtensions.add(dataExtensionInterface);
             }
         } catch (Exception e) {
@@ -174,9 +155,15 @@ public class LuceneEngine implements IndexEngineInterface {
         createThreads();
         reload();
 
+        try {
+            LuceneRebuild.recoverSwap();
+        } catch (IOException e) {
+            throw new IndexException("Unable to replace the index by the rebuilt one", e);
+        }
         openStreams();
 
         Runtime.getRuntime().addShutdownHook(new Thread(new IndexShutdownHookRunnable(), "IndexSaverThread"));
+        _indexingThread.start();
         _maintenanceThread.start();
         if (_backupThread._maxNumberBackup > 0) {
             _backupThread.start();
@@ -184,11 +171,25 @@ public class LuceneEngine implements IndexEngineInterface {
 
         _listener = new IndexingVirtualFileSystemListener();
         _listener.init();
+
+        if (LuceneRebuild.isPending()) {
+            logger.info("Resuming the interrupted rebuild of the index");
+            Thread resume = new Thread(() -> {
+                try {
+                    rebuild(true);
+                } catch (IndexException e) {
+                    logger.error("Exception whilst resuming the rebuild of the lucene index", e);
+                }
+            }, "IndexRebuildThread");
+            resume.setDaemon(true);
+            resume.start();
+        }
     }
 
     private void createThreads() {
         _maintenanceThread = new LuceneMaintenanceThread();
         _backupThread = new LuceneBackupThread();
+        _indexingThread = new LuceneIndexingThread(this);
     }
 
     /**
@@ -196,7 +197,7 @@ public class LuceneEngine implements IndexEngineInterface {
      *
      * @throws IndexException
      */
-    private void openStreams() throws IndexException {
+    protected void openStreams() throws IndexException {
         try {
             if (_nativeLocking) {
                 _storage = FSDirectory.open(new File(INDEX_DIR), new NativeFSLockFactory(INDEX_DIR));
@@ -209,6 +210,7 @@ public class LuceneEngine implements IndexEngineInterface {
             conf.setRAMBufferSizeMB(_maxRAMBufferSize);
 
             _iWriter = new IndexWriter(_storage, conf);
+            _searcherManager = new SearcherManager(_iWriter, true, new SearcherFactory());
         } catch (IOException e) {
             closeAll();
 
@@ -238,13 +240,21 @@ public class LuceneEngine implements IndexEngineInterface {
         _backupThread.setDoBackups(doBackups);
         _backupThread.setBackupInterval(interval);
         _backupThread.setMaximumNumberBackup(maxNumber);
+
+        _indexingThread.setQueueSize(Integer.parseInt(cfg.getProperty("indexing_queue_size", "10000")));
+        _indexingThread.setBatchSize(Integer.parseInt(cfg.getProperty("indexing_batch_size", "500")));
+        _indexingThread.setRefreshInterval(Long.parseLong(cfg.getProperty("refresh_interval", "1000")));
+        _rebuildThreads = Integer.parseInt(cfg.getProperty("rebuild_threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
     }
 
     /**
      * Closes all streams ignoring exceptions.
      */
-    private void closeAll() {
+    protected void closeAll() {
         try {
+            if (_searcherManager != null)
+                _searcherManager.close();
             if (_iWriter != null)
                 _iWriter.close();
             if (_storage != null)
@@ -253,10 +263,68 @@ public class LuceneEngine implements IndexEngineInterface {
             logger.error(e, e);
         }
 
+        _searcherManager = null;
         _iWriter = null;
         _storage = null;
     }
 
+    protected void lockStreams() {
+        _streamsLock.lock();
+    }
+
+    protected void unlockStreams() {
+        _streamsLock.unlock();
+    }
+
+    /**
+     * Makes the changes written so far visible to the queries.
+     */
+    protected void refreshSearcher() {
+        SearcherManager searcherManager = _searcherManager;
+        if (searcherManager == null) {
+            return;
+        }
+        // maybeRefresh() gives up if another thread is refreshing, callers expect to see their changes
+        synchronized (searcherManager) {
+            try {
+                searcherManager.maybeRefresh();
+            } catch (AlreadyClosedException e) {
+                // the index is being rebuilt, the new searcher is already up to date
+            } catch (IOException e) {
+                logger.error("IOException refreshing the IndexSearcher", e);
+            }
+        }
+    }
+
+    /**
+     * Acquires the shared searcher, waiting for the index to be reopened if a rebuild is replacing it.
+     */
+    private IndexSearcher acquireSearcher() {
+        SearcherManager searcherManager = _searcherManager;
+        if (searcherManager != null) {
+            try {
+                return searcherManager.acquire();
+            } catch (AlreadyClosedException e) {
+                // closed by a rebuild, the new one is opened before the lock is released
+            }
+        }
+        lockStreams();
+        try {
+            return _searcherManager.acquire();
+        } finally {
+            unlockStreams();
+        }
+    }
+
+    private void releaseSearcher(IndexSearcher iSearcher) {
+        try {
+            // what SearcherManager.release() does, the searcher may belong to an index replaced since
+            iSearcher.getIndexReader().decRef();
+        } catch (IOException e) {
+            logger.error("IOException releasing IndexSearcher", e);
+        }
+    }
+
     /**
      * Shortcut to create Lucene Document from the Inode's data. The fields that
      * are stored in the index are:
@@ -279,44 +347,45 @@ public class LuceneEngine implements IndexEngineInterface {
      */
     private Document makeDocumentFromInode(ImmutableInodeHandle inode) throws FileNotFoundException {
         InodeType inodeType = inode.isDirectory() ? InodeType.DIRECTORY : InodeType.FILE;
+        IndexDocument doc = _documents.get();
 
-        FIELD_NAME.setValue(inode.getName());
-        FIELD_FULL_NAME.setValue(inode.getName());
-        FIELD_FULL_NAME_REVERSE.setValue(new StringBuilder(inode.getName()).reverse().toString());
+        doc._name.setValue(inode.getName());
+        doc._fullName.setValue(inode.getName());
+        doc._fullNameReverse.setValue(new StringBuilder(inode.getName()).reverse().toString());
         if (inode.getPath().equals(VirtualFileSystem.separator)) {
-            FIELD_PARENT_PATH.setValue("");
+            doc._parentPath.setValue("");
         } else {
-            FIELD_PARENT_PATH.setValue(inode.getParent().getPath() + VirtualFileSystem.separator);
+            doc._parentPath.setValue(inode.getParent().getPath() + VirtualFileSystem.separator);
         }
         if (inode.isDirectory())
-            FIELD_FULL_PATH.setValue(inode.getPath() + VirtualFileSystem.separator);
+            doc._fullPath.setValue(inode.getPath() + VirtualFileSystem.separator);
         else
-            FIELD_FULL_PATH.setValue(inode.getPath());
-        FIELD_OWNER.setValue(inode.getUsername());
-        FIELD_GROUP.setValue(inode.getGroup());
-        FIELD_TYPE.setValue(inodeType.toString().toLowerCase().substring(0, 1));
+            doc._fullPath.setValue(inode.getPath());
+        doc._owner.setValue(inode.getUsername());
+        doc._group.setValue(inode.getGroup());
+        doc._type.setValue(inodeType.toString().toLowerCase().substring(0, 1));
 
         if (inodeType == InodeType.FILE) {
             StringBuilder sb = new StringBuilder();
             for (String slaveName : inode.getSlaveNames()) {
                 sb.append(slaveName).append(",");
             }
-            FIELD_SLAVES_NBR.setIntValue(inode.getSlaveNames().size());
-            FIELD_SLAVES.setValue(sb.toString());
+            doc._slavesNbr.setIntValue(inode.getSlaveNames().size());
+            doc._slaves.setValue(sb.toString());
         } else {
-            FIELD_SLAVES_NBR.setIntValue(0);
-            FIELD_SLAVES.setValue("");
+            doc._slavesNbr.setIntValue(0);
+            doc._slaves.setValue("");
         }
 
-        FIELD_LASTMODIFIED.setLongValue(inode.lastModified());
-        FIELD_SIZE.setLongValue(inode.getSize());
+        doc._lastModified.setLongValue(inode.lastModified());
+        doc._size.setLongValue(inode.getSize());
 
         // Add data from any extensions
         for (IndexDataExtensionInterface dataExtension : _dataExtensions) {
-            dataExtension.addData(INDEX_DOCUMENT, inode);
+            dataExtension.addData(doc._document, inode);
         }
 
-        return INDEX_DOCUMENT;
+        return doc._document;
     }
 
     private Term makeFullPathTermFromInode(ImmutableInodeHandle inode) {
@@ -360,17 +429,17 @@ public class LuceneEngine implements IndexEngineInterface {
         return new TermQuery(TERM_GROUP.createTerm(group));
     }
 
-    private void setSortField(boolean order) {
-        SORT.setSort(new SortField("fullPath", SortField.STRING, order));
+    private Sort makeSort(boolean order) {
+        return new Sort(new SortField("fullPath", SortField.STRING, order));
     }
 
-    private void setSortField(String field, int type, boolean order) {
-        SORT.setSort(new SortField(field, type, order),
+    private Sort makeSort(String field, int type, boolean order) {
+        return new Sort(new SortField(field, type, order),
                 new SortField("fullPath", SortField.STRING, order));
     }
 
-    private void setSortFieldRandom() {
-        SORT.setSort(new SortField(
+    private Sort makeSortRandom() {
+        return new Sort(new SortField(
                 "",
                 new FieldComparatorSource() {
                     @Override
@@ -383,11 +452,28 @@ public class LuceneEngine implements IndexEngineInterface {
 
     /* {@inheritDoc} */
     public void addInode(ImmutableInodeHandle inode) throws IndexException {
+        _indexingThread.add(inode);
+    }
+
+    /* {@inheritDoc} */
+    public void deleteInode(ImmutableInodeHandle inode) throws IndexException {
+        _indexingThread.delete(inode);
+    }
+
+    /* {@inheritDoc} */
+    public void updateInode(ImmutableInodeHandle inode) throws IndexException {
+        _indexingThread.update(inode);
+    }
+
+    /* {@inheritDoc} */
+    public void renameInode(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) throws IndexException {
+        _indexingThread.rename(fromInode, toInode);
+    }
+
+    protected void writeInode(ImmutableInodeHandle inode) throws IndexException {
         try {
-            synchronized (INDEX_DOCUMENT) {
-                Document doc = makeDocumentFromInode(inode);
-                _iWriter.addDocument(doc);
-            }
+            Document doc = makeDocumentFromInode(inode);
+            _iWriter.addDocument(doc);
         } catch (FileNotFoundException e) {
             logger.error("Unable to add {} to the index", inode.getPath(), e);
         } catch (RuntimeException | IOException e) {
@@ -395,8 +481,33 @@ public class LuceneEngine implements IndexEngineInterface {
         }
     }
 
-    /* {@inheritDoc} */
-    public void deleteInode(ImmutableInodeHandle inode) throws IndexException {
+    /**
+     * Writes the document of an inode to another index, used by {@link LuceneRebuild}.
+     */
+    protected void addDocument(IndexWriter writer, ImmutableInodeHandle inode) throws IOException {
+        writer.addDocument(makeDocumentFromInode(inode));
+    }
+
+    /**
+     * Records a change for the rebuild in progress, if any.
+     *
+     * @param subtree true if everything below the inode changed as well.
+     */
+    protected void journal(ImmutableInodeHandle inode, boolean subtree) {
+        LuceneRebuild rebuild = _rebuild;
+        if (rebuild != null) {
+            rebuild.journal(inode.getPath(), subtree);
+        }
+    }
+
+    protected void flushJournal() {
+        LuceneRebuild rebuild = _rebuild;
+        if (rebuild != null) {
+            rebuild.flushJournal();
+        }
+    }
+
+    protected void eraseInode(ImmutableInodeHandle inode) throws IndexException {
         try {
             _iWriter.deleteDocuments(makeFullPathTermFromInode(inode));
         } catch (RuntimeException | IOException e) {
@@ -404,12 +515,9 @@ public class LuceneEngine implements IndexEngineInterface {
         }
     }
 
-    /* {@inheritDoc} */
-    public void updateInode(ImmutableInodeHandle inode) throws IndexException {
+    protected void rewriteInode(ImmutableInodeHandle inode) throws IndexException {
         try {
-            synchronized (INDEX_DOCUMENT) {
-                _iWriter.updateDocument(makeFullPathTermFromInode(inode), makeDocumentFromInode(inode));
-            }
+            _iWriter.updateDocument(makeFullPathTermFromInode(inode), makeDocumentFromInode(inode));
         } catch (FileNotFoundException e) {
             logger.error("The inode was here but now it isn't!", e);
         } catch (RuntimeException | IOException e) {
@@ -417,22 +525,19 @@ public class LuceneEngine implements IndexEngineInterface {
         }
     }
 
-    /* {@inheritDoc} */
-    public void renameInode(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) throws IndexException {
+    protected void moveInode(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) throws IndexException {
         IndexSearcher iSearcher = null;
-        IndexReader iReader = null;
         try {
             Term fromInodeTerm = makeFullPathTermFromInode(fromInode);
-            synchronized (INDEX_DOCUMENT) {
-                _iWriter.updateDocument(fromInodeTerm, makeDocumentFromInode(toInode));
-            }
+            _iWriter.updateDocument(fromInodeTerm, makeDocumentFromInode(toInode));
             if (toInode.isDirectory()) {
                 PrefixQuery prefixQuery = new PrefixQuery(fromInodeTerm);
 
-                iReader = IndexReader.open(_iWriter, true);
-                iSearcher = new IndexSearcher(iReader);
+                // the children may have been written since the last refresh
+                refreshSearcher();
+                iSearcher = acquireSearcher();
 
-                final BitSet bits = new BitSet(iReader.maxDoc());
+                final BitSet bits = new BitSet(iSearcher.maxDoc());
                 iSearcher.search(prefixQuery, new Collector() {
                     private int docBase;
 
@@ -457,22 +562,16 @@ public class LuceneEngine implements IndexEngineInterface {
                 for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
                     Document doc = iSearcher.doc(i, SIMPLE_FIELD_SELECTOR);
 
-                    String oldPath = doc.getFieldable(FIELD_FULL_PATH.name()).stringValue();
+                    String oldPath = doc.getFieldable("fullPath").stringValue();
                     String newPath = toInode.getPath() + oldPath.substring(fromInode.getPath().length());
-                    doc.removeField(FIELD_FULL_PATH.name());
-                    doc.removeField(FIELD_PARENT_PATH.name());
-
-                    synchronized (INDEX_DOCUMENT) {
-                        FIELD_FULL_PATH.setValue(newPath);
-                        if (newPath.equals(VirtualFileSystem.separator)) {
-                            FIELD_PARENT_PATH.setValue("");
-                        } else {
-                            FIELD_PARENT_PATH.setValue(VirtualFileSystem.stripLast(newPath) + VirtualFileSystem.separator);
-                        }
-                        doc.add(FIELD_FULL_PATH);
-                        doc.add(FIELD_PARENT_PATH);
-                        _iWriter.updateDocument(makeFullPathTermFromString(oldPath), doc);
-                    }
+                    doc.removeField("fullPath");
+                    doc.removeField("parentPath");
+
+                    String parentPath = newPath.equals(VirtualFileSystem.separator) ? ""
+                            : VirtualFileSystem.stripLast(newPath) + VirtualFileSystem.separator;
+                    doc.add(new Field("fullPath", newPath, Field.Store.YES, Field.Index.NOT_ANALYZED));
+                    doc.add(new Field("parentPath", parentPath, Field.Store.YES, Field.Index.NOT_ANALYZED));
+                    _iWriter.updateDocument(makeFullPathTermFromString(oldPath), doc);
                 }
             }
         } catch (RuntimeException | IOException e) {
@@ -480,18 +579,7 @@ public class LuceneEngine implements IndexEngineInterface {
                     toInode.getPath() + " in the index", e);
         } finally {
             if (iSearcher != null) {
-                try {
-                    iSearcher.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexSearcher", e);
-                }
-            }
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
+                releaseSearcher(iSearcher);
             }
         }
     }
@@ -508,63 +596,49 @@ public class LuceneEngine implements IndexEngineInterface {
         }
     }
 
-    /* {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * The current index keeps being used and updated until the rebuilt one replaces it.
+     */
     public void rebuildIndex() throws IndexException, FileNotFoundException {
-        if (_rebuilding) {
-            throw new IndexException("A previous rebuildindex command is already in progress.");
-        }
-        _rebuilding = true;
-
-        closeAll();
-
-        PhysicalFile f = new PhysicalFile(INDEX_DIR);
-        f.deleteRecursive();
+        rebuild(false);
+    }
 
-        openStreams();
+    private void rebuild(boolean resume) throws IndexException {
+        LuceneRebuild rebuild = new LuceneRebuild(this, _rebuildThreads);
+        lockStreams();
+        try {
+            if (_rebuild != null) {
+                throw new IndexException("A previous rebuildindex command is already in progress.");
+            }
+            // nothing is journaled before the indexing thread sees it
+            rebuild.open(resume);
+            _rebuild = rebuild;
+        } catch (IOException e) {
+            throw new IndexException("Unable to create the staging index", e);
+        } finally {
+            unlockStreams();
+        }
 
         try {
-            DirectoryHandle root = GlobalContext.getGlobalContext().getRoot();
-            root.requestRefresh(true); // Start by adding root inode
-            recurseAndBuild(root); // Recursively traverse the VFS and add all inodes
-            commit(); // commit the writer so that the searcher can see the new stuff.
+            rebuild.run();
         } catch (IndexException e) {
             logger.error("Exception whilst rebuilding lucene index", e);
             throw e;
-        } catch (FileNotFoundException e) {
-            logger.error("Root directory not found whilst rebuilding lucene index", e);
-            throw e;
         } finally {
-            _rebuilding = false;
+            _rebuild = null;
         }
     }
 
     /**
-     * Inner function called by rebuildIndex().
-     *
-     * @param dir
-     * @throws IndexException
+     * Waits for the queued changes to be written and visible to the queries.
      */
-    private void recurseAndBuild(DirectoryHandle dir) throws IndexException {
+    public void flush() throws IndexException {
         try {
-            for (InodeHandle inode : dir.getInodeHandlesUnchecked()) {
-                if (inode.isDirectory()) {
-                    try {
-                        inode.requestRefresh(true);
-                        recurseAndBuild((DirectoryHandle) inode);
-                    } catch (FileNotFoundException e) {
-                        // Directory no longer present, silently skip
-                    }
-
-                } else if (inode.isFile()) {
-                    try {
-                        inode.requestRefresh(true);
-                    } catch (FileNotFoundException e) {
-                        // File no longer present, silently skip
-                    }
-                }
-            }
-        } catch (FileNotFoundException e) {
-            // Directory no longer present, silently skip
+            _indexingThread.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException("Interrupted while waiting for the index to be written", e);
         }
     }
 
@@ -572,7 +646,7 @@ public class LuceneEngine implements IndexEngineInterface {
      * Method to check if an index rebuild is in process or not.
      */
     public boolean isRebuilding() {
-        return _rebuilding;
+        return _rebuild != null;
     }
 
     /**
@@ -582,7 +656,6 @@ public class LuceneEngine implements IndexEngineInterface {
     public Map<String, String> advancedFind(DirectoryHandle startNode, AdvancedSearchParams params, String caller)
             throws IndexException, IllegalArgumentException {
         IndexSearcher iSearcher = null;
-        IndexReader iReader = null;
         try {
             Map<String, String> inodes = new LinkedHashMap<>();
 
@@ -661,24 +734,25 @@ public class LuceneEngine implements IndexEngineInterface {
                 query.add(makeFullNameReversePrefixQueryFromString(params.getEndsWith()), Occur.MUST);
             }
 
+            Sort sort;
             if (params.getSortField() != null && params.getSortOrder() != null) {
                 if (params.getSortField().equalsIgnoreCase("lastModified") ||
                         params.getSortField().equalsIgnoreCase("size")) {
-                    setSortField(params.getSortField(), SortField.LONG, params.getSortOrder());
+                    sort = makeSort(params.getSortField(), SortField.LONG, params.getSortOrder());
                 } else if (params.getSortField().equalsIgnoreCase("nbrOfSlaves")) {
-                    setSortField(params.getSortField(), SortField.INT, params.getSortOrder());
+                    sort = makeSort(params.getSortField(), SortField.INT, params.getSortOrder());
                 } else if (params.getSortField().equalsIgnoreCase("parentPath") ||
                         params.getSortField().equalsIgnoreCase("owner") ||
                         params.getSortField().equalsIgnoreCase("group") ||
                         params.getSortField().equalsIgnoreCase("type")) {
-                    setSortField(params.getSortField(), SortField.STRING, params.getSortOrder());
+                    sort = makeSort(params.getSortField(), SortField.STRING, params.getSortOrder());
                 } else {
-                    setSortField(params.getSortOrder());
+                    sort = makeSort(params.getSortOrder());
                 }
             } else if (params.getSortOrder() == null) {
-                setSortFieldRandom();
+                sort = makeSortRandom();
             } else {
-                setSortField(params.getSortOrder());
+                sort = makeSort(params.getSortOrder());
             }
 
             int limit = _maxHitsNumber;
@@ -694,8 +768,7 @@ public class LuceneEngine implements IndexEngineInterface {
 
             logger.debug("{} query: {}", caller, query);
 
-            iReader = IndexReader.open(_iWriter, true);
-            iSearcher = new IndexSearcher(iReader);
+            iSearcher = acquireSearcher();
             if (limit == 0) {
                 TotalHitCountCollector totalHitCountCollector = new TotalHitCountCollector();
                 iSearcher.search(query, totalHitCountCollector);
@@ -705,7 +778,7 @@ public class LuceneEngine implements IndexEngineInterface {
                 }
                 logger.debug("Found {} inode match(es) in the index, using this as limit.", limit);
             }
-            TopFieldCollector topFieldCollector = TopFieldCollector.create(SORT, limit, true, false, false, false);
+            TopFieldCollector topFieldCollector = TopFieldCollector.create(sort, limit, true, false, false, false);
             iSearcher.search(query, topFieldCollector);
 
             for (ScoreDoc scoreDoc : topFieldCollector.topDocs().scoreDocs) {
@@ -719,18 +792,7 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to search the index", e);
         } finally {
             if (iSearcher != null) {
-                try {
-                    iSearcher.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexSearcher", e);
-                }
-            }
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
+                releaseSearcher(iSearcher);
             }
         }
     }
@@ -742,7 +804,6 @@ public class LuceneEngine implements IndexEngineInterface {
      */
     public Set<String> findInode(DirectoryHandle startNode, String text, InodeType inodeType) throws IndexException {
         IndexSearcher iSearcher = null;
-        IndexReader iReader = null;
         try {
             Set<String> inodes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
 
@@ -770,8 +831,7 @@ public class LuceneEngine implements IndexEngineInterface {
                 query.add(QUERY_FILE, Occur.MUST);
             }
 
-            iReader = IndexReader.open(_iWriter, true);
-            iSearcher = new IndexSearcher(iReader);
+            iSearcher = acquireSearcher();
             TopScoreDocCollector topScoreDocsCollector = TopScoreDocCollector.create(_maxHitsNumber, false);
             iSearcher.search(query, topScoreDocsCollector);
             logger.debug("Query: {}", query);
@@ -787,18 +847,7 @@ public class LuceneEngine implements IndexEngineInterface {
             throw new IndexException("Unable to search the index", e);
         } finally {
             if (iSearcher != null) {
-                try {
-                    iSearcher.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexSearcher", e);
-                }
-            }
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
+                releaseSearcher(iSearcher);
             }
         }
     }
@@ -815,6 +864,11 @@ public class LuceneEngine implements IndexEngineInterface {
      * <li>The date of the last uptade of the search engine (key => "last search engine update")</li>
      * <li>Amount of cached documents (key => "cached inodes")</li>
      * <li>Amount of used memory (key => "ram usage")</li>
+     * <li>Changes waiting to be written (key => "indexing queue")</li>
+     * <li>Changes written so far (key => "indexed changes")</li>
+     * <li>Time the last written changes waited in the queue (key => "indexing lag")</li>
+     * <li>Number of search engine updates (key => "search engine updates")</li>
+     * <li>How far the rebuild in progress went, if any (key => "rebuild progress")</li>
      * <li>The size in disk of the index (key => "disk usage")</li>
      * </ul>
      */
@@ -832,20 +886,11 @@ public class LuceneEngine implements IndexEngineInterface {
             logger.error("IOException getting IndexWriter", e);
         }
 
-        IndexReader iReader = null;
+        IndexSearcher iSearcher = acquireSearcher();
         try {
-            iReader = IndexReader.open(_iWriter, true);
-            status.put("deleted inodes", String.valueOf(iReader.numDeletedDocs()));
-        } catch (IOException e) {
-            logger.error(EXCEPTION_OCCURED_WHILE_SEARCHING, e);
+            status.put("deleted inodes", String.valueOf(iSearcher.getIndexReader().numDeletedDocs()));
         } finally {
-            if (iReader != null) {
-                try {
-                    iReader.close();
-                } catch (IOException e) {
-                    logger.error("IOException closing IndexReader obtained from the IndexWriter", e);
-                }
-            }
+            releaseSearcher(iSearcher);
         }
 
         status.put("cached inodes", String.valueOf(_iWriter.numRamDocs()));
@@ -853,6 +898,15 @@ public class LuceneEngine implements IndexEngineInterface {
         status.put("last optimization", lastOp);
         status.put("last backup", lastBackup);
         status.put("ram usage", Bytes.formatBytes(_iWriter.ramSizeInBytes()));
+        status.put("indexing queue", String.valueOf(_indexingThread.getQueueSize()));
+        status.put("indexed changes", _indexingThread.getOperations() + " in " + _indexingThread.getBatches() + " batches");
+        status.put("indexing lag", _indexingThread.getLag() + "ms (max " + _indexingThread.getMaxLag() + "ms)");
+        status.put("last search engine update", df.format(new Date(_indexingThread.getLastRefresh())));
+        status.put("search engine updates", _indexingThread.getRefreshes() + " (every " + _indexingThread.getRefreshInterval() + "ms at most)");
+        LuceneRebuild rebuild = _rebuild;
+        if (rebuild != null) {
+            status.put("rebuild progress", rebuild.getProgress());
+        }
 
         long size = 0L;
         String[] paths;
@@ -914,6 +968,35 @@ public class LuceneEngine implements IndexEngineInterface {
 
     }
 
+    /**
+     * The document an inode is written with and its fields, filled again for every inode.
+     */
+    private static final class IndexDocument {
+        private final Field _name = new Field("name", "", Field.Store.YES, Field.Index.ANALYZED);
+        private final Field _fullName = new Field("fullName", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _fullNameReverse = new Field("fullNameReverse", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _parentPath = new Field("parentPath", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _fullPath = new Field("fullPath", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _owner = new Field("owner", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _group = new Field("group", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _type = new Field("type", "", Field.Store.YES, Field.Index.NOT_ANALYZED);
+        private final Field _slaves = new Field("slaves", "", Field.Store.YES, Field.Index.ANALYZED);
+        private final NumericField _slavesNbr = new NumericField("nbrOfSlaves", Field.Store.YES, Boolean.TRUE);
+        private final NumericField _lastModified = new NumericField("lastModified", Field.Store.YES, Boolean.TRUE);
+        private final NumericField _size = new NumericField("size", Field.Store.YES, Boolean.TRUE);
+        private final Document _document = new Document();
+
+        private IndexDocument(List<IndexDataExtensionInterface> dataExtensions) {
+            for (Fieldable field : new Fieldable[]{_name, _fullName, _fullNameReverse, _parentPath, _fullPath,
+                    _owner, _group, _type, _slaves, _slavesNbr, _lastModified, _size}) {
+                _document.add(field);
+            }
+            for (IndexDataExtensionInterface dataExtension : dataExtensions) {
+                dataExtension.initializeFields(_document);
+            }
+        }
+    }
+
     /**
      * Hook ran by the JVM before shutting down itself completely. This hook
      * saves the index state to keep it usable the next time you start DrFTPD.
@@ -922,6 +1005,7 @@ public class LuceneEngine implements IndexEngineInterface {
         public void run() {
             _backupThread.stopBackup();
             _maintenanceThread.stopMaintenance();
+            _indexingThread.stopIndexing();
 
             // obtaining the objects' lock.
             // doing that we ensure that no operations are running while closing the streams.
@@ -932,7 +1016,7 @@ public class LuceneEngine implements IndexEngineInterface {
                 _backupThread.notify();
             }
 
-            while (_maintenanceThread.isAlive() || _backupThread.isAlive()) {
+            while (_maintenanceThread.isAlive() || _backupThread.isAlive() || _indexingThread.isAlive()) {
                 try {
                     logger.debug("Waiting for the index maintenance threads to die...");
                     Thread.sleep(100);
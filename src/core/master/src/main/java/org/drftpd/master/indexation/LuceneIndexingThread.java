@@ -0,0 +1,297 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the changes made to the VFS to the index, away from the threads dispatching the VFS events,
+ * and refreshes the searcher shared by the queries.<br>
+ * Changes are queued and written in batches, the queue is bounded and adding to a full queue waits
+ * for room. The searcher is refreshed at most once per refresh interval while there are changes not
+ * visible to the queries yet.<br>
+ * Apart from a rebuild, this is the only thread writing documents, so the shared document and fields of
+ * {@link LuceneEngine} are hardly ever waited for.<br>
+ * While a rebuild runs, the changes are also journaled for {@link LuceneRebuild}.
+ */
+public class LuceneIndexingThread extends Thread {
+    private static final Logger logger = LogManager.getLogger(LuceneIndexingThread.class);
+
+    private final LuceneEngine _engine;
+
+    private BlockingQueue<Operation> _queue = new ArrayBlockingQueue<>(10000);
+    private int _batchSize = 500;
+    private long _refreshInterval = 1000L;
+
+    private boolean _stop;
+    private boolean _busy;
+    private boolean _dirty;
+    private long _lastRefresh;
+
+    private long _operations;
+    private long _batches;
+    private long _refreshes;
+    private volatile long _lag;
+    private volatile long _maxLag;
+
+    public LuceneIndexingThread(LuceneEngine engine) {
+        setName("IndexingThread");
+        setDaemon(true);
+        _engine = engine;
+    }
+
+    /**
+     * Sets the maximum number of changes waiting to be written, only effective before the thread starts.
+     */
+    protected void setQueueSize(int size) {
+        _queue = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    protected void setBatchSize(int size) {
+        _batchSize = Math.max(1, size);
+    }
+
+    /**
+     * Sets how old, in milliseconds, the searcher used by the queries may get while there are changes.
+     */
+    protected void setRefreshInterval(long interval) {
+        _refreshInterval = Math.max(0L, interval);
+    }
+
+    protected long getRefreshInterval() {
+        return _refreshInterval;
+    }
+
+    protected void add(ImmutableInodeHandle inode) throws IndexException {
+        queue(new Operation(OperationType.ADD, null, inode));
+    }
+
+    protected void update(ImmutableInodeHandle inode) throws IndexException {
+        queue(new Operation(OperationType.UPDATE, null, inode));
+    }
+
+    protected void delete(ImmutableInodeHandle inode) throws IndexException {
+        queue(new Operation(OperationType.DELETE, null, inode));
+    }
+
+    protected void rename(ImmutableInodeHandle fromInode, ImmutableInodeHandle toInode) throws IndexException {
+        queue(new Operation(OperationType.RENAME, fromInode, toInode));
+    }
+
+    private void queue(Operation operation) throws IndexException {
+        if (!isAlive()) {
+            // not started yet or shutting down, nobody would write it
+            apply(operation);
+            synchronized (this) {
+                _dirty = true;
+            }
+            return;
+        }
+        try {
+            _queue.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException("Interrupted while queueing " + operation._inode.getPath() + " for indexing", e);
+        }
+    }
+
+    private void apply(Operation operation) throws IndexException {
+        switch (operation._type) {
+            case ADD -> _engine.writeInode(operation._inode);
+            case UPDATE -> _engine.rewriteInode(operation._inode);
+            case DELETE -> _engine.eraseInode(operation._inode);
+            case RENAME -> _engine.moveInode(operation._from, operation._inode);
+        }
+    }
+
+    /**
+     * Tells the rebuild in progress, if any, what to index again once done.
+     */
+    private void journal(Operation operation) {
+        switch (operation._type) {
+            case ADD, UPDATE -> _engine.journal(operation._inode, false);
+            case DELETE -> _engine.journal(operation._inode, operation._inode.isDirectory());
+            case RENAME -> {
+                _engine.journal(operation._from, true);
+                _engine.journal(operation._inode, true);
+            }
+        }
+    }
+
+    public void run() {
+        List<Operation> batch = new ArrayList<>(_batchSize);
+        while (true) {
+            try {
+                long timeout;
+                synchronized (this) {
+                    if (_stop && _queue.isEmpty()) {
+                        break;
+                    }
+                    timeout = _dirty ? Math.max(1L, _lastRefresh + _refreshInterval - System.currentTimeMillis()) : 1000L;
+                }
+                Operation first = _queue.poll(timeout, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    synchronized (this) {
+                        _busy = true;
+                    }
+                    batch.add(first);
+                    _queue.drainTo(batch, _batchSize - 1);
+                    applyBatch(batch);
+                    batch.clear();
+                }
+                synchronized (this) {
+                    _busy = false;
+                    if (_dirty && System.currentTimeMillis() >= _lastRefresh + _refreshInterval) {
+                        refresh();
+                    }
+                    if (_queue.isEmpty()) {
+                        notifyAll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // checked on the next iteration
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error while indexing", e);
+                batch.clear();
+                synchronized (this) {
+                    _busy = false;
+                }
+            }
+        }
+        synchronized (this) {
+            _busy = false;
+            notifyAll();
+        }
+    }
+
+    private void applyBatch(List<Operation> batch) {
+        long oldest = batch.get(0)._queued;
+        _engine.lockStreams();
+        try {
+            for (Operation operation : batch) {
+                try {
+                    apply(operation);
+                } catch (IndexException e) {
+                    logger.error("An exception occured while indexing, check stack trace", e);
+                }
+                journal(operation);
+            }
+            _engine.flushJournal();
+        } finally {
+            _engine.unlockStreams();
+        }
+        long lag = System.currentTimeMillis() - oldest;
+        synchronized (this) {
+            _operations += batch.size();
+            _batches++;
+            _dirty = true;
+        }
+        _lag = lag;
+        if (lag > _maxLag) {
+            _maxLag = lag;
+        }
+    }
+
+    private void refresh() {
+        _engine.refreshSearcher();
+        _lastRefresh = System.currentTimeMillis();
+        _dirty = false;
+        _refreshes++;
+    }
+
+    /**
+     * Waits for every queued change to be written, the searcher is refreshed afterwards.
+     */
+    protected void flush() throws InterruptedException {
+        synchronized (this) {
+            while (isAlive() && (!_queue.isEmpty() || _busy)) {
+                wait(1000L);
+            }
+            if (_dirty) {
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * Stops the thread once every queued change has been written.
+     */
+    protected void stopIndexing() {
+        synchronized (this) {
+            _stop = true;
+            notifyAll();
+        }
+        // not interrupted, that would close the channels of the index files being written
+    }
+
+    public int getQueueSize() {
+        return _queue.size();
+    }
+
+    public synchronized long getOperations() {
+        return _operations;
+    }
+
+    public synchronized long getBatches() {
+        return _batches;
+    }
+
+    public synchronized long getRefreshes() {
+        return _refreshes;
+    }
+
+    public synchronized long getLastRefresh() {
+        return _lastRefresh;
+    }
+
+    /**
+     * @return the time, in milliseconds, the oldest change of the last batch waited before being written.
+     */
+    public long getLag() {
+        return _lag;
+    }
+
+    public long getMaxLag() {
+        return _maxLag;
+    }
+
+    private enum OperationType {
+        ADD, UPDATE, DELETE, RENAME
+    }
+
+    private static class Operation {
+        private final OperationType _type;
+        private final ImmutableInodeHandle _from;
+        private final ImmutableInodeHandle _inode;
+        private final long _queued = System.currentTimeMillis();
+
+        private Operation(OperationType type, ImmutableInodeHandle from, ImmutableInodeHandle inode) {
+            _type = type;
+            _from = from;
+            _inode = inode;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.drftpd.common.io.PhysicalFile;
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.InodeHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rebuilds the index from the VFS while the current index keeps being used.<br>
+ * The tree is split in shards, one per directory of the root plus one for the root and its files,
+ * walked in parallel on a fork join pool and written to a staging index. Changes made to the VFS
+ * meanwhile are kept in a journal and applied to the staging index once every shard is done, the
+ * staging index then replaces the current one.<br>
+ * Finished shards are recorded in a checkpoint file, a rebuild interrupted by a restart of the
+ * master resumes with the shards it did not finish.
+ */
+public class LuceneRebuild {
+    private static final Logger logger = LogManager.getLogger(LuceneRebuild.class);
+
+    protected static final String STAGING_DIR = LuceneEngine.INDEX_DIR + ".rebuild";
+    private static final String CHECKPOINT_FILE = STAGING_DIR + ".checkpoint";
+    private static final String JOURNAL_FILE = STAGING_DIR + ".journal";
+    private static final String OLD_DIR = LuceneEngine.INDEX_DIR + ".old";
+    private static final String SWAP = "!swap";
+    private static final String ROOT_SHARD = VirtualFileSystem.separator;
+
+    private final LuceneEngine _engine;
+    private final int _threads;
+
+    private final Set<String> _finishedShards = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger _totalShards = new AtomicInteger();
+    private final LongAdder _documents = new LongAdder();
+    private final long _started = System.currentTimeMillis();
+    private volatile String _state = "starting";
+
+    private Directory _storage;
+    private IndexWriter _writer;
+    private Writer _journal;
+    private boolean _closed;
+    private int _replayedEntries;
+
+    protected LuceneRebuild(LuceneEngine engine, int threads) {
+        _engine = engine;
+        _threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return true if a rebuild was interrupted and should be resumed.
+     */
+    protected static boolean isPending() {
+        return new File(CHECKPOINT_FILE).exists();
+    }
+
+    /**
+     * Finishes moving the staging index in place if the master stopped in the middle of it,
+     * called before the index is opened.
+     */
+    protected static void recoverSwap() throws IOException {
+        File checkpoint = new File(CHECKPOINT_FILE);
+        if (!checkpoint.exists()) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(lines.size() - 1).equals(SWAP)) {
+            return;
+        }
+        logger.info("Completing the replacement of the index by the rebuilt one");
+        File index = new File(LuceneEngine.INDEX_DIR);
+        File staging = new File(STAGING_DIR);
+        if (staging.exists()) {
+            if (index.exists() && !index.renameTo(new File(OLD_DIR))) {
+                throw new IOException("Unable to move " + index + " out of the way");
+            }
+            if (!staging.renameTo(index)) {
+                throw new IOException("Unable to move " + staging + " to " + index);
+            }
+        }
+        deleteFiles();
+    }
+
+    private static void deleteFiles() {
+        new File(JOURNAL_FILE).delete();
+        new File(CHECKPOINT_FILE).delete();
+        new PhysicalFile(OLD_DIR).deleteRecursive();
+    }
+
+    /**
+     * Opens the staging index and the journal, from then on the changes of the VFS are journaled.
+     *
+     * @param resume true to go on with a previous rebuild, false to start from scratch.
+     */
+    protected void open(boolean resume) throws IOException {
+        File checkpoint = new File(CHECKPOINT_FILE);
+        if (resume) {
+            for (String line : Files.readAllLines(checkpoint.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    _finishedShards.add(line);
+                }
+            }
+        } else {
+            new File(JOURNAL_FILE).delete();
+            new PhysicalFile(STAGING_DIR).deleteRecursive();
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(checkpoint), StandardCharsets.UTF_8)) {
+                out.flush();
+            }
+        }
+        _journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(JOURNAL_FILE, true), StandardCharsets.UTF_8));
+
+        _storage = FSDirectory.open(new File(STAGING_DIR));
+        IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_36, LuceneEngine.ANALYZER);
+        conf.setOpenMode(resume ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
+        conf.setRAMBufferSizeMB(64);
+        _writer = new IndexWriter(_storage, conf);
+    }
+
+    /**
+     * Records a change of the VFS to be applied to the staging index, called by the indexing thread.
+     *
+     * @param subtree true if everything below the inode has to be indexed again as well.
+     */
+    protected synchronized void journal(String path, boolean subtree) {
+        if (_closed) {
+            return;
+        }
+        try {
+            _journal.write(subtree ? 'T' : 'S');
+            _journal.write(path);
+            _journal.write('\n');
+        } catch (IOException e) {
+            logger.error("Unable to journal {} for the index rebuild", path, e);
+        }
+    }
+
+    protected synchronized void flushJournal() {
+        if (_closed) {
+            return;
+        }
+        try {
+            _journal.flush();
+        } catch (IOException e) {
+            logger.error("Unable to write the journal of the index rebuild", e);
+        }
+    }
+
+    /**
+     * Builds every shard not finished yet, replays the journal and replaces the current index.
+     */
+    protected void run() throws IndexException {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            _state = "building";
+            DirectoryHandle root = GlobalContext.getGlobalContext().getRoot();
+            List<ShardTask> shards = new ArrayList<>();
+            shards.add(new ShardTask(ROOT_SHARD, root));
+            for (DirectoryHandle dir : root.getDirectoriesUnchecked()) {
+                shards.add(new ShardTask(dir.getName(), dir));
+            }
+            _totalShards.set(shards.size());
+            for (ShardTask shard : shards) {
+                if (!_finishedShards.contains(shard._name)) {
+                    pool.execute(shard);
+                }
+            }
+            long lastReport = System.currentTimeMillis();
+            while (!pool.awaitQuiescence(10, TimeUnit.SECONDS)) {
+                if (System.currentTimeMillis() - lastReport >= 60000L) {
+                    logger.info("Index rebuild: {}", getProgress());
+                    lastReport = System.currentTimeMillis();
+                }
+            }
+            for (ShardTask shard : shards) {
+                if (shard.isCompletedAbnormally()) {
+                    throw new IndexException("Unable to rebuild " + shard._name, shard.getException());
+                }
+            }
+
+            _state = "replaying changes";
+            replayJournal(pool);
+            _engine.lockStreams();
+            try {
+                // nothing can be journaled anymore, the indexing thread waits for us
+                replayJournal(pool);
+                _state = "replacing index";
+                swap();
+                close();
+            } finally {
+                _engine.unlockStreams();
+            }
+            logger.info("Index rebuilt: {}", getProgress());
+        } catch (IOException e) {
+            throw new IndexException("Unable to rebuild the index", e);
+        } finally {
+            pool.shutdown();
+            close();
+        }
+    }
+
+    private void replayJournal(ForkJoinPool pool) throws IOException {
+        flushJournal();
+        List<String> lines = Files.readAllLines(new File(JOURNAL_FILE).toPath(), StandardCharsets.UTF_8);
+        // the last change of a path wins, a whole subtree covers the inode itself
+        Map<String, Boolean> entries = new LinkedHashMap<>();
+        for (String line : lines.subList(Math.min(_replayedEntries, lines.size()), lines.size())) {
+            if (line.length() < 2) {
+                continue;
+            }
+            entries.merge(line.substring(1), line.charAt(0) == 'T', Boolean::logicalOr);
+        }
+        _replayedEntries = lines.size();
+        for (Map.Entry<String, Boolean> entry : entries.entrySet()) {
+            String path = entry.getKey();
+            _writer.deleteDocuments(fullPathTerm(path), fullPathTerm(directoryPath(path)));
+            if (entry.getValue()) {
+                _writer.deleteDocuments(new PrefixQuery(fullPathTerm(directoryPath(path))));
+            }
+            InodeHandle inode;
+            try {
+                inode = path.equals(VirtualFileSystem.separator) ? GlobalContext.getGlobalContext().getRoot()
+                        : new DirectoryHandle(VirtualFileSystem.stripLast(path)).getInodeHandleUnchecked(VirtualFileSystem.getLast(path));
+            } catch (FileNotFoundException e) {
+                // gone, deleting it was all there was to do
+                continue;
+            }
+            if (entry.getValue() && inode.isDirectory()) {
+                pool.invoke(new DirectoryTask((DirectoryHandle) inode));
+            } else {
+                write(inode);
+            }
+        }
+    }
+
+    private void swap() throws IOException {
+        _writer.close();
+        _writer = null;
+        _storage.close();
+        _storage = null;
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(CHECKPOINT_FILE, true), StandardCharsets.UTF_8)) {
+            out.write(SWAP + "\n");
+        }
+        _engine.closeAll();
+        recoverSwap();
+        try {
+            _engine.openStreams();
+        } catch (IndexException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void close() {
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            try {
+                _journal.close();
+            } catch (IOException e) {
+                logger.error("Unable to close the journal of the index rebuild", e);
+            }
+        }
+        try {
+            if (_writer != null) {
+                _writer.close();
+            }
+            if (_storage != null) {
+                _storage.close();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to close the staging index", e);
+        }
+    }
+
+    private static String directoryPath(String path) {
+        return path + VirtualFileSystem.separator;
+    }
+
+    private static Term fullPathTerm(String path) {
+        return new Term("fullPath", path);
+    }
+
+    private void write(InodeHandle inode) throws IOException {
+        if (inode.isLink()) {
+            return;
+        }
+        ImmutableInodeHandle immutable;
+        try {
+            immutable = inode.getImmutableInode();
+        } catch (FileNotFoundException e) {
+            // deleted since we listed it, the journal has it
+            return;
+        }
+        _engine.addDocument(_writer, immutable);
+        _documents.increment();
+    }
+
+    private void checkpoint(String shard) throws IOException {
+        _writer.commit();
+        synchronized (this) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(CHECKPOINT_FILE, true), StandardCharsets.UTF_8)) {
+                out.write(shard + "\n");
+            }
+        }
+        _finishedShards.add(shard);
+        logger.debug("Index rebuild: shard {} done, {}", shard, getProgress());
+    }
+
+    /**
+     * @return a one line summary of how far the rebuild went.
+     */
+    public String getProgress() {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - _started);
+        long documents = _documents.sum();
+        return String.format("%s, %d/%d shards, %d documents, %.1f documents/sec", _state,
+                _finishedShards.size(), _totalShards.get(), documents, documents * 1000.0 / elapsed);
+    }
+
+    /**
+     * Indexes a directory and everything below it, forking one task per sub directory.
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private final DirectoryHandle _dir;
+
+        private DirectoryTask(DirectoryHandle dir) {
+            _dir = dir;
+        }
+
+        protected void compute() {
+            List<DirectoryTask> children = new ArrayList<>();
+            try {
+                write(_dir);
+                for (InodeHandle inode : _dir.getInodeHandlesUnchecked()) {
+                    if (inode.isDirectory()) {
+                        children.add(new DirectoryTask((DirectoryHandle) inode));
+                    } else {
+                        write(inode);
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                // Directory no longer present, silently skip
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(children);
+        }
+    }
+
+    /**
+     * Indexes a shard from scratch and records it as finished.
+     */
+    private class ShardTask extends RecursiveAction {
+        private final String _name;
+        private final DirectoryHandle _dir;
+
+        private ShardTask(String name, DirectoryHandle dir) {
+            _name = name;
+            _dir = dir;
+        }
+
+        protected void compute() {
+            try {
+                if (_name.equals(ROOT_SHARD)) {
+                    // the root and what is directly in it, its directories are shards of their own
+                    BooleanQuery rootFiles = new BooleanQuery();
+                    rootFiles.add(new TermQuery(new Term("parentPath", directoryPath(ROOT_SHARD))), Occur.MUST);
+                    rootFiles.add(new TermQuery(new Term("type", "d")), Occur.MUST_NOT);
+                    _writer.deleteDocuments(rootFiles);
+                    _writer.deleteDocuments(fullPathTerm(directoryPath(ROOT_SHARD)));
+                    write(_dir);
+                    for (InodeHandle inode : _dir.getInodeHandlesUnchecked()) {
+                        if (!inode.isDirectory()) {
+                            write(inode);
+                        }
+                    }
+                } else {
+                    // what an interrupted rebuild left behind
+                    String path = directoryPath(_dir.getPath());
+                    _writer.deleteDocuments(fullPathTerm(path));
+                    _writer.deleteDocuments(new PrefixQuery(fullPathTerm(path)));
+                    new DirectoryTask(_dir).compute();
+                }
+                checkpoint(_name);
+            } catch (FileNotFoundException e) {
+                // gone, the journal has it
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -100,4 +100,18 @@ public class SafeFileOutputStream extends OutputStream {
             throw e;
         }
     }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        try {
+            _out.write(b, off, len);
+            // ensures the file gets written to
+            failed = false;
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
 }
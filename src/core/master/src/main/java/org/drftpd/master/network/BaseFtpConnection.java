@@ -25,6 +25,7 @@ import org.drftpd.common.dynamicdata.KeyNotFoundException;
 import org.drftpd.common.io.AddAsciiOutputStream;
 import org.drftpd.common.socks.Ident;
 import org.drftpd.common.util.HostMask;
+import org.drftpd.common.util.VirtualThreads;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.commands.CommandManagerInterface;
 import org.drftpd.master.commands.CommandRequestInterface;
@@ -45,6 +46,7 @@ import java.net.SocketException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -94,6 +96,10 @@ public class BaseFtpConnection extends Session implements Runnable {
     private ThreadPoolExecutor _pool;
     private boolean _securityDataExchangeCompleted = false;
     private final AtomicInteger _commandCount = new AtomicInteger(0);
+    // What this connection is counted as in the login counters, null when not counted
+    private String _countedUser;
+    private InetAddress _countedAddress;
+    private boolean _closed = false;
 
     protected BaseFtpConnection() {
     }
@@ -103,16 +109,8 @@ public class BaseFtpConnection extends Session implements Runnable {
     }
 
     public static int countTransfersForUser(User user, char transferDirection) {
-
-        int count = 0;
-        for (BaseFtpConnection conn : GlobalContext.getConnectionManager().getConnections()) {
-            if (conn.getUserNull() == user) {
-                if (conn.getTransferState().getDirection() == transferDirection) {
-                    count++;
-                } // else we dont need to process it.
-            }
-        }
-        return count;
+        return GlobalContext.getConnectionManager().getConnectionCounters()
+                .getTransfers(user.getName(), transferDirection);
     }
 
     /**
@@ -225,6 +223,7 @@ public class BaseFtpConnection extends Session implements Runnable {
 
     public void setUser(String user) {
         _user = user;
+        updateLoginCount();
     }
 
     public User getUserNull() {
@@ -267,6 +266,7 @@ public class BaseFtpConnection extends Session implements Runnable {
 
     public void setAuthenticated(boolean authenticated) {
         _authenticated = authenticated;
+        updateLoginCount();
 
         if (isAuthenticated()) {
             try {
@@ -282,6 +282,25 @@ public class BaseFtpConnection extends Session implements Runnable {
         }
     }
 
+    /**
+     * Counts this connection as logged in as its user while authenticated and not closed.
+     */
+    private synchronized void updateLoginCount() {
+        String user = _authenticated && !_closed ? _user : null;
+        if (Objects.equals(user, _countedUser)) {
+            return;
+        }
+        ConnectionCounters counters = GlobalContext.getConnectionManager().getConnectionCounters();
+        if (_countedUser != null) {
+            counters.logout(_countedUser, _countedAddress);
+        }
+        if (user != null) {
+            _countedAddress = getClientAddress();
+            counters.login(user, _countedAddress);
+        }
+        _countedUser = user;
+    }
+
     /**
      * Returns true if client is executing a command.
      */
@@ -515,6 +534,8 @@ public class BaseFtpConnection extends Session implements Runnable {
             getTransferState().resetTransfer();
             _pool.shutdown();
             GlobalContext.getConnectionManager().remove(this);
+            _closed = true;
+            updateLoginCount();
             GlobalContext.getConnectionManager().dumpThreadPool();
 
             Thread t = Thread.currentThread();
@@ -662,13 +683,19 @@ public class BaseFtpConnection extends Session implements Runnable {
     static class CommandThreadFactory implements ThreadFactory {
 
         String _parentName;
+        ThreadFactory _factory;
 
         private CommandThreadFactory(String parentName) {
             _parentName = parentName;
+            if (GlobalContext.getConnectionManager().isVirtualThreads()) {
+                _factory = VirtualThreads.newThreadFactory("command-");
+            } else {
+                _factory = Executors.defaultThreadFactory();
+            }
         }
 
         public Thread newThread(Runnable r) {
-            Thread ret = Executors.defaultThreadFactory().newThread(r);
+            Thread ret = _factory.newThread(r);
             ret.setName(_parentName + " - " + ret.getName());
             return ret;
         }
@@ -0,0 +1,95 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.network;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the logged in connections by user and by user and address, and the running
+ * transfers by user and direction, so the login and transfer limits do not have to go
+ * through every connection.
+ * <p>
+ * The connections and transfer states keep the counts up to date as they log in and out
+ * and as their transfers start and end.
+ */
+public class ConnectionCounters {
+
+    private final ConcurrentHashMap<String, Integer> _logins = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Integer> _loginsByAddress = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Integer> _transfers = new ConcurrentHashMap<>();
+
+    // user names have no spaces
+    private static String key(String username, InetAddress address) {
+        return username + ' ' + address.getHostAddress();
+    }
+
+    private static String key(String username, char direction) {
+        return username + ' ' + direction;
+    }
+
+    private static void increment(ConcurrentHashMap<String, Integer> counts, String key) {
+        counts.merge(key, 1, Integer::sum);
+    }
+
+    private static void decrement(ConcurrentHashMap<String, Integer> counts, String key) {
+        // the last one out removes the entry
+        counts.computeIfPresent(key, (k, count) -> count <= 1 ? null : count - 1);
+    }
+
+    public void login(String username, InetAddress address) {
+        increment(_logins, username);
+        increment(_loginsByAddress, key(username, address));
+    }
+
+    public void logout(String username, InetAddress address) {
+        decrement(_logins, username);
+        decrement(_loginsByAddress, key(username, address));
+    }
+
+    /**
+     * @return the connections logged in as {@code username}.
+     */
+    public int getLogins(String username) {
+        return _logins.getOrDefault(username, 0);
+    }
+
+    /**
+     * @return the connections logged in as {@code username} from {@code address}.
+     */
+    public int getLogins(String username, InetAddress address) {
+        return _loginsByAddress.getOrDefault(key(username, address), 0);
+    }
+
+    public void transferStarted(String username, char direction) {
+        increment(_transfers, key(username, direction));
+    }
+
+    public void transferEnded(String username, char direction) {
+        decrement(_transfers, key(username, direction));
+    }
+
+    /**
+     * @return the transfers of {@code username} in {@code direction}.
+     */
+    public int getTransfers(String username, char direction) {
+        return _transfers.getOrDefault(key(username, direction), 0);
+    }
+}
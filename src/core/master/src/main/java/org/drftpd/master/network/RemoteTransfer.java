@@ -191,14 +191,19 @@ public class RemoteTransfer {
         }
     }
 
-    public void receiveFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed)
+    /**
+     * @param user the user, group and section sharing their bandwidth limits with the transfer, any may be null.
+     */
+    public void receiveFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed,
+                            String user, String group, String section)
             throws IOException, SlaveUnavailableException {
         _path = path;
 
         String index = SlaveManager.getBasicIssuer().issueReceiveToSlave(
-                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed);
+                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed, user, group, section);
 
         _transferDirection = Transfer.TRANSFER_RECEIVING_UPLOAD;
+        _rslave.updateTransfer(this);
         try {
             _rslave.fetchResponse(index);
         } catch (RemoteIOException e) {
@@ -209,12 +214,14 @@ public class RemoteTransfer {
         }
     }
 
-    public void sendFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed)
+    public void sendFile(String path, char type, long position, String inetAddress, long minSpeed, long maxSpeed,
+                         String user, String group, String section)
             throws IOException, SlaveUnavailableException {
         _path = path;
         String index = SlaveManager.getBasicIssuer().issueSendToSlave(
-                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed);
+                _rslave, path, type, position, inetAddress, getTransferIndex(), minSpeed, maxSpeed, user, group, section);
         _transferDirection = Transfer.TRANSFER_SENDING_DOWNLOAD;
+        _rslave.updateTransfer(this);
         try {
             _rslave.fetchResponse(index);
         } catch (RemoteIOException e) {
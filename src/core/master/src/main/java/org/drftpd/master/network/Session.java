@@ -19,9 +19,7 @@ package org.drftpd.master.network;
 
 import org.drftpd.common.dynamicdata.Key;
 import org.drftpd.common.dynamicdata.KeyedMap;
-import org.drftpd.common.util.Bytes;
 import org.drftpd.master.GlobalContext;
-import org.drftpd.master.commands.usermanagement.UserManagement;
 import org.drftpd.master.usermanager.*;
 import org.drftpd.master.util.ReplacerUtils;
 
@@ -46,32 +44,15 @@ public abstract class Session extends KeyedMap<Key<?>, Object> {
         setObject(Session.COMMANDS, commands);
     }
 
+    /**
+     * The variables of the user are only computed if the template uses them.
+     */
     public Map<String, Object> getReplacerEnvironment(Map<String, Object> inheritedEnv, User user) {
-        Map<String, Object> env = new HashMap<>();
-        if (inheritedEnv != null) env.putAll(inheritedEnv);
         if (user != null) {
-            for (Map.Entry<Key<?>, Object> entry : user.getKeyedMap().getAllObjects().entrySet()) {
-                String key = entry.getKey().toString();
-                String value = entry.getValue().toString();
-                if (key.equals("org.drftpd.master.commands.nuke.metadata.NukeUserData@nukedBytes"))
-                    value = Bytes.formatBytes(Long.parseLong(value));
-                env.put(key, value);
-            }
-            env.put("user", user.getName());
-            env.put("username", user.getName());
-            env.put("idletime", "" + user.getIdleTime());
-            env.put("credits", Bytes.formatBytes(user.getCredits()));
-            env.put("ratio", "" + user.getKeyedMap().get(UserManagement.RATIO));
-            env.put("tagline", user.getKeyedMap().get(UserManagement.TAGLINE));
-            env.put("uploaded", Bytes.formatBytes(user.getUploadedBytes()));
-            env.put("downloaded", Bytes.formatBytes(user.getDownloadedBytes()));
-            env.put("group", user.getGroup());
-            env.put("groups", user.getGroups());
-            env.put("averagespeed", Bytes.formatBytes((user.getDownloadedBytes() + user.getUploadedBytes())
-                    / (((user.getDownloadedTime() + user.getUploadedTime()) / 1000) + 1)));
-            env.put("ipmasks", user.getHostMaskCollection().toString());
-            env.put("isbanned", "" + (user.getKeyedMap().getObject(UserManagement.BANTIME, new Date()).getTime() > System.currentTimeMillis()));
+            return new UserReplacerEnvironment(inheritedEnv, user);
         }
+        Map<String, Object> env = new HashMap<>();
+        if (inheritedEnv != null) env.putAll(inheritedEnv);
         return env;
     }
 
@@ -109,6 +109,13 @@ public class TransferState {
      */
     private boolean _transferFileCreated = false;
 
+    /**
+     * The user and direction the transfer is counted as in the connection counters, null when not counted
+     */
+    private String _countedUser;
+
+    private char _countedDirection;
+
     /**
      * This class to be used as a state holder for DataConnectionHandler
      */
@@ -141,6 +148,7 @@ public class TransferState {
         logger.debug("reset() called");
         _rslave = null;
         resetTransfer();
+        uncountTransfer();
 
         _transfer = null;
         _transferFile = null;
@@ -268,7 +276,8 @@ public class TransferState {
         return _transfer;
     }
 
-    public void setTransfer(RemoteTransfer transfer) {
+    public synchronized void setTransfer(RemoteTransfer transfer) {
+        uncountTransfer();
         _transfer = transfer;
     }
 
@@ -358,14 +367,37 @@ public class TransferState {
         return getTransfer().getTransferStatus();
     }
 
-    public synchronized void sendFile(String path, char type, long resumePosition, String address, long minSpeed, long maxSpeed)
+    public synchronized void sendFile(String path, char type, long resumePosition, String address, long minSpeed, long maxSpeed,
+                                      String user, String group, String section)
             throws IOException, SlaveUnavailableException {
-        getTransfer().sendFile(path, type, resumePosition, address, minSpeed, maxSpeed);
+        countTransfer(user, Transfer.TRANSFER_SENDING_DOWNLOAD);
+        getTransfer().sendFile(path, type, resumePosition, address, minSpeed, maxSpeed, user, group, section);
     }
 
-    public synchronized void receiveFile(String path, char type, long resumePosition, String address, long minSpeed, long maxSpeed)
+    public synchronized void receiveFile(String path, char type, long resumePosition, String address, long minSpeed, long maxSpeed,
+                                         String user, String group, String section)
             throws IOException, SlaveUnavailableException {
-        getTransfer().receiveFile(path, type, resumePosition, address, minSpeed, maxSpeed);
+        countTransfer(user, Transfer.TRANSFER_RECEIVING_UPLOAD);
+        getTransfer().receiveFile(path, type, resumePosition, address, minSpeed, maxSpeed, user, group, section);
+    }
+
+    /**
+     * Counts the transfer for the sim up/down limits of {@code user} until it is reset.
+     */
+    private void countTransfer(String user, char direction) {
+        uncountTransfer();
+        if (user != null) {
+            GlobalContext.getConnectionManager().getConnectionCounters().transferStarted(user, direction);
+            _countedUser = user;
+            _countedDirection = direction;
+        }
+    }
+
+    private void uncountTransfer() {
+        if (_countedUser != null) {
+            GlobalContext.getConnectionManager().getConnectionCounters().transferEnded(_countedUser, _countedDirection);
+            _countedUser = null;
+        }
     }
 
     public synchronized long getElapsed() {
@@ -0,0 +1,155 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.network;
+
+import org.drftpd.common.dynamicdata.Key;
+import org.drftpd.common.dynamicdata.KeyedMap;
+import org.drftpd.common.util.Bytes;
+import org.drftpd.master.commands.usermanagement.UserManagement;
+import org.drftpd.master.usermanager.User;
+
+import java.util.*;
+
+/**
+ * Replacer environment of a user, the variables of the user are only computed when read.<br>
+ * Variables of the user take precedence over the inherited environment, variables put afterwards
+ * take precedence over the ones of the user, as if they had all been put one after the other.
+ */
+class UserReplacerEnvironment extends AbstractMap<String, Object> {
+    private static final String NUKED_BYTES = "org.drftpd.master.commands.nuke.metadata.NukeUserData@nukedBytes";
+
+    private static final List<String> USER_VARIABLES = List.of("user", "username", "idletime", "credits", "ratio",
+            "tagline", "uploaded", "downloaded", "group", "groups", "averagespeed", "ipmasks", "isbanned");
+
+    private final Map<String, Object> _values;
+
+    private final User _user;
+
+    // variables of the user not computed yet
+    private final Set<String> _pending = new HashSet<>(USER_VARIABLES);
+
+    // whether the entries of the keyed map of the user were copied
+    private boolean _userDataCopied;
+
+    UserReplacerEnvironment(Map<String, Object> inheritedEnv, User user) {
+        _values = inheritedEnv == null ? new HashMap<>() : new HashMap<>(inheritedEnv);
+        _user = user;
+    }
+
+    private Object computeVariable(String name) {
+        return switch (name) {
+            case "user", "username" -> _user.getName();
+            case "idletime" -> "" + _user.getIdleTime();
+            case "credits" -> Bytes.formatBytes(_user.getCredits());
+            case "ratio" -> "" + _user.getKeyedMap().get(UserManagement.RATIO);
+            case "tagline" -> _user.getKeyedMap().get(UserManagement.TAGLINE);
+            case "uploaded" -> Bytes.formatBytes(_user.getUploadedBytes());
+            case "downloaded" -> Bytes.formatBytes(_user.getDownloadedBytes());
+            case "group" -> _user.getGroup();
+            case "groups" -> _user.getGroups();
+            case "averagespeed" -> Bytes.formatBytes((_user.getDownloadedBytes() + _user.getUploadedBytes())
+                    / (((_user.getDownloadedTime() + _user.getUploadedTime()) / 1000) + 1));
+            case "ipmasks" -> _user.getHostMaskCollection().toString();
+            case "isbanned" -> "" + (_user.getKeyedMap().getObject(UserManagement.BANTIME, new Date()).getTime() > System.currentTimeMillis());
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    private static String formatUserData(String name, Object value) {
+        String formatted = value.toString();
+        if (name.equals(NUKED_BYTES)) {
+            formatted = Bytes.formatBytes(Long.parseLong(formatted));
+        }
+        return formatted;
+    }
+
+    /**
+     * Copies the entry of the keyed map of the user with this name, the names are the ones of the keys.
+     */
+    private boolean copyUserData(String name) {
+        if (_userDataCopied || name.indexOf('@') == -1) {
+            return false;
+        }
+        KeyedMap<Key<?>, Object> keyedMap = _user.getKeyedMap();
+        synchronized (keyedMap) {
+            for (Entry<Key<?>, Object> entry : keyedMap.entrySet()) {
+                String key = entry.getKey().toString();
+                if (key.equals(name)) {
+                    _values.put(key, formatUserData(key, entry.getValue()));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void computeAll() {
+        for (String name : _pending) {
+            _values.put(name, computeVariable(name));
+        }
+        _pending.clear();
+        if (!_userDataCopied) {
+            KeyedMap<Key<?>, Object> keyedMap = _user.getKeyedMap();
+            synchronized (keyedMap) {
+                for (Entry<Key<?>, Object> entry : keyedMap.entrySet()) {
+                    String key = entry.getKey().toString();
+                    _values.putIfAbsent(key, formatUserData(key, entry.getValue()));
+                }
+            }
+            _userDataCopied = true;
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (_pending.remove(key)) {
+            Object value = computeVariable((String) key);
+            _values.put((String) key, value);
+            return value;
+        }
+        Object value = _values.get(key);
+        if (value == null && key instanceof String && !_values.containsKey(key) && copyUserData((String) key)) {
+            value = _values.get(key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return _pending.contains(key) || _values.containsKey(key)
+                || (key instanceof String && copyUserData((String) key));
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        _pending.remove(key);
+        return _values.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        _pending.remove(key);
+        return _values.remove(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        computeAll();
+        return _values.entrySet();
+    }
+}
@@ -56,6 +56,14 @@ public class GlobPathPermission extends PathPermission {
         return _pat;
     }
 
+    @Override
+    public String getPathPrefix() {
+        if ((_pat.flags() & (Pattern.COMMENTS | Pattern.LITERAL)) != 0) {
+            return "";
+        }
+        return getLiteralPrefix(_pat.pattern());
+    }
+
     public String toString() {
         return getClass().getCanonicalName() + ",pat=" + _pat.pattern() + ",users=" + _users.toString();
     }
@@ -30,5 +30,48 @@ public abstract class PathPermission extends Permission {
         super(users);
     }
 
+    /**
+     * Only expected to depend on the path of the inode and on whether it is a directory,
+     * directories are only checked once by {@link org.drftpd.master.vfs.perms.VFSPermissions}.
+     */
     public abstract boolean checkPath(InodeHandle inode);
+
+    /**
+     * @return a prefix every path matched by this permission starts with, empty if unknown.
+     * Permissions whose prefix does not start the path are not checked.
+     */
+    public String getPathPrefix() {
+        return "";
+    }
+
+    /**
+     * @return the literal characters every match of the regex starts with.
+     */
+    protected static String getLiteralPrefix(String regex) {
+        if (regex.indexOf('|') != -1) {
+            // alternatives may start with anything
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    // a class like \d or a quote, no literal
+                    break;
+                }
+                c = regex.charAt(++i);
+            } else if ("*+?{".indexOf(c) != -1) {
+                // the previous character may not be there
+                if (prefix.length() > 0) {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            } else if (".[]()^$".indexOf(c) != -1) {
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
 }
@@ -36,6 +36,15 @@ public class RegexPathPermission extends PathPermission {
         return m.find();
     }
 
+    @Override
+    public String getPathPrefix() {
+        // unanchored patterns may match anywhere in the path
+        if ((_pat.flags() & (Pattern.COMMENTS | Pattern.LITERAL)) != 0 || !_pat.pattern().startsWith("^")) {
+            return "";
+        }
+        return getLiteralPrefix(_pat.pattern().substring(1));
+    }
+
     public String toString() {
         return getClass().getCanonicalName() + "[pat=" + _pat.toString() + ",users=" + _users.toString() + "]";
     }
@@ -37,4 +37,9 @@ public class StringPathPermission extends PathPermission {
     public boolean checkPath(InodeHandle inode) {
         return inode.getPath().startsWith(_path);
     }
+
+    @Override
+    public String getPathPrefix() {
+        return _path;
+    }
 }
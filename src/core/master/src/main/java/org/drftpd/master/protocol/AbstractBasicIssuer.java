@@ -19,10 +19,13 @@ package org.drftpd.master.protocol;
 
 import org.drftpd.common.exceptions.SSLUnavailableException;
 import org.drftpd.common.protocol.AbstractIssuer;
+import org.drftpd.common.slave.BandwidthLimit;
 import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.master.exceptions.SlaveUnavailableException;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 
+import java.util.Collection;
+
 /**
  * In order to Master be able to scope the BasicIssuer, this abstract class was need so
  * we could instead of referecing everything to the BasicIssuer, which is out of master's scope,
@@ -47,7 +50,8 @@ public abstract class AbstractBasicIssuer extends AbstractIssuer {
     public abstract String issuePingToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
 
     public abstract String issueReceiveToSlave(RemoteSlave rslave, String name, char c, long position,
-                                               String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException;
+                                               String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                               String user, String group, String section) throws SlaveUnavailableException;
 
     public abstract String issueRenameToSlave(RemoteSlave rslave, String from, String toDirPath,
                                               String toName) throws SlaveUnavailableException;
@@ -59,14 +63,25 @@ public abstract class AbstractBasicIssuer extends AbstractIssuer {
 
 
     public abstract String issueSendToSlave(RemoteSlave rslave, String name, char c, long position,
-                                            String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException;
+                                            String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                            String user, String group, String section) throws SlaveUnavailableException;
+
+    public abstract String issueBandwidthToSlave(RemoteSlave rslave, Collection<BandwidthLimit> limits)
+            throws SlaveUnavailableException;
 
     public abstract String issueRemergeToSlave(RemoteSlave rslave, String path, boolean partialRemerge,
                                                long skipAgeCutoff, long masterTime, boolean instantOnline) throws SlaveUnavailableException;
 
+    public abstract String issueRemergeDigestToSlave(RemoteSlave rslave, String path, long knownContent)
+            throws SlaveUnavailableException;
+
+    public abstract String issueRemergeDigestDoneToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
+
     public abstract void issueRemergePauseToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
 
     public abstract void issueRemergeResumeToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
 
     public abstract String issueCheckSSL(RemoteSlave rslave) throws SlaveUnavailableException;
+
+    public abstract String issueCommandStatsToSlave(RemoteSlave rslave) throws SlaveUnavailableException;
 }
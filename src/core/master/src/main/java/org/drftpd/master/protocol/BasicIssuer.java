@@ -21,10 +21,14 @@ package org.drftpd.master.protocol;
 import org.drftpd.common.exceptions.SSLUnavailableException;
 import org.drftpd.common.network.AsyncCommand;
 import org.drftpd.common.network.AsyncCommandArgument;
+import org.drftpd.common.slave.BandwidthLimit;
 import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.master.exceptions.SlaveUnavailableException;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 
+import java.util.Collection;
+import java.util.Objects;
+
 
 /**
  * @author fr0w
@@ -102,11 +106,13 @@ public class BasicIssuer extends AbstractBasicIssuer {
     }
 
     public String issueReceiveToSlave(RemoteSlave rslave, String name, char c, long position,
-                                      String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException {
+                                      String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                      String user, String group, String section) throws SlaveUnavailableException {
         String index = rslave.fetchIndex();
         rslave.sendCommand(new AsyncCommandArgument(index, "receive",
                 new String[]{String.valueOf(c), String.valueOf(position),
-                        tindex.toString(), inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed)}));
+                        tindex.toString(), inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed),
+                        Objects.toString(user, ""), Objects.toString(group, ""), Objects.toString(section, "")}));
 
         return index;
     }
@@ -142,11 +148,21 @@ public class BasicIssuer extends AbstractBasicIssuer {
 
 
     public String issueSendToSlave(RemoteSlave rslave, String name, char c, long position,
-                                   String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed) throws SlaveUnavailableException {
+                                   String inetAddress, TransferIndex tindex, long minSpeed, long maxSpeed,
+                                   String user, String group, String section) throws SlaveUnavailableException {
         String index = rslave.fetchIndex();
         rslave.sendCommand(new AsyncCommandArgument(index, "send",
                 new String[]{String.valueOf(c), String.valueOf(position), tindex.toString(),
-                        inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed)}));
+                        inetAddress, name, String.valueOf(minSpeed), String.valueOf(maxSpeed),
+                        Objects.toString(user, ""), Objects.toString(group, ""), Objects.toString(section, "")}));
+
+        return index;
+    }
+
+    public String issueBandwidthToSlave(RemoteSlave rslave, Collection<BandwidthLimit> limits)
+            throws SlaveUnavailableException {
+        String index = rslave.fetchIndex();
+        rslave.sendCommand(new AsyncCommandArgument(index, "bandwidth", BandwidthLimit.toArgs(limits)));
 
         return index;
     }
@@ -159,6 +175,20 @@ public class BasicIssuer extends AbstractBasicIssuer {
         return index;
     }
 
+    public String issueRemergeDigestToSlave(RemoteSlave rslave, String path, long knownContent)
+            throws SlaveUnavailableException {
+        String index = rslave.fetchIndex();
+        rslave.sendCommand(new AsyncCommandArgument(index, "remergeDigest",
+                new String[]{path, Long.toString(knownContent)}));
+        return index;
+    }
+
+    public String issueRemergeDigestDoneToSlave(RemoteSlave rslave) throws SlaveUnavailableException {
+        String index = rslave.fetchIndex();
+        rslave.sendCommand(new AsyncCommand(index, "remergeDigestDone"));
+        return index;
+    }
+
     public void issueRemergePauseToSlave(RemoteSlave rslave) throws SlaveUnavailableException {
         rslave.sendCommand(new AsyncCommand("remergePause", "remergePause"));
 
@@ -176,4 +206,12 @@ public class BasicIssuer extends AbstractBasicIssuer {
 
         return index;
     }
+
+    @Override
+    public String issueCommandStatsToSlave(RemoteSlave rslave) throws SlaveUnavailableException {
+        String index = rslave.fetchIndex();
+        rslave.sendCommand(new AsyncCommand(index, "commandStats"));
+
+        return index;
+    }
 }
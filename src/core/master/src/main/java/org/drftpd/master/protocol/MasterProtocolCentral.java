@@ -19,10 +19,13 @@ package org.drftpd.master.protocol;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.drftpd.common.network.WireCodecs;
 import org.drftpd.common.protocol.AbstractIssuer;
 import org.drftpd.common.protocol.HandshakeWrapper;
 import org.drftpd.common.protocol.ProtocolException;
+import org.drftpd.master.GlobalContext;
 import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.slave.network.SlaveWireCodecs;
 import org.reflections.Reflections;
 
 import java.io.ObjectInputStream;
@@ -113,7 +116,9 @@ public class MasterProtocolCentral {
 
     /**
      * Whenever a slave connects, before it even start remerging, a "handshake" is started
-     * to check if the slave is capable of handling all operations that *might* be requested.
+     * to check if the slave is capable of handling all operations that *might* be requested.<br>
+     * The protocol list announces the binary wire format when enabled, once successful a slave which
+     * advertised a wire format in return is told which one to use from now on.
      *
      * @param rslave
      * @throws ProtocolException Either if the slave isn't capable of handling all operations
@@ -125,8 +130,17 @@ public class MasterProtocolCentral {
             ObjectOutputStream out = rslave.getOutputStream();
             ObjectInputStream in = rslave.getInputStream();
 
+            // older slaves check every entry of the list, so only announce binary when it is enabled
+            boolean announceBinary = WireCodecs.BINARY.equalsIgnoreCase(
+                    GlobalContext.getConfig().getMainProperties().getProperty("slave.wire.format", WireCodecs.BINARY));
+            List<String> protocols = _protocols;
+            if (announceBinary) {
+                protocols = new ArrayList<>(_protocols);
+                protocols.add(WireCodecs.WIRE_FORMAT_ANNOUNCE);
+            }
+
             logger.debug("Writing protocol extensions to the socket.");
-            out.writeObject(_protocols);
+            out.writeObject(protocols);
             out.flush();
             out.reset();
 
@@ -138,6 +152,21 @@ public class MasterProtocolCentral {
                 throw hw.getException();
             }
             logger.debug("Handshake successful");
+
+            if (!announceBinary || hw.getWireFormat() == null) {
+                // nothing announced or older slave, it does not wait for an answer and only uses serialization
+                logger.info("Using {} wire format with slave {}", WireCodecs.SERIALIZED, rslave.getName());
+                return;
+            }
+            String wireFormat = WireCodecs.BINARY.equals(hw.getWireFormat()) ? WireCodecs.BINARY : WireCodecs.SERIALIZED;
+            out.writeObject(wireFormat);
+            out.flush();
+            out.reset();
+            if (wireFormat.equals(WireCodecs.BINARY)) {
+                SlaveWireCodecs.register();
+                rslave.setBinaryWireFormat();
+            }
+            logger.info("Using {} wire format with slave {}", wireFormat, rslave.getName());
         } catch (Exception e) {
             throw new ProtocolException(e);
         }
@@ -0,0 +1,156 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.exceptions.RemoteIOException;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.master.exceptions.SlaveUnavailableException;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+import org.drftpd.slave.exceptions.FileExistsException;
+import org.drftpd.slave.network.AsyncResponseRemergeDigest;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remerges a slave by walking down the directories whose digests changed since the last remerge.<br>
+ * The slave sends the digests of a directory along with the tree digests of its sub directories,
+ * sub directories whose tree digest is the one stored on the master are skipped as a whole, and
+ * the entries of a directory are only sent and merged when its content digest changed.
+ * Digests are stored once everything below a directory has been merged.
+ */
+public class DigestRemerge {
+    private static final Logger logger = LogManager.getLogger(DigestRemerge.class);
+
+    private final RemoteSlave _rslave;
+    private final ExecutorService _executor;
+    private final AtomicLong _visited = new AtomicLong();
+    private final AtomicLong _merged = new AtomicLong();
+    private final AtomicLong _skipped = new AtomicLong();
+
+    public DigestRemerge(RemoteSlave rslave, int threads) {
+        _rslave = rslave;
+        _executor = Executors.newFixedThreadPool(threads, r -> new Thread(r, "DigestRemerge - " + rslave.getName()));
+    }
+
+    /**
+     * Remerges the whole slave and waits for it to be done.
+     *
+     * @throws RemoteIOException if the slave was unable to compute its digests.
+     */
+    public void run() throws IOException, RemoteIOException, SlaveUnavailableException {
+        long start = System.currentTimeMillis();
+        try {
+            process(new DirectoryHandle(VirtualFileSystem.separator)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteIOException) {
+                throw (RemoteIOException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SlaveUnavailableException) {
+                throw (SlaveUnavailableException) cause;
+            }
+            throw e;
+        } finally {
+            _executor.shutdown();
+        }
+        try {
+            _rslave.fetchResponse(SlaveManager.getBasicIssuer().issueRemergeDigestDoneToSlave(_rslave));
+        } catch (RemoteIOException e) {
+            logger.warn("Slave {} was unable to drop its remerge digests", _rslave.getName(), e);
+        }
+        logger.info("Digest remerge of {} done in {}ms, {} directories looked at, {} merged, {} skipped",
+                _rslave.getName(), System.currentTimeMillis() - start, _visited.get(), _merged.get(), _skipped.get());
+    }
+
+    private CompletableFuture<Void> process(DirectoryHandle dir) {
+        long[] known;
+        String index;
+        try {
+            known = dir.exists() ? dir.getRemergeDigest(_rslave) : null;
+            index = SlaveManager.getBasicIssuer().issueRemergeDigestToSlave(_rslave, dir.getPath(),
+                    known == null ? 0L : known[0]);
+        } catch (FileNotFoundException | SlaveUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        _visited.incrementAndGet();
+        return _rslave.fetchResponseAsync(index).thenComposeAsync(
+                ar -> merge(dir, known, (AsyncResponseRemergeDigest) ar), _executor);
+    }
+
+    private CompletableFuture<Void> merge(DirectoryHandle dir, long[] known, AsyncResponseRemergeDigest response) {
+        if (known != null && known[1] == response.getTreeDigest()) {
+            _skipped.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        List<LightRemoteInode> files = response.getFiles();
+        if (files != null) {
+            try {
+                // the slave sends parents first, unlike the regular remerge which creates the directories
+                for (LightRemoteInode inode : files) {
+                    if (inode.isDirectory()) {
+                        try {
+                            dir.createDirectoryRecursive(inode.getName(), true);
+                        } catch (FileExistsException e) {
+                            // already there, or a file which the remerge reports as a collision
+                        }
+                    }
+                }
+                dir.remerge(files, _rslave, response.getLastModified());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            _merged.incrementAndGet();
+        }
+
+        String[] names = response.getDirectories();
+        long[] digests = response.getDirectoryDigests();
+        List<CompletableFuture<Void>> children = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            DirectoryHandle child = dir.getNonExistentDirectoryHandle(names[i]);
+            long[] childKnown;
+            try {
+                childKnown = child.exists() ? child.getRemergeDigest(_rslave) : null;
+            } catch (FileNotFoundException e) {
+                childKnown = null;
+            }
+            if (childKnown != null && childKnown[1] == digests[i]) {
+                _skipped.incrementAndGet();
+                continue;
+            }
+            children.add(process(child));
+        }
+        return CompletableFuture.allOf(children.toArray(new CompletableFuture[0])).thenRun(() -> {
+            try {
+                dir.setRemergeDigest(_rslave, response.getContentDigest(), response.getTreeDigest());
+            } catch (FileNotFoundException e) {
+                // deleted meanwhile, its digests are gone with it
+            }
+        });
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the remerge messages of a slave to the VFS.<br>
+ * Directories are merged on a pool of threads, a directory is only merged once every message queued
+ * before it for the same directory, one of its parents or one of its sub directories has been merged.
+ * The slave sends the sub directories of a directory before it and merging a directory expects them
+ * to exist already, only directories of unrelated trees are merged at the same time. The message
+ * marking the end of a remerge waits for everything queued before it.
+ */
+public class RemergeExecutor {
+    private static final Logger logger = LogManager.getLogger(RemergeExecutor.class);
+
+    private final RemoteSlave _rslave;
+
+    private ThreadPoolExecutor _pool;
+
+    // last queued task of every directory which still has one queued or running, keyed by lower case path
+    private final TreeMap<String, Task> _latest = new TreeMap<>();
+
+    private final int _threads;
+
+    private Task _barrier;
+
+    private int _queued;
+
+    private volatile long _generation;
+
+    private long _started;
+
+    private long _processed;
+
+    private long _expected;
+
+    private long _submitted;
+
+    public RemergeExecutor(RemoteSlave rslave) {
+        this(rslave, 0);
+    }
+
+    /**
+     * @param threads number of threads merging directories, 0 to read it from remerge.threads.
+     */
+    RemergeExecutor(RemoteSlave rslave, int threads) {
+        _rslave = rslave;
+        _threads = threads;
+    }
+
+    /**
+     * @return the remerge.threads setting, the number of processors if it is not set or not a number.
+     */
+    static int getConfiguredThreads() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            threads = Integer.parseInt(GlobalContext.getConfig().getMainProperties()
+                    .getProperty("remerge.threads", Integer.toString(threads)));
+        } catch (NumberFormatException e) {
+            logger.warn("Non numeric remerge.threads setting in master.conf, using default");
+        }
+        return Math.max(1, threads);
+    }
+
+    private ThreadPoolExecutor getPool() {
+        if (_pool == null) {
+            int threads = _threads == 0 ? getConfiguredThreads() : Math.max(1, _threads);
+            _pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, "RemergeThread - " + _rslave.getName()));
+            _pool.allowCoreThreadTimeOut(true);
+        }
+        return _pool;
+    }
+
+    /**
+     * Resets the progress counters, called when a remerge starts.
+     *
+     * @param expected number of directories the remerge is expected to go through, 0 if unknown.
+     */
+    public synchronized void begin(long expected) {
+        _started = System.currentTimeMillis();
+        _processed = 0;
+        _expected = expected;
+    }
+
+    public synchronized void submit(RemergeMessage message) {
+        Task task = new Task(message, _generation, _submitted++);
+        if (_barrier != null) {
+            task.dependsOn(_barrier);
+        }
+        if (message.isCompleted()) {
+            for (Task previous : _latest.values()) {
+                task.dependsOn(previous);
+            }
+            _barrier = task;
+        } else {
+            String key = message.getDirectory().toLowerCase();
+            task._key = key;
+            String ancestor = key;
+            while (true) {
+                Task previous = _latest.get(ancestor);
+                if (previous != null) {
+                    task.dependsOn(previous);
+                }
+                if (ancestor.equals(VirtualFileSystem.separator)) {
+                    break;
+                }
+                ancestor = VirtualFileSystem.stripLast(ancestor);
+            }
+            String prefix = key.endsWith(VirtualFileSystem.separator) ? key : key + VirtualFileSystem.separator;
+            Task covering = null;
+            for (Task previous : _latest.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                // waiting for a sub directory is enough for what was queued below it before
+                if (covering != null && previous._key.startsWith(covering._key + VirtualFileSystem.separator)
+                        && previous._sequence < covering._sequence) {
+                    continue;
+                }
+                task.dependsOn(previous);
+                covering = previous;
+            }
+            _latest.put(key, task);
+            _queued++;
+        }
+        if (task._waiting == 0) {
+            getPool().execute(task);
+        }
+    }
+
+    private void run(Task task) {
+        RemergeMessage message = task._message;
+        if (message.isCompleted()) {
+            _rslave.remergeQueueFinished();
+            return;
+        }
+        try {
+            merge(message);
+        } catch (IOException e) {
+            logger.error("IOException during remerge", e);
+            _rslave.setOffline("IOException during remerge");
+        }
+    }
+
+    protected void merge(RemergeMessage message) throws IOException {
+        DirectoryHandle dir = new DirectoryHandle(message.getDirectory());
+        dir.remerge(message.getFiles(), _rslave, message.getLastModified());
+    }
+
+    private synchronized void complete(Task task) {
+        if (task._generation != _generation) {
+            // cleared while running, what depended on it is gone
+            return;
+        }
+        if (task._key == null) {
+            if (_barrier == task) {
+                _barrier = null;
+            }
+        } else {
+            if (_latest.get(task._key) == task) {
+                _latest.remove(task._key);
+            }
+            _queued--;
+            _processed++;
+        }
+        for (Task dependent : task._dependents) {
+            if (--dependent._waiting == 0) {
+                getPool().execute(dependent);
+            }
+        }
+        if (_queued == 0 && _barrier == null) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drops every queued message, the ones being merged finish on their own.
+     */
+    public synchronized void clear() {
+        _generation++;
+        _latest.clear();
+        _barrier = null;
+        _queued = 0;
+        if (_pool != null) {
+            _pool.getQueue().clear();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until every queued message has been merged.
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (_queued > 0 || _barrier != null) {
+            wait();
+        }
+    }
+
+    /**
+     * @return the number of directories queued or being merged.
+     */
+    public synchronized int getQueueSize() {
+        return _queued;
+    }
+
+    /**
+     * @return the number of directories merged since the remerge started.
+     */
+    public synchronized long getProcessed() {
+        return _processed;
+    }
+
+    /**
+     * @return the average number of directories merged per second since the remerge started.
+     */
+    public synchronized double getRate() {
+        long elapsed = System.currentTimeMillis() - _started;
+        if (_started == 0L || elapsed <= 0) {
+            return 0;
+        }
+        return _processed * 1000.0 / elapsed;
+    }
+
+    /**
+     * The slave does not tell how many directories it has, the estimation uses the number of directories
+     * of the previous full remerge when there was one and only falls back on the queue otherwise.
+     *
+     * @return the estimated time left in milliseconds, -1 if it cannot be estimated yet.
+     */
+    public synchronized long getEta() {
+        double rate = getRate();
+        if (rate <= 0) {
+            return -1;
+        }
+        long left = Math.max(_queued, _expected - _processed);
+        return (long) (left * 1000 / rate);
+    }
+
+    private class Task implements Runnable {
+        private final RemergeMessage _message;
+        private final long _generation;
+        private final long _sequence;
+        private final List<Task> _dependents = new ArrayList<>(0);
+        private String _key;
+        private int _waiting;
+
+        private Task(RemergeMessage message, long generation, long sequence) {
+            _message = message;
+            _generation = generation;
+            _sequence = sequence;
+        }
+
+        private void dependsOn(Task task) {
+            task._dependents.add(this);
+            _waiting++;
+        }
+
+        public void run() {
+            try {
+                if (_generation == RemergeExecutor.this._generation) {
+                    RemergeExecutor.this.run(this);
+                }
+            } finally {
+                complete(this);
+            }
+        }
+    }
+}
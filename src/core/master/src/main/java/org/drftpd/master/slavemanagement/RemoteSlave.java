@@ -30,6 +30,8 @@ import org.drftpd.common.exceptions.RemoteIOException;
 import org.drftpd.common.network.AsyncCommand;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.network.BinaryObjectInputStream;
+import org.drftpd.common.network.BinaryObjectOutputStream;
 import org.drftpd.common.protocol.ProtocolException;
 import org.drftpd.common.slave.ConnectInfo;
 import org.drftpd.common.slave.DiskStatus;
@@ -58,6 +60,8 @@ import java.net.SocketTimeoutException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -87,17 +91,23 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     private Properties _keysAndValues;
     private final transient KeyedMap<Key<?>, Object> _transientKeyedMap;
     private ConcurrentLinkedDeque<QueuedOperation> _renameQueue;
-    private transient LinkedBlockingDeque<String> _indexPool;
-    private transient ConcurrentHashMap<String, AsyncResponse> _indexWithCommands;
+    private transient Semaphore _inflightCommands;
+    private transient AtomicInteger _nextIndex;
+    private transient ConcurrentHashMap<String, CompletableFuture<AsyncResponse>> _indexWithCommands;
     private transient ObjectInputStream _sin;
     private transient Socket _socket;
     private transient ObjectOutputStream _sout;
     private transient ConcurrentHashMap<TransferIndex, RemoteTransfer> _transfers;
+    // totals of _transfers, changes to both are made holding it
+    private transient SlaveTransferTotals _transferTotals;
+    private transient volatile SlaveStatus _slaveStatus;
+    // bytes of the finished transfers, kept in the bytesSent and bytesReceived properties on commit
+    private transient volatile LongAdder _bytesSent;
+    private transient volatile LongAdder _bytesReceived;
     private transient boolean _initRemergeCompleted;
-    private final transient Object _commandMonitor;
-    private final transient LinkedBlockingQueue<RemergeMessage> _remergeQueue;
+    private transient boolean _fullRemerge;
+    private final transient RemergeExecutor _remergeExecutor;
     private final transient LinkedBlockingQueue<FileHandle> _crcQueue;
-    private transient RemergeThread _remergeThread;
     private transient CrcThread _crcThread;
 
     public RemoteSlave(String name) {
@@ -107,9 +117,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         _ipMasks = new HostMaskCollection();
         _renameQueue = new ConcurrentLinkedDeque<>();
         _remergePaused = new AtomicBoolean();
-        _remergeQueue = new LinkedBlockingQueue<>();
+        _remergeExecutor = new RemergeExecutor(this);
         _crcQueue = new LinkedBlockingQueue<>();
-        _commandMonitor = new Object();
     }
 
     public static Hashtable<String, RemoteSlave> rslavesToHashtable(Collection<RemoteSlave> rslaves) {
@@ -208,6 +217,10 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     }
 
     public void commit() {
+        if (_bytesReceived != null) {
+            _keysAndValues.setProperty("bytesSent", Long.toString(_bytesSent.sum()));
+            _keysAndValues.setProperty("bytesReceived", Long.toString(_bytesReceived.sum()));
+        }
         CommitManager.getCommitManager().writeImmediately(this);
     }
 
@@ -275,52 +288,83 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
      * remerge() is completed
      */
     public SlaveStatus getSlaveStatus() throws SlaveUnavailableException {
-        if ((_status == null) || !isOnline()) {
+        SlaveStatus status = _slaveStatus;
+        if ((status == null) || !isOnline()) {
             throw new SlaveUnavailableException();
         }
-        int throughputUp = 0;
-        int throughputDown = 0;
-        int transfersUp = 0;
-        int transfersDown = 0;
-        long bytesReceived;
-        long bytesSent;
-
-        bytesReceived = getReceivedBytes();
-        bytesSent = getSentBytes();
-
-        for (RemoteTransfer transfer : _transfers.values()) {
-            switch (transfer.getTransferDirection()) {
-                case Transfer.TRANSFER_RECEIVING_UPLOAD:
-                    throughputUp += transfer.getXferSpeed();
-                    bytesReceived += transfer.getTransfered();
-                    transfersUp += 1;
-                    break;
+        return status;
+    }
 
-                case Transfer.TRANSFER_SENDING_DOWNLOAD:
-                    throughputDown += transfer.getXferSpeed();
-                    transfersDown += 1;
-                    bytesSent += transfer.getTransfered();
-                    break;
+    public long getSentBytes() {
+        loadByteCounters();
+        return _bytesSent.sum();
+    }
 
-                case Transfer.TRANSFER_UNKNOWN:
-                    break;
+    public long getReceivedBytes() {
+        loadByteCounters();
+        return _bytesReceived.sum();
+    }
 
-                default:
-                    throw new FatalException("unrecognized direction - "
-                            + transfer.getTransferDirection() + " for " + transfer);
+    /**
+     * Reads the counters from the properties on first use, the properties are only set after
+     * the slave file is read.
+     */
+    private void loadByteCounters() {
+        if (_bytesReceived != null) {
+            return;
+        }
+        synchronized (_keysAndValues) {
+            if (_bytesReceived != null) {
+                return;
+            }
+            LongAdder sent = new LongAdder();
+            LongAdder received = new LongAdder();
+            try {
+                sent.add(Long.parseLong(getProperty("bytesSent", "0")));
+                received.add(Long.parseLong(getProperty("bytesReceived", "0")));
+            } catch (NumberFormatException e) {
+                logger.error("Non numeric bytesSent or bytesReceived for slave {}, counting from 0", getName());
+                sent.reset();
+                received.reset();
             }
+            _bytesSent = sent;
+            _bytesReceived = received;
         }
+    }
 
-        return new SlaveStatus(_status, bytesSent, bytesReceived, throughputUp,
-                transfersUp, throughputDown, transfersDown);
+    /**
+     * Builds the status read by {@link #getSlaveStatus()} again, to be called holding
+     * {@link #_transferTotals} after any change to the disk status, the transfers or the counters.
+     */
+    private void updateSlaveStatus() {
+        if (_status == null) {
+            _slaveStatus = null;
+        } else {
+            _slaveStatus = _transferTotals.toSlaveStatus(_status, getSentBytes(), getReceivedBytes());
+        }
     }
 
-    public long getSentBytes() {
-        return Long.parseLong(getProperty("bytesSent", "0"));
+    private void setDiskStatus(DiskStatus status) {
+        synchronized (_transferTotals) {
+            _status = status;
+            updateSlaveStatus();
+        }
     }
 
-    public long getReceivedBytes() {
-        return Long.parseLong(getProperty("bytesReceived", "0"));
+    /**
+     * Counts the speed, direction and progress of the transfer in the status of this slave,
+     * called when the transfer starts and each time the slave reports its progress.
+     */
+    public void updateTransfer(RemoteTransfer transfer) {
+        synchronized (_transferTotals) {
+            // finished or dropped meanwhile
+            if (_transfers.get(transfer.getTransferIndex()) != transfer) {
+                return;
+            }
+            _transferTotals.update(transfer.getTransferIndex(), transfer.getTransferDirection(),
+                    transfer.getXferSpeed(), transfer.getTransfered());
+            updateSlaveStatus();
+        }
     }
 
     /**
@@ -361,6 +405,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 getProperty("enableremergechecksums", "false").equalsIgnoreCase("true");
         boolean partialRemerge = false;
         boolean instantOnline = false;
+        boolean digestRemerge = false;
         if (remergeMode == null) {
             logger.error("Slave partial remerge undefined in master.conf, defaulting to \"off\"");
         } else {
@@ -380,6 +425,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                     logger.warn("Slave partial remerge mode set to \"off\" as lastOnline time is undefined, this may " +
                             " resolve itself automatically on next slave connection");
                 }
+            } else if (remergeMode.equalsIgnoreCase("digest")) {
+                digestRemerge = true;
             } else if (remergeMode.equalsIgnoreCase("instant")) {
                 instantOnline = true;
                 setAvailable(true);
@@ -387,19 +434,28 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 GlobalContext.getEventService().publishAsync(new SlaveEvent("ADDSLAVE", this));
             }
         }
-        String remergeIndex;
-        if (partialRemerge) {
-            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", true, skipAgeCutoff, System.currentTimeMillis(), false);
-        } else if (instantOnline) {
-            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, true);
+        beginRemerge(!partialRemerge && !digestRemerge);
+        if (digestRemerge) {
+            try {
+                new DigestRemerge(this, RemergeExecutor.getConfiguredThreads()).run();
+            } catch (RemoteIOException e) {
+                throw new IOException(e.getMessage());
+            }
         } else {
-            remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, false);
-        }
+            String remergeIndex;
+            if (partialRemerge) {
+                remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", true, skipAgeCutoff, System.currentTimeMillis(), false);
+            } else if (instantOnline) {
+                remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, true);
+            } else {
+                remergeIndex = SlaveManager.getBasicIssuer().issueRemergeToSlave(this, "/", false, 0L, 0L, false);
+            }
 
-        try {
-            fetchResponse(remergeIndex, 0);
-        } catch (RemoteIOException e) {
-            throw new IOException(e.getMessage());
+            try {
+                fetchResponse(remergeIndex, 0);
+            } catch (RemoteIOException e) {
+                throw new IOException(e.getMessage());
+            }
         }
 
         setCRCThreadFinished();
@@ -587,20 +643,17 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         _socket = socket;
         _sout = out;
         _sin = in;
-        if (_indexPool == null) {
-            _indexPool = new LinkedBlockingDeque<>(256);
-        } else {
-            _indexPool.clear();
+        int inflightCommands = 256;
+        try {
+            inflightCommands = Math.max(1, Integer.parseInt(GlobalContext.getConfig().getMainProperties()
+                    .getProperty("slave.inflight.commands", "256")));
+        } catch (NumberFormatException e) {
+            logger.warn("Non numeric slave.inflight.commands setting in master.conf, using default");
         }
-
-        for (int i = 0; i < 256; i++) {
-            String key = Integer.toHexString(i);
-
-            if (key.length() < 2) {
-                key = "0" + key;
-            }
-
-            _indexPool.push(key);
+        _inflightCommands = new Semaphore(inflightCommands);
+        if (_nextIndex == null) {
+            // never reset, a late response from a previous connection can not complete a new command
+            _nextIndex = new AtomicInteger();
         }
 
         if (_indexWithCommands == null) {
@@ -611,8 +664,13 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
 
         if (_transfers == null) {
             _transfers = new ConcurrentHashMap<>();
+            _transferTotals = new SlaveTransferTotals();
         } else {
-            _transfers.clear();
+            synchronized (_transferTotals) {
+                _transfers.clear();
+                _transferTotals.clear();
+                updateSlaveStatus();
+            }
         }
 
         _errors = 0;
@@ -651,16 +709,22 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         return ((AsyncResponseChecksum) fetchResponse(index)).getChecksum();
     }
 
+    /**
+     * Reserves an index for a new command, waiting while too many commands are waiting for a response.
+     * The index is released once its response is fetched.
+     */
     public String fetchIndex() throws SlaveUnavailableException {
-        String index;
         while (isOnline()) {
             try {
-                index = _indexPool.poll(1000, TimeUnit.MILLISECONDS);
-                if (index == null) {
-                    logger.error("Too many commands sent, need to wait for the slave to process commands");
-                } else {
+                if (_inflightCommands.tryAcquire(1000, TimeUnit.MILLISECONDS)) {
+                    String index;
+                    CompletableFuture<AsyncResponse> future = new CompletableFuture<>();
+                    do {
+                        index = Integer.toHexString(_nextIndex.getAndIncrement());
+                    } while (_indexWithCommands.putIfAbsent(index, future) != null);
                     return index;
                 }
+                logger.error("Too many commands sent, need to wait for the slave to process commands");
                 if (getActualTimeout() < (System.currentTimeMillis() - _lastResponseReceived)) {
                     setOffline("Index pool exhausted and no response from slave in "
                             + (System.currentTimeMillis() - _lastResponseReceived)
@@ -682,6 +746,18 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         }
     }
 
+    /**
+     * Asks the slave how busy each class of commands it runs is, see slave.conf.dist.
+     */
+    public List<AsyncResponseCommandStats.CommandStats> fetchCommandStats() throws SlaveUnavailableException {
+        String index = SlaveManager.getBasicIssuer().issueCommandStatsToSlave(this);
+        try {
+            return ((AsyncResponseCommandStats) fetchResponse(index)).getStats();
+        } catch (RemoteIOException e) {
+            throw new SlaveUnavailableException("Slave had an error processing commandStats");
+        }
+    }
+
     public boolean fetchCheckSSLFromIndex(String sslIndex) throws SlaveUnavailableException {
         try {
             return ((AsyncResponseSSLCheck) fetchResponse(sslIndex)).isSSLReady();
@@ -700,17 +776,26 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
      * on the Slave side
      */
     public AsyncResponse fetchResponse(String index, int wait) throws SlaveUnavailableException, RemoteIOException {
+        CompletableFuture<AsyncResponse> future = _indexWithCommands.get(index);
+        if (future == null) {
+            throw new SlaveUnavailableException("Slave went offline while processing command");
+        }
+
         long total = System.currentTimeMillis();
         long lastUpdate = 0L;
         long reportIdle = 60000L;
+        AsyncResponse rar = null;
 
-        while (isOnline() && !_indexWithCommands.containsKey(index)) {
-            // will wait a maximum of 50 milliseconds before waking up
-            // Any longer and we risk slow exchange of commands between master and slave
+        while (isOnline() && rar == null) {
+            // the reader thread completes the future as soon as the response arrives,
+            // waking up every second is only needed for the timeout and the remerge status
             try {
-                synchronized (_commandMonitor) {
-                    _commandMonitor.wait(50);
-                }
+                rar = future.get(1000, TimeUnit.MILLISECONDS);
+                break;
+            } catch (ExecutionException e) {
+                break;
+            } catch (TimeoutException e) {
+                // checked below
             } catch (InterruptedException e) {
                 // Ignore interupt
             }
@@ -723,22 +808,20 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             if (isRemerging()) {
                 // Only do something if we have not received a remerge command from slave in 15 seconds
                 if ((System.currentTimeMillis() - _lastRemergeCommandReceived) >= reportIdle) {
-                    if (lastUpdate >= 0L && (System.currentTimeMillis() - lastUpdate) <= reportIdle) {
-                        // skip for at least 15 seconds, not spamming the log
-                        continue;
+                    // skip for at least 15 seconds, not spamming the log
+                    if ((System.currentTimeMillis() - lastUpdate) > reportIdle) {
+                        // We have not received remerge data from slave, report current master status for this slave
+                        logger.warn("We are still remerging, but have not received remerge command from Slave in {} " +
+                                "seconds", (reportIdle / 1000));
+                        logger.warn("remergeQueue: {}, remergePaused: {}, Last remerge command received: {}",
+                                _remergeExecutor.getQueueSize(), _remergePaused.get(), _lastRemergeCommandReceived);
+
+                        // Set last remerge report
+                        lastUpdate = System.currentTimeMillis();
+
+                        // Incremental back-off untill we are out of this
+                        reportIdle *= 2;
                     }
-
-                    // We have not received remerge data from slave, report current master status for this slave
-                    logger.warn("We are still remerging, but have not received remerge command from Slave in {} " +
-                            "seconds", (reportIdle / 1000));
-                    logger.warn("remergeQueue: {}, remergePaused: {}, Last remerge command received: {}",
-                            _remergeQueue.size(), _remergePaused.get(), _lastRemergeCommandReceived);
-
-                    // Set last remerge report
-                    lastUpdate = System.currentTimeMillis();
-
-                    // Incremental back-off untill we are out of this
-                    reportIdle *= 2;
                 } else {
                     // reset reportIdle if we continue
                     reportIdle = 60000L;
@@ -746,13 +829,46 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             }
         }
 
-        if (!isOnline()) {
+        releaseIndex(index);
+
+        if (rar == null) {
             throw new SlaveUnavailableException("Slave went offline while processing command");
         }
+        return checkResponse(rar);
+    }
+
+    /**
+     * Non blocking version of {@link #fetchResponse(String)}, allows chaining commands sent to the slave.<br>
+     * The returned future fails with a {@link RemoteIOException} or a {@link SlaveUnavailableException}
+     * wrapped in a {@link CompletionException}, there is no timeout besides the slave going offline.
+     */
+    public CompletableFuture<AsyncResponse> fetchResponseAsync(String index) {
+        CompletableFuture<AsyncResponse> future = _indexWithCommands.get(index);
+        if (future == null) {
+            return CompletableFuture.failedFuture(
+                    new SlaveUnavailableException("Slave went offline while processing command"));
+        }
+        return future.handle((rar, t) -> {
+            releaseIndex(index);
+            try {
+                if (t != null) {
+                    throw new SlaveUnavailableException("Slave went offline while processing command");
+                }
+                return checkResponse(rar);
+            } catch (RemoteIOException | SlaveUnavailableException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
-        AsyncResponse rar = _indexWithCommands.remove(index);
-        _indexPool.push(index);
+    private void releaseIndex(String index) {
+        // entries are dropped when the slave goes offline, the permits are replaced on connect
+        if (_indexWithCommands.remove(index) != null) {
+            _inflightCommands.release();
+        }
+    }
 
+    private AsyncResponse checkResponse(AsyncResponse rar) throws RemoteIOException, SlaveUnavailableException {
         if (rar instanceof AsyncResponseException) {
             Throwable t = ((AsyncResponseException) rar).getThrowable();
 
@@ -824,7 +940,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                         || (getActualTimeout() / 2 < (System.currentTimeMillis() - _lastCommandSent)))) {
                     if (pingIndex != null) {
                         logger.error("Ping lost, no response from slave, sending new ping to slave");
-                        _indexPool.push(pingIndex);
+                        releaseIndex(pingIndex);
                     }
                     pingIndex = SlaveManager.getBasicIssuer().issuePingToSlave(this);
                 } else if (getActualTimeout() < (System.currentTimeMillis() - _lastResponseReceived)) {
@@ -837,21 +953,21 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                 if (isOnline() && !_initRemergeCompleted) {
                     if (_remergePaused.get()) {
                         // Do we need to resume?
-                        if (_remergeQueue.size() <= Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.resume.threshold", "50"))) {
+                        if (_remergeExecutor.getQueueSize() <= Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.resume.threshold", "50"))) {
                             _socket.setSoTimeout(_prevSocketTimeout); // Restore old time out
                             SlaveManager.getBasicIssuer().issueRemergeResumeToSlave(this);
                             _remergePaused.set(false);
-                            logger.debug("Issued remerge resume to slave, current remerge queue is {}", _remergeQueue.size());
+                            logger.debug("Issued remerge resume to slave, current remerge queue is {}", _remergeExecutor.getQueueSize());
                         }
                     } else {
                         // Do we need to pause?
-                        if (_remergeQueue.size() > Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.pause.threshold", "250"))) {
+                        if (_remergeExecutor.getQueueSize() > Integer.parseInt(GlobalContext.getConfig().getMainProperties().getProperty("remerge.pause.threshold", "250"))) {
                             SlaveManager.getBasicIssuer().issueRemergePauseToSlave(this);
                             _prevSocketTimeout = _socket.getSoTimeout();
                             // Set lower timeout so it reacts faster when queueSize goes back down
                             _socket.setSoTimeout(100);
                             _remergePaused.set(true);
-                            logger.debug("Issued remerge pause to slave, current remerge queue is {}", _remergeQueue.size());
+                            logger.debug("Issued remerge pause to slave, current remerge queue is {}", _remergeExecutor.getQueueSize());
                         }
                     }
                 }
@@ -871,7 +987,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
 
                 switch (ar.getIndex()) {
                     case "Remerge" -> putRemergeQueue(new RemergeMessage((AsyncResponseRemerge) ar, this));
-                    case "DiskStatus" -> _status = ((AsyncResponseDiskStatus) ar).getDiskStatus();
+                    case "DiskStatus" -> setDiskStatus(((AsyncResponseDiskStatus) ar).getDiskStatus());
                     case "TransferStatus" -> {
                         TransferStatus ats = ((AsyncResponseTransferStatus) ar).getTransferStatus();
                         RemoteTransfer rt;
@@ -885,20 +1001,24 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
                         rt.updateTransferStatus(ats);
                         if (ats.isFinished()) {
                             removeTransfer(ats.getTransferIndex());
+                        } else {
+                            updateTransfer(rt);
                         }
                     }
+                    case "SiteBotMessage" -> {
+                        String message = ((AsyncResponseSiteBotMessage) ar).getMessage();
+                        GlobalContext.getEventService().publishAsync(new SlaveEvent("MSGSLAVE", message, this));
+                    }
                     default -> {
-                        _indexWithCommands.put(ar.getIndex(), ar);
+                        CompletableFuture<AsyncResponse> future = _indexWithCommands.get(ar.getIndex());
+                        if (future == null) {
+                            logger.debug("Dropping response nobody is waiting for - {}", ar);
+                        } else {
+                            future.complete(ar);
+                        }
                         if (pingIndex != null && pingIndex.equals(ar.getIndex())) {
                             fetchResponse(pingIndex);
                             pingIndex = null;
-                        } else if (ar.getIndex().equals("SiteBotMessage")) {
-                            String message = ((AsyncResponseSiteBotMessage) ar).getMessage();
-                            GlobalContext.getEventService().publishAsync(new SlaveEvent("MSGSLAVE", message, this));
-                        } else {
-                            synchronized (_commandMonitor) {
-                                _commandMonitor.notifyAll();
-                            }
                         }
                     }
                 }
@@ -914,7 +1034,21 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
     }
 
     private void removeTransfer(TransferIndex transferIndex) {
-        RemoteTransfer transfer = _transfers.remove(transferIndex);
+        RemoteTransfer transfer;
+        synchronized (_transferTotals) {
+            transfer = _transfers.remove(transferIndex);
+            _transferTotals.remove(transferIndex);
+            if (transfer != null) {
+                if (transfer.getTransferDirection() == Transfer.TRANSFER_RECEIVING_UPLOAD) {
+                    loadByteCounters();
+                    _bytesReceived.add(transfer.getTransfered());
+                } else if (transfer.getTransferDirection() == Transfer.TRANSFER_SENDING_DOWNLOAD) {
+                    loadByteCounters();
+                    _bytesSent.add(transfer.getTransfered());
+                }
+            }
+            updateSlaveStatus();
+        }
 
         if (transfer == null) {
             if (!isOnline()) {
@@ -951,7 +1085,7 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         // If the slave is still processing the remerge queue clear all
         // outstanding entries
         _lastRemergeCommandReceived = 0L;
-        _remergeQueue.clear();
+        _remergeExecutor.clear();
         _crcQueue.clear();
         if (_sin != null) {
             try {
@@ -976,11 +1110,23 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             }
             _socket = null;
         }
-        if (_indexWithCommands != null)
+        if (_indexWithCommands != null) {
+            // wake up everyone waiting for a response
+            for (CompletableFuture<AsyncResponse> future : _indexWithCommands.values()) {
+                future.completeExceptionally(new SlaveUnavailableException("Slave went offline"));
+            }
             _indexWithCommands.clear();
-        if (_transfers != null)
-            _transfers.clear();
-        _status = null;
+        }
+        if (_transfers != null) {
+            synchronized (_transferTotals) {
+                _transfers.clear();
+                _transferTotals.clear();
+                _status = null;
+                updateSlaveStatus();
+            }
+        } else {
+            _status = null;
+        }
 
         if (_isAvailable) {
             GlobalContext.getEventService().publishAsync(
@@ -1092,7 +1238,11 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
             return;
         }
 
-        _transfers.put(transferIndex, transfer);
+        synchronized (_transferTotals) {
+            _transfers.put(transferIndex, transfer);
+            _transferTotals.update(transferIndex, transfer.getTransferDirection(),
+                    transfer.getXferSpeed(), transfer.getTransfered());
+        }
     }
 
     public RemoteTransfer getTransfer(TransferIndex transferIndex)
@@ -1141,8 +1291,8 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         _renameQueue = Objects.requireNonNullElseGet(renameQueue, ConcurrentLinkedDeque::new);
     }
 
-    public LinkedBlockingQueue<RemergeMessage> getRemergeQueue() {
-        return _remergeQueue;
+    public RemergeExecutor getRemergeExecutor() {
+        return _remergeExecutor;
     }
 
     public LinkedBlockingQueue<FileHandle> getCRCQueue() {
@@ -1208,22 +1358,62 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         return _sin;
     }
 
+    /**
+     * Replaces Java serialization by the binary wire format once negotiated with the slave.<br>
+     * The slave does not send anything before reading our answer, so the input has nothing buffered.
+     */
+    public void setBinaryWireFormat() throws IOException {
+        _sout.flush();
+        _sout = new BinaryObjectOutputStream(new BufferedOutputStream(_socket.getOutputStream()));
+        _sin = new BinaryObjectInputStream(new BufferedInputStream(_socket.getInputStream()));
+    }
+
     public void putRemergeQueue(RemergeMessage message) {
         if (!message.isCompleted()) {
             logger.debug("REMERGE: putting message into queue. (path: {})", message.getDirectory());
         }
-        try {
-            _remergeQueue.put(message);
-            _lastRemergeCommandReceived = System.currentTimeMillis();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        _remergeExecutor.submit(message);
+        _lastRemergeCommandReceived = System.currentTimeMillis();
+    }
+
+    /**
+     * Called once every directory queued before the end of a remerge has been merged.
+     */
+    void remergeQueueFinished() {
+        logger.info("REMERGE: queue finished, {} directories merged", _remergeExecutor.getProcessed());
+        // Wait for crc queue to finish
+        while (!_crcQueue.isEmpty()) {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                logger.debug("REMERGE QUE: thread interrupted waiting for crc queue to drain with exception {}", e.getMessage());
+            }
         }
-        if (_remergeThread == null || !_remergeThread.isAlive()) {
-            _remergeThread = new RemergeThread(getName());
-            _remergeThread.start();
+        if (_fullRemerge) {
+            setProperty("remergeDirectories", Long.toString(_remergeExecutor.getProcessed()));
+        }
+        if (!_initRemergeCompleted) {
+            // First remerge after slave connect
+            makeAvailableAfterRemerge();
         }
     }
 
+    /**
+     * Resets the remerge progress.
+     *
+     * @param full true if the whole slave is about to be remerged, its size is then kept to estimate the next one.
+     */
+    public void beginRemerge(boolean full) {
+        _fullRemerge = full;
+        long expected = 0L;
+        try {
+            expected = Long.parseLong(getProperty("remergeDirectories", "0"));
+        } catch (NumberFormatException e) {
+            // estimated from the queue only
+        }
+        _remergeExecutor.begin(full ? expected : 0L);
+    }
+
     public void putCRCQueue(FileHandle file) {
         logger.debug("CRC: putting file into queue {}", file.getPath());
         try {
@@ -1237,53 +1427,6 @@ public class RemoteSlave extends ExtendedTimedStats implements Runnable, Compara
         }
     }
 
-    private class RemergeThread extends Thread {
-
-        public RemergeThread(String slaveName) {
-            super("RemergeThread - " + slaveName);
-        }
-
-        public void run() {
-            while (true) {
-                RemergeMessage msg;
-                try {
-                    logger.info("REMERGE SIZE: {}", _remergeQueue.size());
-                    msg = _remergeQueue.take();
-                } catch (InterruptedException e) {
-                    logger.debug("REMERGE QUE: fault in node from queue with exception {}", e.getMessage());
-                    continue;
-                }
-
-                if (msg.isCompleted()) {
-                    logger.info("REMERGE: queue finished");
-                    // Wait for crc queue to finish
-                    while (!_crcQueue.isEmpty()) {
-                        try {
-                            Thread.sleep(500);
-                        } catch (InterruptedException e) {
-                            logger.debug("REMERGE QUE: thread interrupted waiting for crc queue to drain with exception {}", e.getMessage());
-                        }
-                    }
-                    if (!_initRemergeCompleted) {
-                        // First remerge after slave connect
-                        msg.getRslave().makeAvailableAfterRemerge();
-                    }
-                    break;
-                }
-
-                DirectoryHandle dir = new DirectoryHandle(msg.getDirectory());
-
-                try {
-                    dir.remerge(msg.getFiles(), msg.getRslave(), msg.getLastModified());
-                } catch (IOException e) {
-                    logger.error("IOException during remerge", e);
-                    msg.getRslave().setOffline("IOException during remerge");
-                    break;
-                }
-            }
-        }
-    }
-
     private class CrcThread extends Thread {
 
         private boolean _finished = false;
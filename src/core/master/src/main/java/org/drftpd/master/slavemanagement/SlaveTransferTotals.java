@@ -0,0 +1,122 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.drftpd.common.slave.DiskStatus;
+import org.drftpd.common.slave.TransferIndex;
+import org.drftpd.slave.network.Transfer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running totals of the transfers of a slave, each transfer update replaces what was counted of it
+ * so the totals never have to be summed again from all the transfers.
+ * <p>
+ * Not thread safe.
+ */
+class SlaveTransferTotals {
+
+    private static class Counted {
+        private final char _direction;
+
+        private final long _speed;
+
+        private final long _transferred;
+
+        private Counted(char direction, long speed, long transferred) {
+            _direction = direction;
+            _speed = speed;
+            _transferred = transferred;
+        }
+    }
+
+    private final Map<TransferIndex, Counted> _transfers = new HashMap<>();
+
+    private long _throughputReceiving;
+
+    private long _throughputSending;
+
+    private int _transfersReceiving;
+
+    private int _transfersSending;
+
+    private long _bytesReceiving;
+
+    private long _bytesSending;
+
+    /**
+     * Counts the transfer as it is now instead of how it was last counted.
+     */
+    void update(TransferIndex index, char direction, long speed, long transferred) {
+        Counted old = _transfers.put(index, new Counted(direction, speed, transferred));
+        if (old != null) {
+            add(old, -1);
+        }
+        add(_transfers.get(index), 1);
+    }
+
+    /**
+     * @return the bytes the transfer moved when last counted, 0 if it was not counted.
+     */
+    long remove(TransferIndex index) {
+        Counted old = _transfers.remove(index);
+        if (old == null) {
+            return 0L;
+        }
+        add(old, -1);
+        return old._transferred;
+    }
+
+    void clear() {
+        _transfers.clear();
+        _throughputReceiving = 0L;
+        _throughputSending = 0L;
+        _transfersReceiving = 0;
+        _transfersSending = 0;
+        _bytesReceiving = 0L;
+        _bytesSending = 0L;
+    }
+
+    private void add(Counted counted, int sign) {
+        switch (counted._direction) {
+            case Transfer.TRANSFER_RECEIVING_UPLOAD -> {
+                _throughputReceiving += sign * counted._speed;
+                _transfersReceiving += sign;
+                _bytesReceiving += sign * counted._transferred;
+            }
+            case Transfer.TRANSFER_SENDING_DOWNLOAD -> {
+                _throughputSending += sign * counted._speed;
+                _transfersSending += sign;
+                _bytesSending += sign * counted._transferred;
+            }
+            default -> {
+                // not started yet, nothing to count
+            }
+        }
+    }
+
+    /**
+     * @param bytesSent     bytes sent by the finished transfers, the running ones are added to it.
+     * @param bytesReceived likewise for the received bytes.
+     */
+    SlaveStatus toSlaveStatus(DiskStatus diskStatus, long bytesSent, long bytesReceived) {
+        return new SlaveStatus(diskStatus, bytesSent + _bytesSending, bytesReceived + _bytesReceiving,
+                (int) _throughputReceiving, _transfersReceiving, (int) _throughputSending, _transfersSending);
+    }
+}
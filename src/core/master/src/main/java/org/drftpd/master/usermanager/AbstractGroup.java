@@ -119,9 +119,12 @@ public abstract class AbstractGroup extends Group implements Commitable {
     }
 
     public void rename(String groupname) throws GroupExistsException, GroupFileException {
+        String oldGroupname = _groupname;
         getAbstractUserManager().renameGroup(this, groupname); // throws ObjectExistsException
         getAbstractUserManager().deleteGroup(this.getName());
         _groupname = groupname;
+        // once the members read the new name, they are not committed by the rename
+        getAbstractUserManager().getRankings().renameGroup(oldGroupname, groupname);
         commit(); // throws IOException
     }
 
@@ -25,6 +25,7 @@ import org.drftpd.common.exceptions.DuplicateElementException;
 import org.drftpd.common.io.PermissionDeniedException;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.commands.usermanagement.UserManagement;
+import org.drftpd.master.usermanager.util.UserRankings;
 import org.drftpd.slave.exceptions.FileExistsException;
 import org.reflections.Reflections;
 
@@ -50,6 +51,8 @@ public abstract class AbstractUserManager implements UserManager {
 
     private ArrayList<UserResetPostHookInterface> _postResetHooks = new ArrayList<>();
 
+    private final UserRankings _rankings = new UserRankings(this);
+
     public static GlobalContext getGlobalContext() {
         return GlobalContext.getGlobalContext();
     }
@@ -141,10 +144,13 @@ public abstract class AbstractUserManager implements UserManager {
     /**
      * final for now to remove duplicate implementations
      */
-    public synchronized void deleteUser(String username) {
-        if (!getUserFile(username).delete())
-            throw new RuntimeException(new PermissionDeniedException());
-        _users.remove(username);
+    public void deleteUser(String username) {
+        synchronized (this) {
+            if (!getUserFile(username).delete())
+                throw new RuntimeException(new PermissionDeniedException());
+            _users.remove(username);
+        }
+        _rankings.remove(username);
     }
 
     public synchronized void deleteGroup(String groupname) {
@@ -155,6 +161,10 @@ public abstract class AbstractUserManager implements UserManager {
 
     protected abstract File getUserFile(String username);
 
+    public UserRankings getRankings() {
+        return _rankings;
+    }
+
     protected abstract File getGroupFile(String groupname);
 
     public abstract Collection<Group> getAllGroups();
@@ -300,9 +310,15 @@ public abstract class AbstractUserManager implements UserManager {
         for (UserResetPreHookInterface preHook : _preResetHooks) {
             preHook.resetDay(d);
         }
-        for (User user : getAllUsers()) {
-            user.resetDay(d);
-            user.commit();
+        Collection<User> users = getAllUsers();
+        _rankings.invalidate();
+        try {
+            for (User user : users) {
+                user.resetDay(d);
+                user.commit();
+            }
+        } finally {
+            _rankings.reload(users);
         }
         // Run post reset hooks
         for (UserResetPostHookInterface postHook : _postResetHooks) {
@@ -342,9 +358,15 @@ public abstract class AbstractUserManager implements UserManager {
         for (UserResetPreHookInterface preHook : _preResetHooks) {
             preHook.resetMonth(d);
         }
-        for (User user : getAllUsers()) {
-            user.resetMonth(d);
-            user.commit();
+        Collection<User> users = getAllUsers();
+        _rankings.invalidate();
+        try {
+            for (User user : users) {
+                user.resetMonth(d);
+                user.commit();
+            }
+        } finally {
+            _rankings.reload(users);
         }
         // Run post reset hooks
         for (UserResetPostHookInterface postHook : _postResetHooks) {
@@ -363,9 +385,15 @@ public abstract class AbstractUserManager implements UserManager {
         for (UserResetPreHookInterface preHook : _preResetHooks) {
             preHook.resetWeek(d);
         }
-        for (User user : getAllUsers()) {
-            user.resetWeek(d);
-            user.commit();
+        Collection<User> users = getAllUsers();
+        _rankings.invalidate();
+        try {
+            for (User user : users) {
+                user.resetWeek(d);
+                user.commit();
+            }
+        } finally {
+            _rankings.reload(users);
         }
         // Run post reset hooks
         for (UserResetPostHookInterface postHook : _postResetHooks) {
@@ -385,9 +413,15 @@ public abstract class AbstractUserManager implements UserManager {
         for (UserResetPreHookInterface preHook : _preResetHooks) {
             preHook.resetYear(d);
         }
-        for (User user : getAllUsers()) {
-            user.resetYear(d);
-            user.commit();
+        Collection<User> users = getAllUsers();
+        _rankings.invalidate();
+        try {
+            for (User user : users) {
+                user.resetYear(d);
+                user.commit();
+            }
+        } finally {
+            _rankings.reload(users);
         }
         // Run post reset hooks
         for (UserResetPostHookInterface postHook : _postResetHooks) {
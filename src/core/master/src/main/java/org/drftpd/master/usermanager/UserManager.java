@@ -18,6 +18,7 @@
 package org.drftpd.master.usermanager;
 
 import org.drftpd.master.cron.TimeEventInterface;
+import org.drftpd.master.usermanager.util.UserRankings;
 import org.drftpd.slave.exceptions.FileExistsException;
 
 import java.util.Collection;
@@ -66,4 +67,9 @@ public interface UserManager extends TimeEventInterface {
     boolean isGroupAdmin(User user);
 
     Group getGroupByGroupAdminOfUser(User groupadminUser, User requestedUser);
+
+    /**
+     * @return the users and groups sorted by their transfer stats.
+     */
+    UserRankings getRankings();
 }
@@ -73,6 +73,9 @@ public class BeanUser extends AbstractUser {
 
     public void commit() {
         CommitManager.getCommitManager().writeImmediately(this);
+        if (!_purged) {
+            _um.getRankings().update(this);
+        }
     }
 
     public void purge() {
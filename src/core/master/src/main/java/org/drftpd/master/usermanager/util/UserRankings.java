@@ -0,0 +1,520 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.usermanager.util;
+
+import org.drftpd.master.stats.ExtendedTimedStats;
+import org.drftpd.master.usermanager.Group;
+import org.drftpd.master.usermanager.User;
+import org.drftpd.master.usermanager.UserManager;
+
+import java.util.*;
+
+/**
+ * Users and primary groups sorted by transferred bytes for each of the stats types, ALUP, ALDN, MONTHUP,
+ * MONTHDN, WKUP, WKDN, DAYUP and DAYDN, so the stats commands do not load and sort every user.<br>
+ * Every user is loaded once, on the first query, afterwards the rankings follow the users as they are
+ * committed. The user manager rebuilds them after resetting the stats of every user.<br>
+ * Rankings are sorted arrays, a place is found with a binary search and a user whose stats changed is
+ * only shifted between its old and its new place.
+ */
+public class UserRankings {
+
+    private static final String[] PERIODS = {"AL", "MONTH", "WK", "DAY"};
+
+    private static final int TYPES = 2 * ExtendedTimedStats.P_SIZE;
+
+    private final UserManager _userManager;
+
+    private final Map<String, UserEntry> _users = new HashMap<>();
+
+    private final Map<String, GroupEntry> _groups = new HashMap<>();
+
+    private final Ranking[] _userRankings = new Ranking[TYPES];
+
+    private final Ranking[] _groupRankings = new Ranking[TYPES];
+
+    private boolean _loaded;
+
+    // users committed before the rankings were loaded or while they are rebuilt
+    private Map<String, Snapshot> _pending = new LinkedHashMap<>();
+
+    public UserRankings(UserManager userManager) {
+        _userManager = userManager;
+        for (int type = 0; type < TYPES; type++) {
+            _userRankings[type] = new Ranking(type);
+            _groupRankings[type] = new Ranking(type);
+        }
+    }
+
+    /**
+     * @return the index of a type such as "ALUP" or "wkdn", twice the period plus one for downloads.
+     */
+    public static int getType(String type) {
+        String upper = type.toUpperCase();
+        boolean up = upper.endsWith("UP");
+        if (!up && !upper.endsWith("DN")) {
+            throw new IllegalArgumentException("unhandled type = " + type);
+        }
+        String period = upper.substring(0, upper.length() - 2);
+        for (int p = 0; p < PERIODS.length; p++) {
+            if (PERIODS[p].equals(period)) {
+                return 2 * p + (up ? 0 : 1);
+            }
+        }
+        throw new IllegalArgumentException("unhandled type = " + type);
+    }
+
+    /**
+     * Follows the stats and the primary group of a user that was just committed.
+     */
+    public void update(User user) {
+        // read outside of the lock, loading the group may wait for the user manager
+        Snapshot snapshot = new Snapshot(user);
+        synchronized (this) {
+            if (!_loaded) {
+                _pending.remove(snapshot._name);
+                _pending.put(snapshot._name, snapshot);
+                return;
+            }
+            apply(snapshot);
+        }
+    }
+
+    /**
+     * Forgets a user whose file was deleted.
+     */
+    public synchronized void remove(String username) {
+        if (!_loaded) {
+            _pending.remove(username);
+            _pending.put(username, null);
+            return;
+        }
+        forget(username);
+    }
+
+    /**
+     * Follows a group being renamed, its members are not committed by the rename.
+     */
+    public synchronized void renameGroup(String oldName, String newName) {
+        if (!_loaded) {
+            for (Snapshot snapshot : _pending.values()) {
+                if (snapshot != null && oldName.equals(snapshot._group)) {
+                    snapshot._group = newName;
+                }
+            }
+            return;
+        }
+        GroupEntry group = _groups.remove(oldName);
+        if (group == null) {
+            return;
+        }
+        for (Ranking ranking : _groupRankings) {
+            ranking.remove(group);
+        }
+        // the name breaks ties in the rankings, the group is placed again under its new one
+        GroupEntry renamed = new GroupEntry(newName);
+        System.arraycopy(group._bytes, 0, renamed._bytes, 0, TYPES);
+        System.arraycopy(group._files, 0, renamed._files, 0, TYPES);
+        System.arraycopy(group._time, 0, renamed._time, 0, TYPES);
+        renamed._members = group._members;
+        _groups.put(newName, renamed);
+        for (Ranking ranking : _groupRankings) {
+            ranking.add(renamed);
+        }
+        for (UserEntry user : _users.values()) {
+            if (oldName.equals(user._group)) {
+                user._group = newName;
+            }
+        }
+    }
+
+    /**
+     * Drops the rankings until {@link #reload(Collection)}, used while the stats of every user are reset,
+     * rather than shifting every user on its own.
+     */
+    public synchronized void invalidate() {
+        if (_loaded) {
+            _loaded = false;
+            _pending = new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Rebuilds the rankings from the given users, dropped rankings are otherwise loaded on the next query.
+     */
+    public void reload(Collection<User> users) {
+        synchronized (this) {
+            if (_loaded) {
+                return;
+            }
+            // superseded by what is read now, the users may have been listed before they were removed though
+            _pending.values().removeIf(Objects::nonNull);
+        }
+        List<Snapshot> snapshots = new ArrayList<>(users.size());
+        for (User user : users) {
+            snapshots.add(new Snapshot(user));
+        }
+        synchronized (this) {
+            if (_loaded) {
+                return;
+            }
+            _users.clear();
+            _groups.clear();
+            for (Ranking ranking : _userRankings) {
+                ranking.clear();
+            }
+            for (Ranking ranking : _groupRankings) {
+                ranking.clear();
+            }
+            for (Snapshot snapshot : snapshots) {
+                apply(snapshot);
+            }
+            // changed since they were read
+            for (Map.Entry<String, Snapshot> pending : _pending.entrySet()) {
+                if (pending.getValue() == null) {
+                    forget(pending.getKey());
+                } else {
+                    apply(pending.getValue());
+                }
+            }
+            _pending = null;
+            _loaded = true;
+        }
+    }
+
+    private void load() {
+        synchronized (this) {
+            if (_loaded) {
+                return;
+            }
+        }
+        reload(_userManager.getAllUsers());
+    }
+
+    private void apply(Snapshot snapshot) {
+        UserEntry entry = _users.get(snapshot._name);
+        if (entry == null) {
+            entry = new UserEntry(snapshot._name);
+            _users.put(entry._name, entry);
+            System.arraycopy(snapshot._bytes, 0, entry._bytes, 0, TYPES);
+            for (Ranking ranking : _userRankings) {
+                ranking.add(entry);
+            }
+        } else {
+            for (int type = 0; type < TYPES; type++) {
+                if (snapshot._bytes[type] != entry._bytes[type]) {
+                    Ranking ranking = _userRankings[type];
+                    int index = ranking.indexOf(entry);
+                    entry._bytes[type] = snapshot._bytes[type];
+                    ranking.move(index);
+                }
+            }
+        }
+        moveToGroup(entry, snapshot._group, snapshot._bytes, snapshot._files, snapshot._time);
+    }
+
+    private void forget(String username) {
+        UserEntry entry = _users.remove(username);
+        if (entry == null) {
+            return;
+        }
+        for (Ranking ranking : _userRankings) {
+            ranking.remove(entry);
+        }
+        moveToGroup(entry, null, new long[TYPES], new long[TYPES], new long[TYPES]);
+    }
+
+    /**
+     * Takes what the user counted for out of its group and adds the new stats to its new group,
+     * the group stats of the user are the ones it was last counted with.
+     */
+    private void moveToGroup(UserEntry entry, String groupname, long[] bytes, long[] files, long[] time) {
+        if (entry._group != null) {
+            GroupEntry group = _groups.get(entry._group);
+            boolean same = entry._group.equals(groupname);
+            for (int type = 0; type < TYPES; type++) {
+                long value = group._bytes[type] - entry._counted[type] + (same ? bytes[type] : 0);
+                if (value != group._bytes[type]) {
+                    Ranking ranking = _groupRankings[type];
+                    int index = ranking.indexOf(group);
+                    group._bytes[type] = value;
+                    ranking.move(index);
+                }
+                group._files[type] += (same ? files[type] : 0) - entry._files[type];
+                group._time[type] += (same ? time[type] : 0) - entry._time[type];
+            }
+            if (same) {
+                System.arraycopy(bytes, 0, entry._counted, 0, TYPES);
+                System.arraycopy(files, 0, entry._files, 0, TYPES);
+                System.arraycopy(time, 0, entry._time, 0, TYPES);
+                return;
+            }
+            if (--group._members == 0) {
+                for (Ranking ranking : _groupRankings) {
+                    ranking.remove(group);
+                }
+                _groups.remove(group._name);
+            }
+        }
+        entry._group = groupname;
+        System.arraycopy(bytes, 0, entry._counted, 0, TYPES);
+        System.arraycopy(files, 0, entry._files, 0, TYPES);
+        System.arraycopy(time, 0, entry._time, 0, TYPES);
+        if (groupname == null) {
+            return;
+        }
+        GroupEntry group = _groups.get(groupname);
+        if (group == null) {
+            group = new GroupEntry(groupname);
+            _groups.put(groupname, group);
+            for (Ranking ranking : _groupRankings) {
+                ranking.add(group);
+            }
+        }
+        group._members++;
+        for (int type = 0; type < TYPES; type++) {
+            if (bytes[type] != 0) {
+                Ranking ranking = _groupRankings[type];
+                int index = ranking.indexOf(group);
+                group._bytes[type] += bytes[type];
+                ranking.move(index);
+            }
+            group._files[type] += files[type];
+            group._time[type] += time[type];
+        }
+    }
+
+    /**
+     * @return the place of the user, one plus the number of users who transferred more.
+     */
+    public int getUserPlace(String type, User user) {
+        int t = getType(type);
+        long bytes = UserTransferStats.getStats(type, user);
+        load();
+        synchronized (this) {
+            return _userRankings[t].countAbove(bytes) + 1;
+        }
+    }
+
+    /**
+     * @return the names of the users from the given place, zero based, best first.
+     */
+    public List<String> getUsers(String type, int from, int count) {
+        int t = getType(type);
+        load();
+        synchronized (this) {
+            return _userRankings[t].getNames(from, count);
+        }
+    }
+
+    /**
+     * @return the names of the primary groups from the given place, zero based, best first.
+     */
+    public List<String> getGroups(String type, int from, int count) {
+        int t = getType(type);
+        load();
+        synchronized (this) {
+            return _groupRankings[t].getNames(from, count);
+        }
+    }
+
+    /**
+     * @return the place of the group, one plus the number of groups whose members transferred more.
+     */
+    public int getGroupPlace(String type, String groupname) {
+        int t = getType(type);
+        load();
+        synchronized (this) {
+            GroupEntry group = _groups.get(groupname);
+            return _groupRankings[t].countAbove(group == null ? 0 : group._bytes[t]) + 1;
+        }
+    }
+
+    /**
+     * @return the bytes, files and milliseconds transferred by the users whose primary group it is
+     * and the number of such users, zeros for an unknown group.
+     */
+    public long[] getGroupStats(String type, String groupname) {
+        int t = getType(type);
+        load();
+        synchronized (this) {
+            GroupEntry group = _groups.get(groupname);
+            if (group == null) {
+                return new long[4];
+            }
+            return new long[]{group._bytes[t], group._files[t], group._time[t], group._members};
+        }
+    }
+
+    /**
+     * What is read from a user, the stats are indexed by type.
+     */
+    private static class Snapshot {
+        private final String _name;
+        private String _group;
+        private final long[] _bytes = new long[TYPES];
+        private final long[] _files = new long[TYPES];
+        private final long[] _time = new long[TYPES];
+
+        private Snapshot(User user) {
+            _name = user.getName();
+            Group group = user.getGroup();
+            _group = group == null ? null : group.getName();
+            for (int period = 0; period < ExtendedTimedStats.P_SIZE; period++) {
+                _bytes[2 * period] = user.getUploadedBytesForPeriod(period);
+                _files[2 * period] = user.getUploadedFilesForPeriod(period);
+                _time[2 * period] = user.getUploadedTimeForPeriod(period);
+                _bytes[2 * period + 1] = user.getDownloadedBytesForPeriod(period);
+                _files[2 * period + 1] = user.getDownloadedFilesForPeriod(period);
+                _time[2 * period + 1] = user.getDownloadedTimeForPeriod(period);
+            }
+        }
+    }
+
+    private abstract static class Entry {
+        protected final String _name;
+        protected final long[] _bytes = new long[TYPES];
+        protected final long[] _files = new long[TYPES];
+        protected final long[] _time = new long[TYPES];
+
+        private Entry(String name) {
+            _name = name;
+        }
+    }
+
+    private static class UserEntry extends Entry {
+        private String _group;
+        // the bytes added to the group, the ranked ones are updated first
+        private final long[] _counted = new long[TYPES];
+
+        private UserEntry(String name) {
+            super(name);
+        }
+    }
+
+    private static class GroupEntry extends Entry {
+        private int _members;
+
+        private GroupEntry(String name) {
+            super(name);
+        }
+    }
+
+    /**
+     * Entries sorted by the bytes of one type, most first, then by name.
+     */
+    private static class Ranking {
+        private final int _type;
+        private Entry[] _entries = new Entry[16];
+        private int _size;
+
+        private Ranking(int type) {
+            _type = type;
+        }
+
+        private int compare(Entry entry, long bytes, String name) {
+            int result = Long.compare(bytes, entry._bytes[_type]);
+            return result != 0 ? result : entry._name.compareTo(name);
+        }
+
+        /**
+         * @return the index of the entry, or where it would go as -(index + 1).
+         */
+        private int search(long bytes, String name, int low, int high) {
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int result = compare(_entries[mid], bytes, name);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private int indexOf(Entry entry) {
+            return search(entry._bytes[_type], entry._name, 0, _size);
+        }
+
+        private void add(Entry entry) {
+            if (_size == _entries.length) {
+                _entries = Arrays.copyOf(_entries, _size * 2);
+            }
+            int index = -(indexOf(entry) + 1);
+            System.arraycopy(_entries, index, _entries, index + 1, _size - index);
+            _entries[index] = entry;
+            _size++;
+        }
+
+        private void remove(Entry entry) {
+            int index = indexOf(entry);
+            System.arraycopy(_entries, index + 1, _entries, index, _size - index - 1);
+            _entries[--_size] = null;
+        }
+
+        /**
+         * Shifts the entry at the given index, whose bytes changed, to its new place.
+         */
+        private void move(int index) {
+            Entry entry = _entries[index];
+            long bytes = entry._bytes[_type];
+            if (index > 0 && compare(_entries[index - 1], bytes, entry._name) > 0) {
+                int target = -(search(bytes, entry._name, 0, index) + 1);
+                System.arraycopy(_entries, target, _entries, target + 1, index - target);
+                _entries[target] = entry;
+            } else if (index + 1 < _size && compare(_entries[index + 1], bytes, entry._name) < 0) {
+                int target = -(search(bytes, entry._name, index + 1, _size) + 1) - 1;
+                System.arraycopy(_entries, index + 1, _entries, index, target - index);
+                _entries[target] = entry;
+            }
+        }
+
+        /**
+         * @return the number of entries with more bytes.
+         */
+        private int countAbove(long bytes) {
+            int low = 0;
+            int high = _size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (_entries[mid]._bytes[_type] > bytes) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private List<String> getNames(int from, int count) {
+            List<String> names = new ArrayList<>(Math.max(0, Math.min(count, _size - from)));
+            for (int i = Math.max(0, from); i < _size && i < from + count; i++) {
+                names.add(_entries[i]._name);
+            }
+            return names;
+        }
+
+        private void clear() {
+            Arrays.fill(_entries, 0, _size, null);
+            _size = 0;
+        }
+    }
+}
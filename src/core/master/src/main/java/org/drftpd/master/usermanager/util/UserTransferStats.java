@@ -20,8 +20,6 @@ package org.drftpd.master.usermanager.util;
 import org.drftpd.master.usermanager.User;
 import org.drftpd.master.usermanager.UserManager;
 
-import java.util.Collection;
-
 /**
  * @author djb61
  * @version $Id$
@@ -31,19 +29,7 @@ public class UserTransferStats {
     public static int getStatsPlace(String command, User user,
                                     UserManager userman) {
         // AL MONTH WK DAY
-        int place = 1;
-        long bytes = getStats(command, user);
-        Collection<User> users = userman.getAllUsers();
-
-        for (User tempUser : users) {
-            long tempBytes = getStats(command, tempUser);
-
-            if (tempBytes > bytes) {
-                place++;
-            }
-        }
-
-        return place;
+        return userman.getRankings().getUserPlace(command, user);
     }
 
     public static long getStats(String command, User user) {
@@ -0,0 +1,204 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A template of {@link ReplacerUtils#jprintf(String, Map)} parsed once, made of literal text and
+ * variables with their padding options.<br>
+ * Variables are written <code>${name}</code>, <code>${name,size}</code>, <code>${name,-size}</code> to
+ * align left or <code>${name,size.max}</code> to also cut values longer than max. A variable which is
+ * not written this way is kept as is, <code>$${</code> is written <code>${</code>.
+ */
+public class ReplacerTemplate {
+    private static final Logger logger = LogManager.getLogger(ReplacerTemplate.class);
+
+    private static final Pattern VARIABLE_NAME = Pattern.compile("[\\sa-zA-Z0-9@\\.,_\\(\\)-]+");
+
+    private static final String PREFIX = "${";
+
+    private static final String DEFAULT_DELIMITER = ":-";
+
+    private final String _template;
+
+    // String for literal text, Variable otherwise
+    private final Object[] _parts;
+
+    private final int _literalLength;
+
+    private ReplacerTemplate(String template, List<Object> parts) {
+        _template = template;
+        _parts = parts.toArray();
+        int length = 0;
+        for (Object part : _parts) {
+            if (part instanceof String) {
+                length += ((String) part).length();
+            }
+        }
+        _literalLength = length;
+    }
+
+    /**
+     * @throws NumberFormatException if the size of a variable is not a number.
+     */
+    public static ReplacerTemplate compile(String template) {
+        List<Object> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (true) {
+            int start = template.indexOf(PREFIX, pos);
+            if (start == -1) {
+                literal.append(template, pos, template.length());
+                break;
+            }
+            if (start > pos && template.charAt(start - 1) == '$') {
+                // escaped
+                literal.append(template, pos, start - 1).append(PREFIX);
+                pos = start + PREFIX.length();
+                continue;
+            }
+            int end = template.indexOf('}', start + PREFIX.length());
+            if (end == -1) {
+                literal.append(template, pos, template.length());
+                break;
+            }
+            literal.append(template, pos, start);
+            Variable variable = parseVariable(template.substring(start + PREFIX.length(), end));
+            if (variable == null) {
+                literal.append(template, start, end + 1);
+            } else {
+                if (literal.length() > 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(variable);
+            }
+            pos = end + 1;
+        }
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+        }
+        return new ReplacerTemplate(template, parts);
+    }
+
+    private static Variable parseVariable(String variable) {
+        int delimiter = variable.indexOf(DEFAULT_DELIMITER);
+        if (delimiter != -1) {
+            String name = variable.substring(0, delimiter);
+            if (name.isEmpty() || name.indexOf(',') != -1 || !VARIABLE_NAME.matcher(name).matches()) {
+                return null;
+            }
+            return new Variable(name, variable.substring(delimiter + DEFAULT_DELIMITER.length()), false, 0, -1);
+        }
+        if (!VARIABLE_NAME.matcher(variable).matches()) {
+            return null;
+        }
+        if (variable.indexOf(',') == -1) {
+            return new Variable(variable, null, false, 0, -1);
+        }
+        String[] varSplitter = variable.split(",");
+        // We only allow 1 comma in a variable description
+        if (varSplitter.length != 2) {
+            logger.warn("Variable format anomaly detected for variable {}", variable);
+            return null;
+        }
+        String options = varSplitter[1];
+        boolean alignLeft = false;
+        if (options.charAt(0) == '-') {
+            alignLeft = true;
+            options = options.substring(1);
+        }
+        int fieldSize;
+        int maxSize = -1;
+        if (options.indexOf('.') != -1) {
+            String[] optionsSplit = options.split("\\.");
+            if (optionsSplit.length != 2) {
+                logger.warn("Variable format anomaly detected for variable {}", variable);
+                return null;
+            }
+            fieldSize = Integer.parseInt(optionsSplit[0]);
+            maxSize = Integer.parseInt(optionsSplit[1]);
+        } else {
+            fieldSize = Integer.parseInt(options);
+        }
+        return new Variable(varSplitter[0], null, alignLeft, fieldSize, maxSize);
+    }
+
+    /**
+     * Only the variables used by the template are read from the environment.
+     */
+    public String format(Map<String, Object> env) {
+        StringBuilder result = new StringBuilder(_literalLength + 16 * _parts.length);
+        for (Object part : _parts) {
+            if (part instanceof String) {
+                result.append((String) part);
+            } else {
+                ((Variable) part).append(result, env);
+            }
+        }
+        logger.debug("Final result for template [{}] is [{}]", _template, result);
+        return result.toString();
+    }
+
+    public String getTemplate() {
+        return _template;
+    }
+
+    private static class Variable {
+        private final String _name;
+        private final String _default;
+        private final boolean _alignLeft;
+        private final int _fieldSize;
+        private final int _maxSize;
+
+        private Variable(String name, String def, boolean alignLeft, int fieldSize, int maxSize) {
+            _name = name;
+            _default = def;
+            _alignLeft = alignLeft;
+            _fieldSize = fieldSize;
+            _maxSize = maxSize;
+        }
+
+        private void append(StringBuilder result, Map<String, Object> env) {
+            Object currentData = env.get(_name);
+            String currentValue;
+            if (currentData != null) {
+                currentValue = currentData.toString();
+            } else {
+                currentValue = _default != null ? _default : "[Unknown]";
+            }
+            int valueSize = currentValue.length();
+            if (_maxSize != -1 && valueSize > _maxSize) {
+                logger.debug("Value {} is longer than {} characters for variable {}, cutting it", currentValue, _maxSize, _name);
+                currentValue = currentValue.substring(0, _maxSize);
+            } else if (_fieldSize > valueSize) {
+                currentValue = _alignLeft ? StringUtils.rightPad(currentValue, _fieldSize)
+                        : StringUtils.leftPad(currentValue, _fieldSize);
+            }
+            result.append(currentValue);
+        }
+    }
+}
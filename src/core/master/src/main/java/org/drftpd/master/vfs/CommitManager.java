@@ -23,16 +23,21 @@ import org.apache.logging.log4j.Logger;
 import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.GlobalContext;
 
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.Properties;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This classes handle all XML commits.
  * The main purpose of having this is to avoid serializing the same object tons of times,
  * even if its data was not changed.
+ * <br><br>
+ * Queued objects are kept in a set keyed by the object itself, so queueing an object that is already
+ * waiting is a constant time no-op and a queued object renamed meanwhile is written under its new name.
+ * Objects are written once they are older than 'disk.commit.delay' or as soon as
+ * 'disk.commit.batch.size' objects are waiting, sorted by name and in batches of
+ * at most 'disk.commit.batch.size' objects.
  *
  * @author zubov
  * @version $Id$
@@ -43,18 +48,31 @@ public class CommitManager {
 
     private static CommitManager _instance;
 
-    private final ConcurrentLinkedQueue<CommitableWrapper> _commitQueue;
+    private final Map<CommitKey, CommitableWrapper> _commitQueue;
+    private final Map<CommitKey, CommitableWrapper> _inFlight;
+    // deleted directories and when they were removed, what is queued below them is dropped when flushed
+    private final Map<CommitKey, Long> _removedDirs;
+    private final Object _flushMonitor = new Object();
     private boolean _isStarted;
-    private final AtomicInteger _queueSize;
     private volatile boolean _drainQueue;
+    private volatile boolean _flushRequested;
+    private volatile long _commitDelay = 10000;
+    private volatile int _batchSize = 1000;
     private Thread _commitThread;
 
+    private final LongAdder _coalesced = new LongAdder();
+    private final LongAdder _written = new LongAdder();
+    private final AtomicLong _maxFlushTime = new AtomicLong();
+    private volatile long _lastFlushTime;
+    private volatile int _lastFlushSize;
+
     /**
      * Private constructor in order to make this class a Singleton.
      */
     private CommitManager() {
-        _commitQueue = new ConcurrentLinkedQueue<>();
-        _queueSize = new AtomicInteger();
+        _commitQueue = new ConcurrentHashMap<>();
+        _inFlight = new ConcurrentHashMap<>();
+        _removedDirs = new ConcurrentHashMap<>();
     }
 
     /**
@@ -96,12 +114,18 @@ public class CommitManager {
      * @param object The Commitable object
      */
     public void add(Commitable object) {
-        if (contains(object)) {
-            return;
+        CommitableWrapper cw = new CommitableWrapper(object);
+        if (_commitQueue.putIfAbsent(cw.getKey(), cw) != null) {
             // object already queued to write
+            _coalesced.increment();
+            return;
+        }
+        if (!_flushRequested && _commitQueue.size() >= _batchSize) {
+            _flushRequested = true;
+            synchronized (_flushMonitor) {
+                _flushMonitor.notifyAll();
+            }
         }
-        _commitQueue.offer(new CommitableWrapper(object));
-        _queueSize.incrementAndGet();
     }
 
     /**
@@ -123,13 +147,24 @@ public class CommitManager {
      */
     public boolean remove(Commitable object) {
         if (object == null) return false;
-        for (Iterator<CommitableWrapper> iter = _commitQueue.iterator(); iter.hasNext(); ) {
-            CommitableWrapper cw = iter.next();
-            if (cw != null && cw.equals(object)) {
-                iter.remove();
-                _queueSize.decrementAndGet();
+        if (object instanceof VirtualFileSystemDirectory) {
+            // what is queued below a deleted directory would be written back under its path
+            _removedDirs.put(new CommitKey(object), System.currentTimeMillis());
+        }
+        return _commitQueue.remove(new CommitKey(object)) != null;
+    }
+
+    private boolean isBelowRemovedDir(Commitable object) {
+        if (_removedDirs.isEmpty() || !(object instanceof VirtualFileSystemInode)
+                || object instanceof VirtualFileSystemRoot) {
+            return false;
+        }
+        VirtualFileSystemDirectory parent = ((VirtualFileSystemInode) object).getParent();
+        while (parent != null) {
+            if (_removedDirs.containsKey(new CommitKey(parent))) {
                 return true;
             }
+            parent = parent.isRoot() ? null : parent.getParent();
         }
         return false;
     }
@@ -140,20 +175,50 @@ public class CommitManager {
      */
     public boolean contains(Commitable object) {
         if (object == null) return false;
-
-        for (CommitableWrapper cw : _commitQueue) {
-            if (cw != null && cw.equals(object)) {
-                return true;
-            }
-        }
-        return false;
+        CommitKey key = new CommitKey(object);
+        return (_commitQueue.containsKey(key) || _inFlight.containsKey(key)) && !isBelowRemovedDir(object);
     }
 
     /**
      * @return the number of outstanding objects to commit.
      */
     public int getQueueSize() {
-        return _queueSize.get();
+        return _commitQueue.size() + _inFlight.size();
+    }
+
+    /**
+     * @return the number of commits that were merged into an already queued write.
+     */
+    public long getCoalescedCount() {
+        return _coalesced.sum();
+    }
+
+    /**
+     * @return the number of objects written by the commit queue.
+     */
+    public long getWrittenCount() {
+        return _written.sum();
+    }
+
+    /**
+     * @return the number of objects written by the last flush.
+     */
+    public int getLastFlushSize() {
+        return _lastFlushSize;
+    }
+
+    /**
+     * @return how long the last flush took, in milliseconds.
+     */
+    public long getLastFlushTime() {
+        return _lastFlushTime;
+    }
+
+    /**
+     * @return the longest time a flush took, in milliseconds.
+     */
+    public long getMaxFlushTime() {
+        return _maxFlushTime.get();
     }
 
     /**
@@ -162,7 +227,9 @@ public class CommitManager {
      * @param object
      */
     public void flushImmediate(Commitable object) {
-        if (contains(object)) {
+        CommitKey key = new CommitKey(object);
+        // an object being written by the CommitHandler might not have reached the disk yet
+        if (_commitQueue.remove(key) != null || _inFlight.containsKey(key)) {
             ClassLoader prevCL = Thread.currentThread().getContextClassLoader();
             writeCommitable(object);
             Thread.currentThread().setContextClassLoader(prevCL);
@@ -176,39 +243,120 @@ public class CommitManager {
     public void enableQueueDrain() {
         _drainQueue = true;
         // Wakeup the commit thread incase it is sleeping
-        if (_commitThread != null) {
-            _commitThread.interrupt();
+        synchronized (_flushMonitor) {
+            _flushMonitor.notifyAll();
         }
     }
 
-    private long getCommitDelay() {
+    private void reloadConfig() {
         Properties cfg = GlobalContext.getConfig().getMainProperties();
         try {
-            return Long.parseLong(PropertyHelper.getProperty(cfg, "disk.commit.delay", "10000"));
+            _commitDelay = Long.parseLong(PropertyHelper.getProperty(cfg, "disk.commit.delay", "10000"));
+        } catch (NumberFormatException e) {
+            _commitDelay = 10000;
+        }
+        try {
+            _batchSize = Math.max(1, Integer.parseInt(PropertyHelper.getProperty(cfg, "disk.commit.batch.size", "1000")));
         } catch (NumberFormatException e) {
+            _batchSize = 1000;
         }
-        return 10000;
     }
 
     private void processAllLoop() {
         while (true) {
-            long delay = getCommitDelay();
-            long time = System.currentTimeMillis() - delay;
-            for (Iterator<CommitableWrapper> iter = _commitQueue.iterator(); iter.hasNext(); ) {
-                CommitableWrapper cw = iter.next();
-                if (cw.getTime() < time || _drainQueue) {
-                    if (writeCommitable(cw.getCommitable())) {
-                        iter.remove();
-                        _queueSize.decrementAndGet();
+            reloadConfig();
+            boolean all = _drainQueue || _flushRequested;
+            _flushRequested = false;
+            long oldest = flush(all);
+
+            long wait = oldest == Long.MAX_VALUE ? _commitDelay : oldest + _commitDelay - System.currentTimeMillis();
+            synchronized (_flushMonitor) {
+                boolean draining = _drainQueue && !_commitQueue.isEmpty();
+                if (wait > 0 && !draining && !_flushRequested) {
+                    try {
+                        _flushMonitor.wait(wait);
+                    } catch (InterruptedException e) {
                     }
                 }
             }
+        }
+    }
 
+    /**
+     * Writes queued objects sorted by name, either all of them or only those older than the commit delay.
+     *
+     * @return the queue time of the oldest object left in the queue, Long.MAX_VALUE if there is none.
+     */
+    private long flush(boolean all) {
+        long due = System.currentTimeMillis() - _commitDelay;
+        long oldest = Long.MAX_VALUE;
+        List<CommitableWrapper> toWrite = new ArrayList<>();
+        for (CommitableWrapper cw : _commitQueue.values()) {
+            if (all || cw.getTime() < due) {
+                toWrite.add(cw);
+            } else {
+                oldest = Math.min(oldest, cw.getTime());
+            }
+        }
+        // names taken once, an object renamed while sorting would break the order
+        List<Map.Entry<String, CommitableWrapper>> named = new ArrayList<>(toWrite.size());
+        for (CommitableWrapper cw : toWrite) {
+            named.add(new AbstractMap.SimpleImmutableEntry<>(cw.getCommitable().descriptiveName(), cw));
+        }
+        named.sort(Map.Entry.comparingByKey());
+        toWrite.clear();
+        for (Map.Entry<String, CommitableWrapper> entry : named) {
+            toWrite.add(entry.getValue());
+        }
+        for (int i = 0; i < toWrite.size(); i += _batchSize) {
+            writeBatch(toWrite.subList(i, Math.min(i + _batchSize, toWrite.size())));
+        }
+        // whatever is still queued was queued after these directories were removed
+        long flushed = oldest;
+        _removedDirs.values().removeIf(time -> time < flushed);
+        return oldest;
+    }
+
+    private void writeBatch(List<CommitableWrapper> batch) {
+        long start = System.currentTimeMillis();
+        List<VirtualFileSystemInode> inodes = new ArrayList<>();
+        List<Commitable> others = new ArrayList<>();
+        for (CommitableWrapper cw : batch) {
+            // dequeue before writing, a commit made while we write queues the object again
+            if (!_commitQueue.remove(cw.getKey(), cw) || isBelowRemovedDir(cw.getCommitable())) {
+                continue;
+            }
+            _inFlight.put(cw.getKey(), cw);
+            if (cw.getCommitable() instanceof VirtualFileSystemInode) {
+                // inodes are handed over to the VFS storage in a single batch
+                inodes.add((VirtualFileSystemInode) cw.getCommitable());
+            } else {
+                others.add(cw.getCommitable());
+            }
+        }
+        int written = 0;
+        if (!inodes.isEmpty()) {
             try {
-                Thread.sleep(delay);
-            } catch (InterruptedException e) {
+                VirtualFileSystem.getVirtualFileSystem().writeInodes(inodes);
+                written += inodes.size();
+            } catch (Exception e) {
+                logger.error("Error writing {} inodes to disk", inodes.size(), e);
+            }
+        }
+        for (Commitable item : others) {
+            if (writeCommitable(item)) {
+                written++;
             }
         }
+        for (CommitableWrapper cw : batch) {
+            _inFlight.remove(cw.getKey(), cw);
+        }
+        long time = System.currentTimeMillis() - start;
+        _written.add(written);
+        _lastFlushSize = written;
+        _lastFlushTime = time;
+        _maxFlushTime.accumulateAndGet(time, Math::max);
+        logger.debug("Wrote {} objects in {}ms", written, time);
     }
 
     private boolean writeCommitable(Commitable item) {
@@ -221,18 +369,45 @@ public class CommitManager {
         return false;
     }
 
+    /**
+     * Identifies a queued object by identity, whatever its name is when it is looked up.
+     */
+    private static class CommitKey {
+        private final Commitable _object;
+
+        private CommitKey(Commitable object) {
+            _object = object;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CommitKey && ((CommitKey) obj)._object == _object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(_object);
+        }
+    }
+
     /**
      * Creates a wrapping object for the Commitable object and current time.
      */
     private static class CommitableWrapper {
+        private final CommitKey _key;
         private final Commitable _object;
         private final long _time;
 
         private CommitableWrapper(Commitable object) {
+            _key = new CommitKey(object);
             _object = object;
             _time = System.currentTimeMillis();
         }
 
+        public CommitKey getKey() {
+            return _key;
+        }
+
         public Commitable getCommitable() {
             return _object;
         }
@@ -240,18 +415,6 @@ public class CommitManager {
         public long getTime() {
             return _time;
         }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (obj == this) return true;
-            if (obj == null) return false;
-            return (obj instanceof Commitable) && _object.equals(obj);
-        }
-
-        @Override
-        public int hashCode() {
-            return _object.hashCode();
-        }
     }
 
     private class CommitHandler implements Runnable {
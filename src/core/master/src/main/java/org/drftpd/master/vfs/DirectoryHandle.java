@@ -104,6 +104,15 @@ public class DirectoryHandle extends InodeHandle implements DirectoryHandleInter
         throw new ClassCastException("DirectoryHandle object pointing to Inode:" + inode);
     }
 
+    /**
+     * @return the version of the entries of this directory.
+     * @throws FileNotFoundException
+     * @see VirtualFileSystemDirectory#getVersion()
+     */
+    public long getVersion() throws FileNotFoundException {
+        return getInode().getVersion();
+    }
+
     /**
      * @return all InodeHandles inside this dir.
      * @throws FileNotFoundException
@@ -1067,6 +1076,18 @@ public class DirectoryHandle extends InodeHandle implements DirectoryHandleInter
         return oldSize - newSize;
     }
 
+    /**
+     * @return the content and tree digests of the slave for this directory as of its last remerge,
+     * null if they are not known or something changed since.
+     */
+    public long[] getRemergeDigest(RemoteSlave rslave) throws FileNotFoundException {
+        return getInode().getRemergeDigest(rslave.getName());
+    }
+
+    public void setRemergeDigest(RemoteSlave rslave, long contentDigest, long treeDigest) throws FileNotFoundException {
+        getInode().setRemergeDigest(rslave.getName(), contentDigest, treeDigest);
+    }
+
     protected void compareAndUpdateLastModified(long lastModified) throws FileNotFoundException {
         getInode().compareAndUpdateLastModified(lastModified);
     }
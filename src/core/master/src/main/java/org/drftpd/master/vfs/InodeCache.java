@@ -0,0 +1,267 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps loaded inodes in memory.<br>
+ * Directories only hold weak references to their children, an inode stays loaded as long as it is
+ * part of this cache or used somewhere else. The cache is bounded by an estimation of the memory
+ * used by the inodes it holds, and evicts them in least recently used order using the clock
+ * algorithm, so a lookup does not need any lock.<br>
+ * Pinned directories and their children are never evicted.
+ */
+public class InodeCache {
+
+    private static final int SEGMENTS = 16;
+    private final Segment[] _segments = new Segment[SEGMENTS];
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private volatile long _segmentBudget;
+    private volatile Set<String> _pinnedPaths = Collections.emptySet();
+
+    /**
+     * @param budget memory the cached inodes may use, in bytes.
+     */
+    public InodeCache(long budget) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            _segments[i] = new Segment();
+        }
+        setBudget(budget);
+    }
+
+    public void setBudget(long budget) {
+        _segmentBudget = Math.max(1, budget / SEGMENTS);
+    }
+
+    public long getBudget() {
+        return _segmentBudget * SEGMENTS;
+    }
+
+    /**
+     * Pins directories, paths are case insensitive.
+     */
+    public void setPinnedPaths(Collection<String> paths) {
+        Set<String> pinned = new HashSet<>();
+        for (String path : paths) {
+            pinned.add(path.toLowerCase());
+        }
+        _pinnedPaths = pinned;
+    }
+
+    public Set<String> getPinnedPaths() {
+        return Collections.unmodifiableSet(_pinnedPaths);
+    }
+
+    private Segment getSegment(VirtualFileSystemInode inode) {
+        return _segments[(System.identityHashCode(inode) & 0x7fffffff) % SEGMENTS];
+    }
+
+    /**
+     * Records an access to an inode that was still in memory.
+     */
+    public void hit(VirtualFileSystemInode inode) {
+        _hits.increment();
+        Entry entry = inode._cacheEntry;
+        if (entry != null) {
+            entry._referenced = true;
+        } else {
+            // evicted but kept alive elsewhere, it is in use again
+            add(inode);
+        }
+    }
+
+    /**
+     * Records an inode that had to be read from disk.
+     */
+    public void miss(VirtualFileSystemInode inode) {
+        _misses.increment();
+        add(inode);
+    }
+
+    /**
+     * Adds an inode to the cache, evicting others if the cache goes over its budget.
+     */
+    public void add(VirtualFileSystemInode inode) {
+        Segment segment = getSegment(inode);
+        synchronized (segment) {
+            if (inode._cacheEntry != null) {
+                inode._cacheEntry._referenced = true;
+                return;
+            }
+            segment.link(new Entry(inode));
+            segment.evict();
+        }
+    }
+
+    /**
+     * Drops an inode, used once it has been removed from the tree.
+     */
+    public void remove(VirtualFileSystemInode inode) {
+        if (inode._cacheEntry == null) {
+            return;
+        }
+        Segment segment = getSegment(inode);
+        synchronized (segment) {
+            if (inode._cacheEntry != null) {
+                segment.unlink(inode._cacheEntry);
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                while (segment._hand != null) {
+                    segment.unlink(segment._hand);
+                }
+            }
+        }
+    }
+
+    private boolean isPinned(VirtualFileSystemInode inode) {
+        Set<String> pinned = _pinnedPaths;
+        if (pinned.isEmpty()) {
+            return false;
+        }
+        String path = inode.getPath().toLowerCase();
+        return pinned.contains(path)
+                || pinned.contains(VirtualFileSystem.stripLast(path));
+    }
+
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    public long getEvictions() {
+        return _evictions.sum();
+    }
+
+    /**
+     * @return the number of inodes in the cache.
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                size += segment._size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated memory used by the cached inodes, in bytes.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                weight += segment._weight;
+            }
+        }
+        return weight;
+    }
+
+    static class Entry {
+        private final VirtualFileSystemInode _inode;
+        private Entry _prev;
+        private Entry _next;
+        private int _weight;
+        private volatile boolean _referenced;
+
+        private Entry(VirtualFileSystemInode inode) {
+            _inode = inode;
+        }
+    }
+
+    /**
+     * Circular list of entries, the hand points to the next eviction candidate.
+     */
+    private class Segment {
+        private Entry _hand;
+        private int _size;
+        private long _weight;
+
+        private void link(Entry entry) {
+            entry._weight = entry._inode.estimateSize();
+            if (_hand == null) {
+                entry._prev = entry;
+                entry._next = entry;
+                _hand = entry;
+            } else {
+                // right behind the hand, it will be the last one looked at
+                entry._prev = _hand._prev;
+                entry._next = _hand;
+                _hand._prev._next = entry;
+                _hand._prev = entry;
+            }
+            entry._inode._cacheEntry = entry;
+            _size++;
+            _weight += entry._weight;
+        }
+
+        private void unlink(Entry entry) {
+            if (entry._next == entry) {
+                _hand = null;
+            } else {
+                entry._prev._next = entry._next;
+                entry._next._prev = entry._prev;
+                if (_hand == entry) {
+                    _hand = entry._next;
+                }
+            }
+            entry._prev = null;
+            entry._next = null;
+            entry._inode._cacheEntry = null;
+            _size--;
+            _weight -= entry._weight;
+        }
+
+        private void evict() {
+            // every entry gets at most two looks, pinned entries could otherwise keep us spinning
+            int budget = 2 * _size;
+            while (_weight > _segmentBudget && _hand != null && budget-- > 0) {
+                Entry entry = _hand;
+                if (entry._referenced) {
+                    entry._referenced = false;
+                    // directories grow, keep the estimation up to date
+                    int weight = entry._inode.estimateSize();
+                    _weight += weight - entry._weight;
+                    entry._weight = weight;
+                    _hand = entry._next;
+                } else if (isPinned(entry._inode)) {
+                    _hand = entry._next;
+                } else {
+                    unlink(entry);
+                    _evictions.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.cron.TimeEventInterface;
+import org.drftpd.master.sections.SectionInterface;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Pins the base and current directories of every section in the {@link InodeCache}.<br>
+ * Refreshed every hour so dated sections pin the directory of the day.
+ */
+public class InodeCachePinner implements TimeEventInterface {
+
+    private static final Logger logger = LogManager.getLogger(InodeCachePinner.class);
+
+    public void refresh() {
+        Set<String> paths = new HashSet<>();
+        for (SectionInterface section : GlobalContext.getGlobalContext().getSectionManager().getSections()) {
+            paths.add(section.getBaseDirectory().getPath());
+            paths.add(section.getCurrentDirectory().getPath());
+        }
+        VirtualFileSystem.getVirtualFileSystem().getInodeCache().setPinnedPaths(paths);
+        logger.debug("Pinned directories: {}", paths);
+    }
+
+    public void resetDay(Date d) {
+        refresh();
+    }
+
+    public void resetWeek(Date d) {
+        refresh();
+    }
+
+    public void resetMonth(Date d) {
+        refresh();
+    }
+
+    public void resetYear(Date d) {
+        refresh();
+    }
+
+    public void resetHour(Date d) {
+        refresh();
+    }
+}
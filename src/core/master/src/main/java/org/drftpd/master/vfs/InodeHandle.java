@@ -27,6 +27,7 @@ import org.drftpd.master.GlobalContext;
 import org.drftpd.master.slavemanagement.RemoteSlave;
 import org.drftpd.master.slavemanagement.SlaveManager;
 import org.drftpd.master.usermanager.User;
+import org.drftpd.master.vfs.event.ImmutableInodeHandle;
 import org.drftpd.master.vfs.perms.VFSPermissions;
 import org.drftpd.slave.exceptions.FileExistsException;
 import org.drftpd.slave.exceptions.ObjectNotFoundException;
@@ -214,6 +215,14 @@ public abstract class InodeHandle implements InodeHandleInterface, Comparable<In
         return VirtualFileSystem.getVirtualFileSystem().getInodeByPath(_path);
     }
 
+    /**
+     * @return a read only view of the Inode, as handed to the listeners of VFS events.
+     * @throws FileNotFoundException if the inode does not exist.
+     */
+    public ImmutableInodeHandle getImmutableInode() throws FileNotFoundException {
+        return new ImmutableInodeHandle(getInode(), _path);
+    }
+
     /**
      * Return the Inode name.
      */
@@ -0,0 +1,179 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of resolved paths used by {@link VirtualFileSystem#getInodeByPath(String)}.<br>
+ * The cache is split in segments, each one being a small LRU map with its own lock, so lookups
+ * of different paths rarely contend. Paths are case insensitive and stored lower-cased. Entries must be
+ * invalidated whenever an inode is renamed or deleted, invalidating a directory also drops every path below it.<br>
+ * A lookup racing with an invalidation must not put back what was just dropped, so callers read
+ * {@link #startLookup()} before walking the tree, hand it over to {@link #put(String, VirtualFileSystemInode, long)}
+ * and call {@link #endLookup()} once done.
+ */
+public class InodePathCache {
+
+    private static final int SEGMENTS = 16;
+    private final Segment[] _segments = new Segment[SEGMENTS];
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final AtomicLong _generation = new AtomicLong();
+    private final AtomicInteger _lookups = new AtomicInteger();
+    private final boolean _enabled;
+
+    public InodePathCache(int maxSize) {
+        _enabled = maxSize > 0;
+        for (int i = 0; i < SEGMENTS; i++) {
+            _segments[i] = new Segment(Math.max(1, maxSize / SEGMENTS));
+        }
+    }
+
+    private Segment getSegment(String key) {
+        return _segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static String getKey(String path) {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end).toLowerCase();
+    }
+
+    /**
+     * @return the cached inode for path, null if it is not cached.
+     */
+    public VirtualFileSystemInode get(String path) {
+        if (!_enabled) {
+            return null;
+        }
+        String key = getKey(path);
+        Segment segment = getSegment(key);
+        VirtualFileSystemInode inode;
+        synchronized (segment) {
+            inode = segment.get(key);
+        }
+        if (inode == null) {
+            _misses.increment();
+        } else {
+            _hits.increment();
+        }
+        return inode;
+    }
+
+    /**
+     * Starts a lookup which may put its result in the cache, {@link #endLookup()} must follow.
+     *
+     * @return a counter increased by every invalidation which may affect a running lookup.
+     */
+    public long startLookup() {
+        _lookups.incrementAndGet();
+        return _generation.get();
+    }
+
+    public void endLookup() {
+        _lookups.decrementAndGet();
+    }
+
+    /**
+     * Caches inode under path, unless an invalidation happened since generation was read.
+     */
+    public void put(String path, VirtualFileSystemInode inode, long generation) {
+        if (!_enabled) {
+            return;
+        }
+        String key = getKey(path);
+        Segment segment = getSegment(key);
+        synchronized (segment) {
+            if (_generation.get() == generation) {
+                segment.put(key, inode);
+            }
+        }
+    }
+
+    /**
+     * Drops path and, when it is a directory, every path below it.
+     */
+    public void invalidate(String path, boolean directory) {
+        if (!_enabled) {
+            return;
+        }
+        String key = getKey(path);
+        boolean removed;
+        Segment segment = getSegment(key);
+        synchronized (segment) {
+            removed = segment.remove(key) != null;
+        }
+        if (directory) {
+            String prefix = key + "/";
+            for (Segment other : _segments) {
+                synchronized (other) {
+                    for (Iterator<String> iter = other.keySet().iterator(); iter.hasNext(); ) {
+                        if (iter.next().startsWith(prefix)) {
+                            iter.remove();
+                            removed = true;
+                        }
+                    }
+                }
+            }
+        }
+        // a running lookup may have walked the tree before the change, don't let it cache what it found
+        if (removed || _lookups.get() > 0) {
+            _generation.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        _generation.incrementAndGet();
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    @SuppressWarnings("serial")
+    private static class Segment extends LinkedHashMap<String, VirtualFileSystemInode> {
+        private final int _maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            _maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VirtualFileSystemInode> eldest) {
+            return size() > _maxSize;
+        }
+    }
+}
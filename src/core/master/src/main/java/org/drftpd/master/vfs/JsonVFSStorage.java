@@ -0,0 +1,154 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.io.PermissionDeniedException;
+import org.drftpd.master.io.SafeFileOutputStream;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stores one json file per inode, directories keep their own data in a {@value #dirName} file.<br>
+ * This is the historical layout of userdata/vfs and is kept as an import/export format.
+ */
+public class JsonVFSStorage implements VFSStorageInterface {
+
+    public static final String dirName = ".dirProperties";
+    private static final Logger logger = LogManager.getLogger(JsonVFSStorage.class);
+    private static final DirInodeFilenameFilter dirFilter = new DirInodeFilenameFilter();
+    private String _root;
+
+    public void init(File root) throws IOException {
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create " + root.getPath());
+        }
+        _root = root.getPath();
+    }
+
+    public boolean containsTree(File root) {
+        return new File(root, dirName).exists();
+    }
+
+    public boolean isPrettyPrinted() {
+        return true;
+    }
+
+    /**
+     * @return the real path of the file on the disk.<br>
+     * Ex: getRealPath('/PICS/me.jpg') would return 'userdata/vfs/PICS/me.jpg'
+     */
+    private String getRealPath(String path) {
+        return _root + path;
+    }
+
+    public byte[] readInode(String path) throws IOException {
+        File jsonFile = new File(getRealPath(path));
+        if (jsonFile.isDirectory()) {
+            jsonFile = new File(jsonFile, dirName);
+        }
+        if (!jsonFile.exists()) {
+            throw new FileNotFoundException(jsonFile.getPath() + " does not exist");
+        }
+        return Files.readAllBytes(jsonFile.toPath());
+    }
+
+    public Map<String, byte[]> readDirectory(String path) throws IOException {
+        String[] names = new File(getRealPath(path)).list(dirFilter);
+        if (names == null) {
+            throw new FileNotFoundException(getRealPath(path) + " is not a directory");
+        }
+        Map<String, byte[]> children = new TreeMap<>();
+        for (String name : names) {
+            children.put(name, null);
+        }
+        return children;
+    }
+
+    public boolean containsDirectory(String path) {
+        return new File(getRealPath(path)).isDirectory();
+    }
+
+    public void writeInodes(List<VFSStorageRecord> records) throws IOException {
+        for (VFSStorageRecord record : records) {
+            String fullPath = getRealPath(record.getPath());
+            if (record.isDirectory()) {
+                new File(fullPath).mkdirs();
+                fullPath = fullPath + VirtualFileSystem.separator + dirName;
+            } else {
+                new File(getRealPath(VirtualFileSystem.stripLast(record.getPath()))).mkdirs();
+            }
+            try (OutputStream out = new SafeFileOutputStream(fullPath)) {
+                out.write(record.getData());
+            }
+            logger.debug("Wrote fullPath {}", fullPath);
+        }
+    }
+
+    public void deleteInode(String path) {
+        recursiveDelete(new File(getRealPath(path)));
+    }
+
+    /**
+     * If 'file' is a directory, it recurses through it and deletes, everything
+     * inside it.<br>
+     * If 'file' is an actual file, it simply deletes it.
+     *
+     * @param file
+     */
+    static void recursiveDelete(File file) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File file1 : files) {
+                    recursiveDelete(file1);
+                }
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            logger.error("Could not delete local entry {}, check permissions", file.getAbsolutePath());
+        }
+    }
+
+    public void renameInode(String source, String destination)
+            throws FileNotFoundException, PermissionDeniedException {
+        File file = new File(getRealPath(source));
+        if (!file.exists()) {
+            throw new FileNotFoundException(source + " cannot be found");
+        }
+        boolean result = file.renameTo(new File(getRealPath(destination)));
+        if (!result) {
+            throw new PermissionDeniedException("Cannot rename " + source
+                    + " to " + destination);
+        }
+    }
+
+    static class DirInodeFilenameFilter implements FilenameFilter {
+
+        @Override
+        public boolean accept(File dir, String file) {
+            return !file.equals(dirName);
+        }
+
+    }
+}
@@ -0,0 +1,518 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.io.PermissionDeniedException;
+import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.common.vfs.CaseInsensitiveTreeMap;
+import org.drftpd.master.GlobalContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Stores every directory, and the files and links inside it, in a single append-only log.<br>
+ * Each directory on disk holds a {@value #logName} file, a directory is loaded together with its
+ * children through one sequential read, and a batch of changes to a directory is a single append
+ * synced to disk before it returns.
+ * <br><br>
+ * Records are laid out as [length][crc32][type][name length][name][data], a directory's own data
+ * is stored under an empty name. A torn or corrupted tail is dropped on replay, and logs that
+ * accumulated more superseded records than live ones are compacted into a temporary file which
+ * atomically replaces the log once it is synced to disk.
+ */
+public class LogVFSStorage implements VFSStorageInterface {
+
+    public static final String logName = ".inodeLog";
+    private static final Logger logger = LogManager.getLogger(LogVFSStorage.class);
+    private static final String compactName = logName + ".compact";
+    private static final String SELF = "";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int COMPACT_SLACK = 64;
+    // rough memory used by a record besides its name and data, map entry and array headers
+    private static final int RECORD_OVERHEAD = 96;
+    private final Object[] _locks = new Object[256];
+    private final Map<String, LogStats> _stats = new ConcurrentHashMap<>();
+    // live records of the most recently replayed logs, so loading the files of a directory one by
+    // one reads its log once, an entry is dropped on every change to its log
+    private final Map<String, ReplayedLog> _replayed = new LinkedHashMap<>(16, 0.75f, true);
+    private long _replayedBytes;
+    private long _maxReplayedBytes;
+    private String _root;
+
+    public LogVFSStorage() {
+        for (int i = 0; i < _locks.length; i++) {
+            _locks[i] = new Object();
+        }
+    }
+
+    public void init(File root) throws IOException {
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create " + root.getPath());
+        }
+        _root = root.getPath();
+        _stats.clear();
+        synchronized (_replayed) {
+            _replayed.clear();
+            _replayedBytes = 0;
+            _maxReplayedBytes = getReplayedMemory();
+        }
+    }
+
+    private static long getReplayedMemory() {
+        long megabytes = 32;
+        if (GlobalContext.getConfig() != null) {
+            try {
+                megabytes = Long.parseLong(PropertyHelper.getProperty(GlobalContext.getConfig().getMainProperties(),
+                        "vfs.log.cache.memory", "32"));
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid 'vfs.log.cache.memory', using the default value");
+            }
+        }
+        return megabytes * 1024 * 1024;
+    }
+
+    /**
+     * Sets the memory, in bytes, the replayed logs are kept in.
+     */
+    void setReplayedMemory(long bytes) {
+        synchronized (_replayed) {
+            _maxReplayedBytes = bytes;
+            trimReplayed();
+        }
+    }
+
+    /**
+     * @return the estimated memory, in bytes, used by the replayed logs kept.
+     */
+    long getReplayedBytes() {
+        synchronized (_replayed) {
+            return _replayedBytes;
+        }
+    }
+
+    public boolean containsTree(File root) {
+        return new File(root, logName).exists();
+    }
+
+    public boolean isPrettyPrinted() {
+        return false;
+    }
+
+    private Object getLock(String dirPath) {
+        return _locks[(dirPath.hashCode() & 0x7fffffff) % _locks.length];
+    }
+
+    private File getLogFile(String dirPath) {
+        return new File(_root + dirPath, logName);
+    }
+
+    public byte[] readInode(String path) throws IOException {
+        byte[] data;
+        if (containsDirectory(path)) {
+            data = replay(path).get(SELF);
+        } else {
+            String dirPath = VirtualFileSystem.stripLast(path);
+            if (!getLogFile(dirPath).exists()) {
+                throw new FileNotFoundException(path + " does not exist");
+            }
+            data = replay(dirPath).get(VirtualFileSystem.getLast(path));
+        }
+        if (data == null) {
+            throw new FileNotFoundException(path + " does not exist");
+        }
+        return data;
+    }
+
+    public Map<String, byte[]> readDirectory(String path) throws IOException {
+        File dir = new File(_root + path);
+        File[] subDirs = dir.listFiles(File::isDirectory);
+        if (subDirs == null) {
+            throw new FileNotFoundException(dir.getPath() + " is not a directory");
+        }
+        Map<String, byte[]> children = new TreeMap<>(replay(path));
+        children.remove(SELF);
+        for (File subDir : subDirs) {
+            children.put(subDir.getName(), null);
+        }
+        return children;
+    }
+
+    public boolean containsDirectory(String path) {
+        return new File(_root + path).isDirectory();
+    }
+
+    public void writeInodes(List<VFSStorageRecord> records) throws IOException {
+        Map<String, LogBatch> batches = new LinkedHashMap<>();
+        for (VFSStorageRecord record : records) {
+            String dirPath;
+            String name;
+            if (record.isDirectory()) {
+                dirPath = record.getPath();
+                name = SELF;
+            } else {
+                dirPath = VirtualFileSystem.stripLast(record.getPath());
+                name = VirtualFileSystem.getLast(record.getPath());
+            }
+            batches.computeIfAbsent(dirPath, k -> new LogBatch()).add(PUT, name, record.getData());
+        }
+        for (Map.Entry<String, LogBatch> batch : batches.entrySet()) {
+            append(batch.getKey(), batch.getValue());
+        }
+    }
+
+    public void deleteInode(String path) {
+        if (containsDirectory(path)) {
+            JsonVFSStorage.recursiveDelete(new File(_root + path));
+            forgetStats(path);
+            return;
+        }
+        String dirPath = VirtualFileSystem.stripLast(path);
+        if (!getLogFile(dirPath).exists()) {
+            return;
+        }
+        LogBatch batch = new LogBatch();
+        batch.add(DELETE, VirtualFileSystem.getLast(path), null);
+        try {
+            append(dirPath, batch);
+        } catch (IOException e) {
+            logger.error("Unable to delete {} from {}", path, getLogFile(dirPath).getPath(), e);
+        }
+    }
+
+    public void renameInode(String source, String destination)
+            throws FileNotFoundException, PermissionDeniedException {
+        if (containsDirectory(source)) {
+            if (!new File(_root + source).renameTo(new File(_root + destination))) {
+                throw new PermissionDeniedException("Cannot rename " + source + " to " + destination);
+            }
+            forgetStats(source);
+            return;
+        }
+        String sourceDir = VirtualFileSystem.stripLast(source);
+        String sourceName = VirtualFileSystem.getLast(source);
+        String destinationDir = VirtualFileSystem.stripLast(destination);
+        String destinationName = VirtualFileSystem.getLast(destination);
+        try {
+            byte[] data = replay(sourceDir).get(sourceName);
+            if (data == null) {
+                throw new FileNotFoundException(source + " cannot be found");
+            }
+            if (sourceDir.equals(destinationDir)) {
+                LogBatch batch = new LogBatch();
+                batch.add(DELETE, sourceName, null);
+                batch.add(PUT, destinationName, data);
+                append(sourceDir, batch);
+            } else {
+                // write the new record before dropping the old one, a crash in between leaves a copy behind
+                LogBatch put = new LogBatch();
+                put.add(PUT, destinationName, data);
+                append(destinationDir, put);
+                LogBatch delete = new LogBatch();
+                delete.add(DELETE, sourceName, null);
+                append(sourceDir, delete);
+            }
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new PermissionDeniedException("Cannot rename " + source + " to " + destination + ": " + e.getMessage());
+        }
+    }
+
+    private void forgetStats(String path) {
+        String prefix = path + VirtualFileSystem.separator;
+        _stats.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+        synchronized (_replayed) {
+            Iterator<Map.Entry<String, ReplayedLog>> iter = _replayed.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, ReplayedLog> entry = iter.next();
+                if (entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                    _replayedBytes -= entry.getValue()._bytes;
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    private Map<String, byte[]> removeReplayed(String dirPath) {
+        synchronized (_replayed) {
+            ReplayedLog replayed = _replayed.remove(dirPath);
+            if (replayed == null) {
+                return null;
+            }
+            _replayedBytes -= replayed._bytes;
+            return replayed._entries;
+        }
+    }
+
+    private void trimReplayed() {
+        Iterator<ReplayedLog> iter = _replayed.values().iterator();
+        while (_replayedBytes > _maxReplayedBytes && iter.hasNext()) {
+            _replayedBytes -= iter.next()._bytes;
+            iter.remove();
+        }
+    }
+
+    private void append(String dirPath, LogBatch batch) throws IOException {
+        synchronized (getLock(dirPath)) {
+            File log = getLogFile(dirPath);
+            log.getParentFile().mkdirs();
+            Map<String, byte[]> replayed = removeReplayed(dirPath);
+            try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                // the batch is acknowledged once this returns, it has to survive a power loss
+                channel.force(false);
+            }
+            LogStats stats = _stats.get(dirPath);
+            if (stats != null) {
+                stats._records += batch._records;
+                stats._live = batch.liveAfter(stats._live, replayed);
+                if (stats.needsCompaction()) {
+                    replay(dirPath);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the whole log of a directory and returns the live records, keyed by name, unless
+     * it was read already and did not change since.
+     * Superseded records are compacted away when they outnumber the live ones.
+     */
+    private Map<String, byte[]> replay(String dirPath) throws IOException {
+        synchronized (getLock(dirPath)) {
+            synchronized (_replayed) {
+                ReplayedLog replayed = _replayed.get(dirPath);
+                if (replayed != null) {
+                    return replayed._entries;
+                }
+            }
+            ReplayedLog replayed = new ReplayedLog(read(dirPath));
+            synchronized (_replayed) {
+                // a log bigger than the whole cache is not kept
+                if (replayed._bytes <= _maxReplayedBytes) {
+                    _replayed.put(dirPath, replayed);
+                    _replayedBytes += replayed._bytes;
+                    trimReplayed();
+                }
+            }
+            return replayed._entries;
+        }
+    }
+
+    private Map<String, byte[]> read(String dirPath) throws IOException {
+        synchronized (getLock(dirPath)) {
+            File log = getLogFile(dirPath);
+            Map<String, byte[]> entries = new CaseInsensitiveTreeMap<>();
+            if (!log.exists()) {
+                return entries;
+            }
+            byte[] bytes = Files.readAllBytes(log.toPath());
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            CRC32 crc = new CRC32();
+            int records = 0;
+            int valid = 0;
+            while (buf.remaining() >= HEADER_SIZE) {
+                int length = buf.getInt();
+                int checksum = buf.getInt();
+                if (length < 3 || length > buf.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(bytes, buf.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                int end = buf.position() + length;
+                byte type = buf.get();
+                int nameLength = buf.getShort() & 0xffff;
+                if (buf.position() + nameLength > end) {
+                    break;
+                }
+                String name = new String(bytes, buf.position(), nameLength, StandardCharsets.UTF_8);
+                if (type == PUT) {
+                    // remove first so that a change of casing replaces the stored name
+                    entries.remove(name);
+                    entries.put(name, Arrays.copyOfRange(bytes, buf.position() + nameLength, end));
+                } else if (type == DELETE) {
+                    entries.remove(name);
+                } else {
+                    break;
+                }
+                buf.position(end);
+                records++;
+                valid = end;
+            }
+            if (valid < bytes.length) {
+                logger.warn("Dropping {} unreadable bytes at the end of {}", bytes.length - valid, log.getPath());
+                try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+            }
+            LogStats stats = new LogStats(entries.size(), records);
+            _stats.put(dirPath, stats);
+            if (records - entries.size() > Math.max(entries.size(), COMPACT_SLACK)) {
+                compact(dirPath, entries);
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Rewrites the log of a directory with its live records only.
+     */
+    private void compact(String dirPath, Map<String, byte[]> entries) throws IOException {
+        LogBatch batch = new LogBatch();
+        byte[] self = entries.get(SELF);
+        if (self != null) {
+            batch.add(PUT, SELF, self);
+        }
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            if (!entry.getKey().equals(SELF)) {
+                batch.add(PUT, entry.getKey(), entry.getValue());
+            }
+        }
+        File log = getLogFile(dirPath);
+        File compacted = new File(log.getParentFile(), compactName);
+        try (FileChannel channel = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(compacted.toPath(), log.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        _stats.put(dirPath, new LogStats(entries.size(), batch._records));
+        logger.debug("Compacted {} down to {} records", log.getPath(), batch._records);
+    }
+
+    /**
+     * Records appended to a single log in one write.
+     */
+    private static class LogBatch {
+        private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+        private final CRC32 _crc = new CRC32();
+        private final List<String> _names = new ArrayList<>();
+        private final List<Boolean> _puts = new ArrayList<>();
+        private int _records;
+
+        private void add(byte type, String name, byte[] data) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            int length = 3 + nameBytes.length + (data == null ? 0 : data.length);
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + length);
+            buf.putInt(length);
+            buf.putInt(0);
+            buf.put(type);
+            buf.putShort((short) nameBytes.length);
+            buf.put(nameBytes);
+            if (data != null) {
+                buf.put(data);
+            }
+            _crc.reset();
+            _crc.update(buf.array(), HEADER_SIZE, length);
+            buf.putInt(4, (int) _crc.getValue());
+            _out.write(buf.array(), 0, buf.capacity());
+            _names.add(name);
+            _puts.add(type == PUT);
+            _records++;
+        }
+
+        /**
+         * Live record count of a log once this batch is appended to it. It is exact when the live records
+         * before the batch are known, otherwise a put is assumed to replace an existing record, which can
+         * only trigger a compaction check early.
+         */
+        private int liveAfter(int live, Map<String, byte[]> before) {
+            Map<String, Boolean> present = new CaseInsensitiveTreeMap<>();
+            for (int i = 0; i < _names.size(); i++) {
+                String name = _names.get(i);
+                Boolean existed = present.get(name);
+                if (existed == null && before != null) {
+                    existed = before.containsKey(name);
+                }
+                boolean put = _puts.get(i);
+                if (put && Boolean.FALSE.equals(existed)) {
+                    live++;
+                } else if (!put && !Boolean.FALSE.equals(existed)) {
+                    live--;
+                }
+                present.put(name, put);
+            }
+            return Math.max(live, 0);
+        }
+
+        private byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+    }
+
+    /**
+     * The live records of a log along with the memory they take.
+     */
+    private static class ReplayedLog {
+        private final Map<String, byte[]> _entries;
+        private final long _bytes;
+
+        private ReplayedLog(Map<String, byte[]> entries) {
+            _entries = Collections.unmodifiableMap(entries);
+            long bytes = 0;
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                bytes += RECORD_OVERHEAD + entry.getKey().length() * 2L + entry.getValue().length;
+            }
+            _bytes = bytes;
+        }
+    }
+
+    /**
+     * Live and total record counts of a log, guarded by the lock of its directory.
+     */
+    private static class LogStats {
+        private int _live;
+        private int _records;
+
+        private LogStats(int live, int records) {
+            _live = live;
+            _records = records;
+        }
+
+        private boolean needsCompaction() {
+            return _records - _live > Math.max(_live, COMPACT_SLACK);
+        }
+    }
+}
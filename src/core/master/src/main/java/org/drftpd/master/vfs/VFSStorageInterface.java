@@ -0,0 +1,93 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.drftpd.common.io.PermissionDeniedException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backend used by the {@link VirtualFileSystem} to persist inode metadata.<br>
+ * Storages only deal with serialized inodes, (de)serialization is left to the VirtualFileSystem.
+ * All paths are full VFS paths, starting with "/".
+ *
+ * @see JsonVFSStorage
+ * @see LogVFSStorage
+ */
+public interface VFSStorageInterface {
+
+    /**
+     * Binds this storage to the given directory, creating it if needed.
+     */
+    void init(File root) throws IOException;
+
+    /**
+     * @return true if the given directory holds a tree written by this storage.
+     */
+    boolean containsTree(File root);
+
+    /**
+     * @return true if inodes should be serialized in a human readable form.
+     */
+    boolean isPrettyPrinted();
+
+    /**
+     * @return the serialized inode stored at path.
+     * @throws FileNotFoundException if nothing is stored at path.
+     */
+    byte[] readInode(String path) throws IOException;
+
+    /**
+     * Lists the children of a directory.<br>
+     * Storages that keep children together with their directory return the serialized data
+     * of those children, the value is null for every child that has to be loaded
+     * through {@link #readInode(String)}.
+     *
+     * @return a Map of child name to serialized data.
+     * @throws FileNotFoundException if the directory does not exist.
+     */
+    Map<String, byte[]> readDirectory(String path) throws IOException;
+
+    /**
+     * @return true if a directory exists at path, even if its own data is missing.
+     */
+    boolean containsDirectory(String path);
+
+    /**
+     * Writes a batch of inodes, records are applied in order.
+     */
+    void writeInodes(List<VFSStorageRecord> records) throws IOException;
+
+    /**
+     * Deletes the inode at path, recursively if it is a directory.
+     */
+    void deleteInode(String path);
+
+    /**
+     * Moves the inode at source to destination.
+     *
+     * @throws FileNotFoundException     if there's no such file/dir.
+     * @throws PermissionDeniedException if the inode could not be moved.
+     */
+    void renameInode(String source, String destination)
+            throws FileNotFoundException, PermissionDeniedException;
+}
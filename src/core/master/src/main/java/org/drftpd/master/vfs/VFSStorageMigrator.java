@@ -0,0 +1,111 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies a VFS tree from one {@link VFSStorageInterface} to another.<br>
+ * The tree is built next to the source and only swapped in once complete, the source tree
+ * is kept as a backup so switching storages can always be undone.
+ */
+public class VFSStorageMigrator {
+
+    private static final Logger logger = LogManager.getLogger(VFSStorageMigrator.class);
+    private final VFSStorageInterface _source;
+    private final VFSStorageInterface _target;
+
+    public VFSStorageMigrator(VFSStorageInterface source, VFSStorageInterface target) {
+        _source = source;
+        _target = target;
+    }
+
+    private static String getChildPath(String path, String name) {
+        return path.equals(VirtualFileSystem.separator) ? path + name : path + VirtualFileSystem.separator + name;
+    }
+
+    /**
+     * Converts the tree stored in root, the converted tree replaces root and the original
+     * tree is renamed to a backup directory next to it.
+     */
+    public void migrate(File root) throws IOException {
+        File staging = new File(root.getPath() + ".import");
+        File backup = new File(root.getPath() + ".backup-" + System.currentTimeMillis());
+        logger.info("Importing {} from {} into {}, this may take a while", root.getPath(),
+                _source.getClass().getSimpleName(), _target.getClass().getSimpleName());
+        // leftovers of an interrupted import
+        JsonVFSStorage.recursiveDelete(staging);
+        _source.init(root);
+        _target.init(staging);
+
+        long inodes = 0;
+        Deque<String> directories = new ArrayDeque<>();
+        directories.push(VirtualFileSystem.separator);
+        while (!directories.isEmpty()) {
+            String path = directories.pop();
+            List<VFSStorageRecord> records = new ArrayList<>();
+            try {
+                records.add(new VFSStorageRecord(path, true, _source.readInode(path)));
+            } catch (FileNotFoundException e) {
+                logger.warn("Directory data for {} is missing, it will be recreated on load", path);
+            }
+            for (Map.Entry<String, byte[]> child : _source.readDirectory(path).entrySet()) {
+                String childPath = getChildPath(path, child.getKey());
+                if (_source.containsDirectory(childPath)) {
+                    directories.push(childPath);
+                    continue;
+                }
+                byte[] data = child.getValue();
+                if (data == null) {
+                    try {
+                        data = _source.readInode(childPath);
+                    } catch (FileNotFoundException e) {
+                        logger.warn("Skipping {}, its data is missing", childPath);
+                        continue;
+                    }
+                }
+                records.add(new VFSStorageRecord(childPath, false, data));
+            }
+            if (records.isEmpty()) {
+                // keep empty directories without data so they are recreated on load
+                new File(staging.getPath() + path).mkdirs();
+            }
+            _target.writeInodes(records);
+            inodes += records.size();
+        }
+
+        if (!root.renameTo(backup)) {
+            throw new IOException("Unable to move " + root.getPath() + " to " + backup.getPath());
+        }
+        if (!staging.renameTo(root)) {
+            throw new IOException("Unable to move " + staging.getPath() + " to " + root.getPath());
+        }
+        logger.info("Imported {} inodes into {}, the previous tree was kept in {}", inodes,
+                _target.getClass().getSimpleName(), backup.getPath());
+    }
+}
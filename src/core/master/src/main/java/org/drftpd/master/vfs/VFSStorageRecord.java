@@ -0,0 +1,46 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+/**
+ * A serialized inode waiting to be written by a {@link VFSStorageInterface}.
+ */
+public class VFSStorageRecord {
+
+    private final String _path;
+    private final boolean _isDirectory;
+    private final byte[] _data;
+
+    public VFSStorageRecord(String path, boolean isDirectory, byte[] data) {
+        _path = path;
+        _isDirectory = isDirectory;
+        _data = data;
+    }
+
+    public String getPath() {
+        return _path;
+    }
+
+    public boolean isDirectory() {
+        return _isDirectory;
+    }
+
+    public byte[] getData() {
+        return _data;
+    }
+}
@@ -23,27 +23,29 @@ import com.cedarsoftware.util.io.JsonWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.common.io.PermissionDeniedException;
+import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.exceptions.FatalException;
-import org.drftpd.master.io.SafeFileOutputStream;
 import org.drftpd.master.vfs.event.*;
 
-import java.io.*;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.*;
 
 public class VirtualFileSystem {
 
-    public static final String dirName = ".dirProperties";
     public static final String fileSystemPath = "userdata/vfs";
     public static final String separator = "/";
     protected static final InodeHandleCaseInsensitiveComparator INODE_HANDLE_CASE_INSENSITIVE_COMPARATOR =
             new InodeHandleCaseInsensitiveComparator();
     private static final Logger logger = LogManager.getLogger(VirtualFileSystem.class);
-    private static final DirInodeFilenameFilter dirFilter = new DirInodeFilenameFilter();
     private static VirtualFileSystem _vfs = null;
+    private final VFSStorageInterface _storage;
+    private final InodePathCache _pathCache;
+    private final InodeCache _inodeCache;
     private VirtualFileSystemRoot _root = null;
 
     /**
@@ -55,7 +57,9 @@ public class VirtualFileSystem {
      * This constructor is private due to the Singleton architecture.
      */
     private VirtualFileSystem() {
-        new File(fileSystemPath).mkdirs();
+        _storage = loadStorage();
+        _pathCache = new InodePathCache(getPathCacheSize());
+        _inodeCache = new InodeCache(getInodeCacheMemory());
         try {
             _root = (VirtualFileSystemRoot) loadInode(separator);
         } catch (FileNotFoundException e) {
@@ -124,29 +128,81 @@ public class VirtualFileSystem {
         throws FatalException {
         logger.info("Creating new root filesystem");
         logger.info("If you have already created your filesystem, then stop removing or corrupting your "
-                + dirName + " file!");
-
-        File rootPath = new File(fileSystemPath);
-        Boolean created = rootPath.mkdirs();
-        if (!created && !rootPath.exists()) {
-            logger.fatal("Error creating root filesystem: " + fileSystemPath);
-            throw new FatalException("Error creating root filesystem: " + fileSystemPath);
-        }
+                + fileSystemPath + " directory!");
 
         _root = new VirtualFileSystemRoot("drftpd", "drftpd");
-        File rootFile = new File(fileSystemPath);
-        String[] fileList = rootFile.list(dirFilter);
-        if (fileList == null) {
-            logger.fatal("Error getting rootDirectory file list for: " + fileSystemPath);
-            throw new FatalException("Error getting rootDirectory file list for: " + fileSystemPath);
+        try {
+            loadChildren(_root, separator);
+        } catch (IOException e) {
+            logger.fatal("Error getting rootDirectory file list for: " + fileSystemPath, e);
+            throw new FatalException("Error getting rootDirectory file list for: " + fileSystemPath, e);
         }
-
-        _root.setFiles(fileList);
         _root.commit();
         _root.inodeLoadCompleted();
         return _root;
     }
 
+    private static int getPathCacheSize() {
+        if (GlobalContext.getConfig() == null) {
+            return 10000;
+        }
+        try {
+            return Integer.parseInt(PropertyHelper.getProperty(GlobalContext.getConfig().getMainProperties(),
+                    "vfs.path.cache.size", "10000"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid 'vfs.path.cache.size', using the default value");
+            return 10000;
+        }
+    }
+
+    private static long getInodeCacheMemory() {
+        long megabytes = 256;
+        if (GlobalContext.getConfig() != null) {
+            try {
+                megabytes = Long.parseLong(PropertyHelper.getProperty(GlobalContext.getConfig().getMainProperties(),
+                        "vfs.inode.cache.memory", "256"));
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid 'vfs.inode.cache.memory', using the default value");
+            }
+        }
+        return megabytes * 1024 * 1024;
+    }
+
+    /**
+     * Loads the storage configured as 'vfs.storage', importing the tree left in
+     * {@link #fileSystemPath} by another storage if needed.
+     */
+    private static VFSStorageInterface loadStorage() throws FatalException {
+        String desiredStorage = LogVFSStorage.class.getName();
+        if (GlobalContext.getConfig() != null) {
+            desiredStorage = PropertyHelper.getProperty(GlobalContext.getConfig().getMainProperties(),
+                    "vfs.storage", desiredStorage);
+        }
+        VFSStorageInterface storage;
+        try {
+            Class<?> aClass = Class.forName(desiredStorage);
+            storage = (VFSStorageInterface) aClass.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new FatalException("Cannot create instance of the VFS storage, check 'vfs.storage' in the configuration file", e);
+        }
+        File root = new File(fileSystemPath);
+        try {
+            if (!storage.containsTree(root)) {
+                for (VFSStorageInterface source : new VFSStorageInterface[]{new JsonVFSStorage(), new LogVFSStorage()}) {
+                    if (source.getClass() != storage.getClass() && source.containsTree(root)) {
+                        new VFSStorageMigrator(source, storage).migrate(root);
+                        break;
+                    }
+                }
+            }
+            storage.init(root);
+        } catch (IOException e) {
+            logger.fatal("Error initializing the VFS storage in: " + fileSystemPath, e);
+            throw new FatalException("Error initializing the VFS storage in: " + fileSystemPath, e);
+        }
+        return storage;
+    }
+
     /**
      * Deletes a directory or a file from the dir tree, deleting data from the
      * disk also.
@@ -154,7 +210,7 @@ public class VirtualFileSystem {
      * @param path
      */
     protected void deleteInode(String path) {
-        recursiveDelete(new File(getRealPath(path)));
+        _storage.deleteInode(path);
     }
 
     /**
@@ -174,34 +230,90 @@ public class VirtualFileSystem {
         if (path.equals(separator)) {
             return _root;
         }
-        path = path.substring(1);
+        VirtualFileSystemInode inode = _pathCache.get(path);
+        if (inode != null) {
+            return inode;
+        }
+        long generation = _pathCache.startLookup();
+        try {
+            return walkPath(path, generation);
+        } finally {
+            _pathCache.endLookup();
+        }
+    }
+
+    private VirtualFileSystemInode walkPath(String path, long generation) throws FileNotFoundException {
+        // trailing separators are ignored
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (end == 1) {
+            return _root;
+        }
         VirtualFileSystemDirectory walker = _root;
-        VirtualFileSystemInode inode = null;
-        String[] values = path.split(separator);
-        for (int x = 0; x < values.length; x++) {
-            inode = walker.getInodeByName(values[x]);
+        int start = 1;
+        int parentEnd = path.lastIndexOf('/', end - 1);
+        boolean parentCached = false;
+        if (parentEnd > 0) {
+            // siblings are usually looked up one after the other, start from the parent if we know it
+            VirtualFileSystemInode parent = _pathCache.get(path.substring(0, parentEnd));
+            if (parent != null && parent.isDirectory()) {
+                walker = (VirtualFileSystemDirectory) parent;
+                start = parentEnd + 1;
+                parentCached = true;
+            }
+        }
+        // paths going through links or relative entries have more than one name, don't cache them
+        boolean cacheable = true;
+        VirtualFileSystemInode inode;
+        while (true) {
+            int next = path.indexOf('/', start);
+            if (next == -1 || next > end) {
+                next = end;
+            }
+            String name = path.substring(start, next);
+            if (name.equals(".") || name.equals("..")) {
+                cacheable = false;
+                inode = walker.getInodeByName(name);
+            } else {
+                inode = walker.getChild(name);
+            }
+            if (next == end) {
+                break;
+            }
             if (inode.isDirectory()) {
                 walker = (VirtualFileSystemDirectory) inode;
-            } else if (inode.isLink() && (x != values.length - 1)) {
+            } else if (inode.isLink()) {
+                cacheable = false;
                 walker = (VirtualFileSystemDirectory) getInodeByPath(((VirtualFileSystemLink) inode).getLinkPath());
-            } else { // We better be at the end of the array
-                if (x != values.length - 1) {
-                    // Can't get /path/name/file when /path/name is a File
-                    throw new FileNotFoundException("Inode does not exist");
-                }
+            } else {
+                // Can't get /path/name/file when /path/name is a File
+                throw new FileNotFoundException("Inode does not exist");
+            }
+            start = next + 1;
+        }
+        if (cacheable) {
+            _pathCache.put(path, inode, generation);
+            if (!parentCached && walker != _root) {
+                _pathCache.put(path.substring(0, parentEnd), walker, generation);
             }
         }
-        // logger.debug("getInodeByPath(/" + path + ")--returning--" + inode);
         return inode;
     }
 
     /**
-     * @param path
-     * @return the real path of the file on the disk.<br>
-     * Ex: getRealPath('PICS/me.jpg') would return 'files/PICS/me.jpg'
+     * @return the cache keeping inodes in memory.
+     */
+    public InodeCache getInodeCache() {
+        return _inodeCache;
+    }
+
+    /**
+     * @return the cache used to resolve paths.
      */
-    private String getRealPath(String path) {
-        return fileSystemPath + path;
+    public InodePathCache getPathCache() {
+        return _pathCache;
     }
 
     /**
@@ -211,37 +323,29 @@ public class VirtualFileSystem {
         return _root;
     }
 
+    /**
+     * @return the storage holding the inode data.
+     */
+    protected VFSStorageInterface getStorage() {
+        return _storage;
+    }
+
     /**
      * Accepts a String path that starts with "/" and unserializes the requested
      * Inode
      */
     protected VirtualFileSystemInode loadInode(String path)
             throws FileNotFoundException {
-        String fullPath = fileSystemPath + path;
-        logger.debug("Loading inode - {}", fullPath);
-        File jsonFile = new File(fullPath);
-        File realDirectory = null;
-        if (jsonFile.isDirectory()) {
-            realDirectory = jsonFile;
-            fullPath = fullPath + separator + dirName;
-            jsonFile = new File(fullPath);
-        }
-        try (InputStream in = new FileInputStream(fullPath);
-             JsonReader reader = new JsonReader(in)) {
-            VirtualFileSystemInode inode = (VirtualFileSystemInode) reader.readObject();
+        logger.debug("Loading inode - {}", path);
+        try {
+            VirtualFileSystemInode inode = readInode(_storage.readInode(path));
             inode.setName(getLast(path));
             if (inode.isDirectory()) {
-                VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) inode;
-                dir.setFiles(realDirectory.list(dirFilter));
+                loadChildren((VirtualFileSystemDirectory) inode, path);
             }
             inode.inodeLoadCompleted();
             return inode;
         } catch (Exception e) {
-            boolean corruptedJsonFile = jsonFile.exists();
-            if (corruptedJsonFile) {
-                // parsing error! Let's get rid of the offending bugger
-                jsonFile.delete();
-            }
             // if this object is the Root object, let's create it and get outta
             // here
             if (getLast(path).equals(separator)) {
@@ -259,16 +363,17 @@ public class VirtualFileSystem {
                     throw new FileNotFoundException("You're filesystem is really messed up");
                 }
             }
-            if (realDirectory != null && realDirectory.exists()) {
-                // let's create the .dirProperties file from what we know since
+            if (_storage.containsDirectory(path)) {
+                // let's recreate the directory data from what we know since
                 // it should be there
                 parentInode.createDirectoryRaw(getLast(path), "drftpd", "drftpd");
                 return parentInode.getInodeByName(getLast(path));
             }
-            if (corruptedJsonFile) {
-                // we already deleted the file, but we need to tell the parent
-                // directory that it doesn't exist anymore
-                logger.debug("Error loading {}, deleting file", fullPath, e);
+            if (!(e instanceof FileNotFoundException)) {
+                // parsing error! Let's get rid of the offending bugger and
+                // tell the parent directory that it doesn't exist anymore
+                logger.debug("Error loading {}, deleting inode", path, e);
+                _storage.deleteInode(path);
                 parentInode.removeMissingChild(getLast(path));
             }
             throw new FileNotFoundException();
@@ -276,21 +381,39 @@ public class VirtualFileSystem {
     }
 
     /**
-     * If 'file' is a directory, it recurses through it and deletes, everything
-     * inside it.<br>
-     * If 'file' is an actual file, it simply deletes it.
-     *
-     * @param file
+     * Populates a directory with the names of its children, children stored along with
+     * the directory are unserialized right away.
      */
-    private void recursiveDelete(File file) {
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            for (File file1 : files) {
-                recursiveDelete(file1);
+    private void loadChildren(VirtualFileSystemDirectory dir, String path) throws IOException {
+        Map<String, VirtualFileSystemInode> files = new HashMap<>();
+        for (Map.Entry<String, byte[]> child : _storage.readDirectory(path).entrySet()) {
+            VirtualFileSystemInode inode = null;
+            if (child.getValue() != null) {
+                String childPath = path.equals(separator) ? separator + child.getKey() : path + separator + child.getKey();
+                try {
+                    inode = readInode(child.getValue());
+                } catch (Exception e) {
+                    logger.debug("Error loading {}, deleting inode", childPath, e);
+                    _storage.deleteInode(childPath);
+                    continue;
+                }
+                inode.setName(child.getKey());
+                inode.setParent(dir);
+                inode.inodeLoadCompleted();
+            }
+            files.put(child.getKey(), inode);
+        }
+        dir.setFiles(files);
+        for (VirtualFileSystemInode inode : files.values()) {
+            if (inode != null) {
+                _inodeCache.add(inode);
             }
         }
-        if (file.exists() && !file.delete()) {
-            logger.error("Could not delete local entry {}, check permissions", file.getAbsolutePath());
+    }
+
+    private VirtualFileSystemInode readInode(byte[] data) {
+        try (JsonReader reader = new JsonReader(new ByteArrayInputStream(data))) {
+            return (VirtualFileSystemInode) reader.readObject();
         }
     }
 
@@ -304,15 +427,7 @@ public class VirtualFileSystem {
      */
     protected void renameInode(String source, String destination)
             throws FileNotFoundException, PermissionDeniedException {
-        File file = new File(getRealPath(source));
-        if (!file.exists()) {
-            throw new FileNotFoundException(source + " cannot be found");
-        }
-        boolean result = file.renameTo(new File(getRealPath(destination)));
-        if (!result) {
-            throw new PermissionDeniedException("Cannot rename " + source
-                    + " to " + destination);
-        }
+        _storage.renameInode(source, destination);
     }
 
     /**
@@ -321,24 +436,34 @@ public class VirtualFileSystem {
      * @param inode
      */
     protected void writeInode(VirtualFileSystemInode inode) {
-        String fullPath = getRealPath(inode.getPath());
-        if (inode instanceof VirtualFileSystemRoot) {
-            new File(fileSystemPath).mkdirs();
-            fullPath = fullPath + separator + dirName;
-        } else if (inode.isDirectory()) {
-            new File(fullPath).mkdirs();
-            fullPath = fullPath + separator + dirName;
-        } else {
-            new File(getRealPath(inode.getParent().getPath())).mkdirs();
-        }
+        writeInodes(Collections.singletonList(inode));
+    }
+
+    /**
+     * Write the data of several Inodes to the disk in a single batch.
+     *
+     * @param inodes
+     */
+    protected void writeInodes(Collection<VirtualFileSystemInode> inodes) {
         Map<String, Object> params = new HashMap<>();
-        params.put(JsonWriter.PRETTY_PRINT, true);
-        try (OutputStream out = new SafeFileOutputStream(fullPath);
-             JsonWriter writer = new JsonWriter(out, params)) {
-            writer.write(inode);
-            logger.debug("Wrote fullPath {}", fullPath);
-        } catch (IOException | JsonIoException e) {
-            logger.error("Unable to write {} to disk", fullPath, e);
+        params.put(JsonWriter.PRETTY_PRINT, _storage.isPrettyPrinted());
+        List<VFSStorageRecord> records = new ArrayList<>(inodes.size());
+        for (VirtualFileSystemInode inode : inodes) {
+            String path = inode.getPath();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonWriter writer = new JsonWriter(out, params)) {
+                writer.write(inode);
+            } catch (JsonIoException e) {
+                logger.error("Unable to write {} to disk", path, e);
+                continue;
+            }
+            records.add(new VFSStorageRecord(path, inode.isDirectory(), out.toByteArray()));
+        }
+        try {
+            _storage.writeInodes(records);
+            logger.debug("Wrote {} inodes", records.size());
+        } catch (IOException e) {
+            logger.error("Unable to write {} inodes to disk", records.size(), e);
         }
     }
 
@@ -356,6 +481,7 @@ public class VirtualFileSystem {
 
     protected void notifyInodeRenamed(String sourcePath, VirtualFileSystemInode destination) {
         logger.debug("Notifying that {} has been renamed to {}", sourcePath, destination.getPath());
+        _pathCache.invalidate(sourcePath, destination.isDirectory());
 
         publishAsyncEvent(new VirtualFileSystemRenameEvent(sourcePath, destination, destination.getPath()));
     }
@@ -368,6 +494,7 @@ public class VirtualFileSystem {
 
     protected void notifyInodeDeleted(VirtualFileSystemInode inode, String path) {
         logger.debug("Notifying that {} has been deleted", path);
+        _pathCache.invalidate(path, inode.isDirectory());
 
         publishAsyncEvent(new VirtualFileSystemInodeDeletedEvent(inode, path));
     }
@@ -408,13 +535,4 @@ public class VirtualFileSystem {
             return String.CASE_INSENSITIVE_ORDER.compare(inode0.getName(), inode1.getName());
         }
     }
-
-    static class DirInodeFilenameFilter implements FilenameFilter {
-
-        @Override
-        public boolean accept(File dir, String file) {
-            return !file.equals(dirName);
-        }
-
-    }
 }
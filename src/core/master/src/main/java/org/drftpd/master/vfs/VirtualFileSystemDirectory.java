@@ -21,12 +21,13 @@ import org.drftpd.common.vfs.CaseInsensitiveTreeMap;
 import org.drftpd.slave.exceptions.FileExistsException;
 
 import java.io.FileNotFoundException;
-import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -38,11 +39,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
 
+    // shared by every directory so a directory loaded again never reuses a version
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
     protected long _size = 0;
-    private final transient TreeMap<String, SoftReference<VirtualFileSystemInode>> _files =
-            new CaseInsensitiveTreeMap<String, SoftReference<VirtualFileSystemInode>>();
+    // children are kept in memory by the InodeCache, not by their parent
+    private final transient TreeMap<String, WeakReference<VirtualFileSystemInode>> _files =
+            new CaseInsensitiveTreeMap<String, WeakReference<VirtualFileSystemInode>>();
     private boolean _placeHolderLastModified;
     private Map<String, AtomicInteger> _slaveRefCounts = new TreeMap<>();
+    // per slave, digests of this directory and of the tree below it as sent by the slave on the last remerge
+    private volatile Map<String, long[]> _remergeDigests;
+    // changes whenever the directory gains, loses or changes an entry
+    private transient volatile long _version = VERSIONS.incrementAndGet();
 
     public VirtualFileSystemDirectory(String user, String group) {
         super(user, group);
@@ -59,8 +68,9 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
      * @param inode
      */
     protected synchronized void addChild(VirtualFileSystemInode inode, boolean updateLastModified) {
-        _files.put(inode.getName(), new SoftReference<>(
-                inode));
+        _files.put(inode.getName(), new WeakReference<>(inode));
+        updateVersion();
+        getVFS().getInodeCache().add(inode);
         if (updateLastModified &&
                 (getLastModified() < inode.getLastModified() || _placeHolderLastModified)) {
             setLastModified(inode.getLastModified());
@@ -305,16 +315,30 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
         if (name.equals(".")) {
             return this;
         }
+        return getChild(name);
+    }
+
+    /**
+     * Looks up a direct child, name must be a plain entry name.
+     *
+     * @param name
+     * @return VirtualFileSystemInode object if 'name' exists on the dir.
+     * @throws FileNotFoundException
+     */
+    protected VirtualFileSystemInode getChild(String name)
+            throws FileNotFoundException {
         VirtualFileSystemInode inode = null;
         synchronized (this) {
             if (!_files.containsKey(name)) {
                 throw new FileNotFoundException("FileNotFound: " + name + " does not exist");
             }
-            SoftReference<VirtualFileSystemInode> sf = _files.get(name);
-            if (sf != null) {
-                inode = sf.get();
+            WeakReference<VirtualFileSystemInode> ref = _files.get(name);
+            if (ref != null) {
+                inode = ref.get();
             }
-            if (inode == null) {
+            if (inode != null) {
+                getVFS().getInodeCache().hit(inode);
+            } else {
                 // The next line is so that we load the file from disk using the casing of the name
                 // stored against the parent directory not the casing passed by the caller
                 name = _files.ceilingKey(name);
@@ -323,7 +347,8 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
                 inode.setParent(this);
                 // _files.remove(name);
                 // Map instance replaces what is previously there with put()
-                _files.put(name, new SoftReference<>(inode));
+                _files.put(name, new WeakReference<>(inode));
+                getVFS().getInodeCache().miss(inode);
             }
         }
         return inode;
@@ -343,12 +368,18 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     /**
      * Changes the directory tree.
      *
-     * @param files
+     * @param files names of the children, mapped to the child inode if it is already loaded
      */
-    public synchronized void setFiles(String[] files) {
-        for (String file : files) {
-            _files.put(file, null);
+    public synchronized void setFiles(Map<String, VirtualFileSystemInode> files) {
+        for (Map.Entry<String, VirtualFileSystemInode> file : files.entrySet()) {
+            _files.put(file.getKey(), file.getValue() == null ? null : new WeakReference<>(file.getValue()));
         }
+        updateVersion();
+    }
+
+    @Override
+    protected int estimateSize() {
+        return super.estimateSize() + 96 * _files.size() + 48 * _slaveRefCounts.size();
     }
 
     @Override
@@ -381,7 +412,13 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
     }
 
     public synchronized void removeMissingChild(String name) {
-        if (_files.remove(name) != null) {
+        WeakReference<VirtualFileSystemInode> ref = _files.remove(name);
+        if (ref != null) {
+            updateVersion();
+            VirtualFileSystemInode inode = ref.get();
+            if (inode != null) {
+                getVFS().getInodeCache().remove(inode);
+            }
             setLastModified(System.currentTimeMillis());
             commit();
         }
@@ -401,6 +438,61 @@ public class VirtualFileSystemDirectory extends VirtualFileSystemInode {
         }
     }
 
+    /**
+     * @return the version of the entries of this directory, it is never the same
+     * once one of them was added, removed or committed.
+     */
+    public long getVersion() {
+        return _version;
+    }
+
+    protected void updateVersion() {
+        _version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * @return the content and tree digests of slaveName for this directory, null if they are not known.
+     */
+    public long[] getRemergeDigest(String slaveName) {
+        Map<String, long[]> digests = _remergeDigests;
+        return digests == null ? null : digests.get(slaveName);
+    }
+
+    public void setRemergeDigest(String slaveName, long contentDigest, long treeDigest) {
+        synchronized (this) {
+            Map<String, long[]> digests = _remergeDigests == null ? new TreeMap<>() : new TreeMap<>(_remergeDigests);
+            digests.put(slaveName, new long[]{contentDigest, treeDigest});
+            _remergeDigests = digests;
+        }
+        // not through commit(), it would drop them right away
+        CommitManager.getCommitManager().add(this);
+    }
+
+    /**
+     * Drops the remerge digests of this directory and of its parents, called whenever something
+     * below them changes so the next remerge looks at them again.<br>
+     * The walk stops at the first parent without digests, its own parents were dropped along with
+     * it and a remerge storing digests above it again goes through it on the way.
+     */
+    protected void invalidateRemergeDigests() {
+        VirtualFileSystemDirectory dir = this;
+        while (true) {
+            if (dir._remergeDigests != null) {
+                synchronized (dir) {
+                    dir._remergeDigests = null;
+                }
+                CommitManager.getCommitManager().add(dir);
+            }
+            if (dir.isRoot()) {
+                return;
+            }
+            dir = dir.getParent();
+            if (dir._remergeDigests == null) {
+                return;
+            }
+        }
+    }
+
     public Map<String, AtomicInteger> getSlaveRefCounts() {
         synchronized (_slaveRefCounts) {
             return new TreeMap<>(_slaveRefCounts);
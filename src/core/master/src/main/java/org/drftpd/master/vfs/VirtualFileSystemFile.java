@@ -37,39 +37,64 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     public static final Key<Long> XFERTIME = new Key<>(VirtualFileSystemFile.class, "xfertime");
     public static final Key<Integer> DOWNLOADEDTIMES = new Key<>(VirtualFileSystemFile.class, "dltimes");
     public static final Key<Long> DOWNLOADDURATION = new Key<>(VirtualFileSystemFile.class, "dlduration");
-    protected Set<String> _slaves;
+    // copy on write, the set is replaced on every change and never modified once published
+    protected volatile Set<String> _slaves;
+    // read only view of _slaves handed out to readers and listeners, not written to disk
+    private transient volatile Set<String> _publishedSlaves;
     private final transient Queue<RemoteTransfer> _uploads = new ConcurrentLinkedQueue<>();
 
     private final transient Queue<RemoteTransfer> _downloads = new ConcurrentLinkedQueue<>();
 
     private long _size;
 
-    private static final Object _slavesLock = new Object();
-
     public VirtualFileSystemFile(String username, String group, long size, String initialSlave) {
-        this(username, group, size, new HashSet<>(Collections.singletonList(initialSlave)));
+        this(username, group, size, Collections.singleton(initialSlave));
     }
 
     public VirtualFileSystemFile(String username, String group, long size,
                                  Set<String> slaves) {
         super(username, group);
         setSize(size);
-        _slaves = slaves;
+        publishSlaves(new HashSet<>(slaves));
+    }
+
+    @Override
+    protected int estimateSize() {
+        return super.estimateSize() + 48 * _slaves.size();
     }
 
     /**
-     * @return a set of which slaves have this file.
+     * @return a read only set of which slaves have this file, it does not change once returned.
      */
     public Set<String> getSlaves() {
-        synchronized (_slavesLock) {
-            return new HashSet<>(_slaves);
+        Set<String> published = _publishedSlaves;
+        if (published == null) {
+            // loaded from disk, only _slaves was read
+            synchronized (this) {
+                published = _publishedSlaves;
+                if (published == null) {
+                    published = Collections.unmodifiableSet(_slaves);
+                    _publishedSlaves = published;
+                }
+            }
         }
+        return published;
     }
 
-    public void setSlaves(Set<String> slaves) {
-        synchronized (_slavesLock) {
-            _slaves = slaves;
-        }
+    public synchronized void setSlaves(Set<String> slaves) {
+        publishSlaves(new HashSet<>(slaves));
+    }
+
+    /**
+     * Replaces the set of slaves, the given set must not be modified afterwards.
+     *
+     * @return the read only view of the new set
+     */
+    private Set<String> publishSlaves(Set<String> slaves) {
+        Set<String> published = Collections.unmodifiableSet(slaves);
+        _slaves = slaves;
+        _publishedSlaves = published;
+        return published;
     }
 
     @Override
@@ -90,16 +115,19 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
      * @param rslave The slave name to be added
      */
     public void addSlave(String rslave) {
-        boolean added;
-        synchronized (_slavesLock) {
-            added = _slaves.add(rslave);
+        Set<String> slaves;
+        synchronized (this) {
+            if (_slaves.contains(rslave)) {
+                return;
+            }
+            Set<String> added = new HashSet<>(_slaves);
+            added.add(rslave);
+            slaves = publishSlaves(added);
         }
-        if (added) {
-            getParent().incrementSlaveRefCount(rslave);
-            commit();
+        getParent().incrementSlaveRefCount(rslave);
+        commit();
 
-            getVFS().notifySlavesChanged(this, _slaves);
-        }
+        getVFS().notifySlavesChanged(this, slaves);
     }
 
     /**
@@ -142,20 +170,25 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
      * @param rslave The slave name to be removed
      */
     public void removeSlave(String rslave) {
-        boolean isEmpty;
+        Set<String> slaves;
         boolean removed;
-        synchronized (_slavesLock) {
-            removed = _slaves.remove(rslave);
-            isEmpty = _slaves.isEmpty();
+        synchronized (this) {
+            slaves = _slaves;
+            removed = slaves.contains(rslave);
+            if (removed) {
+                Set<String> remaining = new HashSet<>(slaves);
+                remaining.remove(rslave);
+                slaves = publishSlaves(remaining);
+            }
         }
         if (removed) {
             getParent().decrementSlaveRefCount(rslave);
         }
-        if (isEmpty) {
+        if (slaves.isEmpty()) {
             delete();
         } else if (removed) {
             commit();
-            getVFS().notifySlavesChanged(this, _slaves);
+            getVFS().notifySlavesChanged(this, slaves);
         }
     }
 
@@ -222,15 +255,13 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
     }
 
     public boolean isAvailable() {
-        synchronized (_slavesLock) {
-            for (String slave : _slaves) {
-                try {
-                    if (GlobalContext.getGlobalContext().getSlaveManager().getRemoteSlave(slave).isAvailable()) {
-                        return true;
-                    }
-                } catch (ObjectNotFoundException e) {
-                    removeSlave(slave);
+        for (String slave : _slaves) {
+            try {
+                if (GlobalContext.getGlobalContext().getSlaveManager().getRemoteSlave(slave).isAvailable()) {
+                    return true;
                 }
+            } catch (ObjectNotFoundException e) {
+                removeSlave(slave);
             }
         }
         return false;
@@ -338,10 +369,8 @@ public class VirtualFileSystemFile extends VirtualFileSystemInode implements Sta
 
     protected Map<String, AtomicInteger> getSlaveRefCounts() {
         Map<String, AtomicInteger> slaveRefCounts = new TreeMap<>();
-        synchronized (_slavesLock) {
-            for (String slave : _slaves) {
-                slaveRefCounts.put(slave, new AtomicInteger(1));
-            }
+        for (String slave : _slaves) {
+            slaveRefCounts.put(slave, new AtomicInteger(1));
         }
         return slaveRefCounts;
     }
@@ -49,6 +49,7 @@ public abstract class VirtualFileSystemInode implements Commitable {
     protected long _lastModified;
     protected long _creationTime;
     private transient boolean _inodeLoaded;
+    protected transient volatile InodeCache.Entry _cacheEntry;
 
     public VirtualFileSystemInode(String user, String group) {
         _username = user;
@@ -80,6 +81,15 @@ public abstract class VirtualFileSystemInode implements Commitable {
     public void commit() {
         //logger.debug("Committing " + getPath());
         CommitManager.getCommitManager().add(this);
+        if (_parent != null) {
+            // this entry is listed by its parent
+            _parent.updateVersion();
+        }
+        VirtualFileSystemDirectory dir = this instanceof VirtualFileSystemDirectory
+                ? (VirtualFileSystemDirectory) this : _parent;
+        if (dir != null) {
+            dir.invalidateRemergeDigests();
+        }
     }
 
     /**
@@ -190,6 +200,14 @@ public abstract class VirtualFileSystemInode implements Commitable {
         _parent = directory;
     }
 
+    /**
+     * @return a rough estimation of the memory used by this inode, in bytes.
+     */
+    protected int estimateSize() {
+        int size = 256 + 64 * (_keyedMap.size() + _pluginMap.size() + _untypedPluginMap.size());
+        return _name == null ? size : size + 2 * _name.length();
+    }
+
     /**
      * @return Returns the full path.
      */
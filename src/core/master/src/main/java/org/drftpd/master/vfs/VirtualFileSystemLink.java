@@ -33,6 +33,11 @@ public class VirtualFileSystemLink extends VirtualFileSystemInode {
         _link = link;
     }
 
+    @Override
+    protected int estimateSize() {
+        return super.estimateSize() + 2 * _link.length();
+    }
+
     public String getLinkPath() {
         return _link;
     }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs.perms;
+
+import org.drftpd.master.permissions.PathPermission;
+import org.drftpd.master.usermanager.User;
+import org.drftpd.master.vfs.InodeHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the first {@link PathPermission} of a list matching a path.<br>
+ * The permissions are indexed in a tree by the prefix every path they match starts with, only the
+ * ones whose prefix starts the path are checked, in the order of the list. Prefixes are compared
+ * ignoring case so case insensitive patterns are indexed too, the permission itself decides.<br>
+ * The result for a directory is kept, as the same directories are checked over and over while
+ * listing them.
+ */
+public class PathPermissionMatcher {
+    private static final int MAX_CACHED_DIRECTORIES = 10000;
+
+    private static final int NO_MATCH = -1;
+
+    private final PathPermission[] _perms;
+
+    private final Node _root = new Node();
+
+    // index of the first matching permission by directory path, ending with a separator
+    private final Map<String, Integer> _directories = new ConcurrentHashMap<>();
+
+    public PathPermissionMatcher(List<PathPermission> perms) {
+        _perms = perms.toArray(new PathPermission[0]);
+        for (int i = 0; i < _perms.length; i++) {
+            String prefix = _perms[i].getPathPrefix();
+            Node node = _root;
+            for (int j = 0; j < prefix.length(); j++) {
+                node = node._children.computeIfAbsent(Character.toLowerCase(prefix.charAt(j)), c -> new Node());
+            }
+            node._perms.set(i);
+        }
+    }
+
+    /**
+     * @return the first permission matching the inode, null if none does.
+     */
+    public PathPermission match(InodeHandle inode) {
+        String path = inode.getPath();
+        if (!inode.isDirectory()) {
+            int index = find(inode, path);
+            return index == NO_MATCH ? null : _perms[index];
+        }
+        if (!path.endsWith(VirtualFileSystem.separator)) {
+            path = path + VirtualFileSystem.separator;
+        }
+        Integer cached = _directories.get(path);
+        if (cached == null) {
+            cached = find(inode, path);
+            if (_directories.size() >= MAX_CACHED_DIRECTORIES) {
+                _directories.clear();
+            }
+            _directories.put(path, cached);
+        }
+        return cached == NO_MATCH ? null : _perms[cached];
+    }
+
+    /**
+     * @return which of the permissions {@code user} is granted, one character each, users
+     * with the same signature are allowed the same paths.
+     */
+    public String getSignature(User user) {
+        char[] signature = new char[_perms.length];
+        for (int i = 0; i < _perms.length; i++) {
+            signature[i] = _perms[i].check(user) ? '1' : '0';
+        }
+        return new String(signature);
+    }
+
+    private int find(InodeHandle inode, String path) {
+        BitSet candidates = (BitSet) _root._perms.clone();
+        Node node = _root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node._children.get(Character.toLowerCase(path.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            candidates.or(node._perms);
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (_perms[i].checkPath(inode)) {
+                return i;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private static class Node {
+        private final Map<Character, Node> _children = new HashMap<>();
+        private final BitSet _perms = new BitSet();
+    }
+}
@@ -32,7 +32,8 @@ import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
 /**
- * This object handles all the permissions releated to the VFS.
+ * This object handles all the permissions releated to the VFS.<br>
+ * The permissions of a type are compiled in a {@link PathPermissionMatcher} the first time they are checked.
  *
  * @author fr0w
  * @version $Id$
@@ -47,6 +48,9 @@ public class VFSPermissions {
     private HashMap<String, String> _directiveToType;
     private HashMap<String, TreeMap<Integer, String>> _priorities;
 
+    // permissions of every type in the order they are checked, compiled when first needed
+    private volatile Map<String, PathPermissionMatcher> _matchers = new HashMap<>();
+
     public VFSPermissions() {
         loadExtensions();
 
@@ -116,7 +120,7 @@ public class VFSPermissions {
         pw.handle(directive, st);
     }
 
-    protected void addPermissionToMap(String directive, PathPermission pathPerm) {
+    protected synchronized void addPermissionToMap(String directive, PathPermission pathPerm) {
         String type = _directiveToType.get(directive);
 
         HashMap<String, LinkedList<PathPermission>> map = _pathPerms.computeIfAbsent(type, k -> new HashMap<>());
@@ -130,6 +134,54 @@ public class VFSPermissions {
         }
 
         list.add(pathPerm);
+        _matchers = new HashMap<>();
+    }
+
+    private PathPermissionMatcher getMatcher(String type) {
+        Map<String, PathPermissionMatcher> matchers = _matchers;
+        PathPermissionMatcher matcher = matchers.get(type);
+        if (matcher != null || matchers.containsKey(type)) {
+            return matcher;
+        }
+        synchronized (this) {
+            matchers = _matchers;
+            if (matchers.containsKey(type)) {
+                return matchers.get(type);
+            }
+            matcher = compile(type);
+            matchers = new HashMap<>(matchers);
+            matchers.put(type, matcher);
+            _matchers = matchers;
+            return matcher;
+        }
+    }
+
+    /**
+     * @return the permissions of the type by directive priority then as they were added, null if there are none.
+     */
+    private PathPermissionMatcher compile(String type) {
+        HashMap<String, LinkedList<PathPermission>> map = _pathPerms.get(type);
+        TreeMap<Integer, String> order = _priorities.get(type);
+
+        if (map == null) {
+            return null;
+        }
+
+        if (order == null) {
+            NullPointerException npe = new NullPointerException("You've got some screwy plugin.xml files!  Blame fr0w!");
+            logger.error(npe, npe);
+            throw npe;
+        }
+
+        List<PathPermission> perms = new ArrayList<>();
+        for (String directive : order.values()) {
+            LinkedList<PathPermission> directivePerms = map.get(directive);
+            // null if 'directive' was not found in perms.conf
+            if (directivePerms != null) {
+                perms.addAll(directivePerms);
+            }
+        }
+        return new PathPermissionMatcher(perms);
     }
 
     public boolean checkPathPermission(String type, User user, InodeHandle inode) {
@@ -146,42 +198,28 @@ public class VFSPermissions {
             throw new IllegalArgumentException("Invalid VFS perm type.");
         }
 
-        HashMap<String, LinkedList<PathPermission>> map = _pathPerms.get(type);
-        TreeMap<Integer, String> order = _priorities.get(type);
-
-        if (map == null) {
+        PathPermissionMatcher matcher = getMatcher(type);
+        if (matcher == null) {
             return defaults;
         }
 
-        if (order == null) {
-            NullPointerException npe = new NullPointerException("You've got some screwy plugin.xml files!  Blame fr0w!");
-            logger.error(npe, npe);
-            throw npe;
+        PathPermission perm = matcher.match(inode);
+        if (perm == null) {
+            return defaults;
         }
-
-        for (Entry<Integer, String> entry : order.entrySet()) {
-            String directive = entry.getValue();
-
-            LinkedList<PathPermission> perms = map.get(directive);
-
-            if (perms == null) {
-                // 'directive' was not found in perms.conf
-                continue;
-            }
-
-            if (!perms.isEmpty()) {
-                for (PathPermission perm : perms) {
-                    if (perm.checkPath(inode)) {
-                        if (invertUserSemantic) {
-                            return !perm.check(user);
-                        }
-                        return perm.check(user);
-                    }
-                }
-            }
+        if (invertUserSemantic) {
+            return !perm.check(user);
         }
+        return perm.check(user);
+    }
 
-        return defaults;
+    /**
+     * @return a signature of the privpath permissions of {@code user}, users with the same
+     * signature see the same files.
+     */
+    public String getPrivPathSignature(User user) {
+        PathPermissionMatcher matcher = getMatcher("privpath");
+        return matcher == null ? "" : matcher.getSignature(user);
     }
 
     public String getPrivPathRegex() {
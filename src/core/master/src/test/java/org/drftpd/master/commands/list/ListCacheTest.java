@@ -0,0 +1,72 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.commands.list;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ListCacheTest {
+
+    private static ListCache.Listing listing(int size) {
+        return new ListCache.Listing(new byte[size], List.of(), 0, 0);
+    }
+
+    @Test
+    public void testVersionAndExpiry() {
+        ListCache cache = new ListCache(1000L);
+        ListCache.Listing listing = listing(10);
+        cache.put("/dir", 1L, 500L, listing);
+        assertSame(listing, cache.get("/dir", 1L, 100L));
+        assertNull(cache.get("/other", 1L, 100L));
+
+        // the dates would be written differently
+        assertNull(cache.get("/dir", 1L, 500L));
+        assertEquals(0L, cache.getBytes());
+
+        cache.put("/dir", 1L, Long.MAX_VALUE, listing);
+        assertNull(cache.get("/dir", 2L, 100L));
+        assertNull(cache.get("/dir", 1L, 100L), "an older version is dropped once seen");
+    }
+
+    @Test
+    public void testSize() {
+        ListCache cache = new ListCache(100L);
+        for (int i = 0; i < 5; i++) {
+            cache.put("/dir" + i, 1L, Long.MAX_VALUE, listing(30));
+        }
+        assertEquals(90L, cache.getBytes());
+        assertNull(cache.get("/dir0", 1L, 0L));
+        assertNull(cache.get("/dir1", 1L, 0L));
+        assertNotNull(cache.get("/dir2", 1L, 0L));
+
+        // the most recently used are kept
+        cache.setMaxBytes(60L);
+        assertNotNull(cache.get("/dir2", 1L, 0L));
+        assertNull(cache.get("/dir3", 1L, 0L));
+
+        cache.put("/big", 1L, Long.MAX_VALUE, listing(200));
+        assertNull(cache.get("/big", 1L, 0L));
+        assertEquals(60L, cache.getBytes());
+
+        cache.setMaxBytes(0L);
+        assertEquals(0L, cache.getBytes());
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.event;
+
+import org.bushe.swing.event.EventSubscriber;
+import org.bushe.swing.event.EventTopicSubscriber;
+import org.drftpd.master.vfs.VirtualFileSystemInode;
+import org.drftpd.master.vfs.VirtualFileSystemRoot;
+import org.drftpd.master.vfs.event.VirtualFileSystemOwnershipEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemRenameEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemSizeEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncThreadSafeEventServiceTest {
+
+    // the events only need an inode to resolve, their paths are given apart
+    private final VirtualFileSystemInode _inode = new VirtualFileSystemRoot();
+
+    private AsyncThreadSafeEventService _service;
+
+    // handled events, in the order they were handled
+    private final List<String> _handled = Collections.synchronizedList(new ArrayList<>());
+
+    // strong references, the event service only keeps weak ones
+    private final List<Object> _subscribers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        _service = new AsyncThreadSafeEventService();
+    }
+
+    private void configure(String... settings) {
+        Properties cfg = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            cfg.setProperty(settings[i], settings[i + 1]);
+        }
+        _service.configure(cfg);
+    }
+
+    private <T> void subscribe(Class<T> type, EventSubscriber<T> subscriber) {
+        _subscribers.add(subscriber);
+        _service.subscribe(type, subscriber);
+    }
+
+    private VirtualFileSystemOwnershipEvent ownership(String path, String owner) {
+        return new VirtualFileSystemOwnershipEvent(_inode, path, owner, "drftpd");
+    }
+
+    private void waitFor(int handled) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (_handled.size() < handled || _service.getQueueSize() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "only " + _handled.size() + " events handled");
+            Thread.sleep(10L);
+        }
+    }
+
+    /**
+     * @return the names of two sections dispatched by different workers of the three configured.
+     */
+    private static String[] getSectionsOfBothWorkers() {
+        String first = "/section0";
+        for (int i = 1; ; i++) {
+            String second = "/section" + i;
+            if (Math.floorMod(first.hashCode(), 2) != Math.floorMod(second.hashCode(), 2)) {
+                return new String[]{first, second};
+            }
+        }
+    }
+
+    @Test
+    public void testOrderWithinSections() throws InterruptedException {
+        configure("event.threads", "3");
+        Map<String, String> threads = new ConcurrentHashMap<>();
+        subscribe(VirtualFileSystemOwnershipEvent.class, event -> {
+            threads.put(event.getImmutableInode().getPath(), Thread.currentThread().getName());
+            _handled.add(event.getImmutableInode().getPath() + " " + event.getOwner());
+        });
+        String[] sections = getSectionsOfBothWorkers();
+        for (int i = 0; i < 2000; i++) {
+            _service.publishAsync(ownership(sections[i % 2] + "/release", Integer.toString(i)));
+        }
+        waitFor(2000);
+
+        int[] last = {-2, -1};
+        for (String handled : _handled) {
+            int i = Integer.parseInt(handled.substring(handled.indexOf(' ') + 1));
+            assertEquals(last[i % 2] + 2, i, handled);
+            last[i % 2] = i;
+        }
+        assertNotEquals(threads.get(sections[0] + "/release"), threads.get(sections[1] + "/release"));
+        assertFalse(threads.containsValue("AsyncEventHandler"), "the first worker is kept for other events");
+    }
+
+    @Test
+    public void testRenameBetweenSections() throws InterruptedException {
+        configure("event.threads", "3");
+        String[] sections = getSectionsOfBothWorkers();
+        CountDownLatch blocked = new CountDownLatch(1);
+        subscribe(VirtualFileSystemOwnershipEvent.class, event -> {
+            if (event.getOwner().equals("slow")) {
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            _handled.add(event.getImmutableInode().getPath());
+        });
+        subscribe(VirtualFileSystemRenameEvent.class, event ->
+                _handled.add(event.getSource().getPath() + " -> " + event.getImmutableInode().getPath()));
+
+        _service.publishAsync(ownership(sections[0] + "/release", "slow"));
+        _service.publishAsync(ownership(sections[1] + "/other", "drftpd"));
+        _service.publishAsync(new VirtualFileSystemRenameEvent(sections[0] + "/release", _inode,
+                sections[1] + "/release"));
+        _service.publishAsync(ownership(sections[1] + "/release", "drftpd"));
+        Thread.sleep(200L);
+        // waits for the event published before it in the first section
+        assertEquals(List.of(sections[1] + "/other"), _handled);
+
+        blocked.countDown();
+        waitFor(4);
+        assertEquals(List.of(sections[1] + "/other", sections[0] + "/release",
+                sections[0] + "/release -> " + sections[1] + "/release", sections[1] + "/release"), _handled);
+    }
+
+    @Test
+    public void testCoalescing() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        subscribe(VirtualFileSystemOwnershipEvent.class, event -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            _handled.add(event.getImmutableInode().getPath());
+        });
+        subscribe(VirtualFileSystemSizeEvent.class, event ->
+                _handled.add(event.getImmutableInode().getPath() + " " + event.getSize()));
+
+        _service.publishAsync(ownership("/section/release", "drftpd"));
+        for (int i = 0; i <= 100; i++) {
+            _service.publishAsync(new VirtualFileSystemSizeEvent(_inode, "/section/release", i));
+            _service.publishAsync(new VirtualFileSystemSizeEvent(_inode, "/section", i * 2));
+        }
+        blocked.countDown();
+        waitFor(3);
+
+        assertEquals(List.of("/section/release", "/section/release 100", "/section 200"), _handled);
+        assertEquals(200, _service.getCoalescedCount());
+        assertEquals(203, _service.getPublishedCount());
+
+        // taken events are not replaced anymore
+        _service.publishAsync(new VirtualFileSystemSizeEvent(_inode, "/section", 300));
+        waitFor(4);
+        assertEquals("/section 300", _handled.get(3));
+    }
+
+    @Test
+    public void testDiscard() throws InterruptedException {
+        configure("event.queue.size", "5", "event.queue.overflow", "discard");
+        CountDownLatch blocked = new CountDownLatch(1);
+        EventTopicSubscriber<Object> subscriber = (topic, data) -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            _handled.add(topic);
+        };
+        _subscribers.add(subscriber);
+        _service.subscribe("test", subscriber);
+
+        _service.publishAsync("test", "first");
+        Thread.sleep(200L);
+        for (int i = 0; i < 10; i++) {
+            _service.publishAsync("test", Integer.toString(i));
+        }
+        assertEquals(5, _service.getDiscardedCount());
+        blocked.countDown();
+        waitFor(6);
+        assertEquals(6, _handled.size());
+    }
+
+    @Test
+    public void testBlockTimeout() throws InterruptedException {
+        configure("event.queue.size", "2", "event.queue.timeout", "50");
+        CountDownLatch blocked = new CountDownLatch(1);
+        subscribe(VirtualFileSystemOwnershipEvent.class, event -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            _handled.add(event.getOwner());
+        });
+
+        _service.publishAsync(ownership("/section", "first"));
+        Thread.sleep(200L);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            _service.publishAsync(ownership("/section", Integer.toString(i)));
+        }
+        // the last two waited for room then were queued anyway
+        assertTrue(System.currentTimeMillis() - start >= 100L);
+        assertEquals(2, _service.getOverflowCount());
+        blocked.countDown();
+        waitFor(5);
+        assertEquals(List.of("first", "0", "1", "2", "3"), _handled);
+    }
+
+    @Test
+    public void testSubscriberStats() throws InterruptedException {
+        subscribe(VirtualFileSystemOwnershipEvent.class, event -> {
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException ignored) {
+            }
+            _handled.add(event.getOwner());
+        });
+        for (int i = 0; i < 5; i++) {
+            _service.publishAsync(ownership("/section", Integer.toString(i)));
+        }
+        waitFor(5);
+
+        List<AsyncThreadSafeEventService.SubscriberStats> stats = _service.getSubscriberStats();
+        assertEquals(1, stats.size());
+        assertEquals(5, stats.get(0).getCalls());
+        assertTrue(stats.get(0).getTotalTime() >= 100L);
+        assertTrue(stats.get(0).getMaxTime() >= 20L);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.indexation;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.drftpd.master.slavemanagement.DummyRemoteSlave;
+import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.master.tests.DummyGlobalContext;
+import org.drftpd.master.tests.DummySlaveManager;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.InodeHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LuceneRebuildTest {
+
+    private static DirectoryHandle root = null;
+
+    /**
+     * An engine without an index of its own, the rebuilt index is only read back by the test.
+     */
+    private static class StagingOnlyEngine extends LuceneEngine {
+        @Override
+        protected void openStreams() {
+        }
+    }
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        DummyGlobalContext gctx = new DummyGlobalContext();
+        gctx.setSlaveManager(new DummySlaveManager());
+        RemoteSlave rslave = new DummyRemoteSlave("testSlave");
+        root = new DirectoryHandle(VirtualFileSystem.separator);
+        root.createFileUnchecked("rootFile", "drftpd", "drftpd", rslave);
+        root.createDirectoryUnchecked("Section", "drftpd", "drftpd")
+                .createFileUnchecked("sectionFile", "drftpd", "drftpd", rslave);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        for (InodeHandle inode : root.getInodeHandlesUnchecked()) {
+            inode.deleteUnchecked();
+        }
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    private static int count(IndexSearcher searcher, String fullPath) throws Exception {
+        return searcher.search(new TermQuery(new Term("fullPath", fullPath)), 10).totalHits;
+    }
+
+    @Test
+    public void testResumeAfterRootFilesWritten() throws Exception {
+        LuceneEngine engine = new StagingOnlyEngine();
+
+        // a rebuild stopped after writing the files of the root, before its shard was checkpointed
+        Directory staging = FSDirectory.open(new File(LuceneRebuild.STAGING_DIR));
+        try (IndexWriter writer = new IndexWriter(staging,
+                new IndexWriterConfig(Version.LUCENE_36, LuceneEngine.ANALYZER))) {
+            engine.addDocument(writer, root.getImmutableInode());
+            engine.addDocument(writer, new FileHandle("/rootFile").getImmutableInode());
+        }
+        staging.close();
+        new FileOutputStream(LuceneRebuild.STAGING_DIR + ".checkpoint").close();
+
+        LuceneRebuild rebuild = new LuceneRebuild(engine, 2);
+        rebuild.open(true);
+        rebuild.run();
+
+        try (Directory index = FSDirectory.open(new File(LuceneEngine.INDEX_DIR));
+             IndexReader reader = IndexReader.open(index)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            assertEquals(1, count(searcher, "//"));
+            assertEquals(1, count(searcher, "/rootFile"));
+            assertEquals(1, count(searcher, "/Section/"));
+            assertEquals(1, count(searcher, "/Section/sectionFile"));
+            assertEquals(4, reader.numDocs());
+            searcher.close();
+        }
+    }
+
+    @Test
+    public void testParallelDocuments() throws Exception {
+        RemoteSlave rslave = new DummyRemoteSlave("testSlave");
+        List<DirectoryHandle> sections = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            DirectoryHandle section = root.createDirectoryUnchecked("Parallel" + i, "drftpd", "drftpd");
+            for (int j = 0; j < 50; j++) {
+                section.createFileUnchecked("file" + i + "_" + j, "user" + i, "drftpd", rslave);
+            }
+            sections.add(section);
+        }
+        try {
+            LuceneRebuild rebuild = new LuceneRebuild(new StagingOnlyEngine(), 4);
+            rebuild.open(false);
+            rebuild.run();
+
+            // the documents are filled side by side, no field may carry the value of another inode
+            try (Directory index = FSDirectory.open(new File(LuceneEngine.INDEX_DIR));
+                 IndexReader reader = IndexReader.open(index)) {
+                int files = 0;
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    Document doc = reader.document(i);
+                    String name = doc.get("name");
+                    if (!name.startsWith("file")) {
+                        continue;
+                    }
+                    String section = "Parallel" + name.substring(4, name.indexOf('_'));
+                    assertEquals("/" + section + "/" + name, doc.get("fullPath"));
+                    assertEquals("/" + section + "/", doc.get("parentPath"));
+                    assertEquals("user" + section.substring(8), doc.get("owner"));
+                    files++;
+                }
+                assertEquals(400, files);
+            }
+        } finally {
+            for (DirectoryHandle section : sections) {
+                section.deleteUnchecked();
+            }
+        }
+    }
+}
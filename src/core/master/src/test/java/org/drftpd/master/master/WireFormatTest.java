@@ -0,0 +1,164 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.master;
+
+import org.drftpd.common.exceptions.AsyncResponseException;
+import org.drftpd.common.network.AsyncCommandArgument;
+import org.drftpd.common.network.BinaryObjectInputStream;
+import org.drftpd.common.network.BinaryObjectOutputStream;
+import org.drftpd.common.slave.ConnectInfo;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.common.slave.TransferIndex;
+import org.drftpd.common.slave.TransferStatus;
+import org.drftpd.slave.network.AsyncResponseCommandStats;
+import org.drftpd.slave.network.AsyncResponseRemerge;
+import org.drftpd.slave.network.AsyncResponseTransfer;
+import org.drftpd.slave.network.AsyncResponseTransferStatus;
+import org.drftpd.slave.network.SlaveWireCodecs;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WireFormatTest {
+
+    @BeforeAll
+    public static void setUp() {
+        SlaveWireCodecs.register();
+    }
+
+    private static List<LightRemoteInode> makeInodes(int count) {
+        List<LightRemoteInode> inodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            inodes.add(new LightRemoteInode("file" + i + ".rar", "user" + (i % 3), "group", i % 10 == 0,
+                    1000L * i, 15000000L + i));
+        }
+        return inodes;
+    }
+
+    private static List<Object> roundTrip(Object... objects) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new BinaryObjectOutputStream(bytes);
+        for (Object obj : objects) {
+            out.writeObject(obj);
+            out.flush();
+            out.reset();
+        }
+        ObjectInputStream in = new BinaryObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        List<Object> result = new ArrayList<>();
+        for (int i = 0; i < objects.length; i++) {
+            result.add(in.readObject());
+        }
+        assertThrows(EOFException.class, in::readObject);
+        return result;
+    }
+
+    @Test
+    public void testCodecs() throws Exception {
+        TransferIndex transferIndex = new TransferIndex(42);
+        List<Object> result = roundTrip(
+                new AsyncCommandArgument("0a", "remerge", new String[]{"/dir", "false", null}),
+                new AsyncResponseRemerge("/dir", makeInodes(50), 1234L),
+                new AsyncResponseTransferStatus(new TransferStatus(2000, 10000000, 0xcafeL, false, transferIndex)),
+                new AsyncResponseTransferStatus(new TransferStatus(transferIndex, new IOException("aborted"))),
+                new AsyncResponseTransfer("0b", new ConnectInfo(40000, transferIndex, null)),
+                new AsyncResponseCommandStats("0c", List.of(
+                        new AsyncResponseCommandStats.CommandStats("checksum", 1, 2, 3L, 4L, 5L, 6L, 7L, 8L))));
+
+        AsyncCommandArgument ac = (AsyncCommandArgument) result.get(0);
+        assertEquals("0a", ac.getIndex());
+        assertEquals("remerge", ac.getName());
+        assertArrayEquals(new String[]{"/dir", "false", null}, ac.getArgsArray());
+
+        AsyncResponseRemerge remerge = (AsyncResponseRemerge) result.get(1);
+        assertEquals("/dir", remerge.getPath());
+        assertEquals(1234L, remerge.getLastModified());
+        List<LightRemoteInode> expected = makeInodes(50);
+        assertEquals(expected.size(), remerge.getFiles().size());
+        for (int i = 0; i < expected.size(); i++) {
+            LightRemoteInode inode = remerge.getFiles().get(i);
+            assertEquals(expected.get(i).getName(), inode.getName());
+            assertEquals(expected.get(i).getUsername(), inode.getUsername());
+            assertEquals(expected.get(i).getGroup(), inode.getGroup());
+            assertEquals(expected.get(i).isDirectory(), inode.isDirectory());
+            assertEquals(expected.get(i).lastModified(), inode.lastModified());
+            assertEquals(expected.get(i).length(), inode.length());
+        }
+
+        TransferStatus ts = ((AsyncResponseTransferStatus) result.get(2)).getTransferStatus();
+        assertEquals(transferIndex, ts.getTransferIndex());
+        assertEquals(2000, ts.getElapsed());
+        assertEquals(10000000, ts.getTransfered());
+        assertEquals(0xcafeL, ts.getChecksum());
+        assertFalse(ts.isFinished());
+
+        ts = ((AsyncResponseTransferStatus) result.get(3)).getTransferStatus();
+        assertTrue(ts.isFinished());
+        assertEquals("aborted", ts.getThrowable().getMessage());
+
+        ConnectInfo ci = ((AsyncResponseTransfer) result.get(4)).getConnectInfo();
+        assertEquals(40000, ci.getPort());
+        assertEquals(transferIndex, ci.getTransferIndex());
+        assertNull(ci.getTransferStatus());
+
+        AsyncResponseCommandStats commandStats = (AsyncResponseCommandStats) result.get(5);
+        assertEquals("0c", commandStats.getIndex());
+        AsyncResponseCommandStats.CommandStats stats = commandStats.getStats().get(0);
+        assertEquals("checksum", stats.getName());
+        assertEquals(1, stats.getWaiting());
+        assertEquals(2, stats.getRunning());
+        assertEquals(3L, stats.getCompleted());
+        assertEquals(4L, stats.getRejected());
+        assertEquals(5L, stats.getAverageWaitTime());
+        assertEquals(6L, stats.getMaxWaitTime());
+        assertEquals(7L, stats.getAverageRunTime());
+        assertEquals(8L, stats.getMaxRunTime());
+    }
+
+    @Test
+    public void testSerializedFallback() throws Exception {
+        List<Object> result = roundTrip(new AsyncResponseException("0c", new Exception("failed")), "binary", null);
+        AsyncResponseException are = (AsyncResponseException) result.get(0);
+        assertEquals("0c", are.getIndex());
+        assertEquals("failed", are.getThrowable().getMessage());
+        assertEquals("binary", result.get(1));
+        assertNull(result.get(2));
+    }
+
+    @Test
+    public void testRemergeSize() throws Exception {
+        AsyncResponseRemerge remerge = new AsyncResponseRemerge("/dir", makeInodes(500), 1234L);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(serialized);
+        oos.writeObject(remerge);
+        oos.flush();
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ObjectOutputStream bos = new BinaryObjectOutputStream(binary);
+        bos.writeObject(remerge);
+        bos.flush();
+
+        assertTrue(binary.size() < serialized.size(),
+                "binary " + binary.size() + " bytes, serialized " + serialized.size() + " bytes");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.network;
+
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.tests.DummyGlobalContext;
+import org.drftpd.master.tests.DummySlaveManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BaseFtpConnectionTest {
+
+    private static InetAddress _address;
+
+    @BeforeAll
+    public static void setUp() throws UnknownHostException {
+        DummyGlobalContext gctx = new DummyGlobalContext();
+        gctx.setSlaveManager(new DummySlaveManager());
+        _address = InetAddress.getByName("10.0.0.1");
+    }
+
+    private static BaseFtpConnection newConnection() {
+        return new BaseFtpConnection() {
+            @Override
+            public InetAddress getClientAddress() {
+                return _address;
+            }
+        };
+    }
+
+    private static ConnectionCounters getCounters() {
+        return GlobalContext.getConnectionManager().getConnectionCounters();
+    }
+
+    @Test
+    public void testUserWithoutPassIsNotCounted() {
+        // USER on more connections than maxlogins would allow, without ever sending PASS
+        for (int i = 0; i < 5; i++) {
+            newConnection().setUser("victim");
+        }
+        assertEquals(0, getCounters().getLogins("victim"));
+        assertEquals(0, getCounters().getLogins("victim", _address));
+    }
+
+    @Test
+    public void testFailedPassIsNotCounted() {
+        BaseFtpConnection conn = newConnection();
+        conn.setUser("failed");
+        conn.setAuthenticated(false);
+        assertEquals(0, getCounters().getLogins("failed"));
+        assertEquals(0, getCounters().getLogins("failed", _address));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.network;
+
+import org.drftpd.slave.network.Transfer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ConnectionCountersTest {
+
+    private final ConnectionCounters _counters = new ConnectionCounters();
+
+    @Test
+    public void testLogins() throws Exception {
+        InetAddress home = InetAddress.getByName("10.0.0.1");
+        InetAddress work = InetAddress.getByName("10.0.0.2");
+        _counters.login("drftpd", home);
+        _counters.login("drftpd", home);
+        _counters.login("drftpd", work);
+        _counters.login("other", home);
+
+        assertEquals(3, _counters.getLogins("drftpd"));
+        assertEquals(2, _counters.getLogins("drftpd", home));
+        assertEquals(1, _counters.getLogins("drftpd", work));
+        assertEquals(1, _counters.getLogins("other", home));
+
+        _counters.logout("drftpd", home);
+        _counters.logout("drftpd", work);
+        assertEquals(1, _counters.getLogins("drftpd"));
+        assertEquals(0, _counters.getLogins("drftpd", work));
+        _counters.logout("drftpd", home);
+        assertEquals(0, _counters.getLogins("drftpd"));
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    _counters.transferStarted("drftpd", Transfer.TRANSFER_RECEIVING_UPLOAD);
+                    _counters.transferEnded("drftpd", Transfer.TRANSFER_RECEIVING_UPLOAD);
+                }
+                _counters.transferStarted("drftpd", Transfer.TRANSFER_SENDING_DOWNLOAD);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, _counters.getTransfers("drftpd", Transfer.TRANSFER_RECEIVING_UPLOAD));
+        assertEquals(8, _counters.getTransfers("drftpd", Transfer.TRANSFER_SENDING_DOWNLOAD));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.network;
+
+import org.drftpd.master.commands.usermanagement.UserManagement;
+import org.drftpd.master.tests.DummyUser;
+import org.drftpd.master.tests.DummyUserManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserReplacerEnvironmentTest {
+
+    @Test
+    public void testPrecedence() {
+        DummyUser user = new DummyUser("test");
+        user.getKeyedMap().setObject(UserManagement.TAGLINE, "hello");
+        Map<String, Object> inherited = new HashMap<>();
+        inherited.put("user", "inherited");
+        inherited.put("dir", "/mp3");
+
+        Map<String, Object> env = new UserReplacerEnvironment(inherited, user);
+        // the user wins over the inherited environment
+        assertEquals("test", env.get("user"));
+        assertEquals("/mp3", env.get("dir"));
+        // what is put afterwards wins over the user
+        env.put("tagline", "bye");
+        assertEquals("bye", env.get("tagline"));
+        assertEquals("test", env.get("username"));
+        assertTrue(env.containsKey("credits"));
+        assertNull(env.get("missing"));
+    }
+
+    @Test
+    public void testCopy() {
+        DummyUser user = new DummyUser("test", new DummyUserManager());
+        user.getKeyedMap().setObject(UserManagement.TAGLINE, "hello");
+        Map<String, Object> env = new UserReplacerEnvironment(null, user);
+        env.put("user", "other");
+
+        Map<String, Object> copy = new HashMap<>(env);
+        assertEquals("other", copy.get("user"));
+        assertEquals("hello", copy.get("tagline"));
+        assertEquals("hello", copy.get(UserManagement.TAGLINE.toString()));
+        assertTrue(copy.containsKey("isbanned"));
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.apache.commons.io.FileUtils;
+import org.drftpd.common.exceptions.AsyncResponseException;
+import org.drftpd.common.exceptions.RemoteIOException;
+import org.drftpd.common.network.AsyncCommandArgument;
+import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.master.tests.DummyGlobalContext;
+import org.drftpd.master.tests.DummySlaveManager;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.slave.network.AsyncResponseRemergeDigest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DigestRemergeTest {
+
+    private static final AtomicInteger SLAVES = new AtomicInteger();
+
+    private DigestSlave _rslave;
+
+    @BeforeAll
+    static void setUp() {
+        DummyGlobalContext gctx = new DummyGlobalContext();
+        gctx.setSlaveManager(new DummySlaveManager());
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    @BeforeEach
+    void createSlave() {
+        // digests are stored per slave, a new one starts without any
+        _rslave = new DigestSlave("digestSlave" + SLAVES.incrementAndGet());
+        _rslave.put("/", 1L, 10L, directory("Release"));
+        _rslave.put("/Release", 2L, 20L, file("a.r00"), directory("Sub"));
+        _rslave.put("/Release/Sub", 3L, 30L, file("b.r00"));
+    }
+
+    @AfterEach
+    void deleteRelease() throws Exception {
+        DirectoryHandle dir = new DirectoryHandle("/Release");
+        if (dir.exists()) {
+            dir.deleteUnchecked();
+        }
+    }
+
+    private static LightRemoteInode file(String name) {
+        return new LightRemoteInode(name, "drftpd", "drftpd", false, 1000L, 100L);
+    }
+
+    private static LightRemoteInode directory(String name) {
+        return new LightRemoteInode(name, "drftpd", "drftpd", true, 1000L, 0L);
+    }
+
+    private void remerge() throws Exception {
+        _rslave.clearRequests();
+        new DigestRemerge(_rslave, 2).run();
+    }
+
+    private long[] getDigest(String path) throws FileNotFoundException {
+        return new DirectoryHandle(path).getRemergeDigest(_rslave);
+    }
+
+    private boolean isMerged(String path) throws FileNotFoundException {
+        FileHandle file = new FileHandle(path);
+        return file.exists() && file.getSlaveNames().contains(_rslave.getName());
+    }
+
+    @Test
+    public void testFirstRemerge() throws Exception {
+        remerge();
+
+        assertEquals(List.of("/", "/Release", "/Release/Sub"), _rslave.getRequested());
+        assertEquals(List.of("/", "/Release", "/Release/Sub"), _rslave.getListed());
+        assertTrue(isMerged("/Release/a.r00"));
+        assertTrue(isMerged("/Release/Sub/b.r00"));
+        assertArrayEquals(new long[]{1L, 10L}, getDigest("/"));
+        assertArrayEquals(new long[]{2L, 20L}, getDigest("/Release"));
+        assertArrayEquals(new long[]{3L, 30L}, getDigest("/Release/Sub"));
+    }
+
+    @Test
+    public void testUnchangedTreeSkipped() throws Exception {
+        remerge();
+        // a new file in /Release, the tree of /Release/Sub is the same
+        _rslave.put("/", 1L, 11L, directory("Release"));
+        _rslave.put("/Release", 4L, 21L, file("a.r00"), file("a.r01"), directory("Sub"));
+        remerge();
+
+        assertEquals(List.of("/", "/Release"), _rslave.getRequested());
+        assertEquals(List.of("/Release"), _rslave.getListed());
+        assertTrue(isMerged("/Release/a.r01"));
+        assertArrayEquals(new long[]{1L, 11L}, getDigest("/"));
+        assertArrayEquals(new long[]{4L, 21L}, getDigest("/Release"));
+        assertArrayEquals(new long[]{3L, 30L}, getDigest("/Release/Sub"));
+
+        // nothing changed at all, the root is enough
+        remerge();
+        assertEquals(List.of("/"), _rslave.getRequested());
+        assertTrue(_rslave.getListed().isEmpty());
+    }
+
+    @Test
+    public void testChangedContentMerged() throws Exception {
+        remerge();
+        // a new file in /Release/Sub, the entries of its parents are the same
+        _rslave.put("/", 1L, 12L, directory("Release"));
+        _rslave.put("/Release", 2L, 22L, file("a.r00"), directory("Sub"));
+        _rslave.put("/Release/Sub", 5L, 31L, file("b.r00"), file("b.r01"));
+        remerge();
+
+        assertEquals(List.of("/", "/Release", "/Release/Sub"), _rslave.getRequested());
+        assertEquals(List.of("/Release/Sub"), _rslave.getListed());
+        assertTrue(isMerged("/Release/Sub/b.r01"));
+        assertArrayEquals(new long[]{2L, 22L}, getDigest("/Release"));
+        assertArrayEquals(new long[]{5L, 31L}, getDigest("/Release/Sub"));
+    }
+
+    @Test
+    public void testDigestFailure() throws Exception {
+        _rslave.fail("/Release/Sub");
+        RemoteIOException e = assertThrows(RemoteIOException.class, this::remerge);
+        assertTrue(e.getCause().getMessage().contains("/Release/Sub"));
+
+        // the directories above the failed one are looked at again next time
+        assertTrue(isMerged("/Release/a.r00"));
+        assertFalse(isMerged("/Release/Sub/b.r00"));
+        assertNull(getDigest("/"));
+        assertNull(getDigest("/Release"));
+        assertNull(getDigest("/Release/Sub"));
+        assertFalse(_rslave.isDone());
+
+        _rslave.fail(null);
+        remerge();
+        assertEquals(List.of("/", "/Release", "/Release/Sub"), _rslave.getRequested());
+        assertTrue(isMerged("/Release/Sub/b.r00"));
+        assertArrayEquals(new long[]{1L, 10L}, getDigest("/"));
+        assertTrue(_rslave.isDone());
+    }
+
+    /**
+     * Answers the digest commands of the remerge from a tree of directories set by the test,
+     * the entries of a directory are only sent when the master does not know its content digest.
+     */
+    private static class DigestSlave extends DummyRemoteSlave {
+        private final AtomicInteger _nextIndex = new AtomicInteger();
+
+        private final Map<String, AsyncResponse> _responses = new ConcurrentHashMap<>();
+
+        private final Map<String, Object[]> _directories = new ConcurrentHashMap<>();
+
+        private final List<String> _requested = Collections.synchronizedList(new ArrayList<>());
+
+        private final List<String> _listed = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile String _failing;
+
+        private volatile boolean _done;
+
+        private DigestSlave(String name) {
+            super(name);
+        }
+
+        private void put(String path, long content, long tree, LightRemoteInode... inodes) {
+            _directories.put(path, new Object[]{content, tree, List.of(inodes)});
+        }
+
+        private void fail(String path) {
+            _failing = path;
+        }
+
+        private void clearRequests() {
+            _requested.clear();
+            _listed.clear();
+            _done = false;
+        }
+
+        private boolean isDone() {
+            return _done;
+        }
+
+        /**
+         * @return the paths the master asked for, sorted as they are asked for in parallel.
+         */
+        private List<String> getRequested() {
+            synchronized (_requested) {
+                List<String> requested = new ArrayList<>(_requested);
+                Collections.sort(requested);
+                return requested;
+            }
+        }
+
+        private List<String> getListed() {
+            synchronized (_listed) {
+                List<String> listed = new ArrayList<>(_listed);
+                Collections.sort(listed);
+                return listed;
+            }
+        }
+
+        @Override
+        public String fetchIndex() {
+            return Integer.toHexString(_nextIndex.getAndIncrement());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void sendCommand(AsyncCommandArgument ac) {
+            if (ac.getName().equals("remergeDigestDone")) {
+                _done = true;
+                _responses.put(ac.getIndex(), new AsyncResponse(ac.getIndex()));
+                return;
+            }
+            String path = ac.getArgsArray()[0];
+            long knownContent = Long.parseLong(ac.getArgsArray()[1]);
+            _requested.add(path);
+            if (path.equals(_failing)) {
+                _responses.put(ac.getIndex(), new AsyncResponseException(ac.getIndex(),
+                        new IOException("Unable to compute digests of " + path)));
+                return;
+            }
+            Object[] dir = _directories.get(path);
+            List<LightRemoteInode> inodes = (List<LightRemoteInode>) dir[2];
+            List<String> names = new ArrayList<>();
+            List<Long> trees = new ArrayList<>();
+            for (LightRemoteInode inode : inodes) {
+                if (inode.isDirectory()) {
+                    String child = path.endsWith("/") ? path + inode.getName() : path + "/" + inode.getName();
+                    names.add(inode.getName());
+                    trees.add((Long) _directories.get(child)[1]);
+                }
+            }
+            long content = (Long) dir[0];
+            if (content != knownContent) {
+                _listed.add(path);
+            }
+            _responses.put(ac.getIndex(), new AsyncResponseRemergeDigest(ac.getIndex(), path, content, (Long) dir[1],
+                    1000L, names.toArray(new String[0]), trees.stream().mapToLong(Long::longValue).toArray(),
+                    content == knownContent ? null : new ArrayList<>(inodes)));
+        }
+
+        @Override
+        public AsyncResponse fetchResponse(String index) throws RemoteIOException {
+            return check(_responses.remove(index));
+        }
+
+        @Override
+        public CompletableFuture<AsyncResponse> fetchResponseAsync(String index) {
+            try {
+                return CompletableFuture.completedFuture(check(_responses.remove(index)));
+            } catch (RemoteIOException e) {
+                return CompletableFuture.failedFuture(new CompletionException(e));
+            }
+        }
+
+        private static AsyncResponse check(AsyncResponse response) throws RemoteIOException {
+            if (response instanceof AsyncResponseException) {
+                throw new RemoteIOException((IOException) ((AsyncResponseException) response).getThrowable());
+            }
+            return response;
+        }
+    }
+}
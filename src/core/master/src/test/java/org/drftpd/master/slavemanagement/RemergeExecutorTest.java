@@ -0,0 +1,101 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.drftpd.slave.network.AsyncResponseRemerge;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemergeExecutorTest {
+
+    private final RemoteSlave _rslave = new DummyRemoteSlave("test");
+
+    // directories merged, in the order they were merged
+    private final List<String> _merged = Collections.synchronizedList(new ArrayList<>());
+
+    private final Set<String> _running = Collections.synchronizedSet(new HashSet<>());
+
+    private final List<String> _errors = Collections.synchronizedList(new ArrayList<>());
+
+    private final RemergeExecutor _executor = new RemergeExecutor(_rslave, 8) {
+        @Override
+        protected void merge(RemergeMessage message) throws IOException {
+            String path = message.getDirectory();
+            synchronized (_running) {
+                for (String running : _running) {
+                    if (running.startsWith(path + "/") || path.startsWith(running + "/") || running.equals(path)) {
+                        _errors.add(path + " merged along with " + running);
+                    }
+                }
+                _running.add(path);
+            }
+            try {
+                Thread.sleep(2L);
+            } catch (InterruptedException ignored) {
+            }
+            _running.remove(path);
+            _merged.add(path);
+        }
+    };
+
+    private void submit(String path) {
+        _executor.submit(new RemergeMessage(new AsyncResponseRemerge(path, new ArrayList<>(), 0L), _rslave));
+    }
+
+    /**
+     * Submits the tree below {@code path} the way the slave sends it, sub directories first.
+     */
+    private void submitTree(String path, int depth, List<String> sent) {
+        if (depth > 0) {
+            for (int i = 0; i < 3; i++) {
+                submitTree(path + "/dir" + i, depth - 1, sent);
+            }
+        }
+        submit(path);
+        sent.add(path);
+    }
+
+    @Test
+    public void testSubDirectoriesFirst() throws InterruptedException {
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submitTree("/section" + i, 3, sent);
+        }
+        // sent again, a directory waits for the same directory queued before it
+        submitTree("/section0", 2, sent);
+        _executor.awaitIdle();
+
+        assertEquals(List.of(), _errors);
+        assertEquals(sent.size(), _merged.size());
+        // every directory is merged after the sub directories sent before it
+        for (int i = 0; i < sent.size(); i++) {
+            String path = sent.get(i);
+            int merged = _merged.lastIndexOf(path);
+            for (int j = 0; j < i; j++) {
+                if (sent.get(j).startsWith(path + "/")) {
+                    assertTrue(_merged.indexOf(sent.get(j)) < merged, sent.get(j) + " merged after " + path);
+                }
+            }
+        }
+        assertEquals(0, _executor.getQueueSize());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.slavemanagement;
+
+import org.drftpd.common.slave.DiskStatus;
+import org.drftpd.common.slave.TransferIndex;
+import org.drftpd.slave.network.Transfer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SlaveTransferTotalsTest {
+
+    private final SlaveTransferTotals _totals = new SlaveTransferTotals();
+
+    private SlaveStatus status() {
+        return _totals.toSlaveStatus(new DiskStatus(100, 200), 1000, 2000);
+    }
+
+    @Test
+    public void testUpdates() {
+        TransferIndex upload = new TransferIndex(1);
+        TransferIndex download = new TransferIndex(2);
+        // not started yet
+        _totals.update(upload, Transfer.TRANSFER_UNKNOWN, 0, 0);
+        assertEquals(0, status().getTransfers());
+
+        _totals.update(upload, Transfer.TRANSFER_RECEIVING_UPLOAD, 0, 0);
+        _totals.update(download, Transfer.TRANSFER_SENDING_DOWNLOAD, 0, 0);
+        _totals.update(upload, Transfer.TRANSFER_RECEIVING_UPLOAD, 50, 100);
+        _totals.update(download, Transfer.TRANSFER_SENDING_DOWNLOAD, 30, 60);
+        _totals.update(upload, Transfer.TRANSFER_RECEIVING_UPLOAD, 70, 170);
+
+        SlaveStatus status = status();
+        assertEquals(100, status.getDiskSpaceAvailable());
+        assertEquals(1, status.getTransfersReceiving());
+        assertEquals(1, status.getTransfersSending());
+        assertEquals(70, status.getThroughputReceiving());
+        assertEquals(30, status.getThroughputSending());
+        assertEquals(2170, status.getBytesReceived());
+        assertEquals(1060, status.getBytesSent());
+
+        assertEquals(170, _totals.remove(upload));
+        assertEquals(0, _totals.remove(upload));
+        status = status();
+        assertEquals(0, status.getTransfersReceiving());
+        assertEquals(0, status.getThroughputReceiving());
+        assertEquals(2000, status.getBytesReceived());
+        assertEquals(1, status.getTransfersSending());
+
+        _totals.clear();
+        assertEquals(0, status().getTransfers());
+        assertEquals(0, status().getThroughput());
+        assertEquals(1000, status().getBytesSent());
+    }
+}
@@ -25,8 +25,14 @@ import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -92,6 +98,62 @@ public class ConnectionStressTest {
         assertEquals(dead, success); // all threads were finalized.
     }
 
+    /**
+     * Opens 'stress.connections' (10000 by default) idle control connections, then reports the time
+     * each one took to get the greeting and the memory and threads used by the daemon, so both
+     * thread models ('virtual.threads' in master.conf) can be compared.<br>
+     * The daemon must accept that many connections, check 'max_users' and the open files limit.
+     */
+    @Test
+    @Disabled("Need integration test")
+    public void testIdleConnections() throws Exception {
+        int connections = Integer.getInteger("stress.connections", 10000);
+        logger.info("Before: {}", serverStatus());
+
+        List<Socket> sockets = new ArrayList<>();
+        long[] latencies = new long[connections];
+        int opened = 0;
+        try {
+            for (; opened < connections; opened++) {
+                long start = System.nanoTime();
+                Socket socket = new Socket("127.0.0.1", 2121);
+                sockets.add(socket);
+                socket.setSoTimeout(30000);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                String greeting = in.readLine();
+                latencies[opened] = System.nanoTime() - start;
+                if (greeting == null || !greeting.startsWith("220")) {
+                    logger.warn("Connection #{} got '{}' instead of the greeting", opened, greeting);
+                    break;
+                }
+            }
+            Arrays.sort(latencies, 0, opened);
+            if (opened > 0) {
+                logger.info("Opened {} connections, greeting latency p50: {}ms / p99: {}ms / max: {}ms", opened,
+                        latencies[opened / 2] / 1000000, latencies[opened * 99 / 100] / 1000000,
+                        latencies[opened - 1] / 1000000);
+            }
+            logger.info("With {} idle connections: {}", opened, serverStatus());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        assertEquals(connections, opened);
+    }
+
+    private String serverStatus() throws Exception {
+        FTPSClient c = new FTPSClient();
+        c.connect("127.0.0.1", 2121);
+        try {
+            assertTrue(c.login("drftpd", "drftpd"));
+            c.sendSiteCommand("STATUS memory,threads");
+            return String.join(" ", c.getReplyStrings());
+        } finally {
+            c.disconnect();
+        }
+    }
+
     public void addFailure() {
         failures += 1;
     }
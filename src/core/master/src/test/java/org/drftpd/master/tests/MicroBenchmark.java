@@ -0,0 +1,76 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.tests;
+
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+/**
+ * Times small operations for the benchmarks kept next to the tests. They are started by hand through their
+ * main() from the test classpath, surefire does not pick them up as their names do not end in Test:
+ * <pre>
+ * mvn -pl src/core/master test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp src/core/master/target/classes:src/core/master/target/test-classes:$(cat src/core/master/target/classpath.txt) \
+ *     org.drftpd.master.vfs.VirtualFileSystemBenchmark
+ * </pre>
+ * There is no JMH in the build, each case is warmed up then measured over several rounds and the median is
+ * reported, which is enough to compare two ways of doing the same thing on one machine.
+ */
+public class MicroBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int ROUNDS = 10;
+
+    // results are added up here so the JIT can not drop the measured work
+    private static volatile long _sink;
+
+    /**
+     * Runs an operation the given number of times per round and prints the median time per operation.
+     *
+     * @param name       printed with the result
+     * @param operations how many times a round calls the operation
+     * @param operation  returns something depending on its work
+     * @return the median time of one operation in nanoseconds
+     */
+    public static double run(String name, int operations, IntSupplier operation) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            measure(operations, operation);
+        }
+        double[] times = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            times[round] = measure(operations, operation);
+        }
+        Arrays.sort(times);
+        double median = times[ROUNDS / 2];
+        System.out.printf("%-50s %12.1f ns/op %14.0f ops/s (best %.1f, worst %.1f)%n", name, median,
+                1e9 / median, times[0], times[ROUNDS - 1]);
+        return median;
+    }
+
+    private static double measure(int operations, IntSupplier operation) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            sink += operation.getAsInt();
+        }
+        long time = System.nanoTime() - start;
+        _sink += sink;
+        return (double) time / operations;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.usermanager.util;
+
+import org.drftpd.master.tests.DummyGroup;
+import org.drftpd.master.tests.DummyUser;
+import org.drftpd.master.tests.DummyUserManager;
+import org.drftpd.master.usermanager.Group;
+import org.drftpd.master.usermanager.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UserRankingsTest {
+
+    private static final String[] TYPES = {"ALUP", "ALDN", "MONTHUP", "MONTHDN", "WKUP", "WKDN", "DAYUP", "DAYDN"};
+
+    private final Random _random = new Random(42);
+
+    private final Map<String, User> _all = new TreeMap<>();
+
+    private final List<Group> _groups = new ArrayList<>();
+
+    private int _loads;
+
+    private UserRankings _rankings;
+
+    private static class TestUser extends DummyUser {
+        private Group _group;
+
+        private TestUser(String name, Group group) {
+            super(name);
+            _group = group;
+        }
+
+        @Override
+        public Group getGroup() {
+            return _group;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 10; i++) {
+            _groups.add(new DummyGroup("group" + i));
+        }
+        for (int i = 0; i < 200; i++) {
+            TestUser user = new TestUser("user" + i, _groups.get(_random.nextInt(_groups.size())));
+            transfer(user);
+            _all.put(user.getName(), user);
+        }
+        _rankings = new UserRankings(new DummyUserManager() {
+            @Override
+            public Collection<User> getAllUsers() {
+                _loads++;
+                return new ArrayList<>(_all.values());
+            }
+        });
+    }
+
+    private void transfer(User user) {
+        // a nuke takes bytes back
+        long bytes = _random.nextInt(10) == 0 ? -_random.nextInt(1000) : _random.nextInt(100000);
+        if (_random.nextBoolean()) {
+            user.updateUploadedBytes(bytes);
+            user.updateUploadedFiles(1);
+            user.updateUploadedTime(_random.nextInt(1000));
+        } else {
+            user.updateDownloadedBytes(bytes);
+            user.updateDownloadedFiles(1);
+            user.updateDownloadedTime(_random.nextInt(1000));
+        }
+    }
+
+    private void assertSameAsSort() {
+        for (String type : TYPES) {
+            List<User> sorted = new ArrayList<>(_all.values());
+            // stable, ties stay sorted by name
+            sorted.sort(new UserComparator(type));
+            List<String> names = new ArrayList<>();
+            for (User user : sorted) {
+                names.add(user.getName());
+            }
+            assertEquals(names, _rankings.getUsers(type, 0, Integer.MAX_VALUE), type);
+            assertEquals(names.subList(10, 20), _rankings.getUsers(type, 10, 10), type);
+
+            for (User user : _all.values()) {
+                int place = 1;
+                for (User other : _all.values()) {
+                    if (UserTransferStats.getStats(type, other) > UserTransferStats.getStats(type, user)) {
+                        place++;
+                    }
+                }
+                assertEquals(place, _rankings.getUserPlace(type, user), type + " " + user.getName());
+            }
+
+            Map<String, long[]> groups = new TreeMap<>();
+            for (User user : _all.values()) {
+                long[] stats = groups.computeIfAbsent(user.getGroup().getName(), name -> new long[4]);
+                stats[0] += UserTransferStats.getStats(type, user);
+                stats[3]++;
+            }
+            List<String> groupNames = new ArrayList<>(groups.keySet());
+            groupNames.sort(Comparator.comparingLong((String name) -> -groups.get(name)[0]));
+            assertEquals(groupNames, _rankings.getGroups(type, 0, Integer.MAX_VALUE), type);
+            for (Map.Entry<String, long[]> group : groups.entrySet()) {
+                long[] stats = _rankings.getGroupStats(type, group.getKey());
+                assertEquals(group.getValue()[0], stats[0], type + " " + group.getKey());
+                assertEquals(group.getValue()[3], stats[3], type + " " + group.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void testFollowsCommittedUsers() {
+        assertSameAsSort();
+        assertEquals(1, _loads);
+
+        List<TestUser> users = new ArrayList<>();
+        for (User user : _all.values()) {
+            users.add((TestUser) user);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 300; i++) {
+                TestUser user = users.get(_random.nextInt(users.size()));
+                transfer(user);
+                if (_random.nextInt(20) == 0) {
+                    user._group = _groups.get(_random.nextInt(_groups.size()));
+                }
+                _rankings.update(user);
+            }
+            assertSameAsSort();
+        }
+
+        User removed = _all.remove("user7");
+        _rankings.remove(removed.getName());
+        TestUser added = new TestUser("newuser", _groups.get(0));
+        transfer(added);
+        _all.put(added.getName(), added);
+        _rankings.update(added);
+        assertSameAsSort();
+        assertEquals(1, _loads);
+    }
+
+    @Test
+    public void testGroupStats() {
+        Group group = new DummyGroup("lonely");
+        TestUser user = new TestUser("lonelyuser", group);
+        user.setUploadedBytesWeek(1000);
+        user.setUploadedFilesWeek(3);
+        user.setUploadedTimeWeek(20);
+        _all.put(user.getName(), user);
+        _rankings.update(user);
+
+        assertEquals(List.of(1000L, 3L, 20L, 1L), toList(_rankings.getGroupStats("wkup", "lonely")));
+
+        // the group goes with its last member
+        user._group = _groups.get(0);
+        _rankings.update(user);
+        assertEquals(List.of(0L, 0L, 0L, 0L), toList(_rankings.getGroupStats("wkup", "lonely")));
+        assertSameAsSort();
+    }
+
+    @Test
+    public void testGroupRename() {
+        TestUser user = new TestUser("lonelyuser", new DummyGroup("lonely"));
+        user.setUploadedBytesWeek(1000);
+        user.setUploadedFilesWeek(3);
+        user.setUploadedTimeWeek(20);
+        _all.put(user.getName(), user);
+        _rankings.update(user);
+
+        // the members are not committed by a rename
+        user._group = new DummyGroup("renamed");
+        _rankings.renameGroup("lonely", "renamed");
+        assertEquals(List.of(0L, 0L, 0L, 0L), toList(_rankings.getGroupStats("wkup", "lonely")));
+        assertEquals(List.of(1000L, 3L, 20L, 1L), toList(_rankings.getGroupStats("wkup", "renamed")));
+        assertSameAsSort();
+
+        _rankings.update(user);
+        assertEquals(List.of(1000L, 3L, 20L, 1L), toList(_rankings.getGroupStats("wkup", "renamed")));
+        assertSameAsSort();
+    }
+
+    @Test
+    public void testReset() {
+        assertSameAsSort();
+
+        _rankings.invalidate();
+        for (User user : _all.values()) {
+            user.setUploadedBytesDay(0);
+            user.setDownloadedBytesDay(0);
+            _rankings.update(user);
+        }
+        // committed while reloading
+        User late = _all.get("user3");
+        late.updateUploadedBytes(12345);
+        _rankings.update(late);
+        _rankings.reload(_all.values());
+
+        assertEquals(List.of("user3", "user0", "user1"), _rankings.getUsers("DAYUP", 0, 3));
+        assertSameAsSort();
+        assertEquals(1, _loads);
+    }
+
+    private static List<Long> toList(long[] values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import static org.drftpd.master.util.ReplacerUtils.jprintf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 public class ReplacerUtilsTest {
 
@@ -46,4 +47,30 @@ public class ReplacerUtilsTest {
         template = "#${position} ${user} @ ${group} - ${files}F - ${bytes} - ${speed} - ${percent}";
         assertEquals("#3 test @ sysop - 11F - 10To - 27.4MB/s - 45", jprintf(template, env));
     }
+
+    @Test
+    public void testUnresolvedVariables() {
+        Map<String, Object> env = new HashMap<>();
+        env.put("user", "test");
+        env.put("long", "abcdefgh");
+
+        assertEquals("test [Unknown]", jprintf("${user} ${missing}", env));
+        assertEquals("abcd|  test", jprintf("${long,2.4}|${user,6}", env));
+        // not variables, kept as they are
+        assertEquals("${v_Codec ID/Hint} ${a,1,2} ${user", jprintf("${v_Codec ID/Hint} ${a,1,2} ${user", env));
+        assertEquals("${user} test", jprintf("$${user} ${user}", env));
+        assertEquals("test none", jprintf("${user:-none} ${missing:-none}", env));
+    }
+
+    @Test
+    public void testTemplateCache() {
+        String template = "${user,-8}|";
+        assertSame(ReplacerUtils.getTemplate(template), ReplacerUtils.getTemplate(template));
+
+        Map<String, Object> env = new HashMap<>();
+        env.put("user", "first");
+        assertEquals("first   |", jprintf(template, env));
+        env.put("user", "second");
+        assertEquals("second  |", jprintf(template, env));
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InodeCacheTest {
+
+    private final VirtualFileSystemRoot root = new VirtualFileSystemRoot("drftpd", "drftpd");
+
+    private List<VirtualFileSystemInode> createFiles(String dirName, int count) {
+        VirtualFileSystemDirectory dir = new VirtualFileSystemDirectory("drftpd", "drftpd");
+        dir.setName(dirName);
+        dir.setParent(root);
+        List<VirtualFileSystemInode> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            VirtualFileSystemFile file = new VirtualFileSystemFile("drftpd", "drftpd", 0, "slave");
+            file.setName("file" + i);
+            file.setParent(dir);
+            files.add(file);
+        }
+        return files;
+    }
+
+    @Test
+    public void testBudget() {
+        InodeCache cache = new InodeCache(100 * 1024);
+        for (VirtualFileSystemInode inode : createFiles("dir", 5000)) {
+            cache.miss(inode);
+        }
+        assertTrue(cache.getWeight() <= cache.getBudget());
+        assertTrue(cache.getEvictions() > 0);
+        assertEquals(5000, cache.getSize() + cache.getEvictions());
+        assertEquals(5000, cache.getMisses());
+    }
+
+    @Test
+    public void testRecentlyUsedAreKept() {
+        InodeCache cache = new InodeCache(100 * 1024);
+        List<VirtualFileSystemInode> hot = createFiles("hot", 10);
+        for (VirtualFileSystemInode inode : hot) {
+            cache.miss(inode);
+        }
+        for (VirtualFileSystemInode inode : createFiles("cold", 5000)) {
+            cache.miss(inode);
+            for (VirtualFileSystemInode hotInode : hot) {
+                cache.hit(hotInode);
+            }
+        }
+        for (VirtualFileSystemInode inode : hot) {
+            assertNotNull(inode._cacheEntry);
+        }
+    }
+
+    @Test
+    public void testPinned() {
+        InodeCache cache = new InodeCache(100 * 1024);
+        cache.setPinnedPaths(Collections.singletonList("/PINNED"));
+        List<VirtualFileSystemInode> pinned = createFiles("pinned", 10);
+        for (VirtualFileSystemInode inode : pinned) {
+            cache.miss(inode);
+        }
+        for (VirtualFileSystemInode inode : createFiles("other", 5000)) {
+            cache.miss(inode);
+        }
+        for (VirtualFileSystemInode inode : pinned) {
+            assertNotNull(inode._cacheEntry);
+        }
+
+        cache.remove(pinned.get(0));
+        assertNull(pinned.get(0)._cacheEntry);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogVFSStorageTest {
+
+    @TempDir
+    File tempDir;
+
+    private File root;
+    private LogVFSStorage storage;
+
+    private static byte[] data(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        root = new File(tempDir, "vfs");
+        storage = new LogVFSStorage();
+        storage.init(root);
+        storage.writeInodes(Arrays.asList(
+                new VFSStorageRecord("/", true, data("root")),
+                new VFSStorageRecord("/dir", true, data("dir")),
+                new VFSStorageRecord("/dir/file1", false, data("file1")),
+                new VFSStorageRecord("/dir/file2", false, data("file2"))));
+    }
+
+    @Test
+    public void testReadDirectory() throws Exception {
+        assertTrue(storage.containsTree(root));
+        assertEquals("dir", string(storage.readInode("/dir")));
+        Map<String, byte[]> children = storage.readDirectory("/dir");
+        assertEquals(2, children.size());
+        assertEquals("file1", string(children.get("file1")));
+        Map<String, byte[]> rootChildren = storage.readDirectory("/");
+        assertTrue(rootChildren.containsKey("dir"));
+        assertNull(rootChildren.get("dir"));
+    }
+
+    @Test
+    public void testReadAfterChange() throws Exception {
+        assertEquals("file1", string(storage.readInode("/dir/file1")));
+        storage.writeInodes(Collections.singletonList(new VFSStorageRecord("/dir/file1", false, data("changed"))));
+        assertEquals("changed", string(storage.readInode("/dir/file1")));
+        assertEquals("changed", string(storage.readDirectory("/dir").get("file1")));
+
+        storage.deleteInode("/dir/file2");
+        assertThrows(FileNotFoundException.class, () -> storage.readInode("/dir/file2"));
+
+        storage.renameInode("/dir", "/renamed");
+        assertEquals("changed", string(storage.readInode("/renamed/file1")));
+        assertThrows(FileNotFoundException.class, () -> storage.readInode("/dir/file1"));
+    }
+
+    @Test
+    public void testRenameAndDelete() throws Exception {
+        storage.writeInodes(Collections.singletonList(new VFSStorageRecord("/other", true, data("other"))));
+        storage.renameInode("/dir/file1", "/other/moved");
+        storage.renameInode("/dir/file2", "/dir/FILE2");
+        assertThrows(FileNotFoundException.class, () -> storage.readInode("/dir/file1"));
+        assertEquals("file1", string(storage.readInode("/other/moved")));
+        assertEquals("FILE2", storage.readDirectory("/dir").keySet().iterator().next());
+
+        storage.deleteInode("/other/moved");
+        assertTrue(storage.readDirectory("/other").isEmpty());
+        storage.deleteInode("/dir");
+        assertFalse(storage.containsDirectory("/dir"));
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws Exception {
+        File log = new File(root, "dir/" + LogVFSStorage.logName);
+        long validLength = log.length();
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(validLength);
+            raf.write(new byte[]{0, 0, 1, 0, 1, 2, 3});
+        }
+        assertEquals(2, storage.readDirectory("/dir").size());
+        assertEquals(validLength, log.length());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            storage.writeInodes(Collections.singletonList(new VFSStorageRecord("/dir/file1", false, data("file1-" + i))));
+        }
+        File log = new File(root, "dir/" + LogVFSStorage.logName);
+        long before = log.length();
+        assertEquals("file1-499", string(storage.readInode("/dir/file1")));
+        assertTrue(log.length() <= before);
+        assertTrue(log.length() < 500 * "file1-499".length());
+        assertEquals("dir", string(storage.readInode("/dir")));
+        assertEquals(2, storage.readDirectory("/dir").size());
+    }
+
+    @Test
+    public void testImportFromJson() throws Exception {
+        File jsonRoot = new File(tempDir, "json");
+        JsonVFSStorage json = new JsonVFSStorage();
+        json.init(jsonRoot);
+        json.writeInodes(Arrays.asList(
+                new VFSStorageRecord("/", true, data("root")),
+                new VFSStorageRecord("/dir", true, data("dir")),
+                new VFSStorageRecord("/dir/file", false, data("file"))));
+
+        LogVFSStorage imported = new LogVFSStorage();
+        new VFSStorageMigrator(json, imported).migrate(jsonRoot);
+        imported.init(jsonRoot);
+
+        assertTrue(imported.containsTree(jsonRoot));
+        assertFalse(json.containsTree(jsonRoot));
+        assertEquals("root", string(imported.readInode("/")));
+        assertEquals("file", string(imported.readDirectory("/dir").get("file")));
+    }
+
+    @Test
+    public void testReplayedMemory() throws Exception {
+        byte[] big = new byte[1000];
+        for (int i = 0; i < 10; i++) {
+            storage.writeInodes(Arrays.asList(
+                    new VFSStorageRecord("/big" + i, true, data("big" + i)),
+                    new VFSStorageRecord("/big" + i + "/file", false, big)));
+        }
+        storage.setReplayedMemory(5000);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1000, storage.readInode("/big" + i + "/file").length);
+            assertTrue(storage.getReplayedBytes() <= 5000);
+        }
+        assertTrue(storage.getReplayedBytes() > 0);
+        // the most recently read log is kept
+        long bytes = storage.getReplayedBytes();
+        assertEquals(1000, storage.readInode("/big9/file").length);
+        assertEquals(bytes, storage.getReplayedBytes());
+
+        storage.setReplayedMemory(0);
+        assertEquals(0, storage.getReplayedBytes());
+        assertEquals("file1", string(storage.readInode("/dir/file1")));
+        assertEquals(0, storage.getReplayedBytes());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.drftpd.master.tests.MicroBenchmark;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Resolution of deep paths, walking the split path from the root as getInodeByPath() used to do
+ * against the path cache. Not a unit test, see {@link MicroBenchmark} on how to run it.
+ */
+public class VirtualFileSystemBenchmark {
+
+    private static final int OPERATIONS = 200000;
+
+    private final VirtualFileSystem _vfs = VirtualFileSystem.getVirtualFileSystem();
+
+    public static void main(String[] args) throws Exception {
+        int status = 1;
+        try {
+            new VirtualFileSystemBenchmark().run();
+            status = 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            FileUtils.deleteDirectory(new File("userdata"));
+        }
+        // the threads of the global context started by the virtual file system would keep running
+        System.exit(status);
+    }
+
+    private String createTree(String prefix, int depth) throws Exception {
+        VirtualFileSystemDirectory walker = _vfs.getRoot();
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            String name = prefix + i;
+            walker.createDirectory(name, "drftpd", "drftpd");
+            walker = (VirtualFileSystemDirectory) walker.getInodeByName(name);
+            path.append(VirtualFileSystem.separator).append(name);
+            // some siblings so the lookups are not in single entry maps
+            for (int j = 0; j < 50; j++) {
+                walker.createFile("file" + j, "drftpd", "drftpd", "testSlave");
+            }
+        }
+        return path + "/file49";
+    }
+
+    /**
+     * What getInodeByPath() did before the path cache, split the path and look up every name from the root.
+     */
+    private VirtualFileSystemInode walk(String path) throws FileNotFoundException {
+        VirtualFileSystemDirectory dir = _vfs.getRoot();
+        VirtualFileSystemInode inode = dir;
+        for (String name : path.substring(1).split(VirtualFileSystem.separator)) {
+            inode = dir.getInodeByName(name);
+            if (inode.isDirectory()) {
+                dir = (VirtualFileSystemDirectory) inode;
+            }
+        }
+        return inode;
+    }
+
+    private void run() throws Exception {
+        for (int depth : new int[]{3, 10}) {
+            String path = createTree("depth" + depth + "-", depth);
+            if (walk(path) != _vfs.getInodeByPath(path)) {
+                throw new IllegalStateException("Both ways must resolve " + path + " to the same inode");
+            }
+            MicroBenchmark.run("walk from root, depth " + depth, OPERATIONS, () -> {
+                try {
+                    return walk(path).hashCode();
+                } catch (FileNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            MicroBenchmark.run("getInodeByPath, depth " + depth, OPERATIONS, () -> {
+                try {
+                    return _vfs.getInodeByPath(path).hashCode();
+                } catch (FileNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualFileSystemFileTest {
+
+    private final VirtualFileSystemRoot root = new VirtualFileSystemRoot("drftpd", "drftpd");
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    private VirtualFileSystemDirectory createDirectory(String name) {
+        VirtualFileSystemDirectory dir = new VirtualFileSystemDirectory("drftpd", "drftpd");
+        dir.setName(name);
+        dir.setParent(root);
+        return dir;
+    }
+
+    private VirtualFileSystemFile createFile(VirtualFileSystemDirectory dir, String name) {
+        VirtualFileSystemFile file = new VirtualFileSystemFile("drftpd", "drftpd", 0, "slave");
+        file.setName(name);
+        file.setParent(dir);
+        return file;
+    }
+
+    @Test
+    public void testPublishedSlaves() {
+        VirtualFileSystemDirectory dir = createDirectory("published");
+        VirtualFileSystemFile file = createFile(dir, "file");
+        Set<String> before = file.getSlaves();
+
+        // handed out as is, readers can not change it
+        assertSame(before, file.getSlaves());
+        assertThrows(UnsupportedOperationException.class, () -> before.add("other"));
+
+        file.addSlave("other");
+        assertEquals(Set.of("slave"), before);
+        assertEquals(Set.of("slave", "other"), file.getSlaves());
+        assertThrows(UnsupportedOperationException.class, () -> file.getSlaves().remove("slave"));
+    }
+
+    @Test
+    public void testConcurrentSlaveChanges() throws Exception {
+        VirtualFileSystemDirectory dir = createDirectory("changes");
+        VirtualFileSystemFile file = createFile(dir, "file");
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String prefix = "slave" + t + "-";
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 100; i++) {
+                    file.addSlave(prefix + i);
+                    file.getSlaves();
+                }
+                for (int i = 0; i < 50; i++) {
+                    file.removeSlave(prefix + i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(1 + threads * 50, file.getSlaves().size());
+        assertEquals(1, dir.getRefCountForSlave("slave0-99"));
+        assertEquals(0, dir.getRefCountForSlave("slave0-0"));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        VirtualFileSystemDirectory dir = createDirectory("reads");
+        VirtualFileSystemFile file = createFile(dir, "file");
+        int slaves = 200;
+        int readers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        Future<?> writer = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < slaves; i++) {
+                file.addSlave("added" + i);
+            }
+            for (int i = 0; i < slaves; i++) {
+                file.removeSlave("added" + i);
+            }
+            done.set(true);
+            return null;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < readers; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                do {
+                    // the slaves are added then removed in order, a read sees them all up to one change
+                    Set<String> read = file.getSlaves();
+                    assertTrue(read.contains("slave"), read.toString());
+                    int first = -1;
+                    int last = -1;
+                    for (int i = 0; i < slaves; i++) {
+                        if (read.contains("added" + i)) {
+                            first = first == -1 ? i : first;
+                            last = i;
+                        }
+                    }
+                    assertEquals(first == -1 ? 1 : last - first + 2, read.size(), read.toString());
+                    assertTrue(first <= 0 || last == slaves - 1, read.toString());
+                } while (!done.get());
+                return null;
+            }));
+        }
+        start.countDown();
+        writer.get();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(Set.of("slave"), file.getSlaves());
+        assertEquals(0, dir.getRefCountForSlave("added0"));
+    }
+}
@@ -25,9 +25,10 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class VirtualFileSystemTest {
 
@@ -107,6 +108,162 @@ public class VirtualFileSystemTest {
         assertNotNull(((VirtualFileSystemDirectory) inode).getInodeByName("testme"));
     }
 
+    @Test
+    public void testPathCacheInvalidation() throws Exception {
+        vfs.getRoot().createDirectory("CacheDir", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/CacheDir");
+        dir.createDirectory("sub", "drftpd", "drftpd");
+        VirtualFileSystemDirectory sub = (VirtualFileSystemDirectory) dir.getInodeByName("sub");
+        sub.createFile("file", "drftpd", "drftpd", "testSlave");
+        VirtualFileSystemInode file = vfs.getInodeByPath("/CacheDir/sub/file");
+        assertSame(file, vfs.getInodeByPath("/CacheDir/sub/file"));
+
+        dir.rename("/CacheDir2");
+        assertThrows(FileNotFoundException.class, () -> vfs.getInodeByPath("/CacheDir/sub/file"));
+        assertSame(file, vfs.getInodeByPath("/CacheDir2/sub/file"));
+
+        // any casing of a renamed file is dropped
+        assertSame(file, vfs.getInodeByPath("/CACHEDIR2/Sub/FILE"));
+        file.rename("/CacheDir2/sub/file2");
+        assertThrows(FileNotFoundException.class, () -> vfs.getInodeByPath("/cachedir2/sub/file"));
+        assertSame(file, vfs.getInodeByPath("/CacheDir2/sub/file2"));
+
+        sub.delete();
+        assertThrows(FileNotFoundException.class, () -> vfs.getInodeByPath("/CacheDir2/sub/file2"));
+        assertThrows(FileNotFoundException.class, () -> vfs.getInodeByPath("/CacheDir2/sub"));
+        assertSame(dir, vfs.getInodeByPath("/CacheDir2/"));
+        assertSame(dir, vfs.getInodeByPath("/CacheDir2/."));
+    }
+
+    @Test
+    public void testCommitQueueFollowsRenameAndDelete() throws Exception {
+        vfs.getRoot().createDirectory("QueuedDir", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/QueuedDir");
+        dir.createDirectory("sub", "drftpd", "drftpd");
+        VirtualFileSystemDirectory sub = (VirtualFileSystemDirectory) dir.getInodeByName("sub");
+        sub.createFile("file", "drftpd", "drftpd", "testSlave");
+        VirtualFileSystemInode file = sub.getInodeByName("file");
+        CommitManager commitManager = CommitManager.getCommitManager();
+        file.commit();
+        assertTrue(commitManager.contains(file));
+
+        dir.rename("/QueuedDir2");
+        assertTrue(commitManager.contains(file));
+
+        dir.delete();
+        assertFalse(commitManager.contains(file));
+        assertFalse(commitManager.contains(sub));
+        assertFalse(commitManager.contains(dir));
+    }
+
+    @Test
+    public void testDirectoryVersion() throws Exception {
+        vfs.getRoot().createDirectory("VersionDir", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/VersionDir");
+        long version = dir.getVersion();
+
+        dir.createFile("file", "drftpd", "drftpd", "testSlave");
+        assertNotEquals(version, dir.getVersion());
+        version = dir.getVersion();
+
+        VirtualFileSystemFile file = (VirtualFileSystemFile) dir.getInodeByName("file");
+        file.setChecksum(1234L);
+        assertNotEquals(version, dir.getVersion());
+        version = dir.getVersion();
+
+        // a change below a sub directory changes its size, listed by its parent
+        dir.createDirectory("sub", "drftpd", "drftpd");
+        long rootVersion = vfs.getRoot().getVersion();
+        VirtualFileSystemDirectory sub = (VirtualFileSystemDirectory) dir.getInodeByName("sub");
+        sub.createFile("file", "drftpd", "drftpd", "testSlave");
+        ((VirtualFileSystemFile) sub.getInodeByName("file")).setSize(100L);
+        assertNotEquals(version, dir.getVersion());
+        assertNotEquals(rootVersion, vfs.getRoot().getVersion());
+        version = dir.getVersion();
+
+        file.delete();
+        assertNotEquals(version, dir.getVersion());
+    }
+
+    @Test
+    public void testDeepPathResolution() throws Exception {
+        VirtualFileSystemDirectory walker = vfs.getRoot();
+        StringBuilder path = new StringBuilder();
+        List<VirtualFileSystemDirectory> dirs = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String name = "deep" + i;
+            try {
+                walker.createDirectory(name, "drftpd", "drftpd");
+            } catch (FileExistsException ignored) {
+            }
+            walker = (VirtualFileSystemDirectory) walker.getInodeByName(name);
+            path.append(VirtualFileSystem.separator).append(name);
+            dirs.add(walker);
+            paths.add(path.toString());
+        }
+        walker.createFile("file", "drftpd", "drftpd", "testSlave");
+        VirtualFileSystemInode file = walker.getInodeByName("file");
+        String deepPath = path + "/file";
+
+        // resolved from the cached directory half way down
+        assertSame(dirs.get(4), vfs.getInodeByPath(paths.get(4)));
+        assertSame(file, vfs.getInodeByPath(deepPath));
+        assertEquals(deepPath, file.getPath());
+
+        for (int i = 0; i < dirs.size(); i++) {
+            assertSame(dirs.get(i), vfs.getInodeByPath(paths.get(i)), paths.get(i));
+            assertEquals(paths.get(i), dirs.get(i).getPath());
+        }
+        assertSame(file, vfs.getInodeByPath(deepPath));
+        assertThrows(FileNotFoundException.class, () -> vfs.getInodeByPath(path + "/missing"));
+        assertThrows(FileNotFoundException.class, () -> vfs.getInodeByPath(paths.get(4) + "/missing/file"));
+    }
+
+    @Test
+    public void testRemergeDigestInvalidation() throws Exception {
+        vfs.getRoot().createDirectory("DigestDir", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/DigestDir");
+        dir.createDirectory("changed", "drftpd", "drftpd");
+        dir.createDirectory("untouched", "drftpd", "drftpd");
+        VirtualFileSystemDirectory changed = (VirtualFileSystemDirectory) dir.getInodeByName("changed");
+        VirtualFileSystemDirectory untouched = (VirtualFileSystemDirectory) dir.getInodeByName("untouched");
+        for (VirtualFileSystemDirectory d : new VirtualFileSystemDirectory[]{vfs.getRoot(), dir, changed, untouched}) {
+            d.setRemergeDigest("testSlave", 1L, 2L);
+        }
+        assertArrayEquals(new long[]{1L, 2L}, changed.getRemergeDigest("testSlave"));
+        assertNull(changed.getRemergeDigest("otherSlave"));
+
+        changed.createFile("file", "drftpd", "drftpd", "testSlave");
+        assertNull(changed.getRemergeDigest("testSlave"));
+        assertNull(dir.getRemergeDigest("testSlave"));
+        assertNull(vfs.getRoot().getRemergeDigest("testSlave"));
+        assertArrayEquals(new long[]{1L, 2L}, untouched.getRemergeDigest("testSlave"));
+    }
+
+    @Test
+    public void testRemergeDigestInvalidationStops() throws Exception {
+        vfs.getRoot().createDirectory("DigestStop", "drftpd", "drftpd");
+        VirtualFileSystemDirectory dir = (VirtualFileSystemDirectory) vfs.getInodeByPath("/DigestStop");
+        dir.createDirectory("sub", "drftpd", "drftpd");
+        VirtualFileSystemDirectory sub = (VirtualFileSystemDirectory) dir.getInodeByName("sub");
+        sub.createFile("file", "drftpd", "drftpd", "testSlave");
+        vfs.getRoot().setRemergeDigest("testSlave", 1L, 2L);
+        sub.setRemergeDigest("testSlave", 3L, 4L);
+
+        // dir has no digests, what is above it is left alone
+        sub.getInodeByName("file").commit();
+        assertNull(sub.getRemergeDigest("testSlave"));
+        assertNull(dir.getRemergeDigest("testSlave"));
+        assertArrayEquals(new long[]{1L, 2L}, vfs.getRoot().getRemergeDigest("testSlave"));
+
+        // a directory which never had digests still drops those of its parents
+        dir.setRemergeDigest("testSlave", 5L, 6L);
+        sub.getInodeByName("file").commit();
+        assertNull(dir.getRemergeDigest("testSlave"));
+        assertNull(vfs.getRoot().getRemergeDigest("testSlave"));
+    }
+
     @Test
     public void testStripLast() {
         assertEquals("/full/path/to", VirtualFileSystem.stripLast("/full/path/to/file"));
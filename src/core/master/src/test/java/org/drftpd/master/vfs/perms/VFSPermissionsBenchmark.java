@@ -0,0 +1,129 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs.perms;
+
+import org.drftpd.master.permissions.GlobPathPermission;
+import org.drftpd.master.permissions.PathPermission;
+import org.drftpd.master.permissions.RegexPathPermission;
+import org.drftpd.master.permissions.StringPathPermission;
+import org.drftpd.master.tests.MicroBenchmark;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.InodeHandle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * What the privpath checks of a LIST cost, walking every rule as checkPathPermission() used to
+ * against the compiled matcher. Not a unit test, see {@link MicroBenchmark} on how to run it.
+ */
+public class VFSPermissionsBenchmark {
+
+    private static final List<String> DENIED = List.of("!*", "!%");
+
+    private final VFSPermissions _perms = new VFSPermissions();
+
+    // privpath permissions in the order they are checked
+    private final List<PathPermission> _privpaths = new ArrayList<>();
+
+    public static void main(String[] args) {
+        new VFSPermissionsBenchmark().run();
+    }
+
+    private VFSPermissionsBenchmark() {
+        // the rules of VFSPermissionsTest, regex permissions are checked before glob ones
+        addRegex("^/archive/.*\\.nfo$");
+        addRegex("sample");
+        for (int i = 0; i < 200; i++) {
+            addGlob("/PRIVATE/group" + i + "/*");
+        }
+        addGlob("*/hidden/*");
+        PathPermission staff = new StringPathPermission("/staff", DENIED);
+        _perms.addPermissionToMap("privpath", staff);
+        _privpaths.add(staff);
+    }
+
+    private void addRegex(String regex) {
+        PathPermission perm = new RegexPathPermission(Pattern.compile(regex, Pattern.CASE_INSENSITIVE), DENIED);
+        _perms.addPermissionToMap("privpathex", perm);
+        _privpaths.add(perm);
+    }
+
+    private void addGlob(String glob) {
+        PathPermission perm = new GlobPathPermission(glob, DENIED);
+        _perms.addPermissionToMap("privpath", perm);
+        _privpaths.add(perm);
+    }
+
+    private boolean isHiddenByWalk(InodeHandle inode) {
+        for (PathPermission perm : _privpaths) {
+            if (perm.checkPath(inode)) {
+                return !perm.check(null);
+            }
+        }
+        return false;
+    }
+
+    private boolean isHidden(InodeHandle inode) {
+        return _perms.checkPathPermission("privpath", null, inode, false, true);
+    }
+
+    /**
+     * Each entry is checked as its parent directory then as itself, as InodeHandle.checkHiddenPath() does.
+     */
+    private void run() {
+        for (String path : new String[]{"/mp3/Some.Release-GROUP", "/PRIVATE/group150/Some.Release-GROUP"}) {
+            DirectoryHandle dir = new DirectoryHandle(path);
+            List<FileHandle> files = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                files.add(dir.getNonExistentFileHandle("some.release-group.r" + i));
+            }
+            int walkHidden = listByWalk(dir, files);
+            int hidden = list(dir, files);
+            if (walkHidden != hidden) {
+                throw new IllegalStateException("The walk hides " + walkHidden + " entries of " + path
+                        + ", the matcher " + hidden);
+            }
+            // an operation is a LIST of the whole directory
+            MicroBenchmark.run("walk, LIST of " + files.size() + " in " + path, 20, () -> listByWalk(dir, files));
+            MicroBenchmark.run("matcher, LIST of " + files.size() + " in " + path, 20, () -> list(dir, files));
+        }
+    }
+
+    private int listByWalk(DirectoryHandle dir, List<FileHandle> files) {
+        int hidden = 0;
+        for (FileHandle file : files) {
+            if (isHiddenByWalk(dir) || isHiddenByWalk(file)) {
+                hidden++;
+            }
+        }
+        return hidden;
+    }
+
+    private int list(DirectoryHandle dir, List<FileHandle> files) {
+        int hidden = 0;
+        for (FileHandle file : files) {
+            if (isHidden(dir) || isHidden(file)) {
+                hidden++;
+            }
+        }
+        return hidden;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.master.vfs.perms;
+
+import org.drftpd.master.permissions.GlobPathPermission;
+import org.drftpd.master.permissions.PathPermission;
+import org.drftpd.master.permissions.RegexPathPermission;
+import org.drftpd.master.permissions.StringPathPermission;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.InodeHandle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VFSPermissionsTest {
+
+    private static final List<String> DENIED = List.of("!*", "!%");
+
+    private VFSPermissions _perms;
+
+    // privpath permissions in the order they are checked, to compare with a plain walk of the list
+    private List<PathPermission> _privpaths;
+
+    @BeforeEach
+    void setUp() {
+        _perms = new VFSPermissions();
+        _privpaths = new ArrayList<>();
+        // regex permissions are checked before glob ones
+        addRegex("^/archive/.*\\.nfo$");
+        addRegex("sample");
+        for (int i = 0; i < 200; i++) {
+            addGlob("/PRIVATE/group" + i + "/*");
+        }
+        addGlob("*/hidden/*");
+        PathPermission staff = new StringPathPermission("/staff", DENIED);
+        _perms.addPermissionToMap("privpath", staff);
+        _privpaths.add(staff);
+    }
+
+    private void addRegex(String regex) {
+        PathPermission perm = new RegexPathPermission(Pattern.compile(regex, Pattern.CASE_INSENSITIVE), DENIED);
+        _perms.addPermissionToMap("privpathex", perm);
+        _privpaths.add(perm);
+    }
+
+    private void addGlob(String glob) {
+        PathPermission perm = new GlobPathPermission(glob, DENIED);
+        _perms.addPermissionToMap("privpath", perm);
+        _privpaths.add(perm);
+    }
+
+    private boolean isHiddenByWalk(InodeHandle inode) {
+        for (PathPermission perm : _privpaths) {
+            if (perm.checkPath(inode)) {
+                return !perm.check(null);
+            }
+        }
+        return false;
+    }
+
+    private boolean isHidden(InodeHandle inode) {
+        return _perms.checkPathPermission("privpath", null, inode, false, true);
+    }
+
+    @Test
+    public void testPathPrefix() {
+        assertEquals("/PRIVATE/", new GlobPathPermission("/PRIVATE/*", DENIED).getPathPrefix());
+        assertEquals("/PRIVATE/grou", new GlobPathPermission("/PRIVATE/grou?/*", DENIED).getPathPrefix());
+        assertEquals("", new GlobPathPermission("*/hidden/*", DENIED).getPathPrefix());
+        assertEquals("/archive/", new RegexPathPermission(Pattern.compile("^/archive/.*"), DENIED).getPathPrefix());
+        assertEquals("/a", new RegexPathPermission(Pattern.compile("^/ab*"), DENIED).getPathPrefix());
+        assertEquals("", new RegexPathPermission(Pattern.compile("^/a|^/b"), DENIED).getPathPrefix());
+        assertEquals("", new RegexPathPermission(Pattern.compile("/archive/"), DENIED).getPathPrefix());
+    }
+
+    @Test
+    public void testSameDecisionsAsWalk() {
+        String[] paths = {"/", "/PRIVATE", "/PRIVATE/group7", "/private/group7/release", "/PRIVATE/group70/release",
+                "/PRIVATE/group200/release", "/ARCHIVE/old/release.nfo", "/archive/old/release.sfv",
+                "/mp3/Sample", "/mp3/release/hidden/file", "/staff", "/staffroom/file", "/mp3/staff"};
+        for (String path : paths) {
+            for (InodeHandle inode : new InodeHandle[]{new DirectoryHandle(path), new FileHandle(path)}) {
+                assertEquals(isHiddenByWalk(inode), isHidden(inode), inode.getPath());
+                // cached for directories
+                assertEquals(isHiddenByWalk(inode), isHidden(inode), inode.getPath());
+            }
+        }
+    }
+
+    /**
+     * Lists directories the way InodeHandle.checkHiddenPath() checks their entries, the parent directory
+     * then the entry itself, the matcher must hide the same entries as a walk of the permissions.
+     */
+    @Test
+    public void testListSameAsWalk() {
+        String[] dirs = {"/mp3/Some.Release-GROUP", "/PRIVATE/group42", "/PRIVATE/group420", "/archive/2020",
+                "/mp3/release/hidden", "/staff"};
+        String[] names = {"release.r00", "release.nfo", "release.sfv", "Sample", "hidden", "group7", "staff"};
+        int hidden = 0;
+        int shown = 0;
+        for (String path : dirs) {
+            DirectoryHandle dir = new DirectoryHandle(path);
+            for (String name : names) {
+                for (InodeHandle inode : new InodeHandle[]{dir.getNonExistentFileHandle(name),
+                        dir.getNonExistentDirectoryHandle(name)}) {
+                    boolean byWalk = isHiddenByWalk(dir) || isHiddenByWalk(inode);
+                    assertEquals(byWalk, isHidden(dir) || isHidden(inode), inode.getPath());
+                    if (byWalk) {
+                        hidden++;
+                    } else {
+                        shown++;
+                    }
+                }
+            }
+        }
+        // both outcomes are covered
+        assertTrue(hidden > 0);
+        assertTrue(shown > 0);
+    }
+}
@@ -31,6 +31,8 @@ import org.drftpd.common.io.PermissionDeniedException;
 import org.drftpd.common.io.PhysicalFile;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.network.BinaryObjectInputStream;
+import org.drftpd.common.network.BinaryObjectOutputStream;
 import org.drftpd.common.slave.DiskStatus;
 import org.drftpd.common.slave.TransferIndex;
 import org.drftpd.common.util.ConfigLoader;
@@ -40,8 +42,12 @@ import org.drftpd.slave.diskselection.DiskSelectionInterface;
 import org.drftpd.slave.exceptions.FileExistsException;
 import org.drftpd.slave.network.AsyncResponseDiskStatus;
 import org.drftpd.slave.network.AsyncResponseTransferStatus;
+import org.drftpd.slave.network.BandwidthScheduler;
 import org.drftpd.slave.network.Transfer;
+import org.drftpd.slave.protocol.CommandDispatcher;
 import org.drftpd.slave.protocol.SlaveProtocolCentral;
+import org.drftpd.slave.vfs.ChecksumCache;
+import org.drftpd.slave.vfs.ChecksumScrubber;
 import org.drftpd.slave.vfs.Root;
 import org.drftpd.slave.vfs.RootCollection;
 
@@ -61,8 +67,6 @@ import java.nio.file.NoSuchFileException;
 import java.security.GeneralSecurityException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.CRC32;
-import java.util.zip.CheckedInputStream;
 
 /**
  * @author mog
@@ -101,6 +105,8 @@ public class Slave extends SslConfigurationLoader {
 
     private ObjectInputStream _sin;
 
+    private BufferedInputStream _bufferedIn;
+
     private ObjectOutputStream _sout;
 
     private Map<TransferIndex, Transfer> _transfers;
@@ -113,6 +119,12 @@ public class Slave extends SslConfigurationLoader {
 
     private SlaveProtocolCentral _central;
 
+    private CommandDispatcher _dispatcher;
+
+    private ChecksumCache _checksumCache;
+
+    private final BandwidthScheduler _bandwidthScheduler = new BandwidthScheduler();
+
     private DiskSelectionInterface _diskSelection = null;
 
     private boolean _ignorePartialRemerge;
@@ -191,6 +203,8 @@ public class Slave extends SslConfigurationLoader {
 
         _transfers = new ConcurrentHashMap<TransferIndex, Transfer>();
 
+        loadChecksumCache(p);
+
         try {
             int minport = Integer.parseInt(p.getProperty("slave.portfrom"));
             int maxport = Integer.parseInt(p.getProperty("slave.portto"));
@@ -215,6 +229,7 @@ public class Slave extends SslConfigurationLoader {
 
         // Initialize this before we connect a socket
         _central = new SlaveProtocolCentral(this);
+        _dispatcher = new CommandDispatcher(p);
 
         try {
             _socket = (SSLSocket) SSLService.getSSLService().sslSocketFactory(_sslConfig).createSocket();
@@ -245,7 +260,8 @@ public class Slave extends SslConfigurationLoader {
 
         _sout = new ObjectOutputStream(new BufferedOutputStream(_socket.getOutputStream()));
         _sout.flush();
-        _sin = new ObjectInputStream(new BufferedInputStream(_socket.getInputStream()));
+        _bufferedIn = new BufferedInputStream(_socket.getInputStream());
+        _sin = new ObjectInputStream(_bufferedIn);
 
         _sout.writeObject(slaveName);
         _sout.flush();
@@ -296,6 +312,31 @@ public class Slave extends SslConfigurationLoader {
         }
     }
 
+    private void loadChecksumCache(Properties cfg) {
+        if (!cfg.getProperty("checksum.cache", "true").equalsIgnoreCase("true")) {
+            return;
+        }
+        File file = new File(cfg.getProperty("checksum.cache.file", "checksums.db"));
+        try {
+            _checksumCache = new ChecksumCache(file);
+        } catch (IOException e) {
+            logger.error("Unable to load checksum cache from {}, checksums will not be cached", file, e);
+            return;
+        }
+        long rate = 0;
+        try {
+            rate = Long.parseLong(cfg.getProperty("checksum.scrub.rate", "0")) * 1024;
+        } catch (NumberFormatException e) {
+            logger.warn("Unable to read checksum.scrub.rate from config, the scrubber is disabled");
+        }
+        if (rate > 0) {
+            Thread scrubber = new Thread(new ChecksumScrubber(_roots, _checksumCache, rate), "ChecksumScrubber");
+            scrubber.setDaemon(true);
+            scrubber.setPriority(Thread.MIN_PRIORITY);
+            scrubber.start();
+        }
+    }
+
     private void loadDiskSelection(Properties cfg) {
         String desiredDs = PropertyHelper.getProperty(cfg, "diskselection");
         try {
@@ -375,18 +416,36 @@ public class Slave extends SslConfigurationLoader {
     }
 
     public long checkSum(PhysicalFile file) throws IOException {
+        if (_checksumCache != null) {
+            Long checksum = _checksumCache.get(file);
+            if (checksum != null) {
+                return checksum;
+            }
+        }
+
         logger.debug("Checksumming: {}", file.getPath());
 
-        CRC32 crc32 = new CRC32();
-        try (CheckedInputStream in = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc32)) {
-            byte[] buf = new byte[16384];
-            while (true) {
-                if (in.read(buf) == -1) {
-                    break;
-                }
-            }
-            return crc32.getValue();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        long checksum = ChecksumCache.computeChecksum(file, 0);
+        if (_checksumCache != null) {
+            _checksumCache.put(file, size, lastModified, checksum);
         }
+        return checksum;
+    }
+
+    /**
+     * @return the cache of the checksums of the files on the roots, null if disabled.
+     */
+    public ChecksumCache getChecksumCache() {
+        return _checksumCache;
+    }
+
+    /**
+     * @return the bandwidth limits shared by the transfers, as pushed by the master.
+     */
+    public BandwidthScheduler getBandwidthScheduler() {
+        return _bandwidthScheduler;
     }
 
     public void delete(String path) throws IOException {
@@ -414,6 +473,10 @@ public class Slave extends SslConfigurationLoader {
                     throw new PermissionDeniedException("delete failed on " + path);
                 }
                 logger.info("DELETEDIR: {}", path);
+                _roots.removeFile(path, root);
+                if (_checksumCache != null) {
+                    _checksumCache.remove(file);
+                }
             } else if (file.isFile()) {
                 Path physicalPath = Path.of(file.getPath());
                 File dir = physicalPath.toFile();
@@ -436,6 +499,10 @@ public class Slave extends SslConfigurationLoader {
                         throw new PermissionDeniedException("delete failed on " + path);
                     }
                 }
+                _roots.removeFile(path, root);
+                if (_checksumCache != null) {
+                    _checksumCache.remove(file);
+                }
 
                 String[] dirList = dir.list();
 
@@ -551,9 +618,10 @@ public class Slave extends SslConfigurationLoader {
                     }
                 }
             }
-            Thread t = new Thread(new AsyncCommandHandler(ac));
-            t.setName("AsyncCommandHandler - " + ac.getClass());
-            t.start();
+            if (!_dispatcher.dispatch(ac, new AsyncCommandHandler(ac))) {
+                sendResponse(new AsyncResponseException(ac.getIndex(),
+                        new IOException("Slave is busy, too many commands like " + ac.getName() + " are running")));
+            }
         }
     }
 
@@ -611,6 +679,10 @@ public class Slave extends SslConfigurationLoader {
             if (!fromfile.renameTo(tofile)) {
                 throw new PermissionDeniedException("renameTo(" + fromfile + ", " + tofile + ") failed");
             }
+            _roots.renameFile(from, toDirPath + "/" + toName, root);
+            if (_checksumCache != null) {
+                _checksumCache.rename(fromfile, tofile);
+            }
         }
     }
 
@@ -688,10 +760,24 @@ public class Slave extends SslConfigurationLoader {
         return _sout;
     }
 
+    /**
+     * Replaces Java serialization by the binary wire format once the master accepted it.<br>
+     * The master may already have sent commands in the new format, the input keeps its buffer.
+     */
+    public void setBinaryWireFormat() throws IOException {
+        _sout.flush();
+        _sout = new BinaryObjectOutputStream(new BufferedOutputStream(_socket.getOutputStream()));
+        _sin = new BinaryObjectInputStream(_bufferedIn);
+    }
+
     public SlaveProtocolCentral getProtocolCentral() {
         return _central;
     }
 
+    public CommandDispatcher getCommandDispatcher() {
+        return _dispatcher;
+    }
+
     public boolean ignorePartialRemerge() {
         return _ignorePartialRemerge;
     }
@@ -21,13 +21,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.drftpd.common.slave.Connection;
 
-import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 
 /**
@@ -83,7 +83,8 @@ public class ActiveConnection extends Connection {
             sslSock.startHandshake();
             _sock = sslSock;
         } else {
-            _sock = SocketFactory.getDefault().createSocket();
+            // backed by a channel, transfers can skip copying the data through the java heap
+            _sock = SocketChannel.open().socket();
             if (bufferSize > 0) {
                 _sock.setReceiveBufferSize(bufferSize);
             }
@@ -0,0 +1,114 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.network.AsyncResponse;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Activity of each class of commands run by the slave, see {@link org.drftpd.slave.protocol.CommandExecutor}.
+ */
+@SuppressWarnings("serial")
+public class AsyncResponseCommandStats extends AsyncResponse {
+    private final List<CommandStats> _stats;
+
+    public AsyncResponseCommandStats(String index, List<CommandStats> stats) {
+        super(index);
+        _stats = stats;
+    }
+
+    public List<CommandStats> getStats() {
+        return _stats;
+    }
+
+    public String toString() {
+        return getClass().getName() + "[stats=" + getStats() + "]";
+    }
+
+    /**
+     * Times are in milliseconds.
+     */
+    @SuppressWarnings("serial")
+    public static class CommandStats implements Serializable {
+        private final String _name;
+        private final int _waiting;
+        private final int _running;
+        private final long _completed;
+        private final long _rejected;
+        private final long _averageWaitTime;
+        private final long _maxWaitTime;
+        private final long _averageRunTime;
+        private final long _maxRunTime;
+
+        public CommandStats(String name, int waiting, int running, long completed, long rejected,
+                            long averageWaitTime, long maxWaitTime, long averageRunTime, long maxRunTime) {
+            _name = name;
+            _waiting = waiting;
+            _running = running;
+            _completed = completed;
+            _rejected = rejected;
+            _averageWaitTime = averageWaitTime;
+            _maxWaitTime = maxWaitTime;
+            _averageRunTime = averageRunTime;
+            _maxRunTime = maxRunTime;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public int getWaiting() {
+            return _waiting;
+        }
+
+        public int getRunning() {
+            return _running;
+        }
+
+        public long getCompleted() {
+            return _completed;
+        }
+
+        public long getRejected() {
+            return _rejected;
+        }
+
+        public long getAverageWaitTime() {
+            return _averageWaitTime;
+        }
+
+        public long getMaxWaitTime() {
+            return _maxWaitTime;
+        }
+
+        public long getAverageRunTime() {
+            return _averageRunTime;
+        }
+
+        public long getMaxRunTime() {
+            return _maxRunTime;
+        }
+
+        public String toString() {
+            return _name + "[waiting=" + _waiting + ",running=" + _running + ",completed=" + _completed
+                    + ",rejected=" + _rejected + "]";
+        }
+    }
+}
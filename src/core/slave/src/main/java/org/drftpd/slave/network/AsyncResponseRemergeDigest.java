@@ -0,0 +1,100 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.slave.LightRemoteInode;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Digests of a directory of the slave, answer to a remergeDigest command.<br>
+ * The content digest covers the entries of the directory, the tree digest covers the whole
+ * tree below it. The entries themselves are only sent when the content digest is not the one
+ * the master already knows.
+ */
+@SuppressWarnings("serial")
+public class AsyncResponseRemergeDigest extends AsyncResponse {
+    private final String _path;
+
+    private final long _contentDigest;
+
+    private final long _treeDigest;
+
+    private final long _lastModified;
+
+    private final String[] _directories;
+
+    private final long[] _directoryDigests;
+
+    private final List<LightRemoteInode> _inodes;
+
+    public AsyncResponseRemergeDigest(String index, String path, long contentDigest, long treeDigest, long lastModified,
+                                      String[] directories, long[] directoryDigests, List<LightRemoteInode> inodes) {
+        super(index);
+        _path = path;
+        _contentDigest = contentDigest;
+        _treeDigest = treeDigest;
+        _lastModified = lastModified;
+        _directories = directories;
+        _directoryDigests = directoryDigests;
+        _inodes = inodes;
+    }
+
+    public String getPath() {
+        return _path;
+    }
+
+    public long getContentDigest() {
+        return _contentDigest;
+    }
+
+    public long getTreeDigest() {
+        return _treeDigest;
+    }
+
+    public long getLastModified() {
+        return _lastModified;
+    }
+
+    /**
+     * @return names of the sub directories.
+     */
+    public String[] getDirectories() {
+        return _directories;
+    }
+
+    /**
+     * @return tree digests of the sub directories, in the order of {@link #getDirectories()}.
+     */
+    public long[] getDirectoryDigests() {
+        return _directoryDigests;
+    }
+
+    /**
+     * @return the entries of the directory, null if the master already has them.
+     */
+    public List<LightRemoteInode> getFiles() {
+        return _inodes == null ? null : Collections.unmodifiableList(_inodes);
+    }
+
+    public String toString() {
+        return getClass().getName() + "[path=" + getPath() + "]";
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.slave.BandwidthLimit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares the bandwidth limits pushed by the master between the transfers of the slave.
+ * <p>
+ * Every limit is a token bucket. A transfer takes what it moved from the buckets of its own
+ * max speed, its user, its group, its section and the slave, then waits until the most indebted
+ * of them is paid back, so the transfers sharing a bucket stay under its rate together.
+ */
+public class BandwidthScheduler {
+    private static final Logger logger = LogManager.getLogger(BandwidthScheduler.class);
+
+    // an idle bucket fills up to 100ms of its rate, a longer burst would break the limit below a second
+    private static final long BURST_NANOS = 100000000L;
+
+    private static final long MIN_BURST = 16384L;
+
+    // bytes per second of each scope, direction and name
+    private final Map<String, Long> _rates = new HashMap<>();
+
+    private final Map<String, TokenBucket> _buckets = new HashMap<>();
+
+    private volatile int _generation;
+
+    /**
+     * Replaces the limits, the running transfers follow the new ones from their next chunk.
+     */
+    public synchronized void setLimits(Collection<BandwidthLimit> limits) {
+        _rates.clear();
+        for (BandwidthLimit limit : limits) {
+            if (limit.getUp() > 0) {
+                _rates.put(key(limit.getScope(), Transfer.TRANSFER_RECEIVING_UPLOAD, limit.getName()), limit.getUp());
+            }
+            if (limit.getDown() > 0) {
+                _rates.put(key(limit.getScope(), Transfer.TRANSFER_SENDING_DOWNLOAD, limit.getName()), limit.getDown());
+            }
+        }
+        _buckets.clear();
+        _generation++;
+        logger.info("Bandwidth limits set to {}", limits);
+    }
+
+    private static String key(String scope, char direction, String name) {
+        return scope + ':' + direction + ':' + name;
+    }
+
+    /**
+     * @return the bucket of {@code name}, a bucket of its own if the limit is for every name of
+     * the scope, null if there is no limit.
+     */
+    private TokenBucket getBucket(String scope, char direction, String name, long now) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        String key = key(scope, direction, name);
+        Long rate = _rates.get(key);
+        if (rate == null) {
+            rate = _rates.get(key(scope, direction, BandwidthLimit.ALL));
+            if (rate == null) {
+                return null;
+            }
+        }
+        long bucketRate = rate;
+        return _buckets.computeIfAbsent(key, k -> new TokenBucket(bucketRate, now));
+    }
+
+    /**
+     * @param maxSpeed bytes per second of the transfer alone, 0 for no limit.
+     * @param user     null if the transfer is not limited by user, likewise for the group and section.
+     */
+    public Chain getChain(char direction, long maxSpeed, String user, String group, String section) {
+        return new Chain(direction, maxSpeed, user, group, section);
+    }
+
+    /**
+     * The buckets of one transfer, only used by the thread running it.
+     */
+    public class Chain {
+        private final char _direction;
+
+        private final String _user;
+
+        private final String _group;
+
+        private final String _section;
+
+        private final TokenBucket _own;
+
+        private TokenBucket[] _chain;
+
+        private int _chainGeneration;
+
+        private Chain(char direction, long maxSpeed, String user, String group, String section) {
+            _direction = direction;
+            _user = user;
+            _group = group;
+            _section = section;
+            long now = System.nanoTime();
+            _own = maxSpeed > 0 ? new TokenBucket(maxSpeed, now) : null;
+            resolve(now);
+        }
+
+        private void resolve(long now) {
+            synchronized (BandwidthScheduler.this) {
+                _chainGeneration = _generation;
+                List<TokenBucket> chain = new ArrayList<>(5);
+                chain.add(_own);
+                chain.add(getBucket(BandwidthLimit.USER, _direction, _user, now));
+                chain.add(getBucket(BandwidthLimit.GROUP, _direction, _group, now));
+                chain.add(getBucket(BandwidthLimit.SECTION, _direction, _section, now));
+                chain.add(getBucket(BandwidthLimit.SLAVE, _direction, BandwidthLimit.ALL, now));
+                chain.removeIf(bucket -> bucket == null);
+                _chain = chain.toArray(new TokenBucket[0]);
+            }
+        }
+
+        /**
+         * Takes {@code bytes} from every bucket of the transfer.
+         *
+         * @return the nanoseconds to wait before moving more data.
+         */
+        public long consume(long bytes) {
+            return consume(bytes, System.nanoTime());
+        }
+
+        /**
+         * @param now the current time in nanoseconds, as given by {@link System#nanoTime()}.
+         */
+        long consume(long bytes, long now) {
+            if (_chainGeneration != _generation) {
+                resolve(now);
+            }
+            long wait = 0;
+            for (TokenBucket bucket : _chain) {
+                wait = Math.max(wait, bucket.take(bytes, now));
+            }
+            return wait;
+        }
+
+        /**
+         * @return the lowest rate in bytes per second the transfer is limited to, 0 if not limited.
+         */
+        public long getLowestRate() {
+            if (_chainGeneration != _generation) {
+                resolve(System.nanoTime());
+            }
+            long lowest = 0;
+            for (TokenBucket bucket : _chain) {
+                if (lowest == 0 || bucket._rate < lowest) {
+                    lowest = bucket._rate;
+                }
+            }
+            return lowest;
+        }
+    }
+
+    private static class TokenBucket {
+        private final long _rate;
+
+        private final double _burst;
+
+        // goes below zero when a transfer took more than there was, the debt is paid back over time
+        private double _tokens;
+
+        private long _last;
+
+        private TokenBucket(long rate, long now) {
+            _rate = rate;
+            _last = now;
+            _burst = Math.max(MIN_BURST, rate * (BURST_NANOS / 1e9));
+            _tokens = _burst;
+        }
+
+        /**
+         * @return the nanoseconds until the bucket is out of debt.
+         */
+        private synchronized long take(long bytes, long now) {
+            if (now > _last) {
+                _tokens = Math.min(_burst, _tokens + (now - _last) * (_rate / 1e9));
+                _last = now;
+            }
+            _tokens -= bytes;
+            if (_tokens >= 0) {
+                return 0;
+            }
+            return (long) (-_tokens * 1e9 / _rate);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.network.WireCodec;
+import org.drftpd.common.network.WireCodecs;
+import org.drftpd.common.slave.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.drftpd.common.network.WireCodecs.readString;
+import static org.drftpd.common.network.WireCodecs.writeString;
+
+/**
+ * Codecs of the responses sent by the slave, registered on both sides before switching to the binary wire format.
+ */
+public class SlaveWireCodecs {
+
+    private static boolean _registered;
+
+    private SlaveWireCodecs() {
+    }
+
+    public static synchronized void register() {
+        if (_registered) {
+            return;
+        }
+        WireCodecs.register(16, AsyncResponseRemerge.class, new RemergeCodec());
+        WireCodecs.register(17, AsyncResponseTransferStatus.class, new TransferStatusCodec());
+        WireCodecs.register(18, AsyncResponseTransfer.class, new TransferCodec());
+        WireCodecs.register(19, AsyncResponseDiskStatus.class, new DiskStatusCodec());
+        WireCodecs.register(20, AsyncResponseChecksum.class, new ChecksumCodec());
+        WireCodecs.register(21, AsyncResponseMaxPath.class, new MaxPathCodec());
+        WireCodecs.register(22, AsyncResponseSSLCheck.class, new SSLCheckCodec());
+        WireCodecs.register(23, AsyncResponseSiteBotMessage.class, new SiteBotMessageCodec());
+        WireCodecs.register(24, AsyncResponseCommandStats.class, new CommandStatsCodec());
+        _registered = true;
+    }
+
+    private static void writeTransferStatus(DataOutput out, TransferStatus ts) throws IOException {
+        out.writeInt(ts.getTransferIndex().getIndex());
+        out.writeBoolean(ts.threwException());
+        if (ts.threwException()) {
+            // only built by TransferStatus(TransferIndex, Throwable), the rest is fixed
+            WireCodecs.writeSerialized(out, ts.getThrowable());
+            return;
+        }
+        out.writeLong(ts.getElapsed());
+        out.writeLong(ts.getTransfered());
+        out.writeLong(ts.getChecksum());
+        out.writeBoolean(ts.isFinished());
+    }
+
+    private static TransferStatus readTransferStatus(DataInput in) throws IOException, ClassNotFoundException {
+        TransferIndex index = new TransferIndex(in.readInt());
+        if (in.readBoolean()) {
+            return new TransferStatus(index, (Throwable) WireCodecs.readSerialized(in));
+        }
+        long elapsed = in.readLong();
+        long transfered = in.readLong();
+        long checksum = in.readLong();
+        return new TransferStatus(elapsed, transfered, checksum, in.readBoolean(), index);
+    }
+
+    private static class RemergeCodec implements WireCodec<AsyncResponseRemerge> {
+        public void write(DataOutput out, AsyncResponseRemerge response) throws IOException {
+            writeString(out, response.getPath());
+            out.writeLong(response.getLastModified());
+            List<LightRemoteInode> inodes = response.getFiles();
+            out.writeInt(inodes.size());
+            // most files of a directory share the same owner, send each name once
+            Map<String, Integer> names = new HashMap<>();
+            for (LightRemoteInode inode : inodes) {
+                writeString(out, inode.getName());
+                out.writeBoolean(inode.isDirectory());
+                out.writeLong(inode.lastModified());
+                out.writeLong(inode.length());
+                writeName(out, names, inode.getUsername());
+                writeName(out, names, inode.getGroup());
+            }
+        }
+
+        private void writeName(DataOutput out, Map<String, Integer> names, String name) throws IOException {
+            Integer ref = names.get(name);
+            if (ref != null) {
+                out.writeInt(ref);
+                return;
+            }
+            names.put(name, names.size());
+            out.writeInt(-1);
+            writeString(out, name);
+        }
+
+        public AsyncResponseRemerge read(DataInput in) throws IOException {
+            String path = readString(in);
+            long lastModified = in.readLong();
+            int size = in.readInt();
+            List<LightRemoteInode> inodes = new ArrayList<>(size);
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                String name = readString(in);
+                boolean isDirectory = in.readBoolean();
+                long inodeLastModified = in.readLong();
+                long length = in.readLong();
+                String username = readName(in, names);
+                String group = readName(in, names);
+                inodes.add(new LightRemoteInode(name, username, group, isDirectory, inodeLastModified, length));
+            }
+            return new AsyncResponseRemerge(path, inodes, lastModified);
+        }
+
+        private String readName(DataInput in, List<String> names) throws IOException {
+            int ref = in.readInt();
+            if (ref >= 0) {
+                return names.get(ref);
+            }
+            String name = readString(in);
+            names.add(name);
+            return name;
+        }
+    }
+
+    private static class TransferStatusCodec implements WireCodec<AsyncResponseTransferStatus> {
+        public void write(DataOutput out, AsyncResponseTransferStatus response) throws IOException {
+            writeTransferStatus(out, response.getTransferStatus());
+        }
+
+        public AsyncResponseTransferStatus read(DataInput in) throws IOException, ClassNotFoundException {
+            return new AsyncResponseTransferStatus(readTransferStatus(in));
+        }
+    }
+
+    private static class TransferCodec implements WireCodec<AsyncResponseTransfer> {
+        public void write(DataOutput out, AsyncResponseTransfer response) throws IOException {
+            writeString(out, response.getIndex());
+            ConnectInfo ci = response.getConnectInfo();
+            out.writeInt(ci.getPort());
+            out.writeInt(ci.getTransferIndex().getIndex());
+            out.writeBoolean(ci.getTransferStatus() != null);
+            if (ci.getTransferStatus() != null) {
+                writeTransferStatus(out, ci.getTransferStatus());
+            }
+        }
+
+        public AsyncResponseTransfer read(DataInput in) throws IOException, ClassNotFoundException {
+            String index = readString(in);
+            int port = in.readInt();
+            TransferIndex transferIndex = new TransferIndex(in.readInt());
+            TransferStatus ts = in.readBoolean() ? readTransferStatus(in) : null;
+            return new AsyncResponseTransfer(index, new ConnectInfo(port, transferIndex, ts));
+        }
+    }
+
+    private static class DiskStatusCodec implements WireCodec<AsyncResponseDiskStatus> {
+        public void write(DataOutput out, AsyncResponseDiskStatus response) throws IOException {
+            out.writeLong(response.getDiskStatus().getBytesAvailable());
+            out.writeLong(response.getDiskStatus().getBytesCapacity());
+        }
+
+        public AsyncResponseDiskStatus read(DataInput in) throws IOException {
+            long free = in.readLong();
+            return new AsyncResponseDiskStatus(new DiskStatus(free, in.readLong()));
+        }
+    }
+
+    private static class ChecksumCodec implements WireCodec<AsyncResponseChecksum> {
+        public void write(DataOutput out, AsyncResponseChecksum response) throws IOException {
+            writeString(out, response.getIndex());
+            out.writeLong(response.getChecksum());
+        }
+
+        public AsyncResponseChecksum read(DataInput in) throws IOException {
+            String index = readString(in);
+            return new AsyncResponseChecksum(index, in.readLong());
+        }
+    }
+
+    private static class MaxPathCodec implements WireCodec<AsyncResponseMaxPath> {
+        public void write(DataOutput out, AsyncResponseMaxPath response) throws IOException {
+            writeString(out, response.getIndex());
+            out.writeInt(response.getMaxPath());
+        }
+
+        public AsyncResponseMaxPath read(DataInput in) throws IOException {
+            String index = readString(in);
+            return new AsyncResponseMaxPath(index, in.readInt());
+        }
+    }
+
+    private static class SSLCheckCodec implements WireCodec<AsyncResponseSSLCheck> {
+        public void write(DataOutput out, AsyncResponseSSLCheck response) throws IOException {
+            writeString(out, response.getIndex());
+            out.writeBoolean(response.isSSLReady());
+        }
+
+        public AsyncResponseSSLCheck read(DataInput in) throws IOException {
+            String index = readString(in);
+            return new AsyncResponseSSLCheck(index, in.readBoolean());
+        }
+    }
+
+    private static class SiteBotMessageCodec implements WireCodec<AsyncResponseSiteBotMessage> {
+        public void write(DataOutput out, AsyncResponseSiteBotMessage response) throws IOException {
+            writeString(out, response.getMessage());
+        }
+
+        public AsyncResponseSiteBotMessage read(DataInput in) throws IOException {
+            return new AsyncResponseSiteBotMessage(readString(in));
+        }
+    }
+
+    private static class CommandStatsCodec implements WireCodec<AsyncResponseCommandStats> {
+        public void write(DataOutput out, AsyncResponseCommandStats response) throws IOException {
+            writeString(out, response.getIndex());
+            out.writeInt(response.getStats().size());
+            for (AsyncResponseCommandStats.CommandStats stats : response.getStats()) {
+                writeString(out, stats.getName());
+                out.writeInt(stats.getWaiting());
+                out.writeInt(stats.getRunning());
+                out.writeLong(stats.getCompleted());
+                out.writeLong(stats.getRejected());
+                out.writeLong(stats.getAverageWaitTime());
+                out.writeLong(stats.getMaxWaitTime());
+                out.writeLong(stats.getAverageRunTime());
+                out.writeLong(stats.getMaxRunTime());
+            }
+        }
+
+        public AsyncResponseCommandStats read(DataInput in) throws IOException {
+            String index = readString(in);
+            int size = in.readInt();
+            List<AsyncResponseCommandStats.CommandStats> stats = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                stats.add(new AsyncResponseCommandStats.CommandStats(readString(in), in.readInt(), in.readInt(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            return new AsyncResponseCommandStats(index, stats);
+        }
+    }
+}
@@ -39,6 +39,12 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.PatternSyntaxException;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
@@ -55,13 +61,16 @@ public class Transfer {
     private static final Logger logger = LogManager.getLogger(Transfer.class);
     private static final String separator = "/";
     private static final long _transferProgressAnnounce = 524288L; // Report every 512KB
+    private static final int MAX_CHUNK_SIZE = 1048576; // Largest chunk sent at once by transferTo()
     private String _abortReason = null;
     private CRC32 _checksum = null;
     private Connection _conn;
     private char _direction;
     private long _finished = 0;
-    private ThrottledInputStream _int;
+    private BandwidthScheduler.Chain _bandwidth;
+    private final Object _throttleMonitor = new Object();
     private InputStream _in;
+    private FileChannel _fileChannel;
     private final char _mode = 'I';
     private OutputStream _out;
     private final Slave _slave;
@@ -74,6 +83,16 @@ public class Transfer {
 
     private long _maxSpeed = 0L;
 
+    // What the transfer counts against in the bandwidth limits of the slave
+    private String _user;
+    private String _group;
+    private String _section;
+
+    // State of the keepalive and minimum speed checks
+    private long _lastStatusSent;
+    private long _lastSpeedCheck;
+    private boolean _firstSpeedCheck;
+
     /**
      * Start undefined transfer.
      */
@@ -98,6 +117,23 @@ public class Transfer {
         _transferIndex = transferIndex;
     }
 
+    /**
+     * Transfer over a socket already connected to an open file, the tests of the channel loops
+     * override {@link #getBufferSize()} and {@link #sendTransferStatus()} as there is no slave.
+     */
+    Transfer(TransferIndex transferIndex, char direction, FileChannel fileChannel, boolean checksum,
+             BandwidthScheduler.Chain bandwidth) {
+        _slave = null;
+        _transferIndex = transferIndex;
+        _direction = direction;
+        _fileChannel = fileChannel;
+        _checksum = checksum ? new CRC32() : null;
+        _bandwidth = bandwidth;
+        _started = System.currentTimeMillis();
+        _lastStatusSent = _started;
+        _firstSpeedCheck = true;
+    }
+
     public int hashCode() {
         return _transferIndex.hashCode();
     }
@@ -106,8 +142,8 @@ public class Transfer {
         logger.warn("Abort was requested, starting to abort transfer. Reason: " + reason);
         try {
             _abortReason = reason;
-            if (_int != null) {
-                _int.wake();
+            synchronized (_throttleMonitor) {
+                _throttleMonitor.notifyAll();
             }
 
         } finally {
@@ -218,6 +254,15 @@ public class Transfer {
         _maxSpeed = maxSpeed;
     }
 
+    /**
+     * Sets the user, group and section sharing their bandwidth limits with this transfer, any may be null.
+     */
+    public void setBandwidthClass(String user, String group, String section) {
+        _user = user;
+        _group = group;
+        _section = section;
+    }
+
     public boolean isReceivingUploading() {
         return _direction == Transfer.TRANSFER_RECEIVING_UPLOAD;
     }
@@ -251,7 +296,11 @@ public class Transfer {
         String root = _slave.getRoots().getARootFileDir(dirname).getPath();
 
         try {
-            _out = new FileOutputStream(new File(root + separator + filename));
+            File file = new File(root + separator + filename);
+            FileOutputStream fos = new FileOutputStream(file);
+            _slave.getRoots().addFile(_pathForUpload, file);
+            _fileChannel = fos.getChannel();
+            _out = fos;
 
             if (_slave.getUploadChecksums()) {
                 _checksum = new CRC32();
@@ -270,6 +319,11 @@ public class Transfer {
 
             logger.info("UL: {}/{}{}", dirname, filename, getNegotiatedSSLString());
             transfer(null);
+            if (_checksum != null && _slave.getChecksumCache() != null) {
+                // closed first, the cached entry must match the final modification time
+                _out.close();
+                _slave.getChecksumCache().put(file, getChecksum());
+            }
             _slave.sendResponse(new AsyncResponseDiskStatus(_slave.getDiskStatus()));
             return getTransferStatus();
         } finally {
@@ -308,7 +362,9 @@ public class Transfer {
             throws IOException, TransferDeniedException {
         try {
 
-            _in = new FileInputStream(new PhysicalFile(_slave.getRoots().getFile(path)));
+            FileInputStream fis = new FileInputStream(new PhysicalFile(_slave.getRoots().getFile(path)));
+            _fileChannel = fis.getChannel();
+            _in = fis;
 
             if (_slave.getDownloadChecksums()) {
                 _checksum = new CRC32();
@@ -413,99 +469,28 @@ public class Transfer {
         try {
             // Register when we started this transfer
             _started = System.currentTimeMillis();
+            _lastStatusSent = _started;
+            _lastSpeedCheck = 0;
+            _firstSpeedCheck = true;
+            _bandwidth = _slave.getBandwidthScheduler().getChain(_direction, getMaxSpeed(), _user, _group, _section);
 
-            // TODO: Support for mode ASCII?
-            if (_mode == 'A') {
-                _out = new AddAsciiOutputStream(_out);
-            }
-
-            // Set the buffer size (uses ram) to whatever is configured with a minimum (hardcoded) as 32K
-            byte[] buff = new byte[Math.max(_slave.getBufferSize(), 32768)];
-            logger.debug("Buffer has been initialized with a size of [{}]", buff.length);
-
-            int count;
-            long currentTime = System.currentTimeMillis();
-
-            // The ThrottledInputStream handles the max speed (traffic manager)
-            _int = new ThrottledInputStream(_in, getMaxSpeed());
-
-            // Minimum speed check
-            boolean first = true;
-            long lastCheck = 0;
-
-            long _showTransferProgress = 0L;
+            // Plain sockets opened by our connections have a channel, the data can skip the java heap
+            SocketChannel channel = _sock.getChannel();
 
             try {
-                while (true) {
-                    if ((getTransferred() - _showTransferProgress) >= _transferProgressAnnounce) {
-                        logger.debug(_int);
-                        _showTransferProgress = getTransferred();
-                    }
-                    if (_abortReason != null) {
-                        throw new TransferFailedException("Transfer was aborted - " + _abortReason, getTransferStatus());
-                    }
-                    try {
-                        count = _int.read(buff);
-                    } catch (SocketTimeoutException e) {
-                        logger.debug("SocketTimeoutException happened, this is expected to make other logic work");
-                        count = 0;
-                    }
-                    if (count == -1) {
-                        if (associatedUpload == null) {
-                            logger.debug("Done transferring as associatedUpload == null");
-                            break; // done transferring
-                        }
-                        if (associatedUpload.getTransferStatus().isFinished()) {
-                            logger.debug("Done transferring as associatedUpload states it is finished");
-                            break; // done transferring
-                        }
-
-                        continue; // waiting for upload to catch up
-                    }
-
-                    // Do some keepalive stuff
-                    if ((System.currentTimeMillis() - currentTime) >= 1000) {
-                        if (getTransferStatus().isFinished()) {
-                            throw new TransferFailedException("Transfer idle timeout reached", getTransferStatus());
-                        }
-                        // Report progress to the master
-                        _slave.sendResponse(new AsyncResponseTransferStatus(getTransferStatus()));
-                        currentTime = System.currentTimeMillis();
-                    }
-
-                    // Min Speed Check
-                    if (_minSpeed > 0) {
-                        if (lastCheck == 0) {
-                            lastCheck = System.currentTimeMillis();
-                        }
-                        long delay = System.currentTimeMillis() - lastCheck;
-
-                        // Check every 0.2 seconds, but take into account tcp slow start so first check is 0.5 seconds
-                        if (first ? delay >= 500 : delay >= 200) {
-                            logger.debug("In minspeed check, delay: {}, current speed: {}, min speed is set to: {}", delay, getTransferSpeed(), _minSpeed);
-                            first = false;
-                            if (getTransferSpeed() < _minSpeed) {
-                                throw new TransferSlowException("Transfer was aborted - '" + getTransferSpeed() + "' is < '" + _minSpeed + "'", getTransferStatus());
-                            }
-                            // Reset the last Check
-                            lastCheck = System.currentTimeMillis();
-                        }
-                    }
-
-                    // Only do these actions if we have read data
-                    if (count > 0) {
-                        _transferred += count;
-                        _out.write(buff, 0, count);
+                if (channel != null && _fileChannel != null && _mode == 'I') {
+                    if (isReceivingUploading()) {
+                        receiveFromChannel(channel);
+                    } else {
+                        sendToChannel(channel, associatedUpload);
                     }
+                } else {
+                    transferStreams(associatedUpload);
                 }
-
-                _out.flush();
             } catch (SocketException e) {
                 logger.warn("Caught SocketException, forwarding as TransferFailedException", e);
-                logger.debug(_int);
                 throw new TransferFailedException(e, getTransferStatus());
             } catch (IOException e) {
-                logger.debug(_int);
                 if (e instanceof TransferFailedException) {
                     // Forward as is
                     throw e;
@@ -520,6 +505,251 @@ public class Transfer {
         }
     }
 
+    /**
+     * Copies the data through a heap buffer, used for SSL connections.
+     */
+    private void transferStreams(Transfer associatedUpload) throws IOException {
+        // TODO: Support for mode ASCII?
+        if (_mode == 'A') {
+            _out = new AddAsciiOutputStream(_out);
+        }
+
+        // Set the buffer size (uses ram) to whatever is configured with a minimum (hardcoded) as 32K
+        byte[] buff = new byte[Math.max(getBufferSize(), 32768)];
+        logger.debug("Buffer has been initialized with a size of [{}]", buff.length);
+
+        int count;
+
+        long _showTransferProgress = 0L;
+
+        while (true) {
+            if ((getTransferred() - _showTransferProgress) >= _transferProgressAnnounce) {
+                logger.debug("Transferred {} bytes at {} bytes/s", getTransferred(), getTransferSpeed());
+                _showTransferProgress = getTransferred();
+            }
+            checkAborted();
+            try {
+                count = _in.read(buff, 0, (int) Math.min(buff.length, getChunkSize()));
+            } catch (SocketTimeoutException e) {
+                logger.debug("SocketTimeoutException happened, this is expected to make other logic work");
+                count = 0;
+            }
+            if (count == -1) {
+                if (associatedUpload == null) {
+                    logger.debug("Done transferring as associatedUpload == null");
+                    break; // done transferring
+                }
+                if (associatedUpload.getTransferStatus().isFinished()) {
+                    logger.debug("Done transferring as associatedUpload states it is finished");
+                    break; // done transferring
+                }
+
+                continue; // waiting for upload to catch up
+            }
+
+            checkProgress();
+
+            // Only do these actions if we have read data
+            if (count > 0) {
+                _transferred += count;
+                _out.write(buff, 0, count);
+                throttle(count);
+            }
+        }
+
+        _out.flush();
+    }
+
+    /**
+     * Receives an upload straight into the file using a direct buffer, the checksum is computed on the fly.
+     */
+    void receiveFromChannel(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(getBufferSize(), 32768));
+        logger.debug("Receiving through a direct buffer of [{}] bytes", buffer.capacity());
+
+        // a blocking channel ignores the socket timeout, select instead so the checks below keep running
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            while (true) {
+                checkAborted();
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), getChunkSize()));
+                int count = channel.read(buffer);
+                if (count == -1) {
+                    break;
+                }
+                if (count == 0) {
+                    selector.select(100);
+                    selector.selectedKeys().clear();
+                }
+
+                checkProgress();
+
+                if (count > 0) {
+                    buffer.flip();
+                    if (_checksum != null) {
+                        _checksum.update(buffer);
+                        buffer.rewind();
+                    }
+                    while (buffer.hasRemaining()) {
+                        _fileChannel.write(buffer);
+                    }
+                    _transferred += count;
+                    throttle(count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a download, using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * so the kernel copies the file to the socket when no checksum is needed, a direct buffer otherwise.
+     */
+    void sendToChannel(SocketChannel channel, Transfer associatedUpload) throws IOException {
+        ByteBuffer buffer = null;
+        if (_checksum != null) {
+            buffer = ByteBuffer.allocateDirect(Math.max(getBufferSize(), 32768));
+            logger.debug("Sending through a direct buffer of [{}] bytes", buffer.capacity());
+        } else {
+            logger.debug("Sending using transferTo()");
+        }
+        long position = _fileChannel.position();
+
+        while (true) {
+            checkAborted();
+            long count;
+            if (buffer == null) {
+                count = _fileChannel.transferTo(position, getChunkSize(), channel);
+                if (count == 0 && position >= _fileChannel.size()) {
+                    count = -1;
+                }
+            } else {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), getChunkSize()));
+                count = _fileChannel.read(buffer, position);
+            }
+            if (count == -1) {
+                if (associatedUpload == null) {
+                    logger.debug("Done transferring as associatedUpload == null");
+                    break; // done transferring
+                }
+                if (associatedUpload.getTransferStatus().isFinished() && position >= _fileChannel.size()) {
+                    logger.debug("Done transferring as associatedUpload states it is finished");
+                    break; // done transferring
+                }
+                // waiting for upload to catch up
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for the upload");
+                }
+                continue;
+            }
+
+            checkProgress();
+
+            if (count > 0) {
+                if (buffer != null) {
+                    buffer.flip();
+                    _checksum.update(buffer);
+                    buffer.rewind();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                position += count;
+                _transferred += count;
+                throttle(count);
+            }
+        }
+    }
+
+    /**
+     * @return how much may be moved at once, small enough for the bandwidth limits to stay smooth.
+     */
+    private long getChunkSize() {
+        long rate = _bandwidth.getLowestRate();
+        if (rate <= 0) {
+            return MAX_CHUNK_SIZE;
+        }
+        return Math.max(4096, Math.min(MAX_CHUNK_SIZE, rate / 10));
+    }
+
+    /**
+     * Accounts the bytes just moved against the bandwidth limits and waits until they allow more.
+     */
+    private void throttle(long bytes) throws IOException {
+        long wait = _bandwidth.consume(bytes);
+        if (wait <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + wait;
+        while (true) {
+            synchronized (_throttleMonitor) {
+                long left = deadline - System.nanoTime();
+                if (_abortReason != null || left <= 0) {
+                    return;
+                }
+                try {
+                    // woken up by abort(), the progress is still reported while a shared limit is paid back
+                    TimeUnit.NANOSECONDS.timedWait(_throttleMonitor, Math.min(left, 200000000L));
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while throttling");
+                }
+            }
+            checkProgress();
+        }
+    }
+
+    int getBufferSize() {
+        return _slave.getBufferSize();
+    }
+
+    void sendTransferStatus() {
+        _slave.sendResponse(new AsyncResponseTransferStatus(getTransferStatus()));
+    }
+
+    private void checkAborted() throws TransferFailedException {
+        if (_abortReason != null) {
+            throw new TransferFailedException("Transfer was aborted - " + _abortReason, getTransferStatus());
+        }
+    }
+
+    /**
+     * Reports the progress to the master every second and enforces the minimum speed.
+     */
+    private void checkProgress() throws TransferFailedException {
+        // Do some keepalive stuff
+        if ((System.currentTimeMillis() - _lastStatusSent) >= 1000) {
+            if (getTransferStatus().isFinished()) {
+                throw new TransferFailedException("Transfer idle timeout reached", getTransferStatus());
+            }
+            // Report progress to the master
+            sendTransferStatus();
+            _lastStatusSent = System.currentTimeMillis();
+        }
+
+        // Min Speed Check
+        if (_minSpeed > 0) {
+            if (_lastSpeedCheck == 0) {
+                _lastSpeedCheck = System.currentTimeMillis();
+            }
+            long delay = System.currentTimeMillis() - _lastSpeedCheck;
+
+            // Check every 0.2 seconds, but take into account tcp slow start so first check is 0.5 seconds
+            if (_firstSpeedCheck ? delay >= 500 : delay >= 200) {
+                logger.debug("In minspeed check, delay: {}, current speed: {}, min speed is set to: {}", delay, getTransferSpeed(), _minSpeed);
+                _firstSpeedCheck = false;
+                if (getTransferSpeed() < _minSpeed) {
+                    throw new TransferSlowException("Transfer was aborted - '" + getTransferSpeed() + "' is < '" + _minSpeed + "'", getTransferStatus());
+                }
+                // Reset the last Check
+                _lastSpeedCheck = System.currentTimeMillis();
+            }
+        }
+    }
+
     private boolean isNotExpectedHostmask(String maskString, InetAddress connectedAddress) {
         HostMask mask = new HostMask(maskString);
 
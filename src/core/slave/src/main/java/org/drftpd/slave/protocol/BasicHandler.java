@@ -26,6 +26,7 @@ import org.drftpd.common.io.PhysicalFile;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
 import org.drftpd.common.network.PassiveConnection;
+import org.drftpd.common.slave.BandwidthLimit;
 import org.drftpd.common.slave.ConnectInfo;
 import org.drftpd.common.slave.LightRemoteInode;
 import org.drftpd.common.slave.TransferIndex;
@@ -67,6 +68,7 @@ public class BasicHandler extends AbstractHandler {
     private static final Object mergeDepthWaitObj = new Object();
     private final ArrayList<String> mergeDepth = new ArrayList<>();
     private final ArrayList<RemergeItem> remergeResponses = new ArrayList<>();
+    private static final RemergeDigests remergeDigests = new RemergeDigests();
 
     public BasicHandler(SlaveProtocolCentral central) {
         super(central);
@@ -116,6 +118,22 @@ public class BasicHandler extends AbstractHandler {
         return new AsyncResponse(ac.getIndex());
     }
 
+    // BANDWIDTH
+    public AsyncResponse handleBandwidth(AsyncCommandArgument ac) {
+        getSlaveObject().getBandwidthScheduler().setLimits(BandwidthLimit.fromArgs(ac.getArgsArray()));
+        return new AsyncResponse(ac.getIndex());
+    }
+
+    /**
+     * Reads the user, group and section of a transfer, sent after the speeds by newer masters.
+     */
+    private static void setBandwidthClass(Transfer t, String[] args) {
+        if (args.length < 10) {
+            return;
+        }
+        t.setBandwidthClass(args[7], args[8], args[9]);
+    }
+
     // CONNECT
     public AsyncResponse handleConnect(AsyncCommandArgument ac) {
         String[] data = ac.getArgsArray()[0].split(":");
@@ -196,6 +214,7 @@ public class BasicHandler extends AbstractHandler {
         Transfer t = getSlaveObject().getTransfer(transferIndex);
         t.setMinSpeed(minSpeed);
         t.setMaxSpeed(maxSpeed);
+        setBandwidthClass(t, ac.getArgsArray());
         getSlaveObject().sendResponse(new AsyncResponse(ac.getIndex())); // return calling thread on master
         try {
             return new AsyncResponseTransferStatus(t.receiveFile(dirName, type, fileName, position, inetAddress));
@@ -344,6 +363,24 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    // REMERGE DIGEST
+    public AsyncResponse handleRemergeDigest(AsyncCommandArgument ac) {
+        String path = ac.getArgsArray()[0];
+        long knownContent = Long.parseLong(ac.getArgsArray()[1]);
+        try {
+            return remergeDigests.get(ac.getIndex(), getSlaveObject().getRoots(), path, knownContent,
+                    _pool.getMaximumPoolSize(), getSlaveObject().concurrentRootIteration());
+        } catch (RuntimeException e) {
+            logger.error("Exception computing remerge digests of {}", path, e);
+            return new AsyncResponseException(ac.getIndex(), new IOException("Unable to compute digests of " + path, e));
+        }
+    }
+
+    public AsyncResponse handleRemergeDigestDone(AsyncCommandArgument ac) {
+        remergeDigests.clear();
+        return new AsyncResponse(ac.getIndex());
+    }
+
     // RENAME
     public AsyncResponse handleRename(AsyncCommandArgument ac) {
         String from = ac.getArgsArray()[0];
@@ -370,6 +407,7 @@ public class BasicHandler extends AbstractHandler {
         Transfer t = getSlaveObject().getTransfer(transferIndex);
         t.setMinSpeed(minSpeed);
         t.setMaxSpeed(maxSpeed);
+        setBandwidthClass(t, ac.getArgsArray());
         sendResponse(new AsyncResponse(ac.getIndex()));
 
         // calling thread on master
@@ -390,6 +428,18 @@ public class BasicHandler extends AbstractHandler {
         }
     }
 
+    // COMMANDSTATS
+    public AsyncResponse handleCommandStats(AsyncCommandArgument ac) {
+        List<AsyncResponseCommandStats.CommandStats> stats = new ArrayList<>();
+        for (CommandExecutor executor : getSlaveObject().getCommandDispatcher().getExecutors()) {
+            stats.add(new AsyncResponseCommandStats.CommandStats(executor.getName(), executor.getWaiting(),
+                    executor.getRunning(), executor.getCompleted(), executor.getRejected(),
+                    executor.getAverageWaitTime(), executor.getMaxWaitTime(),
+                    executor.getAverageRunTime(), executor.getMaxRunTime()));
+        }
+        return new AsyncResponseCommandStats(ac.getIndex(), stats);
+    }
+
     // SHUTDOWN
     public AsyncResponse handleShutdown(AsyncCommandArgument ac) {
         logger.info("The master has requested that I shutdown");
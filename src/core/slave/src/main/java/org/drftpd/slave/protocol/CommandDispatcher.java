@@ -0,0 +1,117 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.protocol;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.network.AsyncCommandArgument;
+import org.drftpd.common.util.VirtualThreads;
+
+import java.util.*;
+
+/**
+ * Hands the commands received from the master to the executor of their class.<br>
+ * <ul>
+ * <li>direct - short commands answered by the thread reading from the master.</li>
+ * <li>transfer - transfers and their setup, they run as long as the transfer does.</li>
+ * <li>checksum - cpu bound commands reading whole files.</li>
+ * <li>default - everything else.</li>
+ * </ul>
+ * The commands of each class, its number of threads and its queue size are read from slave.conf.
+ */
+public class CommandDispatcher {
+    private static final Logger logger = LogManager.getLogger(CommandDispatcher.class);
+
+    public static final String DIRECT = "direct";
+    public static final String TRANSFER = "transfer";
+    public static final String CHECKSUM = "checksum";
+    public static final String DEFAULT = "default";
+
+    private static final long REPORT_INTERVAL = 5 * 60 * 1000L;
+
+    private final Map<String, String> _commandClasses = new HashMap<>();
+    private final Map<String, CommandExecutor> _executors = new LinkedHashMap<>();
+    private long _lastReport = System.currentTimeMillis();
+
+    public CommandDispatcher(Properties cfg) {
+        boolean virtualThreads = cfg.getProperty("slave.virtual.threads", "false").equalsIgnoreCase("true");
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            logger.warn("slave.virtual.threads requires Java 21 or newer, using platform threads");
+            virtualThreads = false;
+        }
+
+        mapCommands(cfg, DIRECT, "ping,abort,remergePause,remergeResume,maxpath,checkSSL,commandStats");
+        mapCommands(cfg, TRANSFER, "listen,connect,send,receive");
+        mapCommands(cfg, CHECKSUM, "checksum,sfvFile,zipCRC,flacFile,mP3File");
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        addExecutor(cfg, TRANSFER, 500, 100, virtualThreads);
+        // checksums would only fight for the cpus, never on virtual threads
+        addExecutor(cfg, CHECKSUM, cpus, 1000, false);
+        addExecutor(cfg, DEFAULT, 50, 1000, virtualThreads);
+    }
+
+    private void mapCommands(Properties cfg, String commandClass, String defaultCommands) {
+        for (String command : cfg.getProperty("commands." + commandClass, defaultCommands).split(",")) {
+            if (!command.isBlank()) {
+                _commandClasses.put(command.trim(), commandClass);
+            }
+        }
+    }
+
+    private void addExecutor(Properties cfg, String commandClass, int defaultThreads, int defaultQueue,
+                             boolean virtualThreads) {
+        int threads = Integer.parseInt(cfg.getProperty("commands." + commandClass + ".threads", "0"));
+        if (threads <= 0) {
+            threads = defaultThreads;
+        }
+        int queue = Integer.parseInt(cfg.getProperty("commands." + commandClass + ".queue",
+                String.valueOf(defaultQueue)));
+        _executors.put(commandClass, new CommandExecutor(commandClass, threads, queue, virtualThreads));
+        logger.debug("{} commands run on {} {}threads with a queue of {}", commandClass, threads,
+                virtualThreads ? "virtual " : "", queue);
+    }
+
+    /**
+     * Runs the handler of a command, never waits for its executor.
+     *
+     * @return false if the executor of the command is full and the command was refused.
+     */
+    public boolean dispatch(AsyncCommandArgument ac, Runnable handler) {
+        String commandClass = _commandClasses.getOrDefault(ac.getName(), DEFAULT);
+        boolean accepted = true;
+        if (commandClass.equals(DIRECT)) {
+            handler.run();
+        } else {
+            accepted = _executors.getOrDefault(commandClass, _executors.get(DEFAULT)).execute(ac.getName(), handler);
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - _lastReport > REPORT_INTERVAL) {
+            _lastReport = now;
+            for (CommandExecutor executor : _executors.values()) {
+                logger.info("{}", executor);
+            }
+        }
+        return accepted;
+    }
+
+    public Collection<CommandExecutor> getExecutors() {
+        return Collections.unmodifiableCollection(_executors.values());
+    }
+}
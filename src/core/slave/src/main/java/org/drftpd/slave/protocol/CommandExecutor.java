@@ -0,0 +1,190 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.protocol;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.util.VirtualThreads;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the commands of one class, see {@link CommandDispatcher}.<br>
+ * The number of commands accepted at once is bounded, once reached {@link #execute(String, Runnable)}
+ * refuses the command, the thread reading from the master must never wait for one to finish.
+ */
+public class CommandExecutor {
+    private static final Logger logger = LogManager.getLogger(CommandExecutor.class);
+
+    private final String _name;
+    private final ExecutorService _executor;
+    private final Semaphore _slots;
+    private final AtomicInteger _waiting = new AtomicInteger();
+    private final AtomicInteger _running = new AtomicInteger();
+    private final LongAdder _completed = new LongAdder();
+    private final LongAdder _rejected = new LongAdder();
+    private final LongAdder _waitTime = new LongAdder();
+    private final LongAdder _runTime = new LongAdder();
+    private final AtomicLong _maxWaitTime = new AtomicLong();
+    private final AtomicLong _maxRunTime = new AtomicLong();
+
+    /**
+     * @param threads        threads running the commands.
+     * @param queueSize      commands allowed to wait for a thread.
+     * @param virtualThreads start a virtual thread per command instead, up to threads + queueSize at once.
+     */
+    public CommandExecutor(String name, int threads, int queueSize, boolean virtualThreads) {
+        _name = name;
+        _slots = new Semaphore(threads + queueSize);
+        if (virtualThreads) {
+            _executor = VirtualThreads.newThreadPerTaskExecutor("AsyncCommandHandler - " + name + " - ");
+        } else {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new CommandThreadFactory(name));
+            executor.allowCoreThreadTimeOut(true);
+            _executor = executor;
+        }
+    }
+
+    /**
+     * Runs a command, unless too many of them are already waiting or running.
+     *
+     * @param command name of the command, used to name the thread while it runs.
+     * @return false if the command was refused.
+     */
+    public boolean execute(String command, Runnable task) {
+        if (!_slots.tryAcquire()) {
+            _rejected.increment();
+            logger.warn("Too many {} commands, refusing {}", _name, command);
+            return false;
+        }
+        long submitted = System.nanoTime();
+        _waiting.incrementAndGet();
+        try {
+            _executor.execute(() -> run(command, task, submitted));
+        } catch (RejectedExecutionException e) {
+            _waiting.decrementAndGet();
+            _slots.release();
+            throw e;
+        }
+        return true;
+    }
+
+    private void run(String command, Runnable task, long submitted) {
+        long started = System.nanoTime();
+        _waiting.decrementAndGet();
+        _running.incrementAndGet();
+        record(_waitTime, _maxWaitTime, started - submitted);
+
+        // handlers may change these, the next command must not inherit them
+        Thread thread = Thread.currentThread();
+        String name = thread.getName();
+        int priority = thread.getPriority();
+        thread.setName("AsyncCommandHandler - " + command);
+        try {
+            task.run();
+        } finally {
+            thread.setName(name);
+            thread.setPriority(priority);
+            _running.decrementAndGet();
+            _completed.increment();
+            record(_runTime, _maxRunTime, System.nanoTime() - started);
+            _slots.release();
+        }
+    }
+
+    private static void record(LongAdder total, AtomicLong max, long nanos) {
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * @return commands accepted and waiting for a thread.
+     */
+    public int getWaiting() {
+        return _waiting.get();
+    }
+
+    public int getRunning() {
+        return _running.get();
+    }
+
+    public long getCompleted() {
+        return _completed.sum();
+    }
+
+    /**
+     * @return commands refused as too many of them were already waiting or running.
+     */
+    public long getRejected() {
+        return _rejected.sum();
+    }
+
+    /**
+     * @return the average time commands waited for a thread, in milliseconds.
+     */
+    public long getAverageWaitTime() {
+        long completed = getCompleted();
+        return completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(_waitTime.sum() / completed);
+    }
+
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(_maxWaitTime.get());
+    }
+
+    /**
+     * @return the average time commands took to run, in milliseconds.
+     */
+    public long getAverageRunTime() {
+        long completed = getCompleted();
+        return completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(_runTime.sum() / completed);
+    }
+
+    public long getMaxRunTime() {
+        return TimeUnit.NANOSECONDS.toMillis(_maxRunTime.get());
+    }
+
+    public String toString() {
+        return "CommandExecutor[name=" + _name + ",waiting=" + getWaiting() + ",running=" + getRunning()
+                + ",completed=" + getCompleted() + ",rejected=" + getRejected()
+                + ",wait=" + getAverageWaitTime() + "ms/" + getMaxWaitTime() + "ms"
+                + ",run=" + getAverageRunTime() + "ms/" + getMaxRunTime() + "ms]";
+    }
+
+    private static class CommandThreadFactory implements ThreadFactory {
+        private final String _name;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        private CommandThreadFactory(String name) {
+            _name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("AsyncCommandHandler - " + _name + " - " + _count.incrementAndGet());
+            return t;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.protocol;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.drftpd.common.io.PhysicalFile;
+import org.drftpd.common.slave.LightRemoteInode;
+import org.drftpd.slave.network.AsyncResponseRemergeDigest;
+import org.drftpd.slave.vfs.RootCollection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Digests of the directories of the slave, used by the master to only remerge the directories
+ * which changed since the last time.<br>
+ * The content digest of a directory covers the name, size and modification time of its files
+ * and the name of its sub directories. Its tree digest covers its content digest and the tree
+ * digests of its sub directories, two directories with the same tree digest hold the same tree.<br>
+ * Every directory is walked when the master asks for the root, the digests are then kept until
+ * the master is done.
+ */
+public class RemergeDigests {
+    private static final Logger logger = LogManager.getLogger(RemergeDigests.class);
+
+    private final Map<String, Directory> _directories = new ConcurrentHashMap<>();
+
+    /**
+     * @param knownContent content digest of path the master knows about, the entries of path are
+     *                     only part of the answer if it differs.
+     */
+    public AsyncResponseRemergeDigest get(String index, RootCollection roots, String path, long knownContent,
+                                          int threads, boolean concurrent) {
+        if (path.equals("/")) {
+            // a new remerge
+            _directories.clear();
+        }
+        Directory dir = _directories.get(path);
+        if (dir == null) {
+            long start = System.currentTimeMillis();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new DigestTask(roots, path, concurrent));
+            } finally {
+                pool.shutdown();
+            }
+            dir = _directories.get(path);
+            logger.info("Computed digests of {} directories below {} in {}ms", _directories.size(), path,
+                    System.currentTimeMillis() - start);
+        }
+        List<LightRemoteInode> inodes = null;
+        if (dir._content != knownContent) {
+            inodes = list(roots, path, concurrent);
+        }
+        return new AsyncResponseRemergeDigest(index, path, dir._content, dir._tree, roots.getLastModifiedForPath(path),
+                dir._names, dir._trees, inodes);
+    }
+
+    public void clear() {
+        _directories.clear();
+    }
+
+    /**
+     * Lists a directory the way the remerge does, symbolic links are left out.
+     */
+    static List<LightRemoteInode> list(RootCollection roots, String path, boolean concurrent) {
+        List<LightRemoteInode> inodes = new ArrayList<>();
+        for (String name : roots.getLocalInodes(path, concurrent)) {
+            String fullPath = path.endsWith("/") ? path + name : path + "/" + name;
+            try {
+                PhysicalFile file = roots.getFile(fullPath);
+                if (file.isSymbolicLink()) {
+                    continue;
+                }
+                inodes.add(new LightRemoteInode(file));
+            } catch (IOException e) {
+                logger.debug("Unable to read {}, leaving it out", fullPath, e);
+            }
+        }
+        return inodes;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String name) {
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, long value) {
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+    }
+
+    /**
+     * @return the first 8 bytes of the digest, never 0 which stands for an unknown digest.
+     */
+    private static long toLong(MessageDigest digest) {
+        long value = ByteBuffer.wrap(digest.digest()).getLong();
+        return value == 0 ? 1 : value;
+    }
+
+    private static class Directory {
+        private final long _content;
+        private final long _tree;
+        private final String[] _names;
+        private final long[] _trees;
+
+        private Directory(long content, long tree, String[] names, long[] trees) {
+            _content = content;
+            _tree = tree;
+            _names = names;
+            _trees = trees;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class DigestTask extends RecursiveTask<Long> {
+        private final RootCollection _roots;
+        private final String _path;
+        private final boolean _concurrent;
+
+        private DigestTask(RootCollection roots, String path, boolean concurrent) {
+            _roots = roots;
+            _path = path;
+            _concurrent = concurrent;
+        }
+
+        @Override
+        protected Long compute() {
+            MessageDigest content = newDigest();
+            List<String> names = new ArrayList<>();
+            List<DigestTask> tasks = new ArrayList<>();
+            for (LightRemoteInode inode : list(_roots, _path, _concurrent)) {
+                update(content, inode.getName());
+                if (inode.isDirectory()) {
+                    // the modification time of a directory changes along with its entries, already covered
+                    content.update((byte) 'd');
+                    names.add(inode.getName());
+                    String path = _path.endsWith("/") ? _path + inode.getName() : _path + "/" + inode.getName();
+                    DigestTask task = new DigestTask(_roots, path, _concurrent);
+                    task.fork();
+                    tasks.add(task);
+                } else {
+                    content.update((byte) 'f');
+                    update(content, inode.length());
+                    update(content, inode.lastModified());
+                }
+            }
+            long contentDigest = toLong(content);
+
+            MessageDigest tree = newDigest();
+            update(tree, contentDigest);
+            long[] trees = new long[tasks.size()];
+            for (int i = 0; i < trees.length; i++) {
+                trees[i] = tasks.get(i).join();
+                update(tree, names.get(i));
+                update(tree, trees[i]);
+            }
+            long treeDigest = toLong(tree);
+            _directories.put(_path, new Directory(contentDigest, treeDigest, names.toArray(new String[0]), trees));
+            return treeDigest;
+        }
+    }
+}
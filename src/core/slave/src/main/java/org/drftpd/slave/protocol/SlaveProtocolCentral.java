@@ -22,9 +22,11 @@ import org.apache.logging.log4j.Logger;
 import org.drftpd.common.exceptions.AsyncResponseException;
 import org.drftpd.common.network.AsyncCommandArgument;
 import org.drftpd.common.network.AsyncResponse;
+import org.drftpd.common.network.WireCodecs;
 import org.drftpd.common.protocol.HandshakeWrapper;
 import org.drftpd.common.protocol.ProtocolException;
 import org.drftpd.slave.Slave;
+import org.drftpd.slave.network.SlaveWireCodecs;
 import org.reflections.Reflections;
 
 import java.io.IOException;
@@ -74,7 +76,8 @@ public class SlaveProtocolCentral {
     /**
      * Whenever the Slave connects to the master, it receives a List containing all ProtocolExtensions loaded by master.<br>
      * Slave will iterate through this List, checking if the requested extension is also loaded by the slave.<br>
-     * After the checking is done, Slave writes a {@link HandlerWrapper} to the socket and let master handles the rest.
+     * After the checking is done, Slave writes a {@link HandlerWrapper} to the socket and let master handles the rest.<br>
+     * On success the master then tells which wire format is used for the rest of the connection.
      *
      * @see HandshakeWrapper
      */
@@ -94,6 +97,11 @@ public class SlaveProtocolCentral {
 
             List<String> protocols = (List<String>) o;
             for (String protocol : protocols) {
+                if (protocol.equals(WireCodecs.WIRE_FORMAT_ANNOUNCE)) {
+                    // master will answer with the wire format to use once the handshake is done
+                    hw.setWireFormat(WireCodecs.BINARY);
+                    continue;
+                }
                 logger.debug("Checking availability for: {}", protocol);
 
                 if (!_protocols.contains(protocol)) {
@@ -113,7 +121,18 @@ public class SlaveProtocolCentral {
 
         try {
             getSlaveObject().getOutputStream().writeObject(hw);
-        } catch (IOException e) {
+            getSlaveObject().getOutputStream().flush();
+
+            if (hw.pluginStatus() && hw.getWireFormat() != null) {
+                // master answers with the wire format to use from now on
+                Object wireFormat = getSlaveObject().getInputStream().readObject();
+                logger.info("Using {} wire format", wireFormat);
+                if (WireCodecs.BINARY.equals(wireFormat)) {
+                    SlaveWireCodecs.register();
+                    getSlaveObject().setBinaryWireFormat();
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
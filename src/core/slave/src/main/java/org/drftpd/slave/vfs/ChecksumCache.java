@@ -0,0 +1,307 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Checksums of the files of the slave, so a file is only read again once its size or
+ * modification time changed.<br>
+ * Entries are keyed by the physical path of the file and kept in memory, sorted so the entries below
+ * a directory are found without looking at the others. Every change is appended to a log on disk,
+ * under the same lock as the change itself, which is read back on start. The log is rewritten once
+ * most of its records are obsolete.
+ */
+public class ChecksumCache {
+    private static final Logger logger = LogManager.getLogger(ChecksumCache.class);
+
+    private static final int MAGIC = 0x44435243;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int COMPACT_THRESHOLD = 10000;
+    private static final int BUFFER_SIZE = 65536;
+
+    private final ConcurrentSkipListMap<String, Entry> _entries = new ConcurrentSkipListMap<>();
+    private final File _file;
+    private DataOutputStream _log;
+    private int _records;
+
+    public ChecksumCache(File file) throws IOException {
+        _file = file;
+        load();
+        compact();
+    }
+
+    private void load() throws IOException {
+        if (!_file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                logger.warn("{} is not a checksum cache, starting with an empty one", _file);
+                return;
+            }
+            while (true) {
+                byte op = in.readByte();
+                String path = in.readUTF();
+                if (op == PUT) {
+                    _entries.put(path, new Entry(in.readLong(), in.readLong(), in.readInt()));
+                } else if (op == REMOVE) {
+                    _entries.remove(path);
+                } else {
+                    logger.warn("Unknown record {} in {}, ignoring the rest of it", op, _file);
+                    break;
+                }
+                _records++;
+            }
+        } catch (EOFException e) {
+            // end of the log, or a record cut short by a crash which the compaction drops
+        }
+        logger.info("Loaded {} checksums from {}", _entries.size(), _file);
+    }
+
+    /**
+     * Rewrites the log with only the current entries.
+     */
+    public synchronized void compact() throws IOException {
+        closeLog();
+        File tmp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+                writePut(out, entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(tmp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _records = _entries.size();
+        _log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file, true), BUFFER_SIZE));
+    }
+
+    /**
+     * @return the cached checksum of file, null if it is unknown or the file changed since.
+     */
+    public Long get(File file) {
+        Entry entry = _entries.get(file.getPath());
+        if (entry != null && entry._size == file.length() && entry._lastModified == file.lastModified()) {
+            return entry._checksum & 0xffffffffL;
+        }
+        return null;
+    }
+
+    /**
+     * Stores the checksum of file as of its current size and modification time.
+     */
+    public void put(File file, long checksum) {
+        put(file, file.length(), file.lastModified(), checksum);
+    }
+
+    /**
+     * Stores the checksum of file as of the given size and modification time, which must be read
+     * before reading the file so a change made meanwhile invalidates the entry.
+     */
+    public synchronized void put(File file, long size, long lastModified, long checksum) {
+        String path = file.getPath();
+        Entry entry = new Entry(size, lastModified, (int) checksum);
+        _entries.put(path, entry);
+        if (_log == null) {
+            return;
+        }
+        try {
+            writePut(_log, path, entry);
+            _records++;
+            flush();
+        } catch (IOException e) {
+            logger.error("Unable to write checksum of {} to {}", path, _file, e);
+        }
+    }
+
+    /**
+     * Drops file along with everything below it.
+     */
+    public synchronized void remove(File file) {
+        List<String> removed = new ArrayList<>();
+        if (_entries.remove(file.getPath()) != null) {
+            removed.add(file.getPath());
+        }
+        NavigableMap<String, Entry> below = below(file.getPath());
+        removed.addAll(below.keySet());
+        below.clear();
+        if (removed.isEmpty() || _log == null) {
+            return;
+        }
+        try {
+            for (String path : removed) {
+                writeRemove(path);
+            }
+            flush();
+        } catch (IOException e) {
+            logger.error("Unable to write removal of {} to {}", file, _file, e);
+        }
+    }
+
+    /**
+     * Moves the entries of from and everything below it to to.
+     */
+    public synchronized void rename(File from, File to) {
+        String fromPath = from.getPath();
+        String toPath = to.getPath();
+        List<Map.Entry<String, Entry>> moved = new ArrayList<>();
+        Entry entry = _entries.remove(fromPath);
+        if (entry != null) {
+            moved.add(Map.entry(fromPath, entry));
+        }
+        NavigableMap<String, Entry> below = below(fromPath);
+        // entries of a skip list are snapshots, they outlive the clear
+        moved.addAll(below.entrySet());
+        below.clear();
+        if (moved.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e : moved) {
+            _entries.put(toPath + e.getKey().substring(fromPath.length()), e.getValue());
+        }
+        if (_log == null) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Entry> e : moved) {
+                writeRemove(e.getKey());
+            }
+            for (Map.Entry<String, Entry> e : moved) {
+                writePut(_log, toPath + e.getKey().substring(fromPath.length()), e.getValue());
+                _records++;
+            }
+            flush();
+        } catch (IOException e) {
+            logger.error("Unable to write rename of {} to {}", from, _file, e);
+        }
+    }
+
+    /**
+     * Drops the entries of files which no longer exist.
+     */
+    public void purge() {
+        for (String path : _entries.keySet()) {
+            if (!new File(path).isFile()) {
+                remove(new File(path));
+            }
+        }
+    }
+
+    /**
+     * @return a view of the entries strictly below the directory path.
+     */
+    private NavigableMap<String, Entry> below(String path) {
+        return _entries.subMap(path + File.separatorChar, true,
+                path + (char) (File.separatorChar + 1), false);
+    }
+
+    private void writeRemove(String path) throws IOException {
+        _log.writeByte(REMOVE);
+        _log.writeUTF(path);
+        _records++;
+    }
+
+    private static void writePut(DataOutputStream out, String path, Entry entry) throws IOException {
+        out.writeByte(PUT);
+        out.writeUTF(path);
+        out.writeLong(entry._size);
+        out.writeLong(entry._lastModified);
+        out.writeInt(entry._checksum);
+    }
+
+    private void flush() throws IOException {
+        _log.flush();
+        if (_records > COMPACT_THRESHOLD && _records > 2 * _entries.size()) {
+            compact();
+        }
+    }
+
+    private void closeLog() {
+        if (_log != null) {
+            try {
+                _log.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close {}", _file, e);
+            }
+            _log = null;
+        }
+    }
+
+    public synchronized void close() {
+        closeLog();
+    }
+
+    public int getSize() {
+        return _entries.size();
+    }
+
+    /**
+     * Reads file to compute its checksum.
+     *
+     * @param bytesPerSecond read rate not to go above, 0 for no limit.
+     */
+    public static long computeChecksum(File file, long bytesPerSecond) throws IOException {
+        CRC32 crc32 = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            long start = System.currentTimeMillis();
+            long total = 0;
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                crc32.update(buf, 0, read);
+                total += read;
+                if (bytesPerSecond > 0) {
+                    long wait = total * 1000 / bytesPerSecond - (System.currentTimeMillis() - start);
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Checksum of " + file + " interrupted");
+                        }
+                    }
+                }
+            }
+        }
+        return crc32.getValue();
+    }
+
+    private static class Entry {
+        private final long _size;
+        private final long _lastModified;
+        private final int _checksum;
+
+        private Entry(long size, long lastModified, int checksum) {
+            _size = size;
+            _lastModified = lastModified;
+            _checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walks the roots in the background and computes the checksums missing from a {@link ChecksumCache},
+ * reading files no faster than the given rate so transfers keep most of the disks.<br>
+ * Once every root has been walked, entries of files which are gone are dropped and the next walk
+ * starts a day later.
+ */
+public class ChecksumScrubber implements Runnable {
+    private static final Logger logger = LogManager.getLogger(ChecksumScrubber.class);
+
+    private static final long START_DELAY = TimeUnit.MINUTES.toMillis(10);
+    private static final long INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private final RootCollection _roots;
+    private final ChecksumCache _cache;
+    private final long _bytesPerSecond;
+
+    public ChecksumScrubber(RootCollection roots, ChecksumCache cache, long bytesPerSecond) {
+        _roots = roots;
+        _cache = cache;
+        _bytesPerSecond = bytesPerSecond;
+    }
+
+    public void run() {
+        try {
+            // leave the disks to the remerge done right after connecting
+            Thread.sleep(START_DELAY);
+            while (true) {
+                scrub();
+                Thread.sleep(INTERVAL);
+            }
+        } catch (InterruptedException | InterruptedIOException e) {
+            logger.debug("Checksum scrubber stopped");
+        }
+    }
+
+    private void scrub() throws InterruptedIOException {
+        long start = System.currentTimeMillis();
+        long[] computed = new long[2];
+        for (Root root : _roots.getRootList()) {
+            try {
+                Files.walkFileTree(root.getFile().toPath(), new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                        if (!attrs.isRegularFile()) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        File file = path.toFile();
+                        if (_cache.get(file) == null) {
+                            long size = file.length();
+                            long lastModified = file.lastModified();
+                            try {
+                                long checksum = ChecksumCache.computeChecksum(file, _bytesPerSecond);
+                                _cache.put(file, size, lastModified, checksum);
+                                computed[0]++;
+                                computed[1] += size;
+                            } catch (InterruptedIOException e) {
+                                throw e;
+                            } catch (IOException e) {
+                                logger.debug("Unable to checksum {}", file, e);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path path, IOException e) {
+                        logger.debug("Unable to read {}", path, e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                logger.warn("Unable to walk {}", root, e);
+            }
+        }
+        _cache.purge();
+        logger.info("Checksum scrub done in {}ms, computed {} checksums reading {} bytes, {} checksums cached",
+                System.currentTimeMillis() - start, computed[0], computed[1], _cache.getSize());
+    }
+}
@@ -38,12 +38,28 @@ public class RootCollection {
     private ArrayList<Root> _roots;
     private Slave _slave;
     private ThreadPoolExecutor _pool;
+    private RootIndex _index;
 
     public RootCollection(Slave slave, Collection<Root> roots) throws IOException {
         /** sanity checks * */
         validateRoots(roots);
         _roots = new ArrayList<>(roots);
         _slave = slave;
+        if (_slave.getConfig().getProperty("root.index", "true").equalsIgnoreCase("true")) {
+            if (_roots.size() > RootIndex.MAX_ROOTS) {
+                logger.warn("Root index disabled, it supports up to {} roots", RootIndex.MAX_ROOTS);
+            } else {
+                int maxDirectories = RootIndex.DEFAULT_MAX_DIRECTORIES;
+                try {
+                    maxDirectories = Integer.parseInt(_slave.getConfig().getProperty("root.index.max.directories",
+                            String.valueOf(RootIndex.DEFAULT_MAX_DIRECTORIES)));
+                } catch (NumberFormatException e) {
+                    logger.warn("Unable to read root.index.max.directories from config, falling back to {}",
+                            RootIndex.DEFAULT_MAX_DIRECTORIES);
+                }
+                _index = new RootIndex(maxDirectories);
+            }
+        }
         int numThreads = _roots.size() * _slave.rootCollectionThreads();
         logger.debug("Initializing the pool with {} threads", numThreads);
         _pool = new ThreadPoolExecutor(1, numThreads, 300, TimeUnit.SECONDS,
@@ -138,9 +154,25 @@ public class RootCollection {
      */
     public TreeSet<String> getLocalInodes(String path, boolean concurrent) {
         TreeSet<String> files = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        String[][] rootFiles = listRoots(path, concurrent);
+        for (String[] rootFile : rootFiles) {
+            if (rootFile != null) {
+                files.addAll(Arrays.asList(rootFile));
+            }
+        }
+        if (_index != null) {
+            _index.setListing(path, rootFiles);
+        }
+        return files;
+    }
+
+    /**
+     * @return the names found in path on each root, null where the root does not have it.
+     */
+    private String[][] listRoots(String path, boolean concurrent) {
+        String[][] rootFiles = new String[_roots.size()][];
         if (concurrent) {
             CountDownLatch latch = new CountDownLatch(_roots.size());
-            String[][] rootFiles = new String[_roots.size()][];
             for (int i = 0; i < _roots.size(); i++) {
                 _pool.execute(new RootListHandler(rootFiles, i, latch, path));
             }
@@ -152,21 +184,13 @@ public class RootCollection {
                     // Loop around and wait again
                 }
             }
-            for (int i = 0; i < _roots.size(); i++) {
-                if (rootFiles[i] != null) {
-                    files.addAll(Arrays.asList(rootFiles[i]));
-                }
-            }
         } else {
             for (int i = 0; i < _roots.size(); i++) {
                 File rootPath = _roots.get(i).getFile(path);
-                String[] rootFiles = rootPath.list();
-                if (rootFiles != null) {
-                    files.addAll(Arrays.asList(rootFiles));
-                }
+                rootFiles[i] = rootPath.list();
             }
         }
-        return files;
+        return rootFiles;
     }
 
     public long getLastModifiedForPath(String path) {
@@ -219,6 +243,9 @@ public class RootCollection {
 
         PhysicalFile file = bestRoot.getFile(dir);
         file.mkdirs2();
+        if (_index != null) {
+            _index.add(dir, _roots.indexOf(bestRoot));
+        }
 
         return file;
     }
@@ -241,16 +268,20 @@ public class RootCollection {
             throws FileNotFoundException {
         ArrayList<Root> roots = new ArrayList<>();
 
-
-        for (Root r : _roots) {
-            if (r.getFile(path).exists()) {
-                roots.add(r);
+        long indexed = getIndexedRoots(path);
+        for (int i = 0; i < _roots.size(); i++) {
+            if ((indexed & (1L << i)) != 0 && _roots.get(i).getFile(path).exists()) {
+                roots.add(_roots.get(i));
             }
         }
-        for (Root root : _roots) {
 
-            if (root.getFile(path).exists()) {
-                roots.add(root);
+        if (roots.size() == 0) {
+            // not indexed or changed outside of the slave, look everywhere
+            for (int i = 0; i < _roots.size(); i++) {
+                if (_roots.get(i).getFile(path).exists()) {
+                    roots.add(_roots.get(i));
+                    addToIndex(path, i);
+                }
             }
         }
 
@@ -263,15 +294,82 @@ public class RootCollection {
     }
 
     public Root getRootForFile(String path) throws FileNotFoundException {
-        for (Root root : _roots) {
+        long indexed = getIndexedRoots(path);
+        for (int i = 0; i < _roots.size(); i++) {
+            if ((indexed & (1L << i)) != 0 && _roots.get(i).getFile(path).exists()) {
+                return _roots.get(i);
+            }
+        }
+        // not indexed or changed outside of the slave, look everywhere
+        for (int i = 0; i < _roots.size(); i++) {
+            Root root = _roots.get(i);
             File file = new File(root.getPath() + PhysicalFile.separatorChar + path);
             if (file.exists()) {
+                addToIndex(path, i);
                 return root;
             }
         }
         throw new FileNotFoundException(path + " wasn't found in any root");
     }
 
+    /**
+     * @return the roots holding path according to the index, listing its directory first if needed.
+     */
+    private long getIndexedRoots(String path) {
+        if (_index == null || RootIndex.normalize(path).equals("/")) {
+            return 0;
+        }
+        long roots = _index.get(path);
+        if (roots == -1) {
+            String dir = RootIndex.getParent(RootIndex.normalize(path));
+            _index.setListing(dir, listRoots(dir, false));
+            roots = Math.max(0, _index.get(path));
+        }
+        return roots;
+    }
+
+    private void addToIndex(String path, int root) {
+        if (_index != null) {
+            _index.add(path, root);
+        }
+    }
+
+    /**
+     * Records a file created on one of the roots.
+     *
+     * @param path path of the file, relative to the root.
+     * @param file the created file.
+     */
+    public void addFile(String path, File file) {
+        for (int i = 0; i < _roots.size(); i++) {
+            if (file.getPath().startsWith(_roots.get(i).getPath() + File.separatorChar)) {
+                addToIndex(path, i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records that root no longer holds path, nor anything below it.
+     */
+    public void removeFile(String path, Root root) {
+        if (_index != null) {
+            _index.remove(path, _roots.indexOf(root));
+        }
+    }
+
+    /**
+     * Records path being moved to another path on root.
+     */
+    public void renameFile(String from, String to, Root root) {
+        if (_index != null) {
+            int index = _roots.indexOf(root);
+            _index.remove(from, index);
+            _index.invalidate(to);
+            _index.add(to, index);
+        }
+    }
+
     public long getTotalDiskSpaceAvailable() {
         long totalDiskSpaceAvailable = 0;
 
@@ -0,0 +1,241 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers which roots hold the entries of each directory, so finding a file does not need
+ * to look for it on every root.<br>
+ * A directory is indexed once it has been listed on every root, by the remerge or by the first
+ * lookup below it, and is kept current by the uploads, deletes and renames of the slave. Changes
+ * made to the roots outside of the slave are not seen, callers must check the roots they are
+ * given and fall back to looking at every root when the index does not know about a path.<br>
+ * Roots are identified by their position in the collection, one bit each. Directories are sorted by
+ * path so the ones below a directory are found without looking at the others.<br>
+ * Every entry of an indexed directory is kept in memory, only the most recently used directories
+ * are kept, the others are listed again when needed.
+ */
+public class RootIndex {
+    public static final int MAX_ROOTS = Long.SIZE;
+
+    public static final int DEFAULT_MAX_DIRECTORIES = 10000;
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final long[] NO_ROOTS = new long[0];
+
+    private final TreeMap<String, Directory> _directories = new TreeMap<>();
+
+    // the same directories, least recently used first
+    private final LinkedHashMap<String, Directory> _recent = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int _maxDirectories;
+
+    /**
+     * @param maxDirectories the number of directories to keep indexed.
+     */
+    public RootIndex(int maxDirectories) {
+        _maxDirectories = Math.max(1, maxDirectories);
+    }
+
+    /**
+     * @return the roots holding path, 0 if none of them does, -1 if the directory of path is not indexed.
+     */
+    public synchronized long get(String path) {
+        path = normalize(path);
+        if (path.equals("/")) {
+            return -1;
+        }
+        Directory dir = _recent.get(getParent(path));
+        if (dir == null) {
+            return -1;
+        }
+        return dir.get(getName(path));
+    }
+
+    /**
+     * Indexes a directory from what each root holds in it.
+     *
+     * @param listings names found in the directory on each root, null where the root does not have it.
+     */
+    public synchronized void setListing(String path, String[][] listings) {
+        Map<String, Long> roots = new TreeMap<>();
+        for (int i = 0; i < listings.length; i++) {
+            if (listings[i] == null) {
+                continue;
+            }
+            for (String name : listings[i]) {
+                roots.merge(name, 1L << i, (a, b) -> a | b);
+            }
+        }
+        String[] names = new String[roots.size()];
+        long[] masks = new long[roots.size()];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : roots.entrySet()) {
+            names[i] = entry.getKey();
+            masks[i] = entry.getValue();
+            i++;
+        }
+        path = normalize(path);
+        Directory dir = new Directory(names, masks);
+        _directories.put(path, dir);
+        _recent.put(path, dir);
+        trim();
+    }
+
+    /**
+     * @return the number of directories indexed.
+     */
+    public synchronized int size() {
+        return _recent.size();
+    }
+
+    /**
+     * Records that root now holds path and the directories above it.
+     */
+    public synchronized void add(String path, int root) {
+        path = normalize(path);
+        while (!path.equals("/")) {
+            Directory dir = _recent.get(getParent(path));
+            if (dir != null) {
+                dir.add(getName(path), 1L << root);
+            }
+            path = getParent(path);
+        }
+    }
+
+    /**
+     * Records that root no longer holds path, nor anything below it.
+     */
+    public synchronized void remove(String path, int root) {
+        path = normalize(path);
+        if (path.equals("/")) {
+            return;
+        }
+        Directory dir = _recent.get(getParent(path));
+        if (dir != null) {
+            dir.remove(getName(path), 1L << root);
+        }
+        invalidate(path);
+    }
+
+    /**
+     * Forgets path and every directory below it, they will be listed again when needed.
+     */
+    public synchronized void invalidate(String path) {
+        path = normalize(path);
+        if (path.equals("/")) {
+            _directories.clear();
+            _recent.clear();
+            return;
+        }
+        _directories.remove(path);
+        _recent.remove(path);
+        // every path starting with path + '/', '0' being the character after '/'
+        Map<String, Directory> below = _directories.subMap(path + "/", path + "0");
+        _recent.keySet().removeAll(below.keySet());
+        below.clear();
+    }
+
+    private void trim() {
+        Iterator<String> iter = _recent.keySet().iterator();
+        while (_recent.size() > _maxDirectories) {
+            _directories.remove(iter.next());
+            iter.remove();
+        }
+    }
+
+    static String normalize(String path) {
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+        while (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    static String getParent(String path) {
+        int index = path.lastIndexOf('/');
+        return index == 0 ? "/" : path.substring(0, index);
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Sorted names of the entries of a directory along with the roots holding each one.
+     */
+    private static class Directory {
+        private String[] _names;
+        private long[] _roots;
+
+        private Directory(String[] names, long[] roots) {
+            _names = names.length == 0 ? NO_NAMES : names;
+            _roots = roots.length == 0 ? NO_ROOTS : roots;
+        }
+
+        private long get(String name) {
+            int index = Arrays.binarySearch(_names, name);
+            return index < 0 ? 0 : _roots[index];
+        }
+
+        private void add(String name, long root) {
+            int index = Arrays.binarySearch(_names, name);
+            if (index >= 0) {
+                _roots[index] |= root;
+                return;
+            }
+            index = -index - 1;
+            String[] names = new String[_names.length + 1];
+            long[] roots = new long[_roots.length + 1];
+            System.arraycopy(_names, 0, names, 0, index);
+            System.arraycopy(_roots, 0, roots, 0, index);
+            names[index] = name;
+            roots[index] = root;
+            System.arraycopy(_names, index, names, index + 1, _names.length - index);
+            System.arraycopy(_roots, index, roots, index + 1, _roots.length - index);
+            _names = names;
+            _roots = roots;
+        }
+
+        private void remove(String name, long root) {
+            int index = Arrays.binarySearch(_names, name);
+            if (index < 0) {
+                return;
+            }
+            _roots[index] &= ~root;
+            if (_roots[index] != 0) {
+                return;
+            }
+            String[] names = new String[_names.length - 1];
+            long[] roots = new long[_roots.length - 1];
+            System.arraycopy(_names, 0, names, 0, index);
+            System.arraycopy(_roots, 0, roots, 0, index);
+            System.arraycopy(_names, index + 1, names, index, names.length - index);
+            System.arraycopy(_roots, index + 1, roots, index, roots.length - index);
+            _names = names;
+            _roots = roots;
+        }
+    }
+}
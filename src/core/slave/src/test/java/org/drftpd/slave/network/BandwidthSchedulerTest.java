@@ -0,0 +1,153 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.slave.BandwidthLimit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BandwidthSchedulerTest {
+
+    private static final char UP = Transfer.TRANSFER_RECEIVING_UPLOAD;
+
+    private static final char DOWN = Transfer.TRANSFER_SENDING_DOWNLOAD;
+
+    // 1MB/s fills up to 100KB, 1 byte every microsecond
+    private static final long RATE = 1000000L;
+
+    private static final long MS = 1000000L;
+
+    private static void assertWait(long expectedNanos, long wait) {
+        // the tokens are doubles, allow a nanosecond per byte of rounding
+        assertEquals(expectedNanos, wait, 1000);
+    }
+
+    @Test
+    public void testBurstThenWait() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        BandwidthScheduler.Chain chain = scheduler.getChain(UP, RATE, null, null, null);
+        long now = System.nanoTime();
+
+        assertWait(0, chain.consume(100000, now));
+        assertWait(50 * MS, chain.consume(50000, now));
+        assertEquals(RATE, chain.getLowestRate());
+    }
+
+    @Test
+    public void testRefill() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        BandwidthScheduler.Chain chain = scheduler.getChain(UP, RATE, null, null, null);
+        long now = System.nanoTime();
+
+        assertWait(0, chain.consume(100000, now));
+        // 10ms later there are 10KB again
+        assertWait(0, chain.consume(10000, now + 10 * MS));
+        assertWait(5 * MS, chain.consume(5000, now + 10 * MS));
+
+        // an idle bucket fills up to its burst only
+        assertWait(0, chain.consume(100000, now + 10000 * MS));
+        assertWait(50 * MS, chain.consume(50000, now + 10000 * MS));
+    }
+
+    @Test
+    public void testDebtCarried() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        BandwidthScheduler.Chain chain = scheduler.getChain(UP, RATE, null, null, null);
+        long now = System.nanoTime();
+
+        // a chunk bigger than the burst leaves a debt
+        assertWait(200 * MS, chain.consume(300000, now));
+        // paid back over time, the next chunk waits for the rest of it
+        assertWait(100 * MS, chain.consume(0, now + 100 * MS));
+        assertWait(110 * MS, chain.consume(10000, now + 100 * MS));
+        assertWait(0, chain.consume(0, now + 210 * MS));
+    }
+
+    @Test
+    public void testSharedSlaveBucket() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimits(List.of(new BandwidthLimit(BandwidthLimit.SLAVE, BandwidthLimit.ALL, RATE, 0)));
+        BandwidthScheduler.Chain first = scheduler.getChain(UP, 0, "user1", "group1", "section1");
+        BandwidthScheduler.Chain second = scheduler.getChain(UP, 0, "user2", "group2", "section2");
+        BandwidthScheduler.Chain download = scheduler.getChain(DOWN, 0, "user1", "group1", "section1");
+        long now = System.nanoTime();
+
+        assertWait(0, first.consume(100000, now));
+        // the second upload pays for what the first took
+        assertWait(50 * MS, second.consume(50000, now));
+        assertWait(100 * MS, first.consume(50000, now));
+        // downloads are not limited
+        assertWait(0, download.consume(1000000000L, now));
+        assertEquals(0, download.getLowestRate());
+    }
+
+    @Test
+    public void testBucketsPerName() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimits(List.of(new BandwidthLimit(BandwidthLimit.USER, BandwidthLimit.ALL, RATE, RATE),
+                new BandwidthLimit(BandwidthLimit.GROUP, "group1", 0, 2 * RATE)));
+        BandwidthScheduler.Chain user1 = scheduler.getChain(DOWN, 0, "user1", "group1", null);
+        BandwidthScheduler.Chain user1Again = scheduler.getChain(DOWN, 0, "user1", "group1", null);
+        BandwidthScheduler.Chain user2 = scheduler.getChain(DOWN, 0, "user2", "group1", null);
+        long now = System.nanoTime();
+
+        // every user has a bucket of its own, shared by the transfers of that user
+        assertWait(0, user1.consume(100000, now));
+        assertWait(50 * MS, user1Again.consume(50000, now));
+        assertWait(0, user2.consume(50000, now));
+        // the group bucket holds 200KB and is shared by both users, 200KB were taken
+        assertWait(25 * MS, user2.consume(50000, now));
+        assertEquals(RATE, user2.getLowestRate());
+    }
+
+    @Test
+    public void testMostIndebtedBucket() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimits(List.of(new BandwidthLimit(BandwidthLimit.SLAVE, BandwidthLimit.ALL, RATE, RATE)));
+        BandwidthScheduler.Chain chain = scheduler.getChain(UP, 2 * RATE, null, null, null);
+        long now = System.nanoTime();
+
+        // the transfer alone could go on, the slave bucket is in debt
+        assertWait(50 * MS, chain.consume(150000, now));
+        assertEquals(RATE, chain.getLowestRate());
+    }
+
+    @Test
+    public void testReplacedLimits() {
+        BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimits(List.of(new BandwidthLimit(BandwidthLimit.SLAVE, BandwidthLimit.ALL, RATE, 0)));
+        BandwidthScheduler.Chain chain = scheduler.getChain(UP, 0, null, null, null);
+        long now = System.nanoTime();
+
+        assertWait(0, chain.consume(100000, now));
+        assertWait(100 * MS, chain.consume(100000, now));
+
+        // the running transfer follows the new limit from its next chunk, with a full bucket
+        scheduler.setLimits(List.of(new BandwidthLimit(BandwidthLimit.SLAVE, BandwidthLimit.ALL, 2 * RATE, 0)));
+        assertWait(0, chain.consume(200000, now));
+        assertWait(50 * MS, chain.consume(100000, now));
+        assertEquals(2 * RATE, chain.getLowestRate());
+
+        scheduler.setLimits(List.of());
+        assertWait(0, chain.consume(1000000000L, now));
+        assertEquals(0, chain.getLowestRate());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.network;
+
+import org.drftpd.common.exceptions.TransferFailedException;
+import org.drftpd.common.slave.TransferIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferTest {
+
+    // a few chunks of the largest size and a partial one
+    private static final byte[] DATA = new byte[3 * 1048576 + 12345];
+
+    static {
+        new Random(42).nextBytes(DATA);
+    }
+
+    @TempDir
+    File tempDir;
+
+    private SocketChannel _transferSide;
+
+    private SocketChannel _remoteSide;
+
+    private final ExecutorService _remote = Executors.newSingleThreadExecutor();
+
+    @BeforeEach
+    void connect() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            _remoteSide = SocketChannel.open(server.getLocalAddress());
+            _transferSide = server.accept();
+        }
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        _remote.shutdownNow();
+        _transferSide.close();
+        _remoteSide.close();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static Transfer newTransfer(char direction, FileChannel file, boolean checksum) {
+        BandwidthScheduler.Chain bandwidth = new BandwidthScheduler().getChain(direction, 0, null, null, null);
+        return new Transfer(new TransferIndex(), direction, file, checksum, bandwidth) {
+            @Override
+            int getBufferSize() {
+                return 0;
+            }
+
+            @Override
+            void sendTransferStatus() {
+            }
+        };
+    }
+
+    private Future<?> sendFromRemote() {
+        return _remote.submit(() -> {
+            ByteBuffer buffer = ByteBuffer.wrap(DATA);
+            while (buffer.hasRemaining()) {
+                _remoteSide.write(buffer);
+            }
+            _remoteSide.shutdownOutput();
+            return null;
+        });
+    }
+
+    private Future<byte[]> receiveOnRemote() {
+        return _remote.submit(() -> {
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(65536);
+            while (_remoteSide.read(buffer) != -1) {
+                received.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            return received.toByteArray();
+        });
+    }
+
+    private void receive(boolean checksum) throws Exception {
+        File file = new File(tempDir, "received");
+        Future<?> sent = sendFromRemote();
+        Transfer transfer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            transfer = newTransfer(Transfer.TRANSFER_RECEIVING_UPLOAD, channel, checksum);
+            transfer.receiveFromChannel(_transferSide);
+        }
+        sent.get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(DATA, Files.readAllBytes(file.toPath()));
+        assertEquals(DATA.length, transfer.getTransferred());
+        assertEquals(checksum ? crc(DATA) : 0L, transfer.getChecksum());
+    }
+
+    private void send(boolean checksum) throws Exception {
+        File file = new File(tempDir, "sent");
+        Files.write(file.toPath(), DATA);
+        Future<byte[]> received = receiveOnRemote();
+        Transfer transfer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            transfer = newTransfer(Transfer.TRANSFER_SENDING_DOWNLOAD, channel, checksum);
+            transfer.sendToChannel(_transferSide, null);
+        }
+        _transferSide.shutdownOutput();
+
+        assertArrayEquals(DATA, received.get(10, TimeUnit.SECONDS));
+        assertEquals(DATA.length, transfer.getTransferred());
+        assertEquals(checksum ? crc(DATA) : 0L, transfer.getChecksum());
+    }
+
+    @Test
+    public void testReceiveWithChecksum() throws Exception {
+        receive(true);
+    }
+
+    @Test
+    public void testReceiveWithoutChecksum() throws Exception {
+        receive(false);
+    }
+
+    @Test
+    public void testSendThroughBuffer() throws Exception {
+        // a checksum is computed on the way, through a direct buffer
+        send(true);
+    }
+
+    @Test
+    public void testSendWithTransferTo() throws Exception {
+        send(false);
+    }
+
+    @Test
+    public void testAbortWhileWaiting() throws Exception {
+        File file = new File(tempDir, "aborted");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            Transfer transfer = newTransfer(Transfer.TRANSFER_RECEIVING_UPLOAD, channel, true);
+            CountDownLatch receiving = new CountDownLatch(1);
+            Future<?> receiver = _remote.submit(() -> {
+                receiving.countDown();
+                transfer.receiveFromChannel(_transferSide);
+                return null;
+            });
+            assertTrue(receiving.await(10, TimeUnit.SECONDS));
+            // nothing is sent, the loop waits on the socket until it sees the abort
+            Thread.sleep(300);
+            assertFalse(receiver.isDone());
+
+            long aborted = System.nanoTime();
+            transfer.abort("test");
+            ExecutionException e = assertThrows(ExecutionException.class, () -> receiver.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(TransferFailedException.class, e.getCause());
+            assertTrue(e.getCause().getMessage().contains("test"));
+            // the loop looks at the abort at least every 100ms
+            assertTrue(System.nanoTime() - aborted < TimeUnit.SECONDS.toNanos(2));
+        }
+    }
+}
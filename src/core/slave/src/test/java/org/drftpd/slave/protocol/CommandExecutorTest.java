@@ -0,0 +1,87 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandExecutorTest {
+
+    /**
+     * Submits a no-op command until it is accepted, a slot is released once the previous command finished.
+     */
+    private static void awaitFreeSlot(CommandExecutor executor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!executor.execute("noop", () -> {
+        })) {
+            assertTrue(System.currentTimeMillis() < deadline, "No slot released");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testRefusedWhenFull() throws Exception {
+        CommandExecutor executor = new CommandExecutor("test", 1, 1, false);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        assertTrue(executor.execute("running", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(executor.execute("waiting", () -> {
+        }));
+        assertEquals(1, executor.getWaiting());
+
+        assertFalse(executor.execute("refused", () -> {
+        }));
+        assertEquals(1, executor.getRejected());
+
+        release.countDown();
+        awaitFreeSlot(executor);
+    }
+
+    @Test
+    public void testSlotReleasedAfterSuccess() throws Exception {
+        CommandExecutor executor = new CommandExecutor("test", 1, 0, false);
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(executor.execute("success", done::countDown));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        awaitFreeSlot(executor);
+    }
+
+    @Test
+    public void testSlotReleasedAfterFailure() throws Exception {
+        CommandExecutor executor = new CommandExecutor("test", 1, 0, false);
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(executor.execute("failure", () -> {
+            done.countDown();
+            throw new IllegalStateException("expected failure");
+        }));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        awaitFreeSlot(executor);
+    }
+}
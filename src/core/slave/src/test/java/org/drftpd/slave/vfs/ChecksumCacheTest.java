@@ -0,0 +1,157 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksumCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    private File log;
+    private ChecksumCache cache;
+
+    private File createFile(String path, String content) throws Exception {
+        File file = new File(tempDir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        log = new File(tempDir, "checksums");
+        cache = new ChecksumCache(log);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        File file = createFile("dir/file", "content");
+        assertNull(cache.get(file));
+        cache.put(file, 0xfedcba98L);
+        assertEquals(0xfedcba98L, cache.get(file));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testChangedFileIsInvalidated() throws Exception {
+        File file = createFile("dir/file", "content");
+        cache.put(file, 1234L);
+
+        file.setLastModified(file.lastModified() - 10000);
+        assertNull(cache.get(file));
+
+        cache.put(file, 1234L);
+        long lastModified = file.lastModified();
+        Files.write(file.toPath(), "longer content".getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(lastModified);
+        assertNull(cache.get(file));
+    }
+
+    @Test
+    public void testRenameAndRemove() throws Exception {
+        File file1 = createFile("dir/file1", "content1");
+        File file2 = createFile("dir/file2", "content2");
+        File other = createFile("renamed2/file", "other");
+        cache.put(file1, 1L);
+        cache.put(file2, 2L);
+        cache.put(other, 3L);
+
+        File dir = new File(tempDir, "dir");
+        File renamed = new File(tempDir, "renamed");
+        assertTrue(dir.renameTo(renamed));
+        cache.rename(dir, renamed);
+        assertEquals(1L, cache.get(new File(renamed, "file1")));
+        assertEquals(2L, cache.get(new File(renamed, "file2")));
+        assertEquals(3L, cache.get(other));
+
+        cache.remove(new File(renamed, "file1"));
+        assertNull(cache.get(new File(renamed, "file1")));
+        cache.remove(renamed);
+        assertNull(cache.get(new File(renamed, "file2")));
+        // a directory sharing the name as a prefix is left alone
+        assertEquals(3L, cache.get(other));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testCompactionAndReload() throws Exception {
+        File file = createFile("dir/file", "content");
+        File removed = createFile("dir/removed", "removed");
+        for (int i = 0; i < 100; i++) {
+            cache.put(file, i);
+        }
+        cache.put(removed, 5L);
+        cache.remove(removed);
+        long before = log.length();
+        cache.compact();
+        assertTrue(log.length() < before);
+
+        cache.close();
+        cache = new ChecksumCache(log);
+        assertEquals(99L, cache.get(file));
+        assertNull(cache.get(removed));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        File file1 = createFile("dir/file1", "content1");
+        File file2 = createFile("dir/file2", "content2");
+        cache.put(file1, 1L);
+        cache.put(file2, 2L);
+        cache.close();
+        long valid = log.length();
+
+        // a put cut short after its path
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(log, true))) {
+            out.writeByte(1);
+            out.writeUTF(new File(tempDir, "dir/file3").getPath());
+            out.writeLong(8);
+        }
+        cache = new ChecksumCache(log);
+        assertEquals(2, cache.getSize());
+        assertEquals(1L, cache.get(file1));
+        assertEquals(2L, cache.get(file2));
+        assertEquals(valid, log.length());
+
+        // the log is usable again once reloaded
+        cache.remove(file1);
+        cache.close();
+        cache = new ChecksumCache(log);
+        assertNull(cache.get(file1));
+        assertEquals(2L, cache.get(file2));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.slave.vfs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RootIndexTest {
+
+    private RootIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new RootIndex(RootIndex.DEFAULT_MAX_DIRECTORIES);
+        index.setListing("/", new String[][]{{"dir"}, {"dir"}});
+        index.setListing("/dir", new String[][]{{"file", "sub", "sub2"}, {"file"}});
+        index.setListing("/dir/sub", new String[][]{{"file"}, null});
+        index.setListing("/dir/sub2", new String[][]{{"file"}, null});
+    }
+
+    @Test
+    public void testGet() {
+        assertEquals(3, index.get("/dir"));
+        assertEquals(3, index.get("/dir/file/"));
+        assertEquals(1, index.get("/dir/sub/file"));
+        assertEquals(0, index.get("/dir/missing"));
+        assertEquals(-1, index.get("/dir/sub/file/below"));
+    }
+
+    @Test
+    public void testDelete() {
+        index.remove("/dir/file", 1);
+        assertEquals(1, index.get("/dir/file"));
+        index.remove("/dir/file", 0);
+        assertEquals(0, index.get("/dir/file"));
+
+        index.remove("/dir/sub", 0);
+        assertEquals(0, index.get("/dir/sub"));
+        assertEquals(-1, index.get("/dir/sub/file"));
+        // a sibling sharing the name as a prefix stays indexed
+        assertEquals(1, index.get("/dir/sub2/file"));
+    }
+
+    @Test
+    public void testRename() {
+        // as done by RootCollection when a directory is renamed on a root
+        index.remove("/dir/sub", 0);
+        index.invalidate("/dir/renamed");
+        index.add("/dir/renamed", 0);
+        assertEquals(0, index.get("/dir/sub"));
+        assertEquals(-1, index.get("/dir/sub/file"));
+        assertEquals(1, index.get("/dir/renamed"));
+        assertEquals(-1, index.get("/dir/renamed/file"));
+        assertEquals(1, index.get("/dir/sub2/file"));
+
+        index.add("/dir/other/new", 1);
+        assertEquals(2, index.get("/dir/other"));
+    }
+
+    @Test
+    public void testInvalidateRoot() {
+        index.invalidate("/");
+        assertEquals(-1, index.get("/dir"));
+        assertEquals(-1, index.get("/dir/sub/file"));
+    }
+
+    @Test
+    public void testMaxDirectories() {
+        index = new RootIndex(2);
+        index.setListing("/a", new String[][]{{"file"}});
+        index.setListing("/b", new String[][]{{"file"}});
+        // using /a makes /b the least recently used
+        assertEquals(1, index.get("/a/file"));
+        index.setListing("/c", new String[][]{{"file"}});
+        assertEquals(2, index.size());
+        assertEquals(1, index.get("/a/file"));
+        assertEquals(-1, index.get("/b/file"));
+        assertEquals(1, index.get("/c/file"));
+
+        // an evicted directory is not changed by what happens below it
+        index.add("/b/new", 0);
+        assertEquals(-1, index.get("/b/new"));
+        index.invalidate("/a");
+        assertEquals(1, index.size());
+    }
+}
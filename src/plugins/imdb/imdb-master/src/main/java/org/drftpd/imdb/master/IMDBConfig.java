@@ -38,13 +38,14 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class IMDBConfig {
     private static final Logger logger = LogManager.getLogger(IMDBConfig.class);
     private static IMDBConfig ourInstance;
-    private final ArrayList<SectionInterface> _rSections = new ArrayList<>();
-    private final ArrayList<SectionInterface> _sSDSections = new ArrayList<>();
-    private final ArrayList<SectionInterface> _sHDSections = new ArrayList<>();
-    private int _startDelay, _endDelay;
-    private String _exclude;
-    private final ArrayList<String> _filters = new ArrayList<>();
-    private boolean _bar_enabled, _bar_directory, _sRelease;
+    // replaced on reload, never modified once published as the events read them on other threads
+    private volatile ArrayList<SectionInterface> _rSections = new ArrayList<>();
+    private volatile ArrayList<SectionInterface> _sSDSections = new ArrayList<>();
+    private volatile ArrayList<SectionInterface> _sHDSections = new ArrayList<>();
+    private volatile int _startDelay, _endDelay;
+    private volatile String _exclude = "";
+    private volatile ArrayList<String> _filters = new ArrayList<>();
+    private volatile boolean _bar_enabled, _bar_directory, _sRelease;
 
     private final IMDBThread _imdbThread = new IMDBThread();
     private final ConcurrentLinkedQueue<DirectoryHandle> _parseQueue = new ConcurrentLinkedQueue<>();
@@ -65,30 +66,33 @@ public class IMDBConfig {
 
     private void loadConfig() {
         Properties cfg = ConfigLoader.loadPluginConfig("imdb.conf");
-        addSectionsFromConf(cfg, "race.section.", _rSections);
-        addSectionsFromConf(cfg, "search.sd.section.", _sSDSections);
-        addSectionsFromConf(cfg, "search.hd.section.", _sHDSections);
+        _rSections = getSectionsFromConf(cfg, "race.section.");
+        _sSDSections = getSectionsFromConf(cfg, "search.sd.section.");
+        _sHDSections = getSectionsFromConf(cfg, "search.hd.section.");
         _sRelease = cfg.getProperty("search.release", "false").equalsIgnoreCase("true");
         _exclude = cfg.getProperty("exclude", "");
-        _startDelay = Integer.parseInt(cfg.getProperty("delay.start", "5"));
-        _endDelay = Integer.parseInt(cfg.getProperty("delay.end", "10"));
-        if (_startDelay >= _endDelay) {
+        int startDelay = Integer.parseInt(cfg.getProperty("delay.start", "5"));
+        int endDelay = Integer.parseInt(cfg.getProperty("delay.end", "10"));
+        if (startDelay >= endDelay) {
             logger.warn("Start delay >= End delay, setting default values 5-10");
-            _startDelay = 5;
-            _endDelay = 10;
+            startDelay = 5;
+            endDelay = 10;
         }
-        _filters.clear();
+        _startDelay = startDelay;
+        _endDelay = endDelay;
+        ArrayList<String> filters = new ArrayList<>();
         for (int i = 1; ; i++) {
             String filter = cfg.getProperty("filter." + i);
             if (filter == null) break;
-            _filters.add(filter);
+            filters.add(filter);
         }
+        _filters = filters;
         _bar_enabled = cfg.getProperty("imdbbar.enabled", "true").equalsIgnoreCase("true");
         _bar_directory = cfg.getProperty("imdbbar.directory", "true").equalsIgnoreCase("true");
     }
 
-    private void addSectionsFromConf(Properties cfg, String prop, ArrayList<SectionInterface> sections) {
-        sections.clear();
+    private ArrayList<SectionInterface> getSectionsFromConf(Properties cfg, String prop) {
+        ArrayList<SectionInterface> sections = new ArrayList<>();
         for (int i = 1; ; i++) {
             String section = cfg.getProperty(prop + i);
             if (section == null) break;
@@ -97,6 +101,7 @@ public class IMDBConfig {
                 sections.add(sec);
             }
         }
+        return sections;
     }
 
     public ArrayList<SectionInterface> getRaceSections() {
@@ -31,27 +31,35 @@ import org.drftpd.master.vfs.event.ImmutableInodeHandle;
  */
 public class IMDBDataExtension implements IndexDataExtensionInterface {
 
-    private static final Field FIELD_TITLE = new Field("imdbtitle", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_DIRECTOR = new Field("imdbdirector", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_GENRES = new Field("imdbgenres", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final NumericField FIELD_VOTES = new NumericField("imdbvotes", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_RATING = new NumericField("imdbrating", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_YEAR = new NumericField("imdbyear", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_RUNTIME = new NumericField("imdbruntime", Field.Store.YES, Boolean.TRUE);
+    private static final String FIELD_TITLE = "imdbtitle";
+    private static final String FIELD_DIRECTOR = "imdbdirector";
+    private static final String FIELD_GENRES = "imdbgenres";
+    private static final String FIELD_VOTES = "imdbvotes";
+    private static final String FIELD_RATING = "imdbrating";
+    private static final String FIELD_YEAR = "imdbyear";
+    private static final String FIELD_RUNTIME = "imdbruntime";
 
     @Override
     public void initializeFields(Document doc) {
-        doc.add(FIELD_TITLE);
-        doc.add(FIELD_DIRECTOR);
-        doc.add(FIELD_GENRES);
-        doc.add(FIELD_VOTES);
-        doc.add(FIELD_RATING);
-        doc.add(FIELD_YEAR);
-        doc.add(FIELD_RUNTIME);
+        doc.add(new Field(FIELD_TITLE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_DIRECTOR, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_GENRES, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new NumericField(FIELD_VOTES, Field.Store.YES, Boolean.TRUE));
+        doc.add(new NumericField(FIELD_RATING, Field.Store.YES, Boolean.TRUE));
+        doc.add(new NumericField(FIELD_YEAR, Field.Store.YES, Boolean.TRUE));
+        doc.add(new NumericField(FIELD_RUNTIME, Field.Store.YES, Boolean.TRUE));
     }
 
     @Override
     public void addData(Document doc, ImmutableInodeHandle inode) {
+        Field title = (Field) doc.getFieldable(FIELD_TITLE);
+        Field director = (Field) doc.getFieldable(FIELD_DIRECTOR);
+        Field genres = (Field) doc.getFieldable(FIELD_GENRES);
+        NumericField votes = (NumericField) doc.getFieldable(FIELD_VOTES);
+        NumericField rating = (NumericField) doc.getFieldable(FIELD_RATING);
+        NumericField year = (NumericField) doc.getFieldable(FIELD_YEAR);
+        NumericField runtime = (NumericField) doc.getFieldable(FIELD_RUNTIME);
+
         IMDBInfo imdbInfo = null;
         try {
             imdbInfo = inode.getPluginMetaData(IMDBInfo.IMDBINFO);
@@ -59,21 +67,21 @@ public class IMDBDataExtension implements IndexDataExtensionInterface {
             // Fields will be cleared below
         }
         if (imdbInfo == null || !imdbInfo.getMovieFound()) {
-            FIELD_TITLE.setValue("");
-            FIELD_DIRECTOR.setValue("");
-            FIELD_GENRES.setValue("");
-            FIELD_VOTES.setIntValue(-1);
-            FIELD_RATING.setIntValue(-1);
-            FIELD_YEAR.setIntValue(-1);
-            FIELD_RUNTIME.setIntValue(-1);
+            title.setValue("");
+            director.setValue("");
+            genres.setValue("");
+            votes.setIntValue(-1);
+            rating.setIntValue(-1);
+            year.setIntValue(-1);
+            runtime.setIntValue(-1);
         } else {
-            FIELD_TITLE.setValue(imdbInfo.getTitle());
-            FIELD_DIRECTOR.setValue(imdbInfo.getDirector());
-            FIELD_GENRES.setValue(imdbInfo.getGenres());
-            FIELD_VOTES.setIntValue(imdbInfo.getVotes() != null ? imdbInfo.getVotes() : -1);
-            FIELD_RATING.setIntValue(imdbInfo.getRating() != null ? imdbInfo.getRating() : -1);
-            FIELD_YEAR.setIntValue(imdbInfo.getYear() != null ? imdbInfo.getYear() : -1);
-            FIELD_RUNTIME.setIntValue(imdbInfo.getRuntime() != null ? imdbInfo.getRuntime() : -1);
+            title.setValue(imdbInfo.getTitle());
+            director.setValue(imdbInfo.getDirector());
+            genres.setValue(imdbInfo.getGenres());
+            votes.setIntValue(imdbInfo.getVotes() != null ? imdbInfo.getVotes() : -1);
+            rating.setIntValue(imdbInfo.getRating() != null ? imdbInfo.getRating() : -1);
+            year.setIntValue(imdbInfo.getYear() != null ? imdbInfo.getYear() : -1);
+            runtime.setIntValue(imdbInfo.getRuntime() != null ? imdbInfo.getRuntime() : -1);
         }
     }
 
@@ -136,7 +136,7 @@ public class SlaveTransfer {
 
         // Start received on the destination
         try {
-            _destTransfer.receiveFile(_file.getPath(), 'I', 0, "*@*", 0L, 0L);
+            _destTransfer.receiveFile(_file.getPath(), 'I', 0, "*@*", 0L, 0L, null, null, null);
         } catch (IOException e1) {
             logger.debug("IOException received, throwing DestinationSlaveException");
             throw new DestinationSlaveException(e1);
@@ -147,7 +147,7 @@ public class SlaveTransfer {
 
         // Start sending on the source
         try {
-            _srcTransfer.sendFile(_file.getPath(), 'I', 0, "*@*", 0L, 0L);
+            _srcTransfer.sendFile(_file.getPath(), 'I', 0, "*@*", 0L, 0L, null, null, null);
         } catch (IOException e2) {
             logger.debug("IOException received, throwing SourceSlaveException");
             throw new SourceSlaveException(e2);
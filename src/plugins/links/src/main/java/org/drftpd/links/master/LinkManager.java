@@ -46,9 +46,10 @@ import java.util.Set;
 public class LinkManager implements PluginInterface {
     private static final Logger logger = LogManager.getLogger(LinkManager.class);
 
-    private CaseInsensitiveHashMap<String, Class<? extends LinkType>> _typesMap;
+    private volatile CaseInsensitiveHashMap<String, Class<? extends LinkType>> _typesMap;
 
-    private ArrayList<LinkType> _links;
+    // replaced on reload, never modified once published as the events read it on other threads
+    private volatile ArrayList<LinkType> _links = new ArrayList<>();
 
     /*
      * Get the LinkManager Plugin
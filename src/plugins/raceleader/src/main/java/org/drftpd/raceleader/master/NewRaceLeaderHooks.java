@@ -25,12 +25,11 @@ import org.drftpd.master.commands.CommandResponse;
 import org.drftpd.master.commands.dataconnection.DataConnectionHandler;
 import org.drftpd.master.exceptions.NoAvailableSlaveException;
 import org.drftpd.master.exceptions.SlaveUnavailableException;
-import org.drftpd.master.util.RankUtils;
 import org.drftpd.master.util.UploaderPosition;
 import org.drftpd.master.vfs.FileHandle;
 import org.drftpd.zipscript.common.sfv.SFVInfo;
 import org.drftpd.zipscript.common.sfv.SFVStatus;
-import org.drftpd.zipscript.master.sfv.SFVTools;
+import org.drftpd.zipscript.master.sfv.SFVRaceState;
 import org.drftpd.zipscript.master.sfv.vfs.ZipscriptVFSDataSFV;
 
 import java.io.FileNotFoundException;
@@ -74,8 +73,9 @@ public class NewRaceLeaderHooks {
             SFVInfo sfvinfo = sfvData.getSFVInfo();
             // Make sure release is > 5 files (No point in spaming a small release
             if (sfvinfo.getSize() > 5) {
-                SFVStatus sfvstatus = sfvData.getSFVStatus();
-                Collection<UploaderPosition> racers = RankUtils.userSort(SFVTools.getSFVFiles(transferFile.getParent(), sfvData), "bytes", "high");
+                SFVRaceState raceState = sfvData.getRaceState();
+                SFVStatus sfvstatus = raceState.getSFVStatus();
+                Collection<UploaderPosition> racers = raceState.getRacers();
 
                 // Check if file uploaded is in SFV
                 if (sfvinfo.getEntries().get(transferFile.getName()) == null) {
@@ -21,18 +21,28 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bushe.swing.event.annotation.AnnotationProcessor;
 import org.bushe.swing.event.annotation.EventSubscriber;
+import org.drftpd.common.exceptions.RemoteIOException;
 import org.drftpd.common.extensibility.PluginInterface;
 import org.drftpd.common.misc.CaseInsensitiveHashMap;
+import org.drftpd.common.slave.BandwidthLimit;
 import org.drftpd.common.util.ConfigLoader;
 import org.drftpd.common.util.PropertyHelper;
 import org.drftpd.master.GlobalContext;
 import org.drftpd.master.commands.dataconnection.event.SlowTransferEvent;
 import org.drftpd.master.event.ReloadEvent;
+import org.drftpd.master.event.SlaveEvent;
+import org.drftpd.master.exceptions.SlaveUnavailableException;
+import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.master.slavemanagement.SlaveManager;
 import org.reflections.Reflections;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author CyBeR
@@ -46,6 +56,20 @@ public class TrafficManager implements PluginInterface {
 
     private ArrayList<TrafficType> _traffictypes;
 
+    private List<BandwidthLimit> _bandwidthLimits = new ArrayList<>();
+
+    // the limits are sent from here, one slave after the other, the event threads never wait for a slave
+    private final ThreadPoolExecutor _pusher = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "TrafficManager - Bandwidth");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public TrafficManager() {
+        _pusher.allowCoreThreadTimeOut(true);
+    }
+
     public static TrafficManager getTrafficManager() {
         for (PluginInterface plugin : GlobalContext.getGlobalContext().getPlugins()) {
             if (plugin instanceof TrafficManager) {
@@ -66,6 +90,8 @@ public class TrafficManager implements PluginInterface {
     public void stopPlugin(String reason) {
         AnnotationProcessor.unprocess(this);
         _traffictypes = new ArrayList<>();
+        _bandwidthLimits = new ArrayList<>();
+        pushBandwidthLimits();
     }
 
     @EventSubscriber
@@ -130,6 +156,74 @@ public class TrafficManager implements PluginInterface {
         for (TrafficType tt : getTrafficTypes()) {
             logger.info("- {}", tt.getName());
         }
+        _bandwidthLimits = loadBandwidthLimits(props);
+        pushBandwidthLimits();
+    }
+
+    private List<BandwidthLimit> loadBandwidthLimits(Properties props) {
+        List<BandwidthLimit> limits = new ArrayList<>();
+        int count = 1;
+        String scope;
+        while ((scope = PropertyHelper.getProperty(props, "bandwidth." + count + ".scope", null)) != null) {
+            try {
+                limits.add(new BandwidthLimit(scope.trim().toLowerCase(),
+                        PropertyHelper.getProperty(props, "bandwidth." + count + ".name", BandwidthLimit.ALL).trim(),
+                        Long.parseLong(PropertyHelper.getProperty(props, "bandwidth." + count + ".up", "0").trim()) * 1000,
+                        Long.parseLong(PropertyHelper.getProperty(props, "bandwidth." + count + ".dn", "0").trim()) * 1000));
+            } catch (NumberFormatException e) {
+                logger.error("Non numeric speed setting for bandwidth.{} in traffic.conf, skipping it", count);
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid bandwidth.{}.scope in traffic.conf, skipping it", count, e);
+            }
+            count++;
+        }
+        logger.info("Loaded [{}] bandwidth limits", limits.size());
+        return limits;
+    }
+
+    private void pushBandwidthLimits() {
+        for (RemoteSlave rslave : GlobalContext.getGlobalContext().getSlaveManager().getSlaves()) {
+            if (rslave.isAvailable()) {
+                pushBandwidthLimits(rslave);
+            }
+        }
+    }
+
+    /*
+     * Sends the limits to the slave, which applies them to the running transfers as well.
+     * Only the slave limit for this slave is sent, by its name or else the one for all slaves.
+     * The limits are sent in the background, in the order they were pushed.
+     */
+    private void pushBandwidthLimits(RemoteSlave rslave) {
+        List<BandwidthLimit> limits = new ArrayList<>();
+        BandwidthLimit slaveLimit = null;
+        for (BandwidthLimit limit : _bandwidthLimits) {
+            if (!limit.getScope().equals(BandwidthLimit.SLAVE)) {
+                limits.add(limit);
+            } else if (limit.getName().equalsIgnoreCase(rslave.getName())) {
+                slaveLimit = limit;
+            } else if (slaveLimit == null && limit.getName().equals(BandwidthLimit.ALL)) {
+                slaveLimit = limit;
+            }
+        }
+        if (slaveLimit != null) {
+            limits.add(new BandwidthLimit(BandwidthLimit.SLAVE, BandwidthLimit.ALL, slaveLimit.getUp(), slaveLimit.getDown()));
+        }
+        _pusher.execute(() -> {
+            try {
+                String index = SlaveManager.getBasicIssuer().issueBandwidthToSlave(rslave, limits);
+                rslave.fetchResponse(index);
+            } catch (SlaveUnavailableException | RemoteIOException e) {
+                logger.warn("Unable to send the bandwidth limits to slave {}", rslave.getName(), e);
+            }
+        });
+    }
+
+    @EventSubscriber
+    public void onSlaveEvent(SlaveEvent event) {
+        if (event.getCommand().equals("ADDSLAVE")) {
+            pushBandwidthLimits(event.getRSlave());
+        }
     }
 
     /*
@@ -28,31 +28,41 @@ import org.drftpd.tvmaze.master.metadata.TvMazeInfo;
 
 public class TvMazeDataExtension implements IndexDataExtensionInterface {
 
-    private static final Field FIELD_NAME = new Field("tvmazename", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_GENRE = new Field("tvmazegenre", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final NumericField FIELD_SEASON = new NumericField("tvmazeseason", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_NUMBER = new NumericField("tvmazenumber", Field.Store.YES, Boolean.TRUE);
-    private static final Field FIELD_TYPE = new Field("tvmazetype", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_STATUS = new Field("tvmazestatus", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_LANGUAGE = new Field("tvmazelanguage", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_COUNTRY = new Field("tvmazecountry", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_NETWORK = new Field("tvmazenetwork", "", Field.Store.YES, Field.Index.ANALYZED);
+    private static final String FIELD_NAME = "tvmazename";
+    private static final String FIELD_GENRE = "tvmazegenre";
+    private static final String FIELD_SEASON = "tvmazeseason";
+    private static final String FIELD_NUMBER = "tvmazenumber";
+    private static final String FIELD_TYPE = "tvmazetype";
+    private static final String FIELD_STATUS = "tvmazestatus";
+    private static final String FIELD_LANGUAGE = "tvmazelanguage";
+    private static final String FIELD_COUNTRY = "tvmazecountry";
+    private static final String FIELD_NETWORK = "tvmazenetwork";
 
     @Override
     public void initializeFields(Document doc) {
-        doc.add(FIELD_NAME);
-        doc.add(FIELD_GENRE);
-        doc.add(FIELD_SEASON);
-        doc.add(FIELD_NUMBER);
-        doc.add(FIELD_TYPE);
-        doc.add(FIELD_STATUS);
-        doc.add(FIELD_LANGUAGE);
-        doc.add(FIELD_COUNTRY);
-        doc.add(FIELD_NETWORK);
+        doc.add(new Field(FIELD_NAME, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_GENRE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new NumericField(FIELD_SEASON, Field.Store.YES, Boolean.TRUE));
+        doc.add(new NumericField(FIELD_NUMBER, Field.Store.YES, Boolean.TRUE));
+        doc.add(new Field(FIELD_TYPE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_STATUS, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_LANGUAGE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_COUNTRY, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_NETWORK, "", Field.Store.YES, Field.Index.ANALYZED));
     }
 
     @Override
     public void addData(Document doc, ImmutableInodeHandle inode) {
+        Field name = (Field) doc.getFieldable(FIELD_NAME);
+        Field genre = (Field) doc.getFieldable(FIELD_GENRE);
+        NumericField season = (NumericField) doc.getFieldable(FIELD_SEASON);
+        NumericField number = (NumericField) doc.getFieldable(FIELD_NUMBER);
+        Field type = (Field) doc.getFieldable(FIELD_TYPE);
+        Field status = (Field) doc.getFieldable(FIELD_STATUS);
+        Field language = (Field) doc.getFieldable(FIELD_LANGUAGE);
+        Field country = (Field) doc.getFieldable(FIELD_COUNTRY);
+        Field network = (Field) doc.getFieldable(FIELD_NETWORK);
+
         TvMazeInfo tvmazeInfo = null;
         try {
             tvmazeInfo = inode.getPluginMetaData(TvMazeInfo.TVMAZEINFO);
@@ -60,27 +70,30 @@ public class TvMazeDataExtension implements IndexDataExtensionInterface {
             // Fields will be cleared below
         }
         if (tvmazeInfo == null) {
-            FIELD_NAME.setValue("");
-            FIELD_GENRE.setValue("");
-            FIELD_SEASON.setIntValue(-1);
-            FIELD_NUMBER.setIntValue(-1);
-            FIELD_TYPE.setValue("");
-            FIELD_STATUS.setValue("");
-            FIELD_LANGUAGE.setValue("");
-            FIELD_COUNTRY.setValue("");
-            FIELD_NETWORK.setValue("");
+            name.setValue("");
+            genre.setValue("");
+            season.setIntValue(-1);
+            number.setIntValue(-1);
+            type.setValue("");
+            status.setValue("");
+            language.setValue("");
+            country.setValue("");
+            network.setValue("");
         } else {
-            FIELD_NAME.setValue(tvmazeInfo.getName());
-            FIELD_GENRE.setValue(StringUtils.join(tvmazeInfo.getGenres(), " "));
+            name.setValue(tvmazeInfo.getName());
+            genre.setValue(StringUtils.join(tvmazeInfo.getGenres(), " "));
             if (tvmazeInfo.getEPList().length == 1) {
-                FIELD_SEASON.setIntValue(tvmazeInfo.getEPList()[0].getSeason());
-                FIELD_NUMBER.setIntValue(tvmazeInfo.getEPList()[0].getNumber());
+                season.setIntValue(tvmazeInfo.getEPList()[0].getSeason());
+                number.setIntValue(tvmazeInfo.getEPList()[0].getNumber());
+            } else {
+                season.setIntValue(-1);
+                number.setIntValue(-1);
             }
-            FIELD_TYPE.setValue(tvmazeInfo.getType());
-            FIELD_STATUS.setValue(tvmazeInfo.getStatus());
-            FIELD_LANGUAGE.setValue(tvmazeInfo.getLanguage());
-            FIELD_COUNTRY.setValue(tvmazeInfo.getCountry());
-            FIELD_NETWORK.setValue(tvmazeInfo.getNetwork());
+            type.setValue(tvmazeInfo.getType());
+            status.setValue(tvmazeInfo.getStatus());
+            language.setValue(tvmazeInfo.getLanguage());
+            country.setValue(tvmazeInfo.getCountry());
+            network.setValue(tvmazeInfo.getNetwork());
         }
     }
 
@@ -29,6 +29,7 @@ import org.drftpd.master.network.Session;
 import org.drftpd.master.usermanager.User;
 import org.drftpd.master.vfs.*;
 import org.drftpd.zipscript.common.sfv.SFVInfo;
+import org.drftpd.zipscript.master.sfv.SFVRaceStateManager;
 import org.drftpd.zipscript.master.sfv.vfs.ZipscriptVFSDataSFV;
 import org.drftpd.zipscript.master.zip.RescanPostProcessDirInterface;
 import org.reflections.Reflections;
@@ -181,6 +182,7 @@ public class ZipscriptCommands extends CommandInterface {
                     } catch (NoAvailableSlaveException e) {
                         session.printOutput(200, "SFV: " + Checksum.formatChecksum(sfvChecksum) + " SLAVE: " + workingFile.getName() + " OFFLINE");
                     }
+                    SFVRaceStateManager.getRaceStateManager().update(workingFile);
 
                     // Run any post processing extensions
                     doRescanPostProcess(request, workingDir, quiet);
@@ -253,6 +255,8 @@ public class ZipscriptCommands extends CommandInterface {
                                 " SLAVE: " + Checksum.formatChecksum(fileChecksum));
                     }
                 }
+                // Checksums may have changed without the directory size
+                SFVRaceStateManager.getRaceStateManager().remove(workingDir.getPath());
                 // Run any post processing extensions
                 doRescanPostProcess(request, workingDir, quiet);
             }
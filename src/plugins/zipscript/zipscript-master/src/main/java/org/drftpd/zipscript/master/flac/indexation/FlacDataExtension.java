@@ -32,23 +32,29 @@ import org.drftpd.zipscript.common.flac.VorbisTag;
  */
 public class FlacDataExtension implements IndexDataExtensionInterface {
 
-    private static final Field FIELD_GENRE = new Field("flacGenre", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_TITLE = new Field("flacTitle", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_ARTIST = new Field("flacArtist", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_ALBUM = new Field("flacAlbum", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final NumericField FIELD_YEAR = new NumericField("flacYear", Field.Store.YES, Boolean.TRUE);
+    private static final String FIELD_GENRE = "flacGenre";
+    private static final String FIELD_TITLE = "flacTitle";
+    private static final String FIELD_ARTIST = "flacArtist";
+    private static final String FIELD_ALBUM = "flacAlbum";
+    private static final String FIELD_YEAR = "flacYear";
 
     @Override
     public void initializeFields(Document doc) {
-        doc.add(FIELD_GENRE);
-        doc.add(FIELD_TITLE);
-        doc.add(FIELD_ARTIST);
-        doc.add(FIELD_ALBUM);
-        doc.add(FIELD_YEAR);
+        doc.add(new Field(FIELD_GENRE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_TITLE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_ARTIST, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_ALBUM, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new NumericField(FIELD_YEAR, Field.Store.YES, Boolean.TRUE));
     }
 
     @Override
     public void addData(Document doc, ImmutableInodeHandle inode) {
+        Field genre = (Field) doc.getFieldable(FIELD_GENRE);
+        Field title = (Field) doc.getFieldable(FIELD_TITLE);
+        Field artist = (Field) doc.getFieldable(FIELD_ARTIST);
+        Field album = (Field) doc.getFieldable(FIELD_ALBUM);
+        NumericField year = (NumericField) doc.getFieldable(FIELD_YEAR);
+
         VorbisTag vorbisTag = null;
         try {
             FlacInfo flacInfo = inode.getPluginMetaData(FlacInfo.FLACINFO);
@@ -57,17 +63,17 @@ public class FlacDataExtension implements IndexDataExtensionInterface {
             // Fields will be cleared below
         }
         if (vorbisTag == null) {
-            FIELD_GENRE.setValue("");
-            FIELD_TITLE.setValue("");
-            FIELD_ARTIST.setValue("");
-            FIELD_ALBUM.setValue("");
-            FIELD_YEAR.setIntValue(-1);
+            genre.setValue("");
+            title.setValue("");
+            artist.setValue("");
+            album.setValue("");
+            year.setIntValue(-1);
         } else {
-            FIELD_GENRE.setValue(vorbisTag.getGenre());
-            FIELD_TITLE.setValue(vorbisTag.getTitle());
-            FIELD_ARTIST.setValue(vorbisTag.getArtist());
-            FIELD_ALBUM.setValue(vorbisTag.getAlbum());
-            FIELD_YEAR.setIntValue(NumberUtils.isDigits(vorbisTag.getYear()) ?
+            genre.setValue(vorbisTag.getGenre());
+            title.setValue(vorbisTag.getTitle());
+            artist.setValue(vorbisTag.getArtist());
+            album.setValue(vorbisTag.getAlbum());
+            year.setIntValue(NumberUtils.isDigits(vorbisTag.getYear()) ?
                     Integer.parseInt(vorbisTag.getYear()) : -1);
         }
     }
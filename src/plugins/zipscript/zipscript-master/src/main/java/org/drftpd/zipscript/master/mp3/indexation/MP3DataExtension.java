@@ -33,23 +33,29 @@ import org.drftpd.zipscript.common.mp3.MP3Info;
  */
 public class MP3DataExtension implements IndexDataExtensionInterface {
 
-    private static final Field FIELD_GENRE = new Field("mp3genre", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_TITLE = new Field("mp3title", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_ARTIST = new Field("mp3artist", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final Field FIELD_ALBUM = new Field("mp3album", "", Field.Store.YES, Field.Index.ANALYZED);
-    private static final NumericField FIELD_YEAR = new NumericField("mp3year", Field.Store.YES, Boolean.TRUE);
+    private static final String FIELD_GENRE = "mp3genre";
+    private static final String FIELD_TITLE = "mp3title";
+    private static final String FIELD_ARTIST = "mp3artist";
+    private static final String FIELD_ALBUM = "mp3album";
+    private static final String FIELD_YEAR = "mp3year";
 
     @Override
     public void initializeFields(Document doc) {
-        doc.add(FIELD_GENRE);
-        doc.add(FIELD_TITLE);
-        doc.add(FIELD_ARTIST);
-        doc.add(FIELD_ALBUM);
-        doc.add(FIELD_YEAR);
+        doc.add(new Field(FIELD_GENRE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_TITLE, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_ARTIST, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field(FIELD_ALBUM, "", Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new NumericField(FIELD_YEAR, Field.Store.YES, Boolean.TRUE));
     }
 
     @Override
     public void addData(Document doc, ImmutableInodeHandle inode) {
+        Field genre = (Field) doc.getFieldable(FIELD_GENRE);
+        Field title = (Field) doc.getFieldable(FIELD_TITLE);
+        Field artist = (Field) doc.getFieldable(FIELD_ARTIST);
+        Field album = (Field) doc.getFieldable(FIELD_ALBUM);
+        NumericField year = (NumericField) doc.getFieldable(FIELD_YEAR);
+
         ID3Tag id3Tag = null;
         try {
             MP3Info mp3Info = inode.getPluginMetaData(MP3Info.MP3INFO);
@@ -58,17 +64,17 @@ public class MP3DataExtension implements IndexDataExtensionInterface {
             // Fields will be cleared below
         }
         if (id3Tag == null) {
-            FIELD_GENRE.setValue("");
-            FIELD_TITLE.setValue("");
-            FIELD_ARTIST.setValue("");
-            FIELD_ALBUM.setValue("");
-            FIELD_YEAR.setIntValue(-1);
+            genre.setValue("");
+            title.setValue("");
+            artist.setValue("");
+            album.setValue("");
+            year.setIntValue(-1);
         } else {
-            FIELD_GENRE.setValue(id3Tag.getGenre());
-            FIELD_TITLE.setValue(id3Tag.getTitle());
-            FIELD_ARTIST.setValue(id3Tag.getArtist());
-            FIELD_ALBUM.setValue(id3Tag.getAlbum());
-            FIELD_YEAR.setIntValue(NumberUtils.isDigits(id3Tag.getYear()) ?
+            genre.setValue(id3Tag.getGenre());
+            title.setValue(id3Tag.getTitle());
+            artist.setValue(id3Tag.getArtist());
+            album.setValue(id3Tag.getAlbum());
+            year.setIntValue(NumberUtils.isDigits(id3Tag.getYear()) ?
                     Integer.parseInt(id3Tag.getYear()) : -1);
         }
     }
@@ -103,6 +103,7 @@ public class SFVAnnouncer extends AbstractAnnouncer {
         try {
             String username = sfvEvent.getUser().getName();
             SFVStatus sfvStatus = sfvEvent.getSFVStatus();
+            SFVRaceState raceState = sfvEvent.getSFVData().getRaceState();
 
             //FIRST
             try {
@@ -116,7 +117,7 @@ public class SFVAnnouncer extends AbstractAnnouncer {
                         fillEnvSection(env, sfvEvent, writer, true);
                         env.put("files", Integer.toString(sfvEvent.getSFVInfo().getSize()));
                         env.put("expectedsize", (Bytes.formatBytes(
-                                SFVTools.getSFVLargestFileBytes(dir, sfvEvent.getSFVData()) * sfvEvent.getSFVInfo().getSize())));
+                                raceState.getLargestFileBytes() * sfvEvent.getSFVInfo().getSize())));
                         sayOutput(ReplacerUtils.jprintf("sfv.store.first", env, _bundle), writer);
                     }
                     return;
@@ -124,25 +125,15 @@ public class SFVAnnouncer extends AbstractAnnouncer {
             }
 
             //NEW RACER
-            if ((sfvEvent.getSFVInfo().getSize() - sfvStatus.getMissing()) != 1) {
-                for (Iterator<FileHandle> iter = SFVTools.getSFVFiles(dir, sfvEvent.getSFVData()).iterator(); iter.hasNext(); ) {
-                    FileHandle sfvFileEntry = iter.next();
-
-                    if (!sfvFileEntry.equals(sfvEvent.getTransferFile()) && sfvFileEntry.getUsername().equals(username)
-                            && sfvFileEntry.getXfertime() > 0) {
-                        break;
-                    }
-
-                    if (!iter.hasNext()) {
-                        AnnounceWriter writer = _config.getPathWriter("store.race", dir);
-                        if (writer != null) {
-                            fillEnvSection(env, sfvEvent, writer, true);
-                            env.put("filesleft",
-                                    Integer.toString(sfvStatus.getMissing()));
-                            env.put("percentdone", (sfvStatus.getPresent() * 100) / sfvEvent.getSFVInfo().getSize() + "%");
-                            sayOutput(ReplacerUtils.jprintf("sfv.store.race", env, _bundle), writer);
-                        }
-                    }
+            if ((sfvEvent.getSFVInfo().getSize() - sfvStatus.getMissing()) != 1
+                    && !raceState.hasRaced(username, sfvEvent.getTransferFile().getName())) {
+                AnnounceWriter writer = _config.getPathWriter("store.race", dir);
+                if (writer != null) {
+                    fillEnvSection(env, sfvEvent, writer, true);
+                    env.put("filesleft",
+                            Integer.toString(sfvStatus.getMissing()));
+                    env.put("percentdone", (sfvStatus.getPresent() * 100) / sfvEvent.getSFVInfo().getSize() + "%");
+                    sayOutput(ReplacerUtils.jprintf("sfv.store.race", env, _bundle), writer);
                 }
             }
 
@@ -157,10 +148,7 @@ public class SFVAnnouncer extends AbstractAnnouncer {
                     dir.addPluginMetaData(SFV_HALFWAY, true);
                     AnnounceWriter writer = _config.getPathWriter("store.halfway", dir);
                     if (writer != null) {
-                        Collection<UploaderPosition> uploaders = RankUtils.userSort(SFVTools.getSFVFiles(dir, sfvEvent.getSFVData()),
-                                "bytes", "high");
-
-                        UploaderPosition stat = uploaders.iterator().next();
+                        UploaderPosition stat = raceState.getRacers().iterator().next();
 
                         env.put("leadspeed", Bytes.formatBytes(stat.getXferspeed()) + "/s");
                         env.put("leadfiles", Integer.toString(stat.getFiles()));
@@ -210,17 +198,16 @@ public class SFVAnnouncer extends AbstractAnnouncer {
                     _timer.schedule(removeAnnounceMetadata, 5000L);
                     AnnounceWriter writer = _config.getPathWriter("store.complete", dir);
                     if (writer != null) {
-                        Collection<UploaderPosition> racers = RankUtils.userSort(SFVTools.getSFVFiles(dir, sfvEvent.getSFVData()),
-                                "bytes", "high");
-                        Collection<GroupPosition> groups = RankUtils.topFileGroup(SFVTools.getSFVFiles(dir, sfvEvent.getSFVData()));
+                        Collection<UploaderPosition> racers = raceState.getRacers();
+                        Collection<GroupPosition> groups = raceState.getGroups();
 
                         fillEnvSection(env, sfvEvent, writer, false);
 
                         env.put("racers", Integer.toString(racers.size()));
                         env.put("groups", Integer.toString(groups.size()));
                         env.put("files", Integer.toString(sfvEvent.getSFVInfo().getSize()));
-                        env.put("size", Bytes.formatBytes(SFVTools.getSFVTotalBytes(dir, sfvEvent.getSFVData())));
-                        env.put("speed", Bytes.formatBytes(SFVTools.getXferspeed(dir, sfvEvent.getSFVData())) + "/s");
+                        env.put("size", Bytes.formatBytes(raceState.getTotalBytes()));
+                        env.put("speed", Bytes.formatBytes(raceState.getXferspeed()) + "/s");
                         sayOutput(ReplacerUtils.jprintf("sfv.store.complete", env, _bundle), writer);
 
                         // Find max users/groups to announce
@@ -390,11 +377,12 @@ public class SFVAnnouncer extends AbstractAnnouncer {
             long totalxfertime = 0;
 
             try {
-                sfvinfo = sfvData.getSFVInfo();
+                SFVRaceState raceState = sfvData.getRaceState();
+                sfvinfo = raceState.getSFVInfo();
                 totalsfv += 1;
                 totalfiles += sfvinfo.getSize();
-                totalbytes += SFVTools.getSFVTotalBytes(dir, sfvData);
-                totalxfertime += SFVTools.getSFVTotalXfertime(dir, sfvData);
+                totalbytes += raceState.getTotalBytes();
+                totalxfertime += raceState.getTotalXfertime();
             } catch (Exception e1) {
                 // Failed to get sfv data, safe to continue, that data
                 // will just not be available
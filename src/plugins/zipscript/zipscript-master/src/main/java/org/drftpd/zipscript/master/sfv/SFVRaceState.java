@@ -0,0 +1,300 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.zipscript.master.sfv;
+
+import org.drftpd.master.exceptions.NoAvailableSlaveException;
+import org.drftpd.master.util.GroupPosition;
+import org.drftpd.master.util.UploaderPosition;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.zipscript.common.sfv.SFVInfo;
+import org.drftpd.zipscript.common.sfv.SFVStatus;
+
+import java.io.FileNotFoundException;
+import java.util.*;
+
+/**
+ * Race state of a directory with an sfv file, the totals and the racers are kept
+ * up to date one file at a time instead of walking the directory on each upload.
+ * <p>
+ * The state remembers the size the directory should have, a directory which changed
+ * without the state being told is seen by {@link #isCurrent(DirectoryHandle, SFVInfo)}.
+ */
+public class SFVRaceState {
+
+    private final SFVInfo _sfvInfo;
+
+    // every file of the directory, sfv members or not, to follow the directory size
+    private final Map<String, Member> _files = new HashMap<>();
+
+    private final Map<String, UploaderPosition> _racers = new HashMap<>();
+
+    private final Map<String, GroupPosition> _groups = new HashMap<>();
+
+    private long _dirSize;
+
+    private int _present;
+
+    private int _offline;
+
+    private long _bytes;
+
+    private long _xfertime;
+
+    private static class Member {
+        private final String _name;
+
+        private final long _size;
+
+        private final long _xfertime;
+
+        private final String _username;
+
+        private final String _group;
+
+        // exists in the sfv and done uploading, counted in the totals and racers
+        private final boolean _counted;
+
+        private final boolean _present;
+
+        private final boolean _offline;
+
+        private Member(String name, long size, long xfertime, String username, String group,
+                       boolean counted, boolean present, boolean offline) {
+            _name = name;
+            _size = size;
+            _xfertime = xfertime;
+            _username = username;
+            _group = group;
+            _counted = counted;
+            _present = present;
+            _offline = offline;
+        }
+    }
+
+    public SFVRaceState(DirectoryHandle dir, SFVInfo sfvInfo) throws FileNotFoundException {
+        _sfvInfo = sfvInfo;
+        // read before the files, a file changing meanwhile makes the state look outdated
+        long dirSize = dir.getSize();
+        for (FileHandle file : dir.getFilesUnchecked()) {
+            Member member = read(file);
+            if (member != null) {
+                add(member);
+            }
+        }
+        _dirSize = dirSize;
+    }
+
+    /**
+     * @return true if this state was built for {@code sfvInfo} and the directory
+     * did not change since without the state being updated.
+     */
+    public synchronized boolean isCurrent(DirectoryHandle dir, SFVInfo sfvInfo) throws FileNotFoundException {
+        return _sfvInfo == sfvInfo && _dirSize == dir.getSize();
+    }
+
+    public SFVInfo getSFVInfo() {
+        return _sfvInfo;
+    }
+
+    /**
+     * Reads the file again and replaces what was known of it, a file which does not
+     * exist anymore is removed.
+     */
+    public synchronized void update(FileHandle file) {
+        Member old = _files.remove(file.getName());
+        if (old != null) {
+            subtract(old);
+            _dirSize -= old._size;
+        }
+        Member member = read(file);
+        if (member != null) {
+            add(member);
+            _dirSize += member._size;
+        }
+    }
+
+    private Member read(FileHandle file) {
+        try {
+            if (!file.isFile()) {
+                return null;
+            }
+            String name = file.getName();
+            long size = file.getSize();
+            Long sfvChecksum = _sfvInfo.getEntries().get(name);
+            if (sfvChecksum == null) {
+                return new Member(name, size, 0L, null, null, false, false, false);
+            }
+            long xfertime = file.getXfertime();
+            // a file still uploading has no checksum yet, do not ask the slave for it.
+            // isUploading() is also true while the jobmanager sends the file to another
+            // slave, the checksum was set when its first upload finished
+            boolean counted = file.getCheckSumCached() != 0L || !file.isUploading();
+            boolean present = false;
+            if (counted) {
+                try {
+                    present = file.getCheckSum() == sfvChecksum;
+                } catch (NoAvailableSlaveException e) {
+                    // Unable to get a slave for checksum, counted as offline below
+                }
+            }
+            return new Member(name, size, xfertime, file.getUsername(), file.getGroup(),
+                    counted, present, !file.isAvailable());
+        } catch (FileNotFoundException e) {
+            // deleted or moved
+            return null;
+        }
+    }
+
+    private void add(Member member) {
+        _files.put(member._name, member);
+        if (member._present) {
+            _present++;
+        }
+        if (member._offline) {
+            _offline++;
+        }
+        if (!member._counted) {
+            return;
+        }
+        _bytes += member._size;
+        _xfertime += member._xfertime;
+
+        UploaderPosition racer = _racers.get(member._username);
+        if (racer == null) {
+            _racers.put(member._username, new UploaderPosition(member._username, member._size, 1, member._xfertime));
+        } else {
+            racer.updateBytes(member._size);
+            racer.updateFiles(1);
+            racer.updateXfertime(member._xfertime);
+        }
+        GroupPosition group = _groups.get(member._group);
+        if (group == null) {
+            _groups.put(member._group, new GroupPosition(member._group, member._size, 1, member._xfertime));
+        } else {
+            group.updateBytes(member._size);
+            group.updateFiles(1);
+            group.updateXfertime(member._xfertime);
+        }
+    }
+
+    private void subtract(Member member) {
+        if (member._present) {
+            _present--;
+        }
+        if (member._offline) {
+            _offline--;
+        }
+        if (!member._counted) {
+            return;
+        }
+        _bytes -= member._size;
+        _xfertime -= member._xfertime;
+
+        UploaderPosition racer = _racers.get(member._username);
+        racer.updateBytes(-member._size);
+        racer.updateFiles(-1);
+        racer.updateXfertime(-member._xfertime);
+        if (racer.getFiles() == 0) {
+            _racers.remove(member._username);
+        }
+        GroupPosition group = _groups.get(member._group);
+        group.updateBytes(-member._size);
+        group.updateFiles(-1);
+        group.updateXfertime(-member._xfertime);
+        if (group.getFiles() == 0) {
+            _groups.remove(member._group);
+        }
+    }
+
+    public synchronized SFVStatus getSFVStatus() {
+        return new SFVStatus(_sfvInfo.getSize(), _offline, _present);
+    }
+
+    /**
+     * @return the bytes of the sfv files done uploading.
+     */
+    public synchronized long getTotalBytes() {
+        return _bytes;
+    }
+
+    public synchronized long getTotalXfertime() {
+        return _xfertime;
+    }
+
+    /**
+     * @return the speed in bytes per second of the sfv files done uploading.
+     */
+    public synchronized long getXferspeed() {
+        if (_xfertime / 1000 == 0) {
+            return 0;
+        }
+        return _bytes / (_xfertime / 1000);
+    }
+
+    public synchronized long getLargestFileBytes() {
+        long largestFileBytes = 0;
+        for (Member member : _files.values()) {
+            if (member._counted && member._size > largestFileBytes) {
+                largestFileBytes = member._size;
+            }
+        }
+        return largestFileBytes;
+    }
+
+    /**
+     * @return true if {@code username} uploaded an sfv file other than {@code fileName}.
+     */
+    public synchronized boolean hasRaced(String username, String fileName) {
+        UploaderPosition racer = _racers.get(username);
+        if (racer == null) {
+            return false;
+        }
+        for (Member member : _files.values()) {
+            if (member._counted && member._xfertime > 0 && member._username.equals(username)
+                    && !member._name.equals(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a copy of the racers, the biggest uploader first.
+     */
+    public synchronized List<UploaderPosition> getRacers() {
+        List<UploaderPosition> racers = new ArrayList<>(_racers.size());
+        for (UploaderPosition racer : _racers.values()) {
+            racers.add(new UploaderPosition(racer.getUsername(), racer.getBytes(), racer.getFiles(), racer.getXfertime()));
+        }
+        Collections.sort(racers);
+        return racers;
+    }
+
+    /**
+     * @return a copy of the racing groups, the biggest group first.
+     */
+    public synchronized List<GroupPosition> getGroups() {
+        List<GroupPosition> groups = new ArrayList<>(_groups.size());
+        for (GroupPosition group : _groups.values()) {
+            groups.add(new GroupPosition(group.getGroupname(), group.getBytes(), group.getFiles(), group.getXfertime()));
+        }
+        Collections.sort(groups);
+        return groups;
+    }
+}
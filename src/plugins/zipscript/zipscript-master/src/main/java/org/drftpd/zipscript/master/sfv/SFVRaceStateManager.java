@@ -0,0 +1,177 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.zipscript.master.sfv;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bushe.swing.event.annotation.AnnotationProcessor;
+import org.bushe.swing.event.annotation.EventSubscriber;
+import org.drftpd.common.util.ConfigLoader;
+import org.drftpd.common.util.PropertyHelper;
+import org.drftpd.master.event.ReloadEvent;
+import org.drftpd.master.event.SlaveEvent;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.master.vfs.VirtualFileSystem;
+import org.drftpd.master.vfs.event.VirtualFileSystemInodeDeletedEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemRenameEvent;
+import org.drftpd.master.vfs.event.VirtualFileSystemSlaveEvent;
+import org.drftpd.zipscript.common.sfv.SFVInfo;
+
+import java.io.FileNotFoundException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Keeps the race state of the most recently used sfv directories.
+ * <p>
+ * Uploads update the state from the zipscript hooks, deletions from the events.
+ * Slave changes drop the state of the directory, reading the file again may ask a slave
+ * for its checksum which the event thread must not wait for. Anything else changing the
+ * size of a directory makes its state rebuilt on next use.
+ */
+public class SFVRaceStateManager {
+
+    private static final Logger logger = LogManager.getLogger(SFVRaceStateManager.class);
+
+    private static SFVRaceStateManager ref;
+
+    private final Map<String, SFVRaceState> _states = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SFVRaceState> eldest) {
+            return size() > _maxStates;
+        }
+    };
+
+    private int _maxStates;
+
+    private SFVRaceStateManager() {
+        loadConf();
+        AnnotationProcessor.process(this);
+    }
+
+    public static synchronized SFVRaceStateManager getRaceStateManager() {
+        if (ref == null) {
+            ref = new SFVRaceStateManager();
+        }
+        return ref;
+    }
+
+    private void loadConf() {
+        Properties cfg = ConfigLoader.loadPluginConfig("zipscript.conf");
+        int maxStates;
+        try {
+            maxStates = Integer.parseInt(PropertyHelper.getProperty(cfg, "racestate.cache.size", "1000"));
+        } catch (NumberFormatException e) {
+            logger.error("Non numeric racestate.cache.size setting in zipscript.conf, using default");
+            maxStates = 1000;
+        }
+        synchronized (_states) {
+            _maxStates = maxStates;
+            Iterator<String> iter = _states.keySet().iterator();
+            while (_states.size() > _maxStates) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the race state of {@code dir}, built again if the directory changed without it.
+     */
+    public SFVRaceState getRaceState(DirectoryHandle dir, SFVInfo sfvInfo) throws FileNotFoundException {
+        SFVRaceState state;
+        synchronized (_states) {
+            state = _states.get(dir.getPath());
+        }
+        if (state != null && state.isCurrent(dir, sfvInfo)) {
+            return state;
+        }
+        // built without the lock, a slave may be asked for checksums
+        state = new SFVRaceState(dir, sfvInfo);
+        synchronized (_states) {
+            _states.put(dir.getPath(), state);
+        }
+        return state;
+    }
+
+    /**
+     * Updates the race state of the parent of {@code file}, if there is one.
+     */
+    public void update(FileHandle file) {
+        SFVRaceState state;
+        synchronized (_states) {
+            state = _states.get(file.getParent().getPath());
+        }
+        if (state != null) {
+            state.update(file);
+        }
+    }
+
+    /**
+     * Forgets the race states of {@code path} and its sub directories.
+     */
+    public void remove(String path) {
+        String prefix = path.endsWith(VirtualFileSystem.separator) ? path : path + VirtualFileSystem.separator;
+        synchronized (_states) {
+            _states.keySet().removeIf(statePath -> statePath.equals(path) || statePath.startsWith(prefix));
+        }
+    }
+
+    @EventSubscriber
+    public void onVirtualFileSystemInodeDeletedEvent(VirtualFileSystemInodeDeletedEvent event) {
+        if (event.getImmutableInode().isFile()) {
+            update(new FileHandle(event.getImmutableInode().getPath()));
+        } else {
+            remove(event.getImmutableInode().getPath());
+        }
+    }
+
+    @EventSubscriber
+    public void onVirtualFileSystemRenameEvent(VirtualFileSystemRenameEvent event) {
+        // a renamed directory is built again under its new name
+        remove(event.getSource().getPath());
+        remove(event.getSource().getParent().getPath());
+        remove(event.getImmutableInode().getParent().getPath());
+    }
+
+    @EventSubscriber
+    public void onVirtualFileSystemSlaveEvent(VirtualFileSystemSlaveEvent event) {
+        // built again on next use, by the command thread
+        synchronized (_states) {
+            _states.remove(event.getImmutableInode().getParent().getPath());
+        }
+    }
+
+    @EventSubscriber
+    public void onSlaveEvent(SlaveEvent event) {
+        if (event.getCommand().equals("ADDSLAVE") || event.getCommand().equals("DELSLAVE")) {
+            // files of every directory may have gone offline or back online
+            synchronized (_states) {
+                _states.clear();
+            }
+        }
+    }
+
+    @EventSubscriber
+    public void onReloadEvent(ReloadEvent event) {
+        loadConf();
+    }
+}
@@ -54,44 +54,27 @@ public class SFVTools {
 
     public static long getSFVTotalBytes(DirectoryHandle dir, ZipscriptVFSDataSFV sfvData)
             throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
-        long totalBytes = 0;
-
-        for (FileHandle file : getSFVFiles(dir, sfvData)) {
-            totalBytes += file.getSize();
-        }
-        return totalBytes;
+        return getRaceState(dir, sfvData).getTotalBytes();
     }
 
     public static long getSFVLargestFileBytes(DirectoryHandle dir, ZipscriptVFSDataSFV sfvData)
             throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
-        long largestFileBytes = 0;
-
-        for (FileHandle file : getSFVFiles(dir, sfvData)) {
-            if (file.getSize() > largestFileBytes) {
-                largestFileBytes = file.getSize();
-            }
-        }
-        return largestFileBytes;
+        return getRaceState(dir, sfvData).getLargestFileBytes();
     }
 
     public static long getSFVTotalXfertime(DirectoryHandle dir, ZipscriptVFSDataSFV sfvData)
             throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
-        long totalXfertime = 0;
-
-        for (FileHandle file : getSFVFiles(dir, sfvData)) {
-            totalXfertime += file.getXfertime();
-        }
-        return totalXfertime;
+        return getRaceState(dir, sfvData).getTotalXfertime();
     }
 
     public static long getXferspeed(DirectoryHandle dir, ZipscriptVFSDataSFV sfvData)
             throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
-        long totalXfertime = getSFVTotalXfertime(dir, sfvData);
-        if (totalXfertime / 1000 == 0) {
-            return 0;
-        }
+        return getRaceState(dir, sfvData).getXferspeed();
+    }
 
-        return getSFVTotalBytes(dir, sfvData) / (totalXfertime / 1000);
+    private static SFVRaceState getRaceState(DirectoryHandle dir, ZipscriptVFSDataSFV sfvData)
+            throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
+        return SFVRaceStateManager.getRaceStateManager().getRaceState(dir, sfvData.getSFVInfo());
     }
 
     public static SFVStatus getSFVStatus(SFVInfo sfvInfo, DirectoryHandle dir)
@@ -39,13 +39,14 @@ import org.drftpd.master.usermanager.NoSuchUserException;
 import org.drftpd.master.usermanager.User;
 import org.drftpd.master.usermanager.UserFileException;
 import org.drftpd.master.util.GroupPosition;
-import org.drftpd.master.util.RankUtils;
 import org.drftpd.master.util.ReplacerUtils;
 import org.drftpd.master.util.UploaderPosition;
 import org.drftpd.master.vfs.DirectoryHandle;
 import org.drftpd.master.vfs.FileHandle;
 import org.drftpd.zipscript.common.sfv.SFVInfo;
 import org.drftpd.zipscript.common.sfv.SFVStatus;
+import org.drftpd.zipscript.master.sfv.SFVRaceState;
+import org.drftpd.zipscript.master.sfv.SFVRaceStateManager;
 import org.drftpd.zipscript.master.sfv.SFVTools;
 import org.drftpd.zipscript.master.sfv.event.SFVMemberTransferEvent;
 import org.drftpd.zipscript.master.sfv.vfs.ZipscriptVFSDataSFV;
@@ -134,6 +135,8 @@ public class ZipscriptPostHook extends SFVTools {
             // We don't have a file, we shouldn't have ended up here but return anyway
             return;
         }
+        // Race state of the directory, if any, follows the file before it is looked at
+        SFVRaceStateManager.getRaceStateManager().update(transferFile);
         if (!transferFile.exists()) {
             // No point checking the file as it has already been deleted (i.e. an abort)
             return;
@@ -184,6 +187,7 @@ public class ZipscriptPostHook extends SFVTools {
                         logger.debug("0Byte File, Deleting...");
                         response.addComment("0Byte File, Deleting...");
                         transferFile.deleteUnchecked();
+                        SFVRaceStateManager.getRaceStateManager().update(transferFile);
                     } else
                         // The file has checksum = 0, although the size is != 0,
                         // meaning that we are not using checked transfers.
@@ -196,6 +200,7 @@ public class ZipscriptPostHook extends SFVTools {
                     response.addComment(" deleting file");
                     response.setMessage("Checksum mismatch, deleting file");
                     transferFile.deleteUnchecked();
+                    SFVRaceStateManager.getRaceStateManager().update(transferFile);
                 }
             } catch (NoAvailableSlaveException | SlaveUnavailableException e) {
                 response.addComment(
@@ -260,11 +265,11 @@ public class ZipscriptPostHook extends SFVTools {
         // show race stats
         try {
             ZipscriptVFSDataSFV sfvData = new ZipscriptVFSDataSFV(dir);
-            SFVInfo sfvInfo = sfvData.getSFVInfo();
-            SFVStatus sfvStatus = sfvData.getSFVStatus();
-            Collection<UploaderPosition> racers = RankUtils.userSort(getSFVFiles(dir, sfvData),
-                    "bytes", "high");
-            Collection<GroupPosition> groups = RankUtils.topFileGroup(getSFVFiles(dir, sfvData));
+            SFVRaceState raceState = sfvData.getRaceState();
+            SFVInfo sfvInfo = raceState.getSFVInfo();
+            SFVStatus sfvStatus = raceState.getSFVStatus();
+            Collection<UploaderPosition> racers = raceState.getRacers();
+            Collection<GroupPosition> groups = raceState.getGroups();
 
             String racerline = _bundle.getString("cwd.racers.body");
             String groupline = _bundle.getString("cwd.groups.body");
@@ -334,8 +339,8 @@ public class ZipscriptPostHook extends SFVTools {
             raceTextBuilder.append('\n');
 
             env.put("completefiles", sfvStatus.getPresent() + "/" + sfvInfo.getSize());
-            env.put("totalbytes", Bytes.formatBytes(getSFVTotalBytes(dir, sfvData)));
-            env.put("totalspeed", Bytes.formatBytes(getXferspeed(dir, sfvData)) + "/s");
+            env.put("totalbytes", Bytes.formatBytes(raceState.getTotalBytes()));
+            env.put("totalspeed", Bytes.formatBytes(raceState.getXferspeed()) + "/s");
             env.put("totalpercent", (sfvStatus.getPresent() * 100) / sfvInfo.getSize() + "%");
 
             raceTextBuilder.append(_bundle.getString("cwd.totals.body"));
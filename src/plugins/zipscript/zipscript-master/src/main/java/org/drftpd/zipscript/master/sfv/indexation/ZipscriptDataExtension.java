@@ -46,19 +46,23 @@ public class ZipscriptDataExtension implements IndexDataExtensionInterface {
 
     private static final Logger logger = LogManager.getLogger(ZipscriptDataExtension.class);
 
-    private static final NumericField FIELD_PRESENT = new NumericField("present", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_MISSING = new NumericField("missing", Field.Store.YES, Boolean.TRUE);
-    private static final NumericField FIELD_PERCENT = new NumericField("percent", Field.Store.YES, Boolean.TRUE);
+    private static final String FIELD_PRESENT = "present";
+    private static final String FIELD_MISSING = "missing";
+    private static final String FIELD_PERCENT = "percent";
 
     @Override
     public void initializeFields(Document doc) {
-        doc.add(FIELD_PRESENT);
-        doc.add(FIELD_MISSING);
-        doc.add(FIELD_PERCENT);
+        doc.add(new NumericField(FIELD_PRESENT, Field.Store.YES, Boolean.TRUE));
+        doc.add(new NumericField(FIELD_MISSING, Field.Store.YES, Boolean.TRUE));
+        doc.add(new NumericField(FIELD_PERCENT, Field.Store.YES, Boolean.TRUE));
     }
 
     @Override
     public void addData(Document doc, ImmutableInodeHandle inode) {
+        NumericField present = (NumericField) doc.getFieldable(FIELD_PRESENT);
+        NumericField missing = (NumericField) doc.getFieldable(FIELD_MISSING);
+        NumericField percent = (NumericField) doc.getFieldable(FIELD_PERCENT);
+
         SFVInfo sfvInfo = null;
         SFVStatus sfvStatus = null;
         DizInfo dizInfo = null;
@@ -78,17 +82,17 @@ public class ZipscriptDataExtension implements IndexDataExtensionInterface {
             }
         }
         if (sfvStatus == null && dizStatus == null) {
-            FIELD_PRESENT.setIntValue(-1);
-            FIELD_MISSING.setIntValue(-1);
-            FIELD_PERCENT.setIntValue(-1);
+            present.setIntValue(-1);
+            missing.setIntValue(-1);
+            percent.setIntValue(-1);
         } else if (sfvStatus != null) {
-            FIELD_PRESENT.setIntValue(sfvStatus.getPresent());
-            FIELD_MISSING.setIntValue(sfvStatus.getMissing());
-            FIELD_PERCENT.setIntValue((sfvStatus.getPresent() * 100) / sfvInfo.getSize());
+            present.setIntValue(sfvStatus.getPresent());
+            missing.setIntValue(sfvStatus.getMissing());
+            percent.setIntValue((sfvStatus.getPresent() * 100) / sfvInfo.getSize());
         } else {
-            FIELD_PRESENT.setIntValue(dizStatus.getPresent());
-            FIELD_MISSING.setIntValue(dizStatus.getMissing());
-            FIELD_PERCENT.setIntValue((dizStatus.getPresent() * 100) / dizInfo.getTotal());
+            present.setIntValue(dizStatus.getPresent());
+            missing.setIntValue(dizStatus.getMissing());
+            percent.setIntValue((dizStatus.getPresent() * 100) / dizInfo.getTotal());
         }
     }
 
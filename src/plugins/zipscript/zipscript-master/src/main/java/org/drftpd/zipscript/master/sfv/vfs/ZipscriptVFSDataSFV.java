@@ -31,7 +31,8 @@ import org.drftpd.master.vfs.ObjectNotValidException;
 import org.drftpd.zipscript.common.sfv.AsyncResponseSFVInfo;
 import org.drftpd.zipscript.common.sfv.SFVInfo;
 import org.drftpd.zipscript.common.sfv.SFVStatus;
-import org.drftpd.zipscript.master.sfv.SFVTools;
+import org.drftpd.zipscript.master.sfv.SFVRaceState;
+import org.drftpd.zipscript.master.sfv.SFVRaceStateManager;
 import org.drftpd.zipscript.master.sfv.ZipscriptIssuer;
 
 import java.io.FileNotFoundException;
@@ -123,7 +124,14 @@ public class ZipscriptVFSDataSFV {
     }
 
     public SFVStatus getSFVStatus() throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
-        return SFVTools.getSFVStatus(getSFVInfo(), _dir);
+        return getRaceState().getSFVStatus();
+    }
+
+    /**
+     * @return the race state of the directory, kept up to date as the sfv files are uploaded.
+     */
+    public SFVRaceState getRaceState() throws IOException, NoAvailableSlaveException, SlaveUnavailableException {
+        return SFVRaceStateManager.getRaceStateManager().getRaceState(_dir, getSFVInfo());
     }
 
     private SFVInfo getSFVInfoFromInode(DirectoryHandle vfsDirHandle) throws FileNotFoundException, KeyNotFoundException {
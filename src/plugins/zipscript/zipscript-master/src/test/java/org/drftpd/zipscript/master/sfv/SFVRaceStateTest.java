@@ -0,0 +1,291 @@
+/*
+ * This file is part of DrFTPD, Distributed FTP Daemon.
+ *
+ * DrFTPD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * DrFTPD is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with DrFTPD; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.drftpd.zipscript.master.sfv;
+
+import org.apache.commons.io.FileUtils;
+import org.drftpd.common.vfs.CaseInsensitiveTreeMap;
+import org.drftpd.master.GlobalContext;
+import org.drftpd.master.exceptions.NoAvailableSlaveException;
+import org.drftpd.master.protocol.MasterProtocolCentral;
+import org.drftpd.master.slavemanagement.DummyRemoteSlave;
+import org.drftpd.master.slavemanagement.RemoteSlave;
+import org.drftpd.master.slavemanagement.SlaveManager;
+import org.drftpd.master.util.GroupPosition;
+import org.drftpd.master.util.UploaderPosition;
+import org.drftpd.master.vfs.DirectoryHandle;
+import org.drftpd.master.vfs.FileHandle;
+import org.drftpd.slave.exceptions.ObjectNotFoundException;
+import org.drftpd.zipscript.common.sfv.SFVInfo;
+import org.drftpd.zipscript.common.sfv.SFVStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SFVRaceStateTest {
+
+    private static RemoteSlave _rslave;
+
+    private DirectoryHandle _dir;
+
+    private SFVInfo _sfvInfo;
+
+    @BeforeAll
+    static void setUp() {
+        GC.getGlobalContext().setSlaveManager(new DummySlaveManager());
+        _rslave = new DummyRemoteSlave("testSlave");
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        FileUtils.deleteDirectory(new File("userdata"));
+    }
+
+    @BeforeEach
+    void createRelease() throws Exception {
+        _dir = new DirectoryHandle("/").createDirectoryUnchecked("Release", "drftpd", "drftpd");
+        CaseInsensitiveTreeMap<String, Long> entries = new CaseInsensitiveTreeMap<>();
+        entries.put("a.r00", 1L);
+        entries.put("a.r01", 2L);
+        entries.put("a.r02", 3L);
+        _sfvInfo = new SFVInfo();
+        _sfvInfo.setEntries(entries);
+        createFile("a.r00", "user1", "group1", 100L, 1000L, 1L);
+        createFile("a.r01", "user2", "group1", 200L, 2000L, 2L);
+        createFile("a.nfo", "user1", "group1", 50L, 500L, 4L);
+    }
+
+    @AfterEach
+    void deleteRelease() throws Exception {
+        _dir.deleteUnchecked();
+    }
+
+    private FileHandle createFile(String name, String user, String group, long size, long xfertime,
+                                  long checksum) throws Exception {
+        FileHandle file = _dir.createFileUnchecked(name, user, group, _rslave);
+        file.setSize(size);
+        file.setXfertime(xfertime);
+        file.setCheckSum(checksum);
+        return file;
+    }
+
+    private static void assertRacer(UploaderPosition racer, String username, long bytes, int files, long xfertime) {
+        assertEquals(username, racer.getUsername());
+        assertEquals(bytes, racer.getBytes());
+        assertEquals(files, racer.getFiles());
+        assertEquals(xfertime, racer.getXfertime());
+    }
+
+    private static void assertGroup(GroupPosition group, String groupname, long bytes, int files, long xfertime) {
+        assertEquals(groupname, group.getGroupname());
+        assertEquals(bytes, group.getBytes());
+        assertEquals(files, group.getFiles());
+        assertEquals(xfertime, group.getXfertime());
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+
+        SFVStatus status = state.getSFVStatus();
+        assertEquals(2, status.getPresent());
+        // the dummy slaves are never online
+        assertEquals(2, status.getOffline());
+        assertEquals(1, status.getMissing());
+        // the nfo is not in the sfv
+        assertEquals(300L, state.getTotalBytes());
+        assertEquals(3000L, state.getTotalXfertime());
+        assertEquals(200L, state.getLargestFileBytes());
+
+        List<UploaderPosition> racers = state.getRacers();
+        assertEquals(2, racers.size());
+        assertRacer(racers.get(0), "user2", 200L, 1, 2000L);
+        assertRacer(racers.get(1), "user1", 100L, 1, 1000L);
+        List<GroupPosition> groups = state.getGroups();
+        assertEquals(1, groups.size());
+        assertGroup(groups.get(0), "group1", 300L, 2, 3000L);
+        assertTrue(state.isCurrent(_dir, _sfvInfo));
+    }
+
+    @Test
+    public void testAdd() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        state.update(createFile("a.r02", "user1", "group2", 400L, 1000L, 3L));
+
+        assertEquals(3, state.getSFVStatus().getPresent());
+        assertEquals(0, state.getSFVStatus().getMissing());
+        assertEquals(700L, state.getTotalBytes());
+        assertEquals(4000L, state.getTotalXfertime());
+        assertEquals(400L, state.getLargestFileBytes());
+
+        List<UploaderPosition> racers = state.getRacers();
+        assertEquals(2, racers.size());
+        assertRacer(racers.get(0), "user1", 500L, 2, 2000L);
+        assertRacer(racers.get(1), "user2", 200L, 1, 2000L);
+        List<GroupPosition> groups = state.getGroups();
+        assertEquals(2, groups.size());
+        assertGroup(groups.get(0), "group2", 400L, 1, 1000L);
+        assertGroup(groups.get(1), "group1", 300L, 2, 3000L);
+        assertTrue(state.hasRaced("user1", "a.r02"));
+        assertFalse(state.hasRaced("user2", "a.r01"));
+        assertTrue(state.isCurrent(_dir, _sfvInfo));
+    }
+
+    @Test
+    public void testUpdateTwice() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        FileHandle file = new FileHandle(_dir.getPath() + "/a.r00");
+        file.setSize(150L);
+        state.update(file);
+        state.update(file);
+
+        // the file replaces what was known of it, it is not counted again
+        assertEquals(2, state.getSFVStatus().getPresent());
+        assertEquals(350L, state.getTotalBytes());
+        List<UploaderPosition> racers = state.getRacers();
+        assertEquals(2, racers.size());
+        assertRacer(racers.get(0), "user2", 200L, 1, 2000L);
+        assertRacer(racers.get(1), "user1", 150L, 1, 1000L);
+        assertGroup(state.getGroups().get(0), "group1", 350L, 2, 3000L);
+        assertTrue(state.isCurrent(_dir, _sfvInfo));
+    }
+
+    @Test
+    public void testSubtract() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        FileHandle file = new FileHandle(_dir.getPath() + "/a.r00");
+        file.deleteUnchecked();
+        state.update(file);
+
+        assertEquals(1, state.getSFVStatus().getPresent());
+        assertEquals(1, state.getSFVStatus().getOffline());
+        assertEquals(2, state.getSFVStatus().getMissing());
+        assertEquals(200L, state.getTotalBytes());
+        assertEquals(2000L, state.getTotalXfertime());
+
+        // the last file of a racer or a group takes it off the lists
+        List<UploaderPosition> racers = state.getRacers();
+        assertEquals(1, racers.size());
+        assertRacer(racers.get(0), "user2", 200L, 1, 2000L);
+        List<GroupPosition> groups = state.getGroups();
+        assertEquals(1, groups.size());
+        assertGroup(groups.get(0), "group1", 200L, 1, 2000L);
+
+        new FileHandle(_dir.getPath() + "/a.r01").deleteUnchecked();
+        state.update(new FileHandle(_dir.getPath() + "/a.r01"));
+        assertEquals(0, state.getSFVStatus().getPresent());
+        assertEquals(0L, state.getTotalBytes());
+        assertTrue(state.getRacers().isEmpty());
+        assertTrue(state.getGroups().isEmpty());
+        assertTrue(state.isCurrent(_dir, _sfvInfo));
+    }
+
+    @Test
+    public void testWrongChecksum() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        state.update(createFile("a.r02", "user3", "group1", 300L, 1000L, 5L));
+
+        // uploaded but bad, counted in the totals but not present
+        assertEquals(2, state.getSFVStatus().getPresent());
+        assertEquals(1, state.getSFVStatus().getMissing());
+        assertEquals(600L, state.getTotalBytes());
+        assertEquals(3, state.getRacers().size());
+    }
+
+    @Test
+    public void testUploading() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        createFile("a.r02", "user3", "group1", 300L, 0L, 0L);
+        state.update(new UploadingFileHandle(_dir.getPath() + "/a.r02"));
+
+        // a partial file is neither present nor counted
+        assertEquals(2, state.getSFVStatus().getPresent());
+        assertEquals(300L, state.getTotalBytes());
+        assertEquals(2, state.getRacers().size());
+        assertTrue(state.isCurrent(_dir, _sfvInfo));
+    }
+
+    @Test
+    public void testSentToAnotherSlave() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        createFile("a.r02", "user3", "group1", 300L, 1000L, 3L);
+        state.update(new UploadingFileHandle(_dir.getPath() + "/a.r02"));
+
+        // a finished file being copied by the jobmanager is uploading as well
+        assertEquals(3, state.getSFVStatus().getPresent());
+        assertEquals(600L, state.getTotalBytes());
+        assertEquals(3, state.getRacers().size());
+    }
+
+    @Test
+    public void testChangedBehindItsBack() throws Exception {
+        SFVRaceState state = new SFVRaceState(_dir, _sfvInfo);
+        createFile("a.r02", "user1", "group1", 300L, 1000L, 3L);
+
+        assertFalse(state.isCurrent(_dir, _sfvInfo));
+        assertFalse(new SFVRaceState(_dir, _sfvInfo).isCurrent(_dir, new SFVInfo()));
+    }
+
+    private static class UploadingFileHandle extends FileHandle {
+        private UploadingFileHandle(String path) {
+            super(path);
+        }
+
+        @Override
+        public boolean isUploading() {
+            return true;
+        }
+    }
+
+    private static class DummySlaveManager extends SlaveManager {
+        private DummySlaveManager() {
+            super("Test Framework");
+            _central = new MasterProtocolCentral();
+        }
+
+        @Override
+        public Collection<RemoteSlave> getAvailableSlaves() throws NoAvailableSlaveException {
+            return getSlaves();
+        }
+
+        @Override
+        public RemoteSlave getRemoteSlave(String s) throws ObjectNotFoundException {
+            return new DummyRemoteSlave(s);
+        }
+    }
+
+    private static class GC extends GlobalContext {
+        public static GC getGlobalContext() {
+            if (_gctx == null) {
+                _gctx = new GC();
+            }
+            return (GC) _gctx;
+        }
+
+        private void setSlaveManager(SlaveManager sm) {
+            _slaveManager = sm;
+        }
+    }
+}